@@ -0,0 +1,106 @@
+package com.rabbitmq.tutorial.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.batch.MessageBatch;
+
+import com.rabbitmq.tutorial.messaging.batch.TypedBatchingStrategy;
+import com.rabbitmq.tutorial.messaging.codec.JsonCodec;
+import com.rabbitmq.tutorial.messaging.dispatch.MessageDispatcher;
+import com.rabbitmq.tutorial.messaging.transport.InMemoryTransport;
+import com.rabbitmq.tutorial.model.Usuario;
+
+/**
+ * Throughput del perfil "batching" frente al envío mensaje a mensaje, sobre
+ * el InMemoryTransport y con la misma pareja texto + Usuario del Sender:
+ * - perMessage: cada mensaje es una entrega y un despacho (no depende de
+ *   batchSize);
+ * - batched: los mensajes pasan por TypedBatchingStrategy (tamaños de
+ *   application.yml) y el consumidor separa cada lote antes de despachar.
+ *
+ * Cada operación serializa y envía un mensaje de la aplicación en los dos
+ * casos, así que las cifras se comparan directamente. Sin broker no se ve el
+ * ahorro de frames y acks por mensaje, que es lo que más gana en RabbitMQ;
+ * aquí solo se mide lo que cuesta agrupar y separar en nuestro código frente
+ * a una entrega por mensaje.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchingBenchmark {
+
+	@Param({ "10", "100" })
+	public int batchSize;
+
+	private InMemoryTransport transport;
+
+	private TypedBatchingStrategy strategy;
+
+	private JsonCodec codec;
+
+	private Usuario usuario;
+
+	private long sequence;
+
+	@Setup
+	public void setup() {
+		codec = Payloads.codec();
+		usuario = Payloads.usuario();
+		strategy = new TypedBatchingStrategy(batchSize, 65536, 0L);
+		TypedBatchingStrategy debatcher = new TypedBatchingStrategy(batchSize, 65536, 0L);
+		MessageDispatcher dispatcher = new MessageDispatcher(codec).register(Usuario.class, u -> { })
+				.registerText(s -> { });
+		transport = new InMemoryTransport(1024, 1000, Thread.ofPlatform().daemon().factory());
+		transport.subscribe("hello", 1, message -> {
+			if (debatcher.canDebatch(message.getMessageProperties())) {
+				debatcher.deBatch(message, dispatcher::dispatch);
+			}
+			else {
+				dispatcher.dispatch(message);
+			}
+		});
+		transport.start();
+	}
+
+	@TearDown
+	public void tearDown() {
+		for (MessageBatch batch : strategy.releaseBatches()) {
+			transport.send(batch.getRoutingKey(), batch.getMessage());
+		}
+		transport.stop();
+	}
+
+	@Benchmark
+	public void perMessage() {
+		transport.send("hello", next());
+	}
+
+	@Benchmark
+	public void batched() {
+		MessageBatch batch = strategy.addToBatch("", "hello", next());
+		if (batch != null) {
+			transport.send(batch.getRoutingKey(), batch.getMessage());
+		}
+	}
+
+	private Message next() {
+		// Un Message nuevo por envío: el transporte rellena sus propiedades de entrega
+		return codec.toMessage((sequence++ & 1) == 0 ? "Hello World!" : usuario);
+	}
+}
@@ -0,0 +1,114 @@
+package com.rabbitmq.tutorial.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+
+import com.rabbitmq.tutorial.messaging.codec.JsonCodec;
+import com.rabbitmq.tutorial.messaging.codec.TransaccionBinaryCodec;
+import com.rabbitmq.tutorial.model.Transaccion;
+import com.rabbitmq.tutorial.model.Usuario;
+
+/**
+ * Coste por mensaje de serializar y deserializar Usuario y Transaccion con
+ * Jackson2JsonMessageConverter (lo que usa el RabbitTemplate), con el
+ * JsonCodec compartido y con el formato binario de Transaccion.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+	private JsonCodec codec;
+
+	private Jackson2JsonMessageConverter converter;
+
+	private TransaccionBinaryCodec binaryCodec;
+
+	private Usuario usuario;
+
+	private Transaccion transaccion;
+
+	private Message usuarioJson;
+
+	private Message transaccionJson;
+
+	private byte[] transaccionBinary;
+
+	@Setup
+	public void setup() {
+		codec = Payloads.codec();
+		converter = new Jackson2JsonMessageConverter(codec.getObjectMapper());
+		binaryCodec = new TransaccionBinaryCodec();
+		usuario = Payloads.usuario();
+		transaccion = Payloads.transaccion();
+		usuarioJson = codec.toMessage(usuario);
+		transaccionJson = codec.toMessage(transaccion);
+		transaccionBinary = binaryCodec.encode(transaccion);
+	}
+
+	@Benchmark
+	public Message converterToMessageUsuario() {
+		return converter.toMessage(usuario, new MessageProperties());
+	}
+
+	@Benchmark
+	public Message codecToMessageUsuario() {
+		return codec.toMessage(usuario);
+	}
+
+	@Benchmark
+	public Object converterFromMessageUsuario() {
+		return converter.fromMessage(usuarioJson);
+	}
+
+	@Benchmark
+	public Usuario codecDecodeUsuario() {
+		return codec.decode(usuarioJson.getBody(), Usuario.class);
+	}
+
+	@Benchmark
+	public Message converterToMessageTransaccion() {
+		return converter.toMessage(transaccion, new MessageProperties());
+	}
+
+	@Benchmark
+	public Message codecToMessageTransaccion() {
+		return codec.toMessage(transaccion);
+	}
+
+	@Benchmark
+	public byte[] binaryEncodeTransaccion() {
+		return binaryCodec.encode(transaccion);
+	}
+
+	@Benchmark
+	public Object converterFromMessageTransaccion() {
+		return converter.fromMessage(transaccionJson);
+	}
+
+	@Benchmark
+	public Transaccion codecDecodeTransaccion() {
+		return codec.decode(transaccionJson.getBody(), Transaccion.class);
+	}
+
+	@Benchmark
+	public Transaccion binaryDecodeTransaccion() {
+		return binaryCodec.decode(transaccionBinary);
+	}
+}
@@ -0,0 +1,74 @@
+package com.rabbitmq.tutorial.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.Message;
+
+import com.rabbitmq.tutorial.messaging.codec.JsonCodec;
+import com.rabbitmq.tutorial.messaging.codec.TransaccionBinaryCodec;
+import com.rabbitmq.tutorial.messaging.codec.TransaccionBinaryMessageConverter;
+import com.rabbitmq.tutorial.messaging.dispatch.MessageDispatcher;
+import com.rabbitmq.tutorial.model.Transaccion;
+import com.rabbitmq.tutorial.model.Usuario;
+
+/**
+ * Coste de decodificar un mensaje recibido con el MessageDispatcher según
+ * su forma: JSON con __TypeId__, JSON de productores antiguos sin cabecera,
+ * texto plano, JSON corrupto (cae a texto tras un parseo fallido) y
+ * Transaccion binaria. "mix" alterna todas ellas en el orden de la lista,
+ * como llegarían en una cola compartida.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+	private static final String[] MIX = { "usuario", "text", "transaccion", "headerless", "usuario", "text",
+			"binary", "malformed" };
+
+	@Param({ "usuario", "transaccion", "binary", "headerless", "text", "malformed", "mix" })
+	public String payload;
+
+	private MessageDispatcher dispatcher;
+
+	private Message[] messages;
+
+	private int next;
+
+	@Setup
+	public void setup() {
+		JsonCodec codec = Payloads.codec();
+		dispatcher = new MessageDispatcher(codec)
+				.registerType(Usuario.class)
+				.registerType(Transaccion.class)
+				.registerContentType(TransaccionBinaryCodec.CONTENT_TYPE,
+						new TransaccionBinaryMessageConverter(new TransaccionBinaryCodec()))
+				.setDefaultJsonType(Usuario.class);
+		String[] kinds = payload.equals("mix") ? MIX : new String[] { payload };
+		messages = new Message[kinds.length];
+		for (int i = 0; i < kinds.length; i++) {
+			messages[i] = Payloads.message(kinds[i], codec);
+		}
+	}
+
+	@Benchmark
+	public Object decode() {
+		Message message = messages[next];
+		next = next + 1 == messages.length ? 0 : next + 1;
+		return dispatcher.decode(message);
+	}
+}
@@ -0,0 +1,67 @@
+package com.rabbitmq.tutorial.benchmark;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.tutorial.messaging.codec.JsonCodec;
+import com.rabbitmq.tutorial.messaging.codec.TransaccionBinaryCodec;
+import com.rabbitmq.tutorial.model.Transaccion;
+import com.rabbitmq.tutorial.model.Usuario;
+
+/**
+ * Payloads representativos de la cola "hello" para los benchmarks: los
+ * mismos tipos, cabeceras y tamaños que producen Sender y los productores
+ * antiguos (JSON sin __TypeId__), además de texto plano y JSON corrupto.
+ */
+final class Payloads {
+
+	private Payloads() {
+	}
+
+	/**
+	 * @return JsonCodec configurado igual que en RabbitConfig
+	 */
+	static JsonCodec codec() {
+		return new JsonCodec(new ObjectMapper().findAndRegisterModules(), Usuario.class, Transaccion.class,
+				String.class);
+	}
+
+	static Usuario usuario() {
+		return new Usuario(1, "John");
+	}
+
+	static Transaccion transaccion() {
+		LocalDateTime now = LocalDateTime.of(2024, 5, 17, 10, 30, 15, 123_000_000);
+		return new Transaccion(42, "6f1c9f4e-7d3a-4b7e-9a51-2f0c4d8e1b23", "corr-000042", 1001, 2002,
+				new BigDecimal("150.75"), now, now, "PENDIENTE");
+	}
+
+	/**
+	 * @param kind tipo de mensaje: usuario, transaccion, binary, headerless,
+	 *             text o malformed
+	 * @param codec codec con el que se serializan los payloads JSON
+	 * @return mensaje tal como llega al receptor
+	 */
+	static Message message(String kind, JsonCodec codec) {
+		return switch (kind) {
+			case "usuario" -> codec.toMessage(usuario());
+			case "transaccion" -> codec.toMessage(transaccion());
+			case "binary" -> new TransaccionBinaryCodec().toMessage(transaccion());
+			case "headerless" -> raw("{\"id\":1,\"nombre\":\"John\"}", "application/json");
+			case "text" -> raw("Hello World!", "text/plain");
+			case "malformed" -> raw("{\"id\":1,\"nombre\":\"Jo", null);
+			default -> throw new IllegalArgumentException("Unknown payload kind " + kind);
+		};
+	}
+
+	private static Message raw(String body, String contentType) {
+		MessageProperties properties = new MessageProperties();
+		properties.setContentType(contentType);
+		return new Message(body.getBytes(StandardCharsets.UTF_8), properties);
+	}
+}
@@ -0,0 +1,104 @@
+package com.rabbitmq.tutorial.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.rabbitmq.tutorial.messaging.codec.JsonCodec;
+import com.rabbitmq.tutorial.messaging.concurrent.BoundedExecutor;
+import com.rabbitmq.tutorial.messaging.dispatch.MessageDispatcher;
+import com.rabbitmq.tutorial.messaging.transport.InMemoryTransport;
+import com.rabbitmq.tutorial.model.Usuario;
+
+/**
+ * Envío de un Usuario desde el BoundedExecutor del perfil "virtual-threads"
+ * frente a un pool fijo de hilos de plataforma con el mismo máximo de envíos
+ * en vuelo (tutorial.sender.max-in-flight):
+ * - virtual: un hilo virtual por envío; el buffer del JsonCodec sale de la
+ *   reserva compartida (ReusablePool) en lugar de un ThreadLocal;
+ * - platform: maxInFlight hilos de plataforma reutilizados;
+ * - direct: el envío en el hilo del benchmark, como referencia.
+ *
+ * latencyMicros simula la espera de E/S de cada publicación (p. ej. un
+ * canal que bloquea por flow control). Con 0 solo se mide lo que cuesta
+ * repartir los envíos; con espera, cuántos envíos bloqueados caben a la vez.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PublishExecutorBenchmark {
+
+	@Param({ "0", "200" })
+	public long latencyMicros;
+
+	@Param({ "64" })
+	public int maxInFlight;
+
+	private JsonCodec codec;
+
+	private Usuario usuario;
+
+	private InMemoryTransport transport;
+
+	private BoundedExecutor virtual;
+
+	private BoundedExecutor platform;
+
+	@Setup
+	public void setup() {
+		codec = Payloads.codec();
+		usuario = Payloads.usuario();
+		MessageDispatcher dispatcher = new MessageDispatcher(codec).register(Usuario.class, u -> { });
+		transport = new InMemoryTransport(1024, 1000, Thread.ofPlatform().daemon().factory());
+		transport.subscribe("hello", 1, dispatcher::dispatch);
+		transport.start();
+		virtual = BoundedExecutor.virtualThreads(maxInFlight);
+		platform = BoundedExecutor.platformThreads(maxInFlight);
+	}
+
+	@TearDown
+	public void tearDown() throws InterruptedException {
+		virtual.awaitIdle(5000);
+		platform.awaitIdle(5000);
+		virtual.destroy();
+		platform.destroy();
+		transport.stop();
+	}
+
+	@Benchmark
+	public void direct() {
+		send();
+	}
+
+	@Benchmark
+	public void virtual() {
+		virtual.execute(this::send);
+	}
+
+	@Benchmark
+	public void platform() {
+		platform.execute(this::send);
+	}
+
+	private void send() {
+		if (latencyMicros > 0) {
+			LockSupport.parkNanos(latencyMicros * 1000);
+		}
+		transport.send("hello", codec.toMessage(usuario));
+	}
+}
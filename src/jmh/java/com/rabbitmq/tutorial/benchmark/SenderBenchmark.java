@@ -0,0 +1,92 @@
+package com.rabbitmq.tutorial.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.tutorial.messaging.codec.JsonCodec;
+import com.rabbitmq.tutorial.messaging.dispatch.MessageDispatcher;
+import com.rabbitmq.tutorial.messaging.transport.InMemoryTransport;
+import com.rabbitmq.tutorial.model.Usuario;
+
+/**
+ * Camino del Sender para un Usuario:
+ * - doubleSerialization: lo que hacía el Sender original, tal cual: un
+ *   ObjectMapper nuevo en cada envío para el log (writeValueAsString) y otra
+ *   serialización en convertAndSend con el Jackson2JsonMessageConverter por
+ *   defecto del bean de entonces;
+ * - sharedCodec: una sola serialización con el JsonCodec y el log desde los
+ *   mismos bytes;
+ * - inMemoryRoundTrip: envío por el InMemoryTransport con un consumidor que
+ *   despacha cada mensaje, sin broker. Mide el throughput de extremo a
+ *   extremo de nuestro código; la cola acotada frena al productor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SenderBenchmark {
+
+	private JsonCodec codec;
+
+	private Jackson2JsonMessageConverter converter;
+
+	private InMemoryTransport transport;
+
+	private Usuario usuario;
+
+	@Setup
+	public void setup() {
+		codec = Payloads.codec();
+		// El bean original: sin ObjectMapper propio, el convertidor crea el suyo
+		converter = new Jackson2JsonMessageConverter();
+		usuario = Payloads.usuario();
+		MessageDispatcher dispatcher = new MessageDispatcher(codec).register(Usuario.class, u -> { });
+		transport = new InMemoryTransport(1024, 1000, Thread.ofPlatform().daemon().factory());
+		transport.subscribe("hello", 1, dispatcher::dispatch);
+		transport.start();
+	}
+
+	@TearDown
+	public void tearDown() {
+		transport.stop();
+	}
+
+	@Benchmark
+	public Object doubleSerialization() throws JsonProcessingException {
+		ObjectMapper objectMapper = new ObjectMapper();
+		String log = objectMapper.writeValueAsString(usuario);
+		Message message = converter.toMessage(usuario, new MessageProperties());
+		return log.length() + message.getBody().length;
+	}
+
+	@Benchmark
+	public Object sharedCodec() {
+		Message message = codec.toMessage(usuario);
+		String log = new String(message.getBody(), StandardCharsets.UTF_8);
+		return log.length() + message.getBody().length;
+	}
+
+	@Benchmark
+	public void inMemoryRoundTrip() {
+		transport.send("hello", codec.toMessage(usuario));
+	}
+}
@@ -35,8 +35,10 @@ public class TutorialRabbitMqApplication {
 
     /**
      * Bean que arranca el runner del tutorial cuando no está activo el perfil
-     * "usage_message". El runner mantiene la aplicación vivo durante el
-     * tiempo configurado en properties y después cierra el contexto.
+     * "usage_message". El runner mantiene la aplicación vivo hasta que se
+     * cumple la condición de parada configurada en properties (plazo,
+     * número de mensajes o inactividad), drena el trabajo en vuelo y después
+     * cierra el contexto.
      */
     @Profile("!usage_message")
     @Bean
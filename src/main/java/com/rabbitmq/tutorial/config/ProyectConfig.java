@@ -7,6 +7,11 @@ import org.springframework.context.annotation.Profile;
 
 import com.rabbitmq.tutorial.messaging.Receiver;
 import com.rabbitmq.tutorial.messaging.Sender;
+import com.rabbitmq.tutorial.messaging.dedup.IdempotencyCache;
+import com.rabbitmq.tutorial.messaging.dispatch.MessageDispatcher;
+import com.rabbitmq.tutorial.messaging.ledger.BalanceProjection;
+import com.rabbitmq.tutorial.messaging.log.MessageLog;
+import com.rabbitmq.tutorial.messaging.metrics.MessagingMetrics;
 
 /**
  * Esta clase define beans específicos para los perfiles de ejemplo
@@ -34,19 +39,22 @@ public class ProyectConfig {
 
     /**
      * Bean para crear un Receiver cuando el perfil "receiver" esté activo.
-     * Esto facilita ejecutar solo la parte receptora en el tutorial.
+     * Esto facilita ejecutar solo la parte receptora en el tutorial. Con el
+     * perfil "batch-consumer" el receptor es BatchReceiver.
      */
-    @Profile("receiver")
+    @Profile("receiver & !batch-consumer")
     @Bean
-    Receiver receiver() {
-        return new Receiver();
+    Receiver receiver(MessageDispatcher messageDispatcher, IdempotencyCache idempotencyCache,
+            MessagingMetrics messagingMetrics, MessageLog messageLog, BalanceProjection balanceProjection) {
+        return new Receiver(messageDispatcher, idempotencyCache, messagingMetrics, messageLog, balanceProjection);
     }
 
     /**
      * Bean para crear un Sender cuando el perfil "sender" esté activo.
-     * Facilita ejecutar solo la parte emisora en el tutorial.
+     * Facilita ejecutar solo la parte emisora en el tutorial. Con el perfil
+     * "loadgen" los mensajes los envía LoadGenerator en su lugar.
      */
-    @Profile("sender")
+    @Profile("sender & !loadgen")
     @Bean
     Sender sender() {
         return new Sender();
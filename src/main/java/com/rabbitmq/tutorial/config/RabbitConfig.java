@@ -1,23 +1,143 @@
 package com.rabbitmq.tutorial.config;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.amqp.support.converter.ContentTypeDelegatingMessageConverter;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.amqp.rabbit.config.RetryInterceptorBuilder;
 import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.annotation.EnableRabbit;
+import org.springframework.amqp.rabbit.core.BatchingRabbitTemplate;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareMessageListener;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.BatchMessageListener;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.DirectExchange;
 import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
+
+import com.rabbitmq.tutorial.messaging.BatchReceiver;
+import com.rabbitmq.tutorial.messaging.Receiver;
+import com.rabbitmq.tutorial.messaging.TransaccionRpcServer;
+import com.rabbitmq.tutorial.messaging.batch.TypedBatchingStrategy;
+import com.rabbitmq.tutorial.messaging.codec.JsonCodec;
+import com.rabbitmq.tutorial.messaging.codec.TransaccionBinaryCodec;
+import com.rabbitmq.tutorial.messaging.codec.TransaccionBinaryMessageConverter;
+import com.rabbitmq.tutorial.messaging.compression.CompressingPostProcessor;
+import com.rabbitmq.tutorial.messaging.compression.DecompressingPostProcessor;
+import com.rabbitmq.tutorial.messaging.concurrent.BoundedExecutor;
+import com.rabbitmq.tutorial.messaging.concurrent.ParallelSender;
+import com.rabbitmq.tutorial.messaging.confirm.AimdPublishWindow;
+import com.rabbitmq.tutorial.messaging.confirm.ConfirmingPublisher;
+import com.rabbitmq.tutorial.messaging.dedup.IdempotencyCache;
+import com.rabbitmq.tutorial.messaging.dispatch.MessageDispatcher;
+import com.rabbitmq.tutorial.messaging.lane.Lane;
+import com.rabbitmq.tutorial.messaging.lane.LaneConsumers;
+import com.rabbitmq.tutorial.messaging.lane.LaneRouter;
+import com.rabbitmq.tutorial.messaging.ledger.BalanceProjection;
+import com.rabbitmq.tutorial.messaging.loadgen.LoadGenerator;
+import com.rabbitmq.tutorial.messaging.loadgen.LoadMix;
+import com.rabbitmq.tutorial.messaging.log.MessageLog;
+import com.rabbitmq.tutorial.messaging.metrics.MessagingMetrics;
+import com.rabbitmq.tutorial.messaging.metrics.MetricsReporter;
+import com.rabbitmq.tutorial.messaging.outbox.Outbox;
+import com.rabbitmq.tutorial.messaging.retry.DelayedRetryRecoverer;
+import com.rabbitmq.tutorial.messaging.rpc.TransaccionRpcClient;
+import com.rabbitmq.tutorial.messaging.shard.ShardRouter;
+import com.rabbitmq.tutorial.messaging.shard.ShardedConsumers;
+import com.rabbitmq.tutorial.messaging.shard.ShardedPublisher;
+import com.rabbitmq.tutorial.messaging.transport.InMemoryTransport;
+import com.rabbitmq.tutorial.messaging.transport.MessageTransport;
+import com.rabbitmq.tutorial.messaging.transport.RabbitTransport;
+import com.rabbitmq.tutorial.model.Transaccion;
+import com.rabbitmq.tutorial.model.Usuario;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 /**
  * Configuración de RabbitMQ para la aplicación.
  *
  * Esta clase registra:
- * - Un convertidor JSON basado en Jackson (para serializar/deserializar mensajes).
- * - Una fábrica de contenedores de listeners que usa ese convertidor.
+ * - Un JsonCodec con el ObjectMapper compartido y readers/writers
+ *   precalculados para Usuario y Transaccion.
+ * - Un convertidor JSON basado en Jackson (para serializar/deserializar
+ *   mensajes) que usa ese mismo ObjectMapper, junto a un convertidor binario
+ *   para Transaccion; se elige uno u otro por content_type.
+ * - Una fábrica de contenedores de listeners que usa ese convertidor, con
+ *   prefetch y número de consumidores configurables (tutorial.receiver.*).
+ *   Con el perfil "retry", los fallos de la cola "hello" se reintentan de
+ *   forma diferida en colas de espera con TTL y dead-letter, y los mensajes
+ *   envenenados se aparcan (ver DelayedRetryRecoverer).
+ * - Con el perfil "batch-consumer", una segunda fábrica que entrega los
+ *   mensajes en lotes (List&lt;Message&gt;) al BatchReceiver.
+ * - Un MessageDispatcher que elige el tipo de cada mensaje recibido por sus
+ *   cabeceras antes de decodificarlo.
+ * - Con spring.threads.virtual.enabled (perfil "virtual-threads") los
+ *   consumidores de los contenedores corren en hilos virtuales, con más
+ *   consumidores por contenedor (cada uno es un handler en vuelo), y el
+ *   Sender publica desde hilos virtuales con un máximo de envíos en vuelo.
+ * - Un IdempotencyCache que descarta las Transaccion ya procesadas según su
+ *   clave de idempotencia.
+ * - Una BalanceProjection con los saldos por cuenta y el número de
+ *   transacciones por estado, que el Receiver mantiene al recibir cada
+ *   Transaccion (tutorial.ledger.*).
  * - Un RabbitTemplate configurado con el convertidor para que los productores
- *   puedan llamar a convertAndSend(obj) y enviar JSON correctamente.
+ *   puedan llamar a convertAndSend(obj) y enviar JSON correctamente. Con el
+ *   perfil "batching" se registra en su lugar un BatchingRabbitTemplate que
+ *   agrupa los mensajes salientes en lotes (ver TypedBatchingStrategy).
+ * - Con el perfil "parallel-sender", un ParallelSender con N hilos de envío,
+ *   cada uno con su propio canal reservado (tutorial.sender.parallel.*). El
+ *   perfil activa también tutorial.sender.publisher-connection: los
+ *   templates publican por la conexión de publicación de la factoría,
+ *   separada de la de los consumidores.
+ * - Con el perfil "compression", compresión deflate de los cuerpos que
+ *   superan un tamaño mínimo; los contenedores descomprimen siempre.
+ * - Con el perfil "confirms", un ConfirmingPublisher que publica con
+ *   confirmaciones asíncronas y una ventana acotada de mensajes en vuelo.
+ *   Con "flow-control" además, la ventana se adapta (AIMD) al RTT de las
+ *   confirmaciones y a los bloqueos de conexión del broker.
+ * - Con el perfil "sharded", la topología de colas shard para Transaccion
+ *   (una cola por shard, con un único consumidor cada una) y el publicador
+ *   que reparte las transacciones por cuenta emisora (ver ShardRouter).
+ * - Con el perfil "lanes", un carril por tipo de payload (texto, Usuario,
+ *   Transaccion): cola propia a la que el Sender enruta según __TypeId__ y
+ *   contenedor propio con sus consumidores y prefetch (tutorial.lanes.*).
+ * - Con el perfil "outbox", un Outbox en disco (segmentos proyectados en
+ *   memoria) donde el Sender escribe primero y desde el que un hilo de fondo
+ *   publica en lotes, también mientras el broker no está disponible.
+ * - Con el perfil "loadgen", un LoadGenerator que sustituye al Sender y
+ *   publica a un ritmo fijo con una mezcla configurable (tutorial.loadgen.*),
+ *   midiendo latencias corregidas por omisión coordinada.
+ * - Con el perfil "rpc", la cola de peticiones de TransaccionRpcServer y un
+ *   TransaccionRpcClient asíncrono que espera las respuestas por direct
+ *   reply-to, emparejadas por id_correlacion (tutorial.rpc.*).
+ * - Un MessageTransport por el que publica el Sender: RabbitMQ por defecto o,
+ *   con el perfil "in-memory", colas en memoria dentro del proceso que
+ *   entregan los mensajes al Receiver sin necesidad de broker.
+ * - Las métricas de mensajería (MessagingMetrics) sobre un MeterRegistry de
+ *   Micrometer y, con el perfil "metrics", un informe periódico por consola.
+ * - Un MessageLog que muestrea y limita los eventos de mensajes antes de
+ *   escribirlos de forma asíncrona (tutorial.log.*).
  * - Un bean Queue llamado "hello" (durable) para asegurar compatibilidad con
  *   la cola existente en el broker.
  *
@@ -27,31 +147,144 @@ import org.springframework.amqp.core.Queue;
 public class RabbitConfig {
 
     /**
-     * MessageConverter que usa Jackson para convertir objetos <-> JSON.
+     * Codec JSON compartido. Un único ObjectMapper (con soporte de
+     * LocalDateTime) y readers/writers ya construidos para los tipos del modelo.
+     *
+     * @return JsonCodec compartido por Sender, receptores y convertidor
+     */
+    @Bean
+    JsonCodec jsonCodec() {
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+        return new JsonCodec(objectMapper, Usuario.class, Transaccion.class, String.class);
+    }
+
+    /**
+     * Codec binario compacto para Transaccion.
+     *
+     * @return TransaccionBinaryCodec compartido
+     */
+    @Bean
+    TransaccionBinaryCodec transaccionBinaryCodec() {
+        return new TransaccionBinaryCodec();
+    }
+
+    /**
+     * MessageConverter que elige el formato por content_type: Jackson para
+     * JSON (y por defecto) y el formato binario para Transaccion cuando el
+     * mensaje llega con TransaccionBinaryCodec.CONTENT_TYPE. Así productores
+     * JSON y binarios conviven durante la migración.
      *
-     * @return instancia de MessageConverter basada en Jackson
+     * @param jsonCodec codec cuyo ObjectMapper se reutiliza
+     * @param transaccionBinaryCodec codec binario de Transaccion
+     * @return MessageConverter con negociación por content_type
      */
     @Bean
-    MessageConverter jackson2MessageConverter() {
-        Jackson2JsonMessageConverter converter = new Jackson2JsonMessageConverter();
+    MessageConverter messageConverter(JsonCodec jsonCodec, TransaccionBinaryCodec transaccionBinaryCodec) {
+        Jackson2JsonMessageConverter jackson = new Jackson2JsonMessageConverter(jsonCodec.getObjectMapper());
+        ContentTypeDelegatingMessageConverter converter = new ContentTypeDelegatingMessageConverter(jackson);
+        converter.addDelegate(TransaccionBinaryCodec.CONTENT_TYPE,
+                new TransaccionBinaryMessageConverter(transaccionBinaryCodec));
         return converter;
     }
 
     /**
      * Fábrica de contenedores para listeners Rabbit. Se configura con el
      * ConnectionFactory y el MessageConverter para que los @RabbitListener
-     * reciban objetos ya deserializados.
+     * reciban objetos ya deserializados. Se registra también la estrategia de
+     * batching para que los lotes publicados en modo "batching" se separen de
+     * forma transparente antes de llegar al Receiver, y la descompresión de
+     * los cuerpos comprimidos (content_encoding deflate, gzip o zip).
      *
      * @param connectionFactory la factoría de conexiones de RabbitMQ
      * @param messageConverter el convertidor de mensajes (Jackson)
+     * @param prefetch número de mensajes sin ack que el broker entrega por consumidor
+     * @param concurrency número inicial de consumidores
+     * @param maxConcurrency número máximo de consumidores
+     * @param autoStartup false para no arrancar los contenedores (perfil "in-memory")
+     * @param virtualThreads true para ejecutar los consumidores en hilos virtuales
+     * @param maxInflatedSize tamaño máximo (bytes) de un cuerpo deflate descomprimido
      * @return SimpleRabbitListenerContainerFactory configurada
      */
     @Bean
     SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory(
-            ConnectionFactory connectionFactory, MessageConverter messageConverter) {
+            ConnectionFactory connectionFactory, MessageConverter messageConverter,
+            @Value("${tutorial.receiver.prefetch:250}") int prefetch,
+            @Value("${tutorial.receiver.concurrency:1}") int concurrency,
+            @Value("${tutorial.receiver.max-concurrency:1}") int maxConcurrency,
+            @Value("${tutorial.receiver.auto-startup:true}") boolean autoStartup,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+            @Value("${tutorial.compression.max-inflated-size:16777216}") int maxInflatedSize,
+            ObjectProvider<DelayedRetryRecoverer> retryRecoverer) {
         SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
         factory.setConnectionFactory(connectionFactory);
         factory.setMessageConverter(messageConverter);
+        factory.setBatchingStrategy(new TypedBatchingStrategy(1, Integer.MAX_VALUE, 0L));
+        factory.setAfterReceivePostProcessors(DecompressingPostProcessor.delegating(maxInflatedSize));
+        factory.setAutoStartup(autoStartup);
+        factory.setPrefetchCount(prefetch);
+        factory.setConcurrentConsumers(concurrency);
+        factory.setMaxConcurrentConsumers(Math.max(concurrency, maxConcurrency));
+        if (virtualThreads) {
+            factory.setTaskExecutor(virtualThreadExecutor());
+        }
+        // Sin reintentos locales: el primer fallo pasa al recoverer, que republica con retraso
+        retryRecoverer.ifAvailable(recoverer -> factory.setAdviceChain(
+                RetryInterceptorBuilder.stateless().maxAttempts(1).recoverer(recoverer).build()));
+        return factory;
+    }
+
+    /**
+     * Fábrica de contenedores en modo lote para el perfil "batch-consumer".
+     * El contenedor acumula hasta batchSize mensajes (o los que lleguen en
+     * receiveTimeout ms) y los entrega juntos al listener. Con acknowledge
+     * AUTO el lote completo se confirma con un único basic.ack multiple
+     * sobre el último delivery tag. Con el perfil "retry" un lote fallido pasa
+     * al mismo recoverer que en la fábrica de mensajes sueltos, en lugar de
+     * reentregarse sin pausa.
+     *
+     * @param connectionFactory la factoría de conexiones de RabbitMQ
+     * @param messageConverter el convertidor de mensajes (Jackson)
+     * @param prefetch número de mensajes sin ack por consumidor (mínimo batchSize)
+     * @param concurrency número inicial de consumidores
+     * @param maxConcurrency número máximo de consumidores
+     * @param batchSize número máximo de mensajes por lote
+     * @param receiveTimeout espera máxima (ms) para completar un lote parcial
+     * @param virtualThreads true para ejecutar los consumidores en hilos virtuales
+     * @param maxInflatedSize tamaño máximo (bytes) de un cuerpo deflate descomprimido
+     * @param retryRecoverer reintentos diferidos (perfil "retry")
+     * @return SimpleRabbitListenerContainerFactory configurada en modo lote
+     */
+    @Profile("batch-consumer")
+    @Bean
+    SimpleRabbitListenerContainerFactory batchListenerContainerFactory(
+            ConnectionFactory connectionFactory, MessageConverter messageConverter,
+            @Value("${tutorial.receiver.prefetch:250}") int prefetch,
+            @Value("${tutorial.receiver.concurrency:1}") int concurrency,
+            @Value("${tutorial.receiver.max-concurrency:1}") int maxConcurrency,
+            @Value("${tutorial.receiver.batch.size:100}") int batchSize,
+            @Value("${tutorial.receiver.batch.receive-timeout:100}") long receiveTimeout,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+            @Value("${tutorial.compression.max-inflated-size:16777216}") int maxInflatedSize,
+            ObjectProvider<DelayedRetryRecoverer> retryRecoverer) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setMessageConverter(messageConverter);
+        factory.setBatchingStrategy(new TypedBatchingStrategy(1, Integer.MAX_VALUE, 0L));
+        factory.setAfterReceivePostProcessors(DecompressingPostProcessor.delegating(maxInflatedSize));
+        factory.setAcknowledgeMode(AcknowledgeMode.AUTO);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setBatchReceiveTimeout(receiveTimeout);
+        factory.setPrefetchCount(Math.max(prefetch, batchSize));
+        factory.setConcurrentConsumers(concurrency);
+        factory.setMaxConcurrentConsumers(Math.max(concurrency, maxConcurrency));
+        if (virtualThreads) {
+            factory.setTaskExecutor(virtualThreadExecutor());
+        }
+        // El recoverer recibe el lote entero y solo reintenta el mensaje que falló
+        retryRecoverer.ifAvailable(recoverer -> factory.setAdviceChain(
+                RetryInterceptorBuilder.stateless().maxAttempts(1).recoverer(recoverer).build()));
         return factory;
     }
 
@@ -61,15 +294,685 @@ public class RabbitConfig {
      *
      * @param connectionFactory la factoría de conexiones
      * @param messageConverter el convertidor de mensajes
+     * @param compressingPostProcessor compresión de cuerpos grandes (perfil "compression")
+     * @param usePublisherConnection true para publicar por una conexión distinta
+     *        de la de los consumidores
      * @return RabbitTemplate configurado
      */
+    @Profile("!batching")
     @Bean
-    RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory, MessageConverter messageConverter) {
-        RabbitTemplate template = new RabbitTemplate(connectionFactory);
+    RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory, MessageConverter messageConverter,
+            ObjectProvider<CompressingPostProcessor> compressingPostProcessor,
+            @Value("${tutorial.sender.publisher-connection:false}") boolean usePublisherConnection) {
+        return plainTemplate(connectionFactory, messageConverter, compressingPostProcessor, usePublisherConnection);
+    }
+
+    /**
+     * RabbitTemplate de alto rendimiento para el perfil "batching". Acumula los
+     * mensajes ya convertidos y publica un único frame AMQP por lote cuando se
+     * alcanza el tamaño, el límite de bytes o el tiempo de espera configurados.
+     *
+     * @param connectionFactory la factoría de conexiones
+     * @param messageConverter el convertidor de mensajes
+     * @param taskScheduler planificador usado para liberar lotes parciales (linger)
+     * @param batchSize número máximo de mensajes por lote
+     * @param bufferLimit tamaño máximo en bytes de un lote
+     * @param linger tiempo máximo (ms) que un lote parcial espera antes de enviarse
+     * @param compressingPostProcessor compresión de lotes grandes (perfil "compression")
+     * @param usePublisherConnection true para publicar por una conexión distinta
+     *        de la de los consumidores
+     * @return BatchingRabbitTemplate configurado
+     */
+    @Profile("batching")
+    @Bean(name = "rabbitTemplate")
+    RabbitTemplate batchingRabbitTemplate(ConnectionFactory connectionFactory, MessageConverter messageConverter,
+            TaskScheduler taskScheduler,
+            @Value("${tutorial.sender.batching.size:100}") int batchSize,
+            @Value("${tutorial.sender.batching.buffer-limit:65536}") int bufferLimit,
+            @Value("${tutorial.sender.batching.linger:20}") long linger,
+            ObjectProvider<CompressingPostProcessor> compressingPostProcessor,
+            @Value("${tutorial.sender.publisher-connection:false}") boolean usePublisherConnection) {
+        TypedBatchingStrategy strategy = new TypedBatchingStrategy(batchSize, bufferLimit, linger);
+        BatchingRabbitTemplate template = new BatchingRabbitTemplate(connectionFactory, strategy, taskScheduler);
         template.setMessageConverter(messageConverter);
+        template.setUsePublisherConnection(usePublisherConnection);
+        compressingPostProcessor.ifAvailable(template::addBeforePublishPostProcessors);
         return template;
     }
 
+    /**
+     * Compresión deflate de los cuerpos salientes a partir de
+     * tutorial.compression.threshold bytes (perfil "compression"). Se añade a
+     * los RabbitTemplate; en modo "batching" se comprime el lote completo.
+     *
+     * @param threshold tamaño mínimo (bytes) del cuerpo para comprimirlo
+     * @param level nivel de compresión de Deflater (1 rápido .. 9 máximo)
+     * @return CompressingPostProcessor configurado
+     */
+    @Profile("compression")
+    @Bean
+    CompressingPostProcessor compressingPostProcessor(
+            @Value("${tutorial.compression.threshold:1024}") int threshold,
+            @Value("${tutorial.compression.level:1}") int level) {
+        return new CompressingPostProcessor(threshold, level);
+    }
+
+    /**
+     * Publicador con confirmaciones asíncronas para el perfil "confirms". El
+     * perfil activa también publisher-confirm-type=correlated y
+     * publisher-returns en la factoría de conexiones (application.yml).
+     *
+     * El publicador tiene su propio RabbitTemplate con mandatory activado:
+     * así el resto de usuarios del template compartido no reciben returns, y
+     * con el perfil "batching" los envíos confirmados salen uno a uno en lugar
+     * de pasar por el BatchingRabbitTemplate.
+     *
+     * @param connectionFactory la factoría de conexiones
+     * @param messageConverter el convertidor de mensajes
+     * @param compressingPostProcessor compresión de cuerpos grandes (perfil "compression")
+     * @param usePublisherConnection true para publicar por la conexión de publicación
+     * @param taskExecutor ejecutor donde se lanzan los reintentos tras un nack
+     * @param maxInFlight número máximo de mensajes sin confirmar
+     * @param windowTimeout espera máxima (ms) por un hueco en la ventana
+     * @param maxRetries reintentos por mensaje tras un nack
+     * @param publishWindow ventana adaptativa, si el perfil "flow-control" la define
+     * @return ConfirmingPublisher configurado
+     */
+    @Profile("confirms")
+    @Bean
+    ConfirmingPublisher confirmingPublisher(ConnectionFactory connectionFactory, MessageConverter messageConverter,
+            ObjectProvider<CompressingPostProcessor> compressingPostProcessor,
+            @Value("${tutorial.sender.publisher-connection:false}") boolean usePublisherConnection,
+            @Qualifier("applicationTaskExecutor") TaskExecutor taskExecutor,
+            @Value("${tutorial.sender.confirms.max-in-flight:1024}") int maxInFlight,
+            @Value("${tutorial.sender.confirms.window-timeout:5000}") long windowTimeout,
+            @Value("${tutorial.sender.confirms.max-retries:3}") int maxRetries,
+            ObjectProvider<AimdPublishWindow> publishWindow) {
+        RabbitTemplate template = plainTemplate(connectionFactory, messageConverter, compressingPostProcessor,
+                usePublisherConnection);
+        template.setMandatory(true);
+        AimdPublishWindow window = publishWindow.getIfAvailable();
+        if (window != null) {
+            return new ConfirmingPublisher(template, taskExecutor, window, windowTimeout, maxRetries);
+        }
+        return new ConfirmingPublisher(template, taskExecutor, maxInFlight, windowTimeout, maxRetries);
+    }
+
+    /**
+     * Ventana adaptativa del ConfirmingPublisher para el perfil
+     * "flow-control" (junto a "confirms"). Escucha los eventos
+     * connection.blocked/unblocked que publica la factoría de conexiones y
+     * publica su tamaño como métrica (tutorial.publish.window).
+     *
+     * @param initialLimit tamaño inicial de la ventana
+     * @param minLimit tamaño mínimo
+     * @param maxInFlight tamaño máximo (el de la ventana fija)
+     * @param targetRtt RTT de confirmación (ms) por encima del cual se reduce
+     * @param backoff factor de reducción multiplicativa
+     * @param messagingMetrics métricas donde se registra la ventana
+     * @param messageLog log donde se avisa del bloqueo de la conexión
+     * @param connectionFactory factoría cuyas conexiones cerradas o nuevas levantan el bloqueo
+     * @return AimdPublishWindow configurada
+     */
+    @Profile("flow-control")
+    @Bean
+    AimdPublishWindow publishWindow(@Value("${tutorial.sender.flow-control.initial-window:64}") int initialLimit,
+            @Value("${tutorial.sender.flow-control.min-window:1}") int minLimit,
+            @Value("${tutorial.sender.confirms.max-in-flight:1024}") int maxInFlight,
+            @Value("${tutorial.sender.flow-control.target-rtt:50}") long targetRtt,
+            @Value("${tutorial.sender.flow-control.backoff:0.5}") double backoff,
+            MessagingMetrics messagingMetrics, MessageLog messageLog, ConnectionFactory connectionFactory) {
+        AimdPublishWindow window = new AimdPublishWindow(initialLimit, minLimit, maxInFlight, targetRtt, backoff,
+                messageLog);
+        messagingMetrics.bindPublishWindow(window);
+        connectionFactory.addConnectionListener(window);
+        return window;
+    }
+
+    /**
+     * Registro de tipos para el despacho de mensajes recibidos. Declara los
+     * tipos del modelo (Usuario y Transaccion); los receptores añaden sus
+     * manejadores. Los objetos JSON sin cabecera __TypeId__ se interpretan
+     * como Usuario, que es lo que enviaban los productores originales.
+     *
+     * Los mensajes con el content_type binario de Transaccion se decodifican
+     * con su propio convertidor.
+     *
+     * @param jsonCodec codec compartido con los readers precalculados
+     * @param transaccionBinaryCodec codec binario de Transaccion
+     * @return MessageDispatcher con los tipos del modelo registrados
+     */
+    @Bean
+    MessageDispatcher messageDispatcher(JsonCodec jsonCodec, TransaccionBinaryCodec transaccionBinaryCodec) {
+        return new MessageDispatcher(jsonCodec)
+                .registerType(Usuario.class)
+                .registerType(Transaccion.class)
+                .registerContentType(TransaccionBinaryCodec.CONTENT_TYPE,
+                        new TransaccionBinaryMessageConverter(transaccionBinaryCodec))
+                .setDefaultJsonType(Usuario.class);
+    }
+
+    /**
+     * Ejecutor de publicaciones para el perfil "virtual-threads". Cada ciclo
+     * del Sender se lanza en un hilo virtual; el número de envíos simultáneos
+     * queda limitado por tutorial.sender.max-in-flight para no desbordar al
+     * broker.
+     *
+     * @param maxInFlight número máximo de publicaciones simultáneas
+     * @return BoundedExecutor sobre hilos virtuales
+     */
+    @Profile("virtual-threads")
+    @Bean
+    BoundedExecutor publishExecutor(@Value("${tutorial.sender.max-in-flight:64}") int maxInFlight) {
+        return BoundedExecutor.virtualThreads(maxInFlight);
+    }
+
+    /**
+     * Motor de publicación en paralelo para el perfil "parallel-sender". Cada
+     * ciclo del Sender se reparte entre tutorial.sender.parallel.workers hilos
+     * de envío, cada uno con un canal reservado; la caché de canales
+     * (spring.rabbitmq.cache.channel.size) debe dejar hueco para todos ellos.
+     *
+     * @param workers número de hilos de envío
+     * @param queueCapacity tareas pendientes que admite cada hilo
+     * @param retryInterval espera (ms) antes de reservar otro canal tras un fallo
+     * @param drainTimeout espera máxima (ms) a que se vacíen las colas al parar
+     * @param messageTransport transporte de publicación
+     * @param messageLog log de eventos de mensajes
+     * @return ParallelSender configurado
+     */
+    @Profile("parallel-sender")
+    @Bean
+    ParallelSender parallelSender(@Value("${tutorial.sender.parallel.workers:4}") int workers,
+            @Value("${tutorial.sender.parallel.queue-capacity:1024}") int queueCapacity,
+            @Value("${tutorial.sender.parallel.retry-interval:1000}") long retryInterval,
+            @Value("${tutorial.client.drain-timeout:5000}") long drainTimeout,
+            MessageTransport messageTransport, MessageLog messageLog) {
+        return new ParallelSender(messageTransport, messageLog, workers, queueCapacity, retryInterval,
+                drainTimeout);
+    }
+
+    /**
+     * Caché de claves de idempotencia para descartar reentregas de Transaccion
+     * ya procesadas sin ir a base de datos.
+     *
+     * @param maxEntries número máximo de claves recordadas
+     * @param ttl tiempo (ms) durante el que una clave se considera vista
+     * @param exactKeys true para guardar las claves completas en lugar de solo su huella
+     * @return IdempotencyCache configurada
+     */
+    @Bean
+    IdempotencyCache idempotencyCache(
+            @Value("${tutorial.receiver.idempotency.max-entries:100000}") int maxEntries,
+            @Value("${tutorial.receiver.idempotency.ttl:600000}") long ttl,
+            @Value("${tutorial.receiver.idempotency.exact-keys:false}") boolean exactKeys) {
+        return new IdempotencyCache(maxEntries, ttl, exactKeys);
+    }
+
+    /**
+     * Proyección de saldos por cuenta a partir de las Transaccion recibidas.
+     *
+     * @param stripes número de franjas con cerrojo propio
+     * @param expectedAccounts cuentas esperadas, para dimensionar las tablas de inicio
+     * @param scale unidades menores por unidad de cantidad (100 = céntimos)
+     * @return BalanceProjection vacía
+     */
+    @Bean
+    BalanceProjection balanceProjection(@Value("${tutorial.ledger.stripes:64}") int stripes,
+            @Value("${tutorial.ledger.expected-accounts:1024}") int expectedAccounts,
+            @Value("${tutorial.ledger.scale:100}") int scale) {
+        return new BalanceProjection(stripes, expectedAccounts, scale);
+    }
+
+    /**
+     * Colas de espera y parking lot de los reintentos diferidos (perfil
+     * "retry") de la cola "hello" y, con el perfil "lanes", de cada carril.
+     * Las colas de espera no tienen consumidores y devuelven cada mensaje a su
+     * cola original por dead-letter cuando caduca.
+     *
+     * @param delays espera (ms) de cada nivel de reintento
+     * @param laneRouter carriles (perfil "lanes"), cuyos contenedores heredan
+     *        el recoverer de la fábrica
+     * @return Declarables con las colas de reintento
+     */
+    @Profile("retry")
+    @Bean
+    Declarables retryTopology(@Value("${tutorial.retry.delays:1000,5000,30000}") long[] delays,
+            ObjectProvider<LaneRouter> laneRouter) {
+        List<Declarable> declarables = new ArrayList<>();
+        for (String queue : retryQueues(laneRouter)) {
+            declarables.addAll(DelayedRetryRecoverer.topology(queue, delays));
+        }
+        return new Declarables(declarables);
+    }
+
+    /**
+     * Recoverer de las fábricas de contenedores para el perfil "retry".
+     * Atiende la cola "hello" y, con el perfil "lanes", las colas de los
+     * carriles, porque sus contenedores salen de las mismas fábricas.
+     *
+     * Republica con su propio RabbitTemplate sin agrupación: con "batching"
+     * el template compartido es un BatchingRabbitTemplate, que retendría el
+     * reintento hasta completar un lote y, si el lote no se llegara a enviar,
+     * lo perdería después de haber confirmado el original.
+     *
+     * @param connectionFactory la factoría de conexiones
+     * @param messageConverter el convertidor de mensajes
+     * @param compressingPostProcessor compresión de cuerpos grandes (perfil "compression")
+     * @param usePublisherConnection true para publicar por la conexión de publicación
+     * @param delays espera (ms) de cada nivel de reintento
+     * @param maxAttempts intentos tras los que el mensaje se aparca
+     * @param messagingMetrics métricas de mensajería
+     * @param messageLog log de eventos de mensajes
+     * @param laneRouter carriles (perfil "lanes")
+     * @return DelayedRetryRecoverer de "hello" y de los carriles
+     */
+    @Profile("retry")
+    @Bean
+    DelayedRetryRecoverer retryRecoverer(ConnectionFactory connectionFactory, MessageConverter messageConverter,
+            ObjectProvider<CompressingPostProcessor> compressingPostProcessor,
+            @Value("${tutorial.sender.publisher-connection:false}") boolean usePublisherConnection,
+            @Value("${tutorial.retry.delays:1000,5000,30000}") long[] delays,
+            @Value("${tutorial.retry.max-attempts:5}") int maxAttempts,
+            MessagingMetrics messagingMetrics, MessageLog messageLog, ObjectProvider<LaneRouter> laneRouter) {
+        RabbitTemplate template = plainTemplate(connectionFactory, messageConverter, compressingPostProcessor,
+                usePublisherConnection);
+        return new DelayedRetryRecoverer(template, retryQueues(laneRouter), delays, maxAttempts, messagingMetrics,
+                messageLog);
+    }
+
+    /**
+     * Reparto de Transaccion por cuenta emisora para el perfil "sharded".
+     *
+     * @param shardCount número de colas shard
+     * @return ShardRouter con la topología vigente
+     */
+    @Profile("sharded")
+    @Bean
+    ShardRouter shardRouter(@Value("${tutorial.shards.count:4}") int shardCount) {
+        return new ShardRouter(shardCount);
+    }
+
+    /**
+     * Topología del perfil "sharded": exchange directo "transacciones" y una
+     * cola durable por shard enlazada con su índice como routing key. Las
+     * colas usan x-single-active-consumer para que, aunque arranquen varias
+     * instancias, solo una consuma cada shard a la vez.
+     *
+     * @param shardRouter topología de shards vigente
+     * @return exchange, colas y bindings a declarar en el broker
+     */
+    @Profile("sharded")
+    @Bean
+    Declarables shardTopology(ShardRouter shardRouter) {
+        DirectExchange exchange = new DirectExchange(ShardRouter.EXCHANGE, true, false);
+        List<Declarable> declarables = new ArrayList<>();
+        declarables.add(exchange);
+        for (int shard = 0; shard < shardRouter.getShardCount(); shard++) {
+            Queue queue = QueueBuilder.durable(ShardRouter.queueName(shard)).singleActiveConsumer().build();
+            declarables.add(queue);
+            declarables.add(BindingBuilder.bind(queue).to(exchange).with(ShardRouter.routingKey(shard)));
+        }
+        return new Declarables(declarables);
+    }
+
+    /**
+     * Publicador de Transaccion por shard para el perfil "sharded".
+     *
+     * @param rabbitTemplate template usado para publicar
+     * @param jsonCodec codec con el que se serializan las Transaccion
+     * @param shardRouter topología de shards vigente
+     * @param messagingMetrics métricas donde se cuentan las publicaciones
+     * @return ShardedPublisher configurado
+     */
+    @Profile("sharded")
+    @Bean
+    ShardedPublisher shardedPublisher(RabbitTemplate rabbitTemplate, JsonCodec jsonCodec, ShardRouter shardRouter,
+            MessagingMetrics messagingMetrics) {
+        return new ShardedPublisher(rabbitTemplate, jsonCodec, shardRouter, messagingMetrics);
+    }
+
+    /**
+     * Consumidores de las colas shard: uno por cola, arrancados después de
+     * drenar los mensajes que queden de una topología anterior.
+     *
+     * @param shardRouter topología de shards vigente
+     * @param rabbitListenerContainerFactory fábrica de la que se copian los ajustes
+     * @param amqpAdmin admin usado para inspeccionar y borrar colas shard
+     * @param rabbitTemplate template usado para drenar
+     * @param messageDispatcher dispatcher con los manejadores registrados
+     * @param messageLog log de eventos de mensajes
+     * @param messagingMetrics métricas donde se cuentan las recepciones
+     * @param maxShards índice máximo de cola shard que se revisa al drenar
+     * @param prefetch prefetch de cada consumidor de shard
+     * @param drainInterval espera (ms) entre reintentos del drenado y entre
+     *        drenados de las colas retiradas
+     * @return ShardedConsumers configurado
+     */
+    @Profile("sharded")
+    @Bean
+    ShardedConsumers shardedConsumers(ShardRouter shardRouter,
+            SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory, AmqpAdmin amqpAdmin,
+            RabbitTemplate rabbitTemplate, MessageDispatcher messageDispatcher, MessageLog messageLog,
+            MessagingMetrics messagingMetrics, @Value("${tutorial.shards.max-shards:64}") int maxShards,
+            @Value("${tutorial.shards.prefetch:1}") int prefetch,
+            @Value("${tutorial.shards.drain-interval:10000}") long drainInterval) {
+        return new ShardedConsumers(shardRouter, rabbitListenerContainerFactory, amqpAdmin, rabbitTemplate,
+                messageDispatcher, messageLog, messagingMetrics, maxShards, prefetch, drainInterval);
+    }
+
+    /**
+     * Carril de los mensajes de texto (perfil "lanes").
+     *
+     * @param concurrency consumidores iniciales
+     * @param maxConcurrency consumidores máximos
+     * @param prefetch mensajes sin ack por consumidor
+     * @return Lane "text" para String
+     */
+    @Profile("lanes")
+    @Bean
+    Lane textLane(@Value("${tutorial.lanes.text.concurrency:1}") int concurrency,
+            @Value("${tutorial.lanes.text.max-concurrency:1}") int maxConcurrency,
+            @Value("${tutorial.lanes.text.prefetch:250}") int prefetch) {
+        return new Lane("text", String.class, concurrency, maxConcurrency, prefetch);
+    }
+
+    /**
+     * Carril de los mensajes Usuario (perfil "lanes").
+     *
+     * @param concurrency consumidores iniciales
+     * @param maxConcurrency consumidores máximos
+     * @param prefetch mensajes sin ack por consumidor
+     * @return Lane "usuario" para Usuario
+     */
+    @Profile("lanes")
+    @Bean
+    Lane usuarioLane(@Value("${tutorial.lanes.usuario.concurrency:1}") int concurrency,
+            @Value("${tutorial.lanes.usuario.max-concurrency:1}") int maxConcurrency,
+            @Value("${tutorial.lanes.usuario.prefetch:250}") int prefetch) {
+        return new Lane("usuario", Usuario.class, concurrency, maxConcurrency, prefetch);
+    }
+
+    /**
+     * Carril de los mensajes Transaccion (perfil "lanes").
+     *
+     * @param concurrency consumidores iniciales
+     * @param maxConcurrency consumidores máximos
+     * @param prefetch mensajes sin ack por consumidor
+     * @return Lane "transaccion" para Transaccion
+     */
+    @Profile("lanes")
+    @Bean
+    Lane transaccionLane(@Value("${tutorial.lanes.transaccion.concurrency:2}") int concurrency,
+            @Value("${tutorial.lanes.transaccion.max-concurrency:4}") int maxConcurrency,
+            @Value("${tutorial.lanes.transaccion.prefetch:50}") int prefetch) {
+        return new Lane("transaccion", Transaccion.class, concurrency, maxConcurrency, prefetch);
+    }
+
+    /**
+     * Reparto por tipo entre los carriles (perfil "lanes"). Los tipos sin
+     * carril siguen yendo a la cola "hello".
+     *
+     * @param lanes carriles definidos
+     * @param helloQueue cola por defecto
+     * @return LaneRouter con los carriles
+     */
+    @Profile("lanes")
+    @Bean
+    LaneRouter laneRouter(List<Lane> lanes, @Qualifier("helloQueue") Queue helloQueue) {
+        return new LaneRouter(lanes, helloQueue.getName());
+    }
+
+    /**
+     * Colas de los carriles (perfil "lanes"), durables como "hello".
+     *
+     * @param laneRouter carriles definidos
+     * @return una cola por carril
+     */
+    @Profile("lanes")
+    @Bean
+    Declarables laneTopology(LaneRouter laneRouter) {
+        List<Declarable> queues = new ArrayList<>();
+        for (Lane lane : laneRouter.getLanes()) {
+            queues.add(new Queue(lane.getQueue(), true));
+        }
+        return new Declarables(queues);
+    }
+
+    /**
+     * Un contenedor por carril con sus propios consumidores y prefetch, que
+     * entregan al Receiver igual que la cola "hello". Con "in-memory" los
+     * carriles se consumen desde el InMemoryTransport.
+     *
+     * @param laneRouter carriles definidos
+     * @param rabbitListenerContainerFactory fábrica de la que se copian los ajustes
+     * @param receiver receptor de los mensajes
+     * @return LaneConsumers configurado
+     */
+    @Profile("lanes & !in-memory & !batch-consumer")
+    @Bean
+    LaneConsumers laneConsumers(LaneRouter laneRouter,
+            SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory, Receiver receiver) {
+        return new LaneConsumers(laneRouter, rabbitListenerContainerFactory,
+                (ChannelAwareMessageListener) (message, channel) -> receiver.receive(message));
+    }
+
+    /**
+     * Contenedores de los carriles en modo lote para "lanes" junto a
+     * "batch-consumer": cada carril entrega sus lotes al BatchReceiver, con
+     * el tamaño de lote y la espera de la fábrica en modo lote (el prefetch
+     * del carril nunca queda por debajo del tamaño de lote).
+     *
+     * @param laneRouter carriles definidos
+     * @param batchListenerContainerFactory fábrica en modo lote de la que se copian los ajustes
+     * @param batchReceiver receptor de los lotes
+     * @return LaneConsumers configurado en modo lote
+     */
+    @Profile("lanes & !in-memory & batch-consumer")
+    @Bean(name = "laneConsumers")
+    LaneConsumers batchLaneConsumers(LaneRouter laneRouter,
+            @Qualifier("batchListenerContainerFactory")
+            SimpleRabbitListenerContainerFactory batchListenerContainerFactory, BatchReceiver batchReceiver) {
+        return new LaneConsumers(laneRouter, batchListenerContainerFactory,
+                (BatchMessageListener) batchReceiver::receiveBatch);
+    }
+
+    /**
+     * Outbox local del Sender para el perfil "outbox". Publica con el
+     * ConfirmingPublisher si el perfil "confirms" está activo (el checkpoint
+     * avanza con las confirmaciones) o si no con el MessageTransport.
+     *
+     * @param directory directorio de los segmentos y el checkpoint
+     * @param segmentSize tamaño en bytes de cada segmento
+     * @param maxSegments segmentos que puede ocupar el outbox en disco
+     * @param sync true para forzar a disco cada mensaje
+     * @param batchSize mensajes publicados por lote
+     * @param retryInterval espera (ms) antes de reintentar un lote fallido
+     * @param confirmTimeout espera máxima (ms) por las confirmaciones de un lote
+     * @param messageTransport transporte de publicación
+     * @param confirmingPublisher publicador con confirmaciones, si existe
+     * @param messageLog log de eventos de mensajes
+     * @return Outbox abierto sobre el directorio
+     */
+    @Profile("outbox")
+    @Bean
+    Outbox outbox(@Value("${tutorial.outbox.directory:${java.io.tmpdir}/tutorial-outbox}") String directory,
+            @Value("${tutorial.outbox.segment-size:16777216}") int segmentSize,
+            @Value("${tutorial.outbox.max-segments:64}") int maxSegments,
+            @Value("${tutorial.outbox.sync:false}") boolean sync,
+            @Value("${tutorial.outbox.batch-size:500}") int batchSize,
+            @Value("${tutorial.outbox.retry-interval:1000}") long retryInterval,
+            @Value("${tutorial.outbox.confirm-timeout:10000}") long confirmTimeout,
+            MessageTransport messageTransport, ObjectProvider<ConfirmingPublisher> confirmingPublisher,
+            MessageLog messageLog) {
+        return new Outbox(Path.of(directory), segmentSize, maxSegments, sync, messageTransport,
+                confirmingPublisher.getIfAvailable(), messageLog, batchSize, retryInterval, confirmTimeout);
+    }
+
+    /**
+     * Generador de carga para el perfil "loadgen". Publica en la cola "hello"
+     * con el ConfirmingPublisher si el perfil "confirms" está activo o si no
+     * con el MessageTransport. TutorialRabbitMqRunner imprime su resumen al
+     * terminar.
+     *
+     * @param rate mensajes por segundo objetivo
+     * @param threads hilos que envían
+     * @param duration duración (ms) de la carga; 0 hasta que se cierre la aplicación
+     * @param mix pesos por tipo de mensaje
+     * @param sizes pesos por tamaño de cuerpo (bytes)
+     * @param keys número de claves distintas (id de Usuario y cuentas)
+     * @param jsonCodec codec JSON compartido
+     * @param messageTransport transporte de publicación
+     * @param confirmingPublisher publicador con confirmaciones, si existe
+     * @param messagingMetrics métricas de mensajería
+     * @param helloQueue cola destino
+     * @return LoadGenerator configurado
+     */
+    @Profile("loadgen")
+    @Bean
+    LoadGenerator loadGenerator(@Value("${tutorial.loadgen.rate:1000}") double rate,
+            @Value("${tutorial.loadgen.threads:1}") int threads,
+            @Value("${tutorial.loadgen.duration:10000}") long duration,
+            @Value("${tutorial.loadgen.mix:text:60,usuario:30,transaccion:10}") String mix,
+            @Value("${tutorial.loadgen.sizes:64:70,1024:25,16384:5}") String sizes,
+            @Value("${tutorial.loadgen.keys:10000}") int keys,
+            JsonCodec jsonCodec, MessageTransport messageTransport,
+            ObjectProvider<ConfirmingPublisher> confirmingPublisher, MessagingMetrics messagingMetrics,
+            @Qualifier("helloQueue") Queue helloQueue) {
+        return new LoadGenerator(jsonCodec, messageTransport, confirmingPublisher.getIfAvailable(),
+                messagingMetrics, helloQueue.getName(), LoadMix.parse(mix, sizes, keys), rate, threads, duration);
+    }
+
+    /**
+     * Cola de peticiones del TransaccionRpcServer (perfil "rpc"). No es
+     * durable: una petición sin respuesta caduca en el cliente de todos modos.
+     *
+     * @return Queue "transacciones.rpc"
+     */
+    @Profile("rpc")
+    @Bean
+    Queue rpcQueue() {
+        return new Queue(TransaccionRpcServer.QUEUE, false);
+    }
+
+    /**
+     * Cliente RPC asíncrono de Transaccion (perfil "rpc"). Las peticiones van
+     * a la cola del TransaccionRpcServer por el exchange por defecto y las
+     * respuestas llegan por direct reply-to.
+     *
+     * @param connectionFactory factoría de conexiones del contenedor de respuestas
+     * @param jsonCodec codec JSON compartido
+     * @param timeout tiempo máximo (ms) de espera de cada respuesta
+     * @return TransaccionRpcClient configurado
+     */
+    @Profile("rpc")
+    @Bean
+    TransaccionRpcClient transaccionRpcClient(ConnectionFactory connectionFactory, JsonCodec jsonCodec,
+            @Value("${tutorial.rpc.timeout:5000}") long timeout) {
+        return new TransaccionRpcClient(connectionFactory, jsonCodec, "", TransaccionRpcServer.QUEUE, timeout);
+    }
+
+    /**
+     * Transporte de publicación sobre RabbitMQ (todos los perfiles salvo
+     * "in-memory").
+     *
+     * @param rabbitTemplate template usado para publicar
+     * @return RabbitTransport sobre el template
+     */
+    @Profile("!in-memory")
+    @Bean
+    MessageTransport messageTransport(RabbitTemplate rabbitTemplate) {
+        return new RabbitTransport(rabbitTemplate);
+    }
+
+    /**
+     * Transporte en memoria para el perfil "in-memory": el Sender publica en
+     * colas acotadas dentro del proceso y, si hay Receiver, sus mensajes se
+     * consumen con tantos hilos como tutorial.receiver.concurrency. Los
+     * contenedores de @RabbitListener no se arrancan en este perfil
+     * (tutorial.receiver.auto-startup=false).
+     *
+     * @param capacity mensajes que admite cada cola (listos más sin confirmar)
+     * @param offerTimeout espera máxima (ms) de un envío a una cola llena
+     * @param concurrency número de consumidores de la cola "hello"
+     * @param virtualThreads true para consumir desde hilos virtuales
+     * @param receiver receptor de la cola "hello", si el perfil lo define
+     * @param laneRouter carriles (perfil "lanes"), que se suscriben con sus
+     *        propios consumidores
+     * @return InMemoryTransport con la suscripción del Receiver
+     */
+    @Profile("in-memory")
+    @Bean(name = "messageTransport")
+    InMemoryTransport inMemoryTransport(
+            @Value("${tutorial.transport.in-memory.capacity:10000}") int capacity,
+            @Value("${tutorial.transport.in-memory.offer-timeout:1000}") long offerTimeout,
+            @Value("${tutorial.receiver.concurrency:1}") int concurrency,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+            ObjectProvider<Receiver> receiver, ObjectProvider<LaneRouter> laneRouter) {
+        ThreadFactory threadFactory = virtualThreads
+                ? Thread.ofVirtual().name("in-memory-", 0).factory()
+                : Thread.ofPlatform().name("in-memory-", 0).daemon().factory();
+        InMemoryTransport transport = new InMemoryTransport(capacity, offerTimeout, threadFactory);
+        receiver.ifAvailable(r -> {
+            transport.subscribe("hello", concurrency, r::receive);
+            laneRouter.ifAvailable(router -> router.getLanes().forEach(
+                    lane -> transport.subscribe(lane.getQueue(), lane.getConcurrency(), r::receive)));
+        });
+        return transport;
+    }
+
+    /**
+     * Registro de métricas en memoria. El proyecto no incluye Spring Boot
+     * Actuator, así que nadie más crea un MeterRegistry; si se añade, hay que
+     * quitar este bean para usar el suyo (la autoconfiguración de Actuator ya
+     * no crea el suyo si existe este).
+     *
+     * @return SimpleMeterRegistry
+     */
+    @Bean
+    MeterRegistry meterRegistry() {
+        return new SimpleMeterRegistry();
+    }
+
+    /**
+     * Métricas de publicación, confirmación, manejo y latencia de extremo a
+     * extremo.
+     *
+     * @param meterRegistry registro donde se publican los medidores
+     * @param messageDispatcher dispatcher cuyos contadores de parseo se exponen
+     * @return MessagingMetrics compartido por Sender y receptores
+     */
+    @Bean
+    MessagingMetrics messagingMetrics(MeterRegistry meterRegistry, MessageDispatcher messageDispatcher) {
+        return new MessagingMetrics(meterRegistry, messageDispatcher);
+    }
+
+    /**
+     * Informe periódico de las métricas por consola (perfil "metrics"), cada
+     * tutorial.metrics.report-interval ms.
+     *
+     * @param meterRegistry registro con los medidores de MessagingMetrics
+     * @return MetricsReporter
+     */
+    @Profile("metrics")
+    @Bean
+    MetricsReporter metricsReporter(MeterRegistry meterRegistry) {
+        return new MetricsReporter(meterRegistry);
+    }
+
+    /**
+     * Log de eventos de mensajes para Sender y receptores.
+     *
+     * @param sampleRate se escribe 1 de cada sampleRate envíos/recepciones
+     * @param maxPerSecond máximo de eventos escritos por segundo y tipo
+     * @return MessageLog configurado
+     */
+    @Bean
+    MessageLog messageLog(@Value("${tutorial.log.sample-rate:1}") int sampleRate,
+            @Value("${tutorial.log.max-per-second:1000}") int maxPerSecond) {
+        return new MessageLog(sampleRate, maxPerSecond);
+    }
+
     /**
      * Declaración de la cola "hello". Se marca como durable=true para
      * coincidir con la cola existente en el broker y evitar errores de
@@ -81,4 +984,42 @@ public class RabbitConfig {
     Queue helloQueue() {
         return new Queue("hello", true);
     }
+
+    /**
+     * Colas con reintentos diferidos: "hello" y las de los carriles, si los hay.
+     */
+    private static List<String> retryQueues(ObjectProvider<LaneRouter> laneRouter) {
+        List<String> queues = new ArrayList<>();
+        queues.add("hello");
+        laneRouter.ifAvailable(router -> router.getLanes().forEach(lane -> queues.add(lane.getQueue())));
+        return queues;
+    }
+
+    /**
+     * RabbitTemplate sin agrupación, con el convertidor y la compresión
+     * comunes. Lo usan el template compartido (sin "batching") y los
+     * componentes que necesitan uno propio.
+     */
+    private static RabbitTemplate plainTemplate(ConnectionFactory connectionFactory,
+            MessageConverter messageConverter, ObjectProvider<CompressingPostProcessor> compressingPostProcessor,
+            boolean usePublisherConnection) {
+        RabbitTemplate template = new RabbitTemplate(connectionFactory);
+        template.setMessageConverter(messageConverter);
+        template.setUsePublisherConnection(usePublisherConnection);
+        compressingPostProcessor.ifAvailable(template::addBeforePublishPostProcessors);
+        return template;
+    }
+
+    /**
+     * Ejecutor de consumidores en hilos virtuales. Cada consumidor del
+     * contenedor ocupa un hilo mientras está activo y procesa un mensaje a la
+     * vez, así que el número de handlers en vuelo por contenedor es
+     * max-concurrency; el perfil "virtual-threads" lo sube (application.yml)
+     * porque un handler bloqueado en E/S ya no retiene un hilo de plataforma.
+     */
+    private static SimpleAsyncTaskExecutor virtualThreadExecutor() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("rabbit-vt-");
+        executor.setVirtualThreads(true);
+        return executor;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,163 @@
+package com.rabbitmq.tutorial.messaging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.support.ListenerExecutionFailedException;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import com.rabbitmq.tutorial.messaging.dedup.IdempotencyCache;
+import com.rabbitmq.tutorial.messaging.dispatch.MessageDispatcher;
+import com.rabbitmq.tutorial.messaging.ledger.BalanceProjection;
+import com.rabbitmq.tutorial.messaging.log.MessageLog;
+import com.rabbitmq.tutorial.messaging.log.MessageLog.Event;
+import com.rabbitmq.tutorial.messaging.metrics.MessagingMetrics;
+import com.rabbitmq.tutorial.model.Transaccion;
+import com.rabbitmq.tutorial.model.Usuario;
+
+/**
+ * Receptor en modo lote, activo con el perfil "batch-consumer" en lugar de
+ * Receiver.
+ *
+ * El contenedor (batchListenerContainerFactory en RabbitConfig) entrega de
+ * una vez hasta tutorial.receiver.batch.size mensajes y, al terminar el
+ * método sin excepción, confirma el lote entero con un único ack multiple.
+ * Si el método lanza una excepción, el lote completo se rechaza y se
+ * reentrega; con el perfil "retry" pasa en cambio al DelayedRetryRecoverer.
+ * La excepción es una ListenerExecutionFailedException con el mensaje que
+ * falló, para que el recoverer reintente solo ese y devuelva el resto a la
+ * cola.
+ *
+ * Las Transaccion pasan por el IdempotencyCache igual que en Receiver y se
+ * aplican a la BalanceProjection. Así, cuando un lote falla a mitad y se
+ * reentrega entero, las transacciones que ya se habían aplicado se descartan
+ * en lugar de mover dos veces el saldo. El mismo manejador se registra en
+ * el MessageDispatcher para las Transaccion que llegan una a una por otros
+ * caminos (las colas shard del perfil "sharded"), que comparten así la misma
+ * deduplicación.
+ *
+ * Un mensaje con un array de Transaccion se recorre en streaming igual que en
+ * Receiver: cada transferencia pasa por el mismo manejador deduplicado.
+ */
+@Component
+@Profile("batch-consumer")
+public class BatchReceiver {
+
+    private final MessageDispatcher dispatcher;
+
+    private final MessagingMetrics metrics;
+
+    private final MessageLog messageLog;
+
+    private final BalanceProjection balanceProjection;
+
+    private final Consumer<Transaccion> transacciones;
+
+    /**
+     * @param dispatcher registro de tipos compartido
+     * @param idempotencyCache caché de claves ya procesadas
+     * @param metrics métricas de mensajería
+     * @param messageLog log muestreado de eventos de mensajes
+     * @param balanceProjection saldos por cuenta que se actualizan con cada Transaccion
+     */
+    public BatchReceiver(MessageDispatcher dispatcher, IdempotencyCache idempotencyCache, MessagingMetrics metrics,
+            MessageLog messageLog, BalanceProjection balanceProjection) {
+        this.dispatcher = dispatcher;
+        this.metrics = metrics;
+        this.messageLog = messageLog;
+        this.balanceProjection = balanceProjection;
+        this.transacciones = metrics.timed(Transaccion.class,
+                idempotencyCache.guard(Transaccion::getClave_indempotencia, this::handleTransaccion));
+        dispatcher.register(Transaccion.class, transacciones)
+                .registerArray(Transaccion.class, Transaccion::new, Receiver::clear, transacciones);
+    }
+
+    /**
+     * Manejador de lotes. Decodifica cada mensaje con el MessageDispatcher y
+     * agrupa los Usuario para procesarlos juntos en handleUsuarios; las
+     * Transaccion se aplican una a una (deduplicadas) y el resto de payloads
+     * solo se registran por consola.
+     *
+     * @param messages lote de mensajes recibidos
+     */
+    @RabbitListener(queues = "hello", containerFactory = "batchListenerContainerFactory")
+    public void receiveBatch(List<Message> messages) {
+        long start = metrics.consumerStarted();
+        try {
+            handleBatch(messages);
+        }
+        finally {
+            metrics.consumerDone(start);
+        }
+    }
+
+    private void handleBatch(List<Message> messages) {
+        List<Usuario> usuarios = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            metrics.recordReceived(message);
+            try {
+                handleMessage(message, usuarios);
+            }
+            catch (RuntimeException e) {
+                throw new ListenerExecutionFailedException("Failed to handle message in batch", e, message);
+            }
+        }
+        handleUsuarios(usuarios);
+        if (messageLog.sample(Event.RECEIVED)) {
+            messageLog.info("[x] Received batch of {} messages ({} usuarios)", messages.size(), usuarios.size());
+        }
+    }
+
+    private void handleMessage(Message message, List<Usuario> usuarios) {
+        if (dispatcher.dispatchArray(message)) {
+            return;
+        }
+        Object payload = dispatcher.decode(message);
+        if (payload instanceof Usuario usuario) {
+            usuarios.add(usuario);
+        }
+        else if (payload instanceof Transaccion transaccion) {
+            transacciones.accept(transaccion);
+        }
+        else if (payload instanceof String text) {
+            if (messageLog.sample(Event.RECEIVED)) {
+                messageLog.info("[x] Received String in batch: '{}'", text);
+            }
+        }
+        else if (messageLog.sample(Event.RECEIVED)) {
+            messageLog.info("[x] Received {} in batch", payload.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * Manejo de una Transaccion: se aplica a la proyección de saldos.
+     *
+     * @param transaccion objeto Transaccion deserializado
+     */
+    private void handleTransaccion(Transaccion transaccion) {
+        balanceProjection.apply(transaccion);
+        if (messageLog.sample(Event.RECEIVED)) {
+            messageLog.info("[x] Received JSON transaccion in batch: id={}, emisor={}, receptor={}, cantidad={}",
+                    transaccion.getId(), transaccion.getId_cuenta_emisor(), transaccion.getId_cuenta_receptor(),
+                    transaccion.getCantidad());
+        }
+    }
+
+    /**
+     * Manejo en bloque de los Usuario de un lote (lógica de negocio mínima de
+     * ejemplo).
+     *
+     * @param usuarios usuarios deserializados del lote
+     */
+    private void handleUsuarios(List<Usuario> usuarios) {
+        for (Usuario usuario : usuarios) {
+            if (messageLog.sample(Event.RECEIVED)) {
+                messageLog.info("[x] Received JSON usuario: id={}, nombre={}", usuario.getId(), usuario.getNombre());
+            }
+        }
+    }
+}
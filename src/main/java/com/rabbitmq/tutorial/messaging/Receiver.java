@@ -1,85 +1,119 @@
 package com.rabbitmq.tutorial.messaging;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.rabbitmq.tutorial.model.Usuario;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import org.springframework.stereotype.Component;
-import org.springframework.amqp.rabbit.annotation.RabbitHandler;
+import java.util.function.Consumer;
+
+import org.springframework.amqp.ImmediateRequeueAmqpException;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
-import java.nio.charset.StandardCharsets;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import com.rabbitmq.tutorial.messaging.dedup.IdempotencyCache;
+import com.rabbitmq.tutorial.messaging.dispatch.MessageDispatcher;
+import com.rabbitmq.tutorial.messaging.ledger.BalanceProjection;
+import com.rabbitmq.tutorial.messaging.log.MessageLog;
+import com.rabbitmq.tutorial.messaging.log.MessageLog.Event;
+import com.rabbitmq.tutorial.messaging.metrics.MessagingMetrics;
+import com.rabbitmq.tutorial.model.Transaccion;
+import com.rabbitmq.tutorial.model.Usuario;
 
 /**
  * Componente receptor de mensajes desde RabbitMQ.
  *
- * Esta clase usa @RabbitListener para suscribirse a la cola "hello" y
- * varios métodos anotados con @RabbitHandler para delegar según el tipo
- * de payload recibido:
- * - String: cuando el mensaje se entrega como texto
- * - Usuario: cuando el MessageConverter ya ha deserializado a la clase
- * - byte[]: fallback para mensajes que lleguen como bytes sin headers
+ * Esta clase usa @RabbitListener para suscribirse a la cola "hello" y recibe
+ * el Message sin convertir. El MessageDispatcher decide el tipo del payload
+ * a partir de las cabeceras content_type y __TypeId__ (o del primer byte del
+ * cuerpo si no hay cabeceras) y lo entrega al manejador registrado:
+ * - Usuario y Transaccion: JSON parseado directamente desde los bytes
+ * - texto: cualquier otro contenido
+ *
+ * Así el texto plano nunca paga un intento de parseo JSON fallido.
+ *
+ * Las Transaccion pasan antes por el IdempotencyCache: una reentrega con una
+ * clave_indempotencia ya procesada se descarta sin llegar al manejador. Las
+ * que llegan se aplican a la BalanceProjection (saldos por cuenta y recuento
+ * por estado), de modo que una reentrega no mueve dos veces el saldo.
+ *
+ * Un mensaje con un array de Transaccion (__TypeId__ del Transaccion[]) se
+ * recorre en streaming: cada transferencia pasa por el mismo camino que una
+ * Transaccion suelta en cuanto se decodifica, sin cargar la lista completa.
+ * Si el array falla a mitad y se reentrega, la caché de idempotencia descarta
+ * las transferencias que ya se habían aplicado.
  *
- * El receptor es tolerante: intenta convertir Strings JSON a Usuario y
- * en caso de recibir bytes intenta decodificarlos como UTF-8 y parsearlos.
+ * Cada manejador se mide con MessagingMetrics (latencia por tipo), igual que
+ * la latencia de extremo a extremo y el tiempo ocupado del consumidor.
+ *
+ * Con el perfil "batch-consumer" se sustituye por BatchReceiver.
  */
 @Component
-@RabbitListener(queues = "hello")
+@Profile("!batch-consumer")
 public class Receiver {
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final MessageDispatcher dispatcher;
+
+    private final MessagingMetrics metrics;
+
+    private final MessageLog messageLog;
+
+    private final BalanceProjection balanceProjection;
 
     /**
-     * Manejador para payloads de tipo String.
-     * Si el contenido String contiene JSON que corresponde a Usuario, se
-     * intenta deserializar y delegar al manejador de Usuario.
-     *
-     * @param in payload recibido como String
+     * Latencia (ms) que se añade a cada mensaje para simular un handler que
+     * bloquea en E/S o en llamadas a otros servicios. 0 la desactiva.
      */
-    @RabbitHandler
-    public void receiveString(String in) {
-        // Intento de deserializar si el String es JSON que corresponde a Usuario
-        Usuario maybeUser = tryParseUsuario(in);
-        if (maybeUser != null) {
-            handleUsuario(maybeUser);
-            return;
-        }
-
-        // Si no es JSON/Usuario, tratar como texto plano
-        System.out.println("[x] Received String: '" + in + "'");
-    }
+    @Value("${tutorial.receiver.simulated-latency:0}")
+    private long simulatedLatency;
 
     /**
-     * Manejador para payloads ya deserializados a Usuario por el convertidor.
+     * Registra los manejadores de este receptor en el dispatcher.
      *
-     * @param usuario instancia de Usuario deserializada
+     * @param dispatcher registro de tipos compartido
+     * @param idempotencyCache caché de claves ya procesadas
+     * @param metrics métricas de mensajería
+     * @param messageLog log muestreado de eventos de mensajes
+     * @param balanceProjection saldos por cuenta que se actualizan con cada Transaccion
      */
-    @RabbitHandler
-    public void receiveUsuario(Usuario usuario) {
-        handleUsuario(usuario);
+    public Receiver(MessageDispatcher dispatcher, IdempotencyCache idempotencyCache, MessagingMetrics metrics,
+            MessageLog messageLog, BalanceProjection balanceProjection) {
+        this.dispatcher = dispatcher;
+        this.metrics = metrics;
+        this.messageLog = messageLog;
+        this.balanceProjection = balanceProjection;
+        Consumer<Transaccion> transacciones = metrics.timed(Transaccion.class,
+                idempotencyCache.guard(Transaccion::getClave_indempotencia, this::handleTransaccion));
+        dispatcher.register(Usuario.class, metrics.timed(Usuario.class, this::handleUsuario))
+                .register(Transaccion.class, transacciones)
+                .registerArray(Transaccion.class, Transaccion::new, Receiver::clear, transacciones)
+                .registerText(metrics.timed(String.class, this::handleText));
     }
 
     /**
-     * Fallback para mensajes recibidos como raw byte[]. Intenta convertir a UTF-8
-     * y parsear JSON a Usuario; si falla, trata los bytes como texto.
+     * Punto de entrada de los mensajes de la cola "hello". Delega en el
+     * dispatcher, que decodifica el cuerpo una sola vez según su tipo.
      *
-     * @param body payload en bytes
+     * @param message mensaje recibido sin convertir
+     * @throws ImmediateRequeueAmqpException si se interrumpe la latencia
+     *         simulada (el contenedor se está parando): el mensaje vuelve a la
+     *         cola
      */
-    @RabbitHandler
-    public void receiveBytes(byte[] body) {
-        if (body == null || body.length == 0) {
-            System.out.println("[x] Received empty byte[] message");
-            return;
+    @RabbitListener(queues = "hello")
+    public void receive(Message message) {
+        metrics.recordReceived(message);
+        long start = metrics.consumerStarted();
+        try {
+            dispatcher.dispatch(message);
+            if (simulatedLatency > 0) {
+                Thread.sleep(simulatedLatency);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ImmediateRequeueAmqpException("Interrupted while handling message", e);
         }
-        String payload = new String(body, StandardCharsets.UTF_8).trim();
-        // Primero imprimimos info mínima y el payload
-        System.out.println("[x] Received byte[] payload as String: '" + payload + "'");
-        // Intentamos parsear a Usuario
-        Usuario maybeUser = tryParseUsuario(payload);
-        if (maybeUser != null) {
-            handleUsuario(maybeUser);
-            return;
+        finally {
+            metrics.consumerDone(start);
         }
-        // Si no es JSON válido de Usuario, se queda como texto
-        System.out.println("[x] Received byte[] could not be parsed as Usuario; treating as text: '" + payload + "'");
     }
 
     /**
@@ -88,26 +122,51 @@ public class Receiver {
      * @param usuario objeto Usuario ya validado/deserializado
      */
     private void handleUsuario(Usuario usuario) {
-        System.out.println("[x] Received JSON usuario: id=" + usuario.getId()
-                + ", nombre=" + usuario.getNombre());
+        if (messageLog.sample(Event.RECEIVED)) {
+            messageLog.info("[x] Received JSON usuario: id={}, nombre={}", usuario.getId(), usuario.getNombre());
+        }
     }
 
     /**
-     * Intenta parsear un String JSON a Usuario. Devuelve null si falla.
+     * Manejo de una Transaccion: se aplica a la proyección de saldos.
      *
-     * @param payload String que puede representar un JSON de Usuario
-     * @return Usuario si el parseo es correcto; null en caso contrario
+     * @param transaccion objeto Transaccion deserializado
      */
-    private Usuario tryParseUsuario(String payload) {
-        try {
-            String trimmed = payload != null ? payload.trim() : null;
-            if (trimmed == null || trimmed.isEmpty()) {
-                return null;
-            }
-            return objectMapper.readValue(trimmed, Usuario.class);
-        } catch (JsonProcessingException | IllegalArgumentException e) {
-            // No es JSON válido o no corresponde a Usuario
-            return null;
+    private void handleTransaccion(Transaccion transaccion) {
+        balanceProjection.apply(transaccion);
+        if (messageLog.sample(Event.RECEIVED)) {
+            messageLog.info("[x] Received JSON transaccion: id={}, emisor={}, receptor={}, cantidad={}",
+                    transaccion.getId(), transaccion.getId_cuenta_emisor(), transaccion.getId_cuenta_receptor(),
+                    transaccion.getCantidad());
+        }
+    }
+
+    /**
+     * Deja sin valores la Transaccion que se reutiliza al recorrer un array.
+     * BatchReceiver la usa también para sus arrays.
+     *
+     * @param transaccion objeto reutilizado
+     */
+    static void clear(Transaccion transaccion) {
+        transaccion.setId(null);
+        transaccion.setClave_indempotencia(null);
+        transaccion.setId_correlacion(null);
+        transaccion.setId_cuenta_emisor(null);
+        transaccion.setId_cuenta_receptor(null);
+        transaccion.setCantidad(null);
+        transaccion.setFecha_creacion(null);
+        transaccion.setFecha_actualizacion(null);
+        transaccion.setEstado_id(null);
+    }
+
+    /**
+     * Manejo de mensajes de texto plano.
+     *
+     * @param text texto recibido
+     */
+    private void handleText(String text) {
+        if (messageLog.sample(Event.RECEIVED)) {
+            messageLog.info("[x] Received String: '{}'", text);
         }
     }
-}
\ No newline at end of file
+}
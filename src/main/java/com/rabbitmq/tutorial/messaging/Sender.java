@@ -1,14 +1,32 @@
 package com.rabbitmq.tutorial.messaging;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.core.Queue;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.tutorial.messaging.codec.JsonCodec;
+import com.rabbitmq.tutorial.messaging.concurrent.BoundedExecutor;
+import com.rabbitmq.tutorial.messaging.concurrent.ParallelSender;
+import com.rabbitmq.tutorial.messaging.confirm.ConfirmingPublisher;
+import com.rabbitmq.tutorial.messaging.lane.LaneRouter;
+import com.rabbitmq.tutorial.messaging.log.MessageLog;
+import com.rabbitmq.tutorial.messaging.log.MessageLog.Event;
+import com.rabbitmq.tutorial.messaging.metrics.MessagingMetrics;
+import com.rabbitmq.tutorial.messaging.outbox.Outbox;
+import com.rabbitmq.tutorial.messaging.rpc.TransaccionRpcClient;
+import com.rabbitmq.tutorial.messaging.shard.ShardedPublisher;
+import com.rabbitmq.tutorial.messaging.transport.MessageTransport;
+import com.rabbitmq.tutorial.model.Transaccion;
 import com.rabbitmq.tutorial.model.Usuario;
 
 /**
@@ -19,41 +37,192 @@ import com.rabbitmq.tutorial.model.Usuario;
  *  - enviar un String simple (texto plano)
  *  - enviar un objeto Usuario que será serializado a JSON por Jackson
  *
- * El envío se realiza mediante el RabbitTemplate que tiene configurado un
- * MessageConverter (Jackson) en la configuración `RabbitConfig`.
+ * Cada payload se serializa una sola vez con el JsonCodec compartido y el
+ * Message resultante se envía mediante el MessageTransport configurado en
+ * `RabbitConfig` (el RabbitTemplate, o colas en memoria con el perfil
+ * "in-memory"); el log (MessageLog, muestreado y asíncrono) reutiliza esos
+ * mismos bytes. Con el perfil
+ * "batching" el template agrupa los mensajes en lotes; la propiedad
+ * tutorial.sender.burst permite enviar varias parejas por ciclo para
+ * aprovecharlo. Con el perfil "confirms" los envíos pasan por el
+ * ConfirmingPublisher y los fallos de confirmación se informan por consola.
+ * Con el perfil "virtual-threads" cada pareja se publica desde un hilo
+ * virtual, con un máximo de envíos simultáneos. Con el perfil
+ * "parallel-sender" las parejas se reparten entre los hilos del
+ * ParallelSender, cada uno con su propio canal. Con el perfil "sharded"
+ * cada pareja va acompañada de una Transaccion publicada en el shard de su
+ * cuenta emisora. Con el perfil "outbox" los mensajes a la cola "hello" se
+ * escriben en el Outbox local y un hilo de fondo los publica, de modo que el
+ * envío no falla ni se pierde aunque el broker no esté disponible. Con el
+ * perfil "rpc" cada pareja va acompañada de una Transaccion enviada por el
+ * TransaccionRpcClient, cuyo estado_id de respuesta se registra al llegar.
+ *
+ * Con el perfil "lanes" cada mensaje va a la cola del carril de su tipo
+ * (hello.text, hello.usuario...) en lugar de a "hello".
+ *
+ * Con el perfil "loadgen" no se crea: la carga la genera LoadGenerator.
  */
 @Component
+@Profile("!loadgen")
 public class Sender {
 
+    /** Cantidad de las Transaccion de ejemplo */
+    private static final BigDecimal SAMPLE_AMOUNT = new BigDecimal("10.0");
+
     @Autowired
-    private RabbitTemplate template;
+    private MessageTransport transport;
 
     // Se califica explícitamente el bean Queue a inyectar para evitar ambigüedad
     @Autowired
     @Qualifier("helloQueue")
     private Queue queue;
 
+    @Autowired
+    private JsonCodec codec;
+
+    @Autowired
+    private MessagingMetrics metrics;
+
+    @Autowired
+    private MessageLog messageLog;
+
+    // Solo existe con el perfil "confirms"
+    @Autowired(required = false)
+    private ConfirmingPublisher publisher;
+
+    // Solo existe con el perfil "virtual-threads"
+    @Autowired(required = false)
+    private BoundedExecutor publishExecutor;
+
+    // Solo existe con el perfil "parallel-sender"
+    @Autowired(required = false)
+    private ParallelSender parallelSender;
+
+    // Solo existe con el perfil "sharded"
+    @Autowired(required = false)
+    private ShardedPublisher shardedPublisher;
+
+    // Solo existe con el perfil "outbox"
+    @Autowired(required = false)
+    private Outbox outbox;
+
+    // Solo existe con el perfil "lanes"
+    @Autowired(required = false)
+    private LaneRouter laneRouter;
+
+    // Solo existe con el perfil "rpc"
+    @Autowired(required = false)
+    private TransaccionRpcClient rpcClient;
+
+    private final AtomicInteger transaccionIds = new AtomicInteger();
+
+    private volatile boolean stopped;
+
+    /**
+     * Número de parejas (texto + Usuario) que se envían en cada ciclo. Por
+     * defecto 1, que reproduce el comportamiento original del tutorial.
+     */
+    @Value("${tutorial.sender.burst:1}")
+    private int burst;
+
     /**
      * Tarea periódica que envía mensajes cada segundo (configurado en el método)
-     * Envía primero un texto y después un objeto Usuario serializado a JSON.
+     * Envía primero un texto y después un objeto Usuario serializado a JSON,
+     * repitiendo la pareja tantas veces como indique tutorial.sender.burst.
+     * Si hay parallelSender las parejas se reparten entre sus hilos de envío,
+     * y si hay publishExecutor se envían en paralelo desde hilos virtuales;
+     * en ambos casos este bucle se bloquea cuando no caben más envíos.
+     * Después de {@link #stop()} no envía nada.
      */
     @Scheduled(fixedDelay = 1000, initialDelay = 500)
-    public void send() {
+    public synchronized void send() {
+        for (int i = 0; i < burst && !stopped; i++) {
+            if (parallelSender != null) {
+                parallelSender.execute(this::sendPair);
+            }
+            else if (publishExecutor != null) {
+                publishExecutor.execute(this::sendPair);
+            }
+            else {
+                sendPair();
+            }
+        }
+    }
+
+    /**
+     * Deja de producir mensajes. Espera a que termine el ciclo en curso, así
+     * que al volver ya no se encolan más parejas en el ParallelSender ni en
+     * el BoundedExecutor y se pueden drenar sin que lleguen tareas nuevas.
+     */
+    public synchronized void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Envía una pareja de mensajes: un texto y un objeto Usuario.
+     */
+    private void sendPair() {
         // Enviar un mensaje de texto simple
         String message = sendStringMessage();
-        System.out.println(" [x] Sent '" + message + "'");
-
-        // Enviar un objeto Usuario (serializado a JSON por el RabbitTemplate)
-        String jsonMessage;
-        try {
-            jsonMessage = sendUsuarioMessage();
-            System.out.println(" [x] Sent Usuario JSON '" + jsonMessage + "'");
-        } catch (JsonProcessingException e) {
-            // Imprimir traza en caso de error de serialización
-            e.printStackTrace();
+        if (messageLog.sample(Event.SENT)) {
+            messageLog.info(" [x] Sent '{}'", message);
+        }
+
+        // Enviar un objeto Usuario (serializado a JSON por el JsonCodec)
+        Message usuarioMessage = sendUsuarioMessage();
+        if (messageLog.sample(Event.SENT)) {
+            messageLog.info(" [x] Sent Usuario JSON '{}'", MessageLog.body(usuarioMessage));
+        }
+
+        if (shardedPublisher != null) {
+            Transaccion tx = sendShardedTransaccion();
+            if (messageLog.sample(Event.SENT)) {
+                messageLog.info(" [x] Sent Transaccion {} for account {}", tx.getId(), tx.getId_cuenta_emisor());
+            }
+        }
+
+        if (rpcClient != null) {
+            callTransaccion();
         }
     }
 
+    /**
+     * Envía una Transaccion de ejemplo al shard de su cuenta emisora. Las
+     * cuentas rotan entre 1 y 16 para repartir la carga entre los shards.
+     *
+     * @return la transacción enviada (para logging)
+     */
+    private Transaccion sendShardedTransaccion() {
+        int id = transaccionIds.incrementAndGet();
+        LocalDateTime now = LocalDateTime.now();
+        Transaccion tx = new Transaccion(id, UUID.randomUUID().toString(), null, 1 + id % 16, 0, SAMPLE_AMOUNT,
+                now, now, "PENDIENTE");
+        shardedPublisher.send(tx);
+        return tx;
+    }
+
+    /**
+     * Envía una Transaccion de ejemplo por RPC sin esperar la respuesta: el
+     * estado_id resultante (o el fallo) se registra cuando se completa el
+     * futuro.
+     */
+    private void callTransaccion() {
+        int id = transaccionIds.incrementAndGet();
+        LocalDateTime now = LocalDateTime.now();
+        Transaccion tx = new Transaccion(id, UUID.randomUUID().toString(), null, 1 + id % 16, 0, SAMPLE_AMOUNT,
+                now, now, "PENDIENTE");
+        rpcClient.call(tx).whenComplete((reply, ex) -> {
+            if (ex != null) {
+                if (messageLog.sample(Event.FAILED)) {
+                    messageLog.warn(" [!] RPC Transaccion failed: {}", ex.toString());
+                }
+            }
+            else if (messageLog.sample(Event.RECEIVED)) {
+                messageLog.info(" [x] RPC Transaccion {} -> {}", reply.getId(), reply.getEstado_id());
+            }
+        });
+    }
+
     /**
      * Envía un mensaje String simple a la cola.
      *
@@ -61,23 +230,53 @@ public class Sender {
      */
     private String sendStringMessage() {
         String message = "Hello World!";
-        this.template.convertAndSend(queue.getName(), message);
+        publish(codec.toMessage(message));
         return message;
     }
 
     /**
-     * Envía un objeto Usuario. RabbitTemplate utiliza el MessageConverter
-     * para serializar el objeto a JSON y establecer el header content-type.
+     * Envía un objeto Usuario. El JsonCodec lo serializa una única vez y
+     * establece el content-type y la cabecera __TypeId__.
      *
-     * @return la representación JSON del Usuario (para logging)
-     * @throws JsonProcessingException si falla la serialización manual usada para el log
+     * @return el mensaje enviado; el log muestra sus mismos bytes, y solo los
+     *         convierte a texto si el evento se escribe
      */
-    private String sendUsuarioMessage() throws JsonProcessingException {
-        ObjectMapper objectMapper = new ObjectMapper();
+    private Message sendUsuarioMessage() {
         Usuario user = new Usuario(1, "John");
-        // El RabbitTemplate serializa el objeto a JSON automáticamente
-        this.template.convertAndSend(queue.getName(), user);
-        // Devolvemos la cadena JSON para mostrarla en logs
-        return objectMapper.writeValueAsString(user);
+        Message message = codec.toMessage(user);
+        publish(message);
+        return message;
+    }
+
+    /**
+     * Publica un mensaje ya serializado en la cola, con la cabecera x-sent-at
+     * para medir la latencia de extremo a extremo. Con LaneRouter la cola es
+     * la del carril del tipo del mensaje. Si hay Outbox el mensaje
+     * solo se guarda en él (lo publica su hilo drenador). Si hay
+     * ConfirmingPublisher el envío es confirmado de forma asíncrona y los
+     * fallos se notifican al completarse el futuro; si no, se usa
+     * directamente el MessageTransport.
+     *
+     * @param message mensaje a enviar
+     */
+    private void publish(Message message) {
+        String queueName = laneRouter != null ? laneRouter.queueFor(message) : queue.getName();
+        metrics.stampSent(message);
+        metrics.recordPublish(queueName);
+        if (outbox != null) {
+            outbox.append(queueName, message);
+            return;
+        }
+        if (publisher == null) {
+            this.transport.send(queueName, message);
+            return;
+        }
+        long start = System.nanoTime();
+        publisher.send("", queueName, message).whenComplete((ok, ex) -> {
+            metrics.recordConfirm(queueName, System.nanoTime() - start, ex == null);
+            if (ex != null && messageLog.sample(Event.FAILED)) {
+                messageLog.warn(" [!] Publish not confirmed: {}", ex.getMessage());
+            }
+        });
     }
 }
\ No newline at end of file
@@ -0,0 +1,91 @@
+package com.rabbitmq.tutorial.messaging;
+
+import java.time.LocalDateTime;
+
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import com.rabbitmq.tutorial.messaging.dedup.IdempotencyCache;
+import com.rabbitmq.tutorial.messaging.dispatch.MessageDispatcher;
+import com.rabbitmq.tutorial.messaging.ledger.BalanceProjection;
+import com.rabbitmq.tutorial.model.Transaccion;
+
+/**
+ * Servidor RPC de Transaccion, activo con el perfil "rpc".
+ *
+ * Consume la cola {@link #QUEUE}, aplica cada Transaccion a la
+ * BalanceProjection y responde con la misma Transaccion (mismo
+ * id_correlacion) y su estado_id resultante. El contenedor publica la
+ * respuesta en la dirección replyTo de la petición, que con
+ * TransaccionRpcClient es amq.rabbitmq.reply-to.
+ *
+ * Una reentrega cuya clave_indempotencia ya se procesó no se vuelve a
+ * aplicar: se responde con estado {@link #DUPLICADA}.
+ */
+@Component
+@Profile("rpc")
+public class TransaccionRpcServer {
+
+    /** Cola de las peticiones RPC */
+    public static final String QUEUE = "transacciones.rpc";
+
+    /** estado_id de una Transaccion aplicada a los saldos */
+    public static final String COMPLETADA = "COMPLETADA";
+
+    /** estado_id de una Transaccion cuya clave ya se había procesado */
+    public static final String DUPLICADA = "DUPLICADA";
+
+    private final MessageDispatcher dispatcher;
+
+    private final IdempotencyCache idempotencyCache;
+
+    private final BalanceProjection balanceProjection;
+
+    /**
+     * @param dispatcher registro de tipos compartido, para decodificar la petición
+     * @param idempotencyCache caché de claves ya procesadas
+     * @param balanceProjection saldos por cuenta que se actualizan con cada petición
+     */
+    public TransaccionRpcServer(MessageDispatcher dispatcher, IdempotencyCache idempotencyCache,
+            BalanceProjection balanceProjection) {
+        this.dispatcher = dispatcher;
+        this.idempotencyCache = idempotencyCache;
+        this.balanceProjection = balanceProjection;
+    }
+
+    /**
+     * Procesa una petición y devuelve la respuesta que el contenedor envía al
+     * replyTo.
+     *
+     * @param request mensaje con una Transaccion (JSON o binario)
+     * @return la Transaccion con su estado_id resultante
+     * @throws AmqpRejectAndDontRequeueException si el cuerpo no es una Transaccion
+     */
+    @RabbitListener(queues = QUEUE)
+    public Transaccion handle(Message request) {
+        if (!(dispatcher.decode(request) instanceof Transaccion transaccion)) {
+            throw new AmqpRejectAndDontRequeueException("RPC request is not a Transaccion");
+        }
+        String key = transaccion.getClave_indempotencia();
+        if (key != null && !idempotencyCache.markSeen(key)) {
+            transaccion.setEstado_id(DUPLICADA);
+        }
+        else {
+            transaccion.setEstado_id(COMPLETADA);
+            try {
+                balanceProjection.apply(transaccion);
+            }
+            catch (RuntimeException e) {
+                if (key != null) {
+                    idempotencyCache.forget(key);
+                }
+                throw e;
+            }
+        }
+        transaccion.setFecha_actualizacion(LocalDateTime.now());
+        return transaccion;
+    }
+}
@@ -0,0 +1,290 @@
+package com.rabbitmq.tutorial.messaging.batch;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.batch.BatchingStrategy;
+import org.springframework.amqp.rabbit.batch.MessageBatch;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.amqp.support.converter.AbstractJavaTypeMapper;
+
+import com.rabbitmq.tutorial.messaging.metrics.MessagingMetrics;
+
+/**
+ * Estrategia de agrupación (batching) de mensajes para el BatchingRabbitTemplate.
+ *
+ * A diferencia de SimpleBatchingStrategy, que copia las propiedades del primer
+ * mensaje a todos los fragmentos, esta estrategia conserva por fragmento el
+ * content_type, el content_encoding y la cabecera __TypeId__ de Jackson. Así un
+ * mismo lote puede mezclar String y Usuario y el Receiver recibe cada mensaje
+ * con su tipo original sin enterarse de que viajó agrupado. También conserva
+ * el correlation_id, el message_id y la cabecera x-sent-at, para que la
+ * latencia extremo a extremo se mida desde el envío de cada mensaje y no
+ * desde el del lote.
+ *
+ * Formato de cada fragmento dentro del cuerpo del lote:
+ * <pre>
+ * [short len][content_type] [short len][content_encoding] [short len][__TypeId__]
+ * [short len][correlation_id] [short len][message_id] [short len][x-sent-at: long] [int len][body]
+ * </pre>
+ * Un campo ausente se escribe con longitud -1. Los lotes del formato
+ * anterior (tutorialTyped1, sin los tres últimos campos) se siguen separando.
+ *
+ * Un lote se libera cuando alcanza batchSize mensajes, cuando el siguiente
+ * mensaje superaría bufferLimit bytes o cuando vence el tiempo de espera
+ * (linger). Si al liberar un lote por tamaño el mensaje nuevo ya llena otro
+ * por sí solo, como addToBatch solo puede devolver un lote,
+ * {@link #nextRelease()} pide liberarlo de inmediato en lugar de esperar al
+ * linger. No es thread-safe: BatchingRabbitTemplate sincroniza los envíos.
+ */
+public class TypedBatchingStrategy implements BatchingStrategy {
+
+    /** Valor de la cabecera springBatchFormat que identifica este formato */
+    public static final String BATCH_FORMAT = "tutorialTyped2";
+
+    private static final String LEGACY_BATCH_FORMAT = "tutorialTyped1";
+
+    private static final String TYPE_ID_HEADER = AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME;
+
+    private final int batchSize;
+
+    private final int bufferLimit;
+
+    private final long timeout;
+
+    private final List<Message> messages = new ArrayList<>();
+
+    private final List<byte[][]> descriptors = new ArrayList<>();
+
+    private String exchange;
+
+    private String routingKey;
+
+    private int currentSize;
+
+    private boolean releaseDue;
+
+    /**
+     * @param batchSize   número máximo de mensajes por lote
+     * @param bufferLimit tamaño máximo en bytes del cuerpo del lote
+     * @param timeout     tiempo máximo (ms) que un mensaje espera en un lote parcial
+     */
+    public TypedBatchingStrategy(int batchSize, int bufferLimit, long timeout) {
+        this.batchSize = batchSize;
+        this.bufferLimit = bufferLimit;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public MessageBatch addToBatch(String exch, String routKey, Message message) {
+        MessageBatch batch = null;
+        if (!this.messages.isEmpty()
+                && (!equals(this.exchange, exch) || !equals(this.routingKey, routKey))) {
+            batch = doReleaseBatch();
+        }
+        byte[][] descriptor = describe(message.getMessageProperties());
+        int fragmentSize = fragmentSize(descriptor, message.getBody().length);
+        if (!this.messages.isEmpty() && this.currentSize + fragmentSize > this.bufferLimit) {
+            batch = doReleaseBatch();
+        }
+        this.exchange = exch;
+        this.routingKey = routKey;
+        this.messages.add(message);
+        this.descriptors.add(descriptor);
+        this.currentSize += fragmentSize;
+        if (this.messages.size() >= this.batchSize || this.currentSize >= this.bufferLimit) {
+            if (batch == null) {
+                batch = doReleaseBatch();
+            }
+            else {
+                this.releaseDue = true;
+            }
+        }
+        return batch;
+    }
+
+    @Override
+    public Date nextRelease() {
+        if (this.messages.isEmpty()) {
+            return null;
+        }
+        if (this.releaseDue) {
+            return new Date();
+        }
+        if (this.timeout <= 0) {
+            return null;
+        }
+        return new Date(System.currentTimeMillis() + this.timeout);
+    }
+
+    @Override
+    public Collection<MessageBatch> releaseBatches() {
+        MessageBatch batch = doReleaseBatch();
+        return batch == null ? Collections.emptyList() : Collections.singletonList(batch);
+    }
+
+    @Override
+    public boolean canDebatch(MessageProperties properties) {
+        Object format = properties.getHeaders().get(MessageProperties.SPRING_BATCH_FORMAT);
+        return BATCH_FORMAT.equals(format) || LEGACY_BATCH_FORMAT.equals(format);
+    }
+
+    /**
+     * Separa un lote en sus mensajes originales. Cada fragmento hereda las
+     * propiedades de entrega del lote (deliveryTag, cola, redelivered...) y
+     * recupera su propio content_type, content_encoding, __TypeId__,
+     * correlation_id, message_id y x-sent-at.
+     */
+    @Override
+    public void deBatch(Message message, Consumer<Message> fragmentConsumer) {
+        MessageProperties batchProperties = message.getMessageProperties();
+        boolean legacy = LEGACY_BATCH_FORMAT
+                .equals(batchProperties.getHeaders().get(MessageProperties.SPRING_BATCH_FORMAT));
+        ByteBuffer buffer = ByteBuffer.wrap(message.getBody());
+        while (buffer.hasRemaining()) {
+            String contentType = readString(buffer);
+            String contentEncoding = readString(buffer);
+            String typeId = readString(buffer);
+            String correlationId = legacy ? null : readString(buffer);
+            String messageId = legacy ? null : readString(buffer);
+            Long sentAt = legacy ? null : readLong(buffer);
+            byte[] body = new byte[buffer.getInt()];
+            buffer.get(body);
+
+            MessageProperties fragmentProperties = new MessageProperties();
+            copyDeliveryProperties(batchProperties, fragmentProperties);
+            fragmentProperties.setContentType(contentType);
+            fragmentProperties.setContentEncoding(contentEncoding);
+            if (typeId != null) {
+                fragmentProperties.setHeader(TYPE_ID_HEADER, typeId);
+            }
+            fragmentProperties.setCorrelationId(correlationId);
+            fragmentProperties.setMessageId(messageId);
+            if (sentAt != null) {
+                fragmentProperties.setHeader(MessagingMetrics.SENT_AT_HEADER, sentAt);
+            }
+            fragmentProperties.setContentLength(body.length);
+            fragmentConsumer.accept(new Message(body, fragmentProperties));
+        }
+    }
+
+    private MessageBatch doReleaseBatch() {
+        if (this.messages.isEmpty()) {
+            return null;
+        }
+        Message assembled = this.messages.size() == 1 ? this.messages.get(0) : assembleMessage();
+        MessageBatch batch = new MessageBatch(this.exchange, this.routingKey, assembled);
+        this.messages.clear();
+        this.descriptors.clear();
+        this.currentSize = 0;
+        this.releaseDue = false;
+        this.exchange = null;
+        this.routingKey = null;
+        return batch;
+    }
+
+    private Message assembleMessage() {
+        byte[] body = new byte[this.currentSize];
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        for (int i = 0; i < this.messages.size(); i++) {
+            byte[][] descriptor = this.descriptors.get(i);
+            for (byte[] field : descriptor) {
+                writeString(buffer, field);
+            }
+            byte[] fragment = this.messages.get(i).getBody();
+            buffer.putInt(fragment.length);
+            buffer.put(fragment);
+        }
+        MessageProperties first = this.messages.get(0).getMessageProperties();
+        MessageProperties properties = new MessageProperties();
+        properties.setDeliveryMode(first.getDeliveryMode());
+        properties.setContentType(MessageProperties.CONTENT_TYPE_BYTES);
+        properties.setHeader(MessageProperties.SPRING_BATCH_FORMAT, BATCH_FORMAT);
+        properties.setHeader(AmqpHeaders.BATCH_SIZE, this.messages.size());
+        properties.setContentLength(body.length);
+        return new Message(body, properties);
+    }
+
+    private static byte[][] describe(MessageProperties properties) {
+        Object typeId = properties.getHeaders().get(TYPE_ID_HEADER);
+        Object sentAt = properties.getHeaders().get(MessagingMetrics.SENT_AT_HEADER);
+        return new byte[][] {
+                toBytes(properties.getContentType()),
+                toBytes(properties.getContentEncoding()),
+                toBytes(typeId != null ? typeId.toString() : null),
+                toBytes(properties.getCorrelationId()),
+                toBytes(properties.getMessageId()),
+                sentAt instanceof Number millis
+                        ? ByteBuffer.allocate(Long.BYTES).putLong(millis.longValue()).array() : null };
+    }
+
+    private static int fragmentSize(byte[][] descriptor, int bodyLength) {
+        int size = Integer.BYTES + bodyLength;
+        for (byte[] field : descriptor) {
+            size += Short.BYTES + (field != null ? field.length : 0);
+        }
+        return size;
+    }
+
+    private static void copyDeliveryProperties(MessageProperties from, MessageProperties to) {
+        to.setDeliveryTag(from.getDeliveryTag());
+        to.setRedelivered(from.getRedelivered());
+        to.setConsumerQueue(from.getConsumerQueue());
+        to.setConsumerTag(from.getConsumerTag());
+        to.setReceivedExchange(from.getReceivedExchange());
+        to.setReceivedRoutingKey(from.getReceivedRoutingKey());
+        to.setReceivedDeliveryMode(from.getReceivedDeliveryMode());
+        for (Map.Entry<String, Object> header : from.getHeaders().entrySet()) {
+            String name = header.getKey();
+            if (!MessageProperties.SPRING_BATCH_FORMAT.equals(name) && !AmqpHeaders.BATCH_SIZE.equals(name)
+                    && !MessagingMetrics.SENT_AT_HEADER.equals(name)) {
+                to.setHeader(name, header.getValue());
+            }
+        }
+    }
+
+    private static byte[] toBytes(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static void writeString(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            buffer.putShort((short) -1);
+            return;
+        }
+        buffer.putShort((short) value.length);
+        buffer.put(value);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        short length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static Long readLong(ByteBuffer buffer) {
+        short length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        return buffer.getLong();
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
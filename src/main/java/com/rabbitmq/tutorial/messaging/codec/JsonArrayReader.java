@@ -0,0 +1,82 @@
+package com.rabbitmq.tutorial.messaging.codec;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * Lector en streaming de arrays JSON de objetos de un mismo tipo.
+ *
+ * Recorre el array con el JsonParser de Jackson directamente sobre los bytes
+ * del mensaje y entrega cada elemento en cuanto se ha decodificado, sin
+ * construir la lista ni un árbol intermedio: la memoria usada no depende del
+ * número de elementos y el procesamiento empieza antes de terminar el parseo.
+ *
+ * Todos los elementos de un mismo array se decodifican sobre un único objeto
+ * mutable (ObjectReader con valueToUpdate), que se limpia con la función
+ * reset antes de cada elemento para que un campo ausente no herede el valor
+ * del anterior. El consumidor no debe guardar la referencia más allá de la
+ * llamada.
+ *
+ * @param <T> tipo de los elementos
+ */
+public class JsonArrayReader<T> {
+
+    private final ObjectReader reader;
+
+    private final Supplier<? extends T> factory;
+
+    private final Consumer<? super T> reset;
+
+    /**
+     * @param reader  ObjectReader del tipo de los elementos
+     * @param factory crea el objeto que se reutiliza en cada array
+     * @param reset   deja el objeto reutilizado sin valores antes de cada elemento
+     */
+    public JsonArrayReader(ObjectReader reader, Supplier<? extends T> factory, Consumer<? super T> reset) {
+        this.reader = reader;
+        this.factory = factory;
+        this.reset = reset;
+    }
+
+    /**
+     * Recorre el array y entrega cada elemento al consumidor. Si un elemento
+     * no se puede decodificar, los anteriores ya se han entregado.
+     *
+     * @param body bytes JSON con un array de objetos
+     * @param sink consumidor de cada elemento (objeto reutilizado)
+     * @return número de elementos entregados
+     * @throws MessageConversionException si el cuerpo no es un array de
+     *         objetos del tipo esperado
+     */
+    public int read(byte[] body, Consumer<? super T> sink) {
+        T record = factory.get();
+        ObjectReader updater = reader.withValueToUpdate(record);
+        int count = 0;
+        try (JsonParser parser = reader.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new MessageConversionException("Expected a JSON array");
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+                reset.accept(record);
+                updater.readValue(parser);
+                sink.accept(record);
+                count++;
+            }
+            if (token != JsonToken.END_ARRAY) {
+                throw new MessageConversionException("Unexpected " + token + " after element " + count);
+            }
+            return count;
+        }
+        catch (IOException e) {
+            throw new MessageConversionException("Failed to decode array element " + count, e);
+        }
+    }
+}
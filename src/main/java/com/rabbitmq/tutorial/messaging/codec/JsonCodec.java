@@ -0,0 +1,188 @@
+package com.rabbitmq.tutorial.messaging.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.AbstractJavaTypeMapper;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.rabbitmq.tutorial.messaging.concurrent.ReusablePool;
+
+/**
+ * Codec JSON compartido por Sender y receptores.
+ *
+ * Centraliza un único ObjectMapper y guarda ObjectReader/ObjectWriter ya
+ * construidos por tipo (Usuario y Transaccion se precargan), de modo que en
+ * el camino caliente no se crean mappers ni se resuelven serializadores.
+ *
+ * Cada payload se serializa una sola vez: {@link #toMessage(Object)} escribe
+ * en un buffer reutilizable (por hilo, o de una reserva compartida en hilos
+ * virtuales; ver ReusablePool) y copia el resultado al byte[] exacto del
+ * Message. Esos mismos bytes sirven después para el log o las métricas,
+ * sin volver a serializar. Los mensajes generados son compatibles con
+ * Jackson2JsonMessageConverter (content_type application/json y cabecera
+ * __TypeId__).
+ */
+public final class JsonCodec {
+
+    /** Cabecera con el nombre de clase del payload */
+    public static final String TYPE_ID_HEADER = AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME;
+
+    private static final int INITIAL_BUFFER_SIZE = 512;
+
+    /** Buffers que se guardan para los hilos virtuales */
+    private static final int POOLED_BUFFERS = 64;
+
+    private final ObjectMapper objectMapper;
+
+    private final ConcurrentHashMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    private final ReusablePool<ReusableOutputStream> buffers =
+            new ReusablePool<>(() -> new ReusableOutputStream(INITIAL_BUFFER_SIZE), POOLED_BUFFERS);
+
+    /**
+     * @param objectMapper mapper compartido (con los módulos ya registrados)
+     * @param types        tipos cuyos reader/writer se construyen por adelantado
+     */
+    public JsonCodec(ObjectMapper objectMapper, Class<?>... types) {
+        this.objectMapper = objectMapper;
+        for (Class<?> type : types) {
+            reader(type);
+            writer(type);
+        }
+    }
+
+    /**
+     * @return el ObjectMapper compartido, para configurar otros componentes
+     *         (p. ej. Jackson2JsonMessageConverter) con la misma configuración
+     */
+    public ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    /**
+     * @param type clase a leer
+     * @return ObjectReader reutilizable para el tipo
+     */
+    public ObjectReader reader(Class<?> type) {
+        ObjectReader reader = readers.get(type);
+        return reader != null ? reader : readers.computeIfAbsent(type, objectMapper::readerFor);
+    }
+
+    /**
+     * @param type clase a escribir
+     * @return ObjectWriter reutilizable para el tipo
+     */
+    public ObjectWriter writer(Class<?> type) {
+        ObjectWriter writer = writers.get(type);
+        return writer != null ? writer : writers.computeIfAbsent(type, objectMapper::writerFor);
+    }
+
+    /**
+     * Serializa un objeto a JSON en UTF-8.
+     *
+     * @param payload objeto a serializar
+     * @return bytes JSON (array de tamaño exacto)
+     * @throws MessageConversionException si falla la serialización
+     */
+    public byte[] encode(Object payload) {
+        ReusableOutputStream buffer = buffers.acquire();
+        try {
+            buffer.reset();
+            writer(payload.getClass()).writeValue(buffer, payload);
+            return buffer.toByteArray();
+        }
+        catch (IOException e) {
+            throw new MessageConversionException("Failed to encode " + payload.getClass().getName(), e);
+        }
+        finally {
+            buffers.release(buffer);
+        }
+    }
+
+    /**
+     * Deserializa JSON directamente desde bytes.
+     *
+     * @param body bytes JSON
+     * @param type clase de destino
+     * @param <T>  tipo de destino
+     * @return objeto deserializado
+     * @throws MessageConversionException si el JSON no corresponde al tipo
+     */
+    public <T> T decode(byte[] body, Class<T> type) {
+        try {
+            return reader(type).readValue(body);
+        }
+        catch (IOException e) {
+            throw new MessageConversionException("Failed to decode " + type.getName(), e);
+        }
+    }
+
+    /**
+     * Construye el Message AMQP para un payload serializándolo una sola vez.
+     *
+     * @param payload objeto a enviar
+     * @return Message con el JSON, content_type application/json y __TypeId__
+     */
+    public Message toMessage(Object payload) {
+        byte[] body = encode(payload);
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        properties.setContentEncoding(StandardCharsets.UTF_8.name());
+        properties.setContentLength(body.length);
+        properties.setHeader(TYPE_ID_HEADER, payload.getClass().getName());
+        return new Message(body, properties);
+    }
+
+    /**
+     * OutputStream sobre un byte[] que crece según se necesita y se reutiliza
+     * entre serializaciones (reset no libera el array).
+     */
+    private static final class ReusableOutputStream extends OutputStream {
+
+        private byte[] buf;
+
+        private int count;
+
+        private ReusableOutputStream(int initialSize) {
+            this.buf = new byte[initialSize];
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(count + 1);
+            buf[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(count + len);
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, capacity));
+            }
+        }
+
+        private void reset() {
+            count = 0;
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buf, count);
+        }
+    }
+}
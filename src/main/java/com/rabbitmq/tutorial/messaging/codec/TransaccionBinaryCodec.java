@@ -0,0 +1,338 @@
+package com.rabbitmq.tutorial.messaging.codec;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import com.rabbitmq.tutorial.messaging.concurrent.ReusablePool;
+import com.rabbitmq.tutorial.model.Transaccion;
+
+/**
+ * Formato binario compacto y de disposición fija para Transaccion.
+ *
+ * Esquema v2 (todos los enteros en varint, con zigzag los que pueden ser
+ * negativos):
+ * <pre>
+ * byte     versión (2)
+ * short    máscara de presencia: bit i = campo i no nulo
+ * campo 0  id                    zigzag varint
+ * campo 1  clave_indempotencia   varint longitud + UTF-8
+ * campo 2  id_correlacion        varint longitud + UTF-8
+ * campo 3  id_cuenta_emisor      zigzag varint
+ * campo 4  id_cuenta_receptor    zigzag varint
+ * campo 5  cantidad              zigzag varint escala + zigzag varlong valor sin escala
+ *                                (BigDecimal exacto; p. ej. 150.75 = 15075 con escala 2)
+ * campo 6  fecha_creacion        zigzag varlong segundos epoch (UTC) + varint nanos
+ * campo 7  fecha_actualizacion   igual que fecha_creacion
+ * campo 8  estado_id             varint longitud + UTF-8
+ * </pre>
+ *
+ * Los campos nulos no ocupan espacio. La versión permite evolucionar el
+ * esquema sin romper a los consumidores: un decodificador rechaza versiones
+ * que no conoce. Se siguen leyendo los mensajes v1, que solo se diferencian
+ * en la cantidad (float IEEE-754 de 4 bytes); se convierte a BigDecimal con
+ * su representación decimal más corta, la misma que tendría en JSON. Se
+ * identifica en AMQP por {@link #CONTENT_TYPE}, de modo que productores
+ * JSON y binarios pueden convivir durante la migración.
+ *
+ * Es thread-safe: el buffer de escritura es por hilo (o de una reserva
+ * compartida en hilos virtuales; ver ReusablePool).
+ */
+public class TransaccionBinaryCodec {
+
+    /** content_type de los mensajes con Transaccion en formato binario */
+    public static final String CONTENT_TYPE = "application/vnd.tutorial.transaccion+binary";
+
+    /** Versión del esquema que escribe este codec */
+    public static final byte VERSION = 2;
+
+    /** Versión anterior, con la cantidad como float; solo se lee */
+    static final byte VERSION_FLOAT_AMOUNT = 1;
+
+    /** Buffers de escritura que se guardan para los hilos virtuales */
+    private static final int POOLED_WRITERS = 64;
+
+    private final ReusablePool<Writer> writers = new ReusablePool<>(Writer::new, POOLED_WRITERS);
+
+    /**
+     * Codifica una Transaccion.
+     *
+     * @param tx transacción a codificar
+     * @return bytes en formato binario v2 (array de tamaño exacto)
+     * @throws IllegalArgumentException si el valor sin escala de la cantidad
+     *         no cabe en un long
+     */
+    public byte[] encode(Transaccion tx) {
+        Writer w = writers.acquire();
+        try {
+            return encode(tx, w);
+        }
+        finally {
+            writers.release(w);
+        }
+    }
+
+    private static byte[] encode(Transaccion tx, Writer w) {
+        w.reset();
+        w.writeByte(VERSION);
+        int mask = bit(tx.getId(), 0) | bit(tx.getClave_indempotencia(), 1) | bit(tx.getId_correlacion(), 2)
+                | bit(tx.getId_cuenta_emisor(), 3) | bit(tx.getId_cuenta_receptor(), 4) | bit(tx.getCantidad(), 5)
+                | bit(tx.getFecha_creacion(), 6) | bit(tx.getFecha_actualizacion(), 7) | bit(tx.getEstado_id(), 8);
+        w.writeByte(mask >>> 8);
+        w.writeByte(mask);
+        if (tx.getId() != null) {
+            w.writeVarint(zigzag(tx.getId()));
+        }
+        w.writeString(tx.getClave_indempotencia());
+        w.writeString(tx.getId_correlacion());
+        if (tx.getId_cuenta_emisor() != null) {
+            w.writeVarint(zigzag(tx.getId_cuenta_emisor()));
+        }
+        if (tx.getId_cuenta_receptor() != null) {
+            w.writeVarint(zigzag(tx.getId_cuenta_receptor()));
+        }
+        if (tx.getCantidad() != null) {
+            BigDecimal amount = tx.getCantidad();
+            if (amount.unscaledValue().bitLength() > 63) {
+                throw new IllegalArgumentException("cantidad " + amount + " does not fit the binary format");
+            }
+            w.writeVarint(zigzag(amount.scale()));
+            w.writeVarint(zigzag(amount.unscaledValue().longValue()));
+        }
+        w.writeTimestamp(tx.getFecha_creacion());
+        w.writeTimestamp(tx.getFecha_actualizacion());
+        w.writeString(tx.getEstado_id());
+        return w.toByteArray();
+    }
+
+    /**
+     * Decodifica una Transaccion.
+     *
+     * @param body bytes en formato binario
+     * @return transacción decodificada
+     * @throws MessageConversionException si la versión no es conocida o el
+     *         contenido está truncado, corrupto (longitudes, fechas o
+     *         cantidades imposibles) o le sobran bytes
+     */
+    public Transaccion decode(byte[] body) {
+        try {
+            Reader r = new Reader(body);
+            byte version = r.readByte();
+            if (version != VERSION && version != VERSION_FLOAT_AMOUNT) {
+                throw new MessageConversionException("Unsupported Transaccion binary version " + version);
+            }
+            int mask = ((r.readByte() & 0xFF) << 8) | (r.readByte() & 0xFF);
+            Transaccion tx = new Transaccion();
+            if (present(mask, 0)) {
+                tx.setId(unzigzag((int) r.readVarint()));
+            }
+            if (present(mask, 1)) {
+                tx.setClave_indempotencia(r.readString());
+            }
+            if (present(mask, 2)) {
+                tx.setId_correlacion(r.readString());
+            }
+            if (present(mask, 3)) {
+                tx.setId_cuenta_emisor(unzigzag((int) r.readVarint()));
+            }
+            if (present(mask, 4)) {
+                tx.setId_cuenta_receptor(unzigzag((int) r.readVarint()));
+            }
+            if (present(mask, 5)) {
+                if (version == VERSION_FLOAT_AMOUNT) {
+                    tx.setCantidad(new BigDecimal(Float.toString(Float.intBitsToFloat(r.readInt()))));
+                }
+                else {
+                    int scale = unzigzag((int) r.readVarint());
+                    tx.setCantidad(BigDecimal.valueOf(unzigzag(r.readVarint()), scale));
+                }
+            }
+            if (present(mask, 6)) {
+                tx.setFecha_creacion(r.readTimestamp());
+            }
+            if (present(mask, 7)) {
+                tx.setFecha_actualizacion(r.readTimestamp());
+            }
+            if (present(mask, 8)) {
+                tx.setEstado_id(r.readString());
+            }
+            if (r.pos != body.length) {
+                throw new MessageConversionException(
+                        (body.length - r.pos) + " trailing bytes after Transaccion binary payload");
+            }
+            return tx;
+        }
+        catch (IndexOutOfBoundsException e) {
+            throw new MessageConversionException("Truncated Transaccion binary payload", e);
+        }
+        catch (DateTimeException | NumberFormatException e) {
+            throw new MessageConversionException("Corrupt Transaccion binary payload", e);
+        }
+    }
+
+    /**
+     * Construye el Message AMQP con la Transaccion en formato binario.
+     *
+     * @param tx transacción a enviar
+     * @return Message con content_type {@link #CONTENT_TYPE} y __TypeId__ (que
+     *         usa LaneRouter para elegir carril; los receptores deciden el
+     *         formato por content_type)
+     */
+    public Message toMessage(Transaccion tx) {
+        byte[] body = encode(tx);
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(CONTENT_TYPE);
+        properties.setContentLength(body.length);
+        properties.setHeader(JsonCodec.TYPE_ID_HEADER, Transaccion.class.getName());
+        return new Message(body, properties);
+    }
+
+    private static int bit(Object field, int index) {
+        return field != null ? 1 << index : 0;
+    }
+
+    private static boolean present(int mask, int field) {
+        return (mask & (1 << field)) != 0;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Buffer de escritura reutilizable.
+     */
+    private static final class Writer {
+
+        private byte[] buf = new byte[128];
+
+        private int pos;
+
+        private void reset() {
+            pos = 0;
+        }
+
+        private void ensure(int extra) {
+            if (pos + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, pos + extra));
+            }
+        }
+
+        private void writeByte(int b) {
+            ensure(1);
+            buf[pos++] = (byte) b;
+        }
+
+        private void writeVarint(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+
+        private void writeTimestamp(LocalDateTime value) {
+            if (value == null) {
+                return;
+            }
+            writeVarint(zigzag(value.toEpochSecond(ZoneOffset.UTC)));
+            writeVarint(value.getNano());
+        }
+
+        private void writeString(String value) {
+            if (value == null) {
+                return;
+            }
+            int length = value.length();
+            // Camino rápido ASCII: se escriben los chars sin crear un byte[] intermedio
+            boolean ascii = true;
+            for (int i = 0; i < length && ascii; i++) {
+                ascii = value.charAt(i) < 0x80;
+            }
+            if (ascii) {
+                writeVarint(length);
+                ensure(length);
+                for (int i = 0; i < length; i++) {
+                    buf[pos++] = (byte) value.charAt(i);
+                }
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(utf8.length);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, buf, pos, utf8.length);
+            pos += utf8.length;
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+    }
+
+    /**
+     * Lector secuencial sobre el cuerpo del mensaje.
+     */
+    private static final class Reader {
+
+        private final byte[] buf;
+
+        private int pos;
+
+        private Reader(byte[] buf) {
+            this.buf = buf;
+        }
+
+        private byte readByte() {
+            return buf[pos++];
+        }
+
+        private int readInt() {
+            return ((buf[pos++] & 0xFF) << 24) | ((buf[pos++] & 0xFF) << 16)
+                    | ((buf[pos++] & 0xFF) << 8) | (buf[pos++] & 0xFF);
+        }
+
+        private long readVarint() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buf[pos++];
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new MessageConversionException("Malformed varint in Transaccion binary payload");
+        }
+
+        private LocalDateTime readTimestamp() {
+            long seconds = unzigzag(readVarint());
+            int nanos = (int) readVarint();
+            return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+        }
+
+        private String readString() {
+            long length = readVarint();
+            if (length < 0 || length > buf.length - pos) {
+                throw new MessageConversionException("Invalid string length in Transaccion binary payload");
+            }
+            String value = new String(buf, pos, (int) length, StandardCharsets.UTF_8);
+            pos += (int) length;
+            return value;
+        }
+    }
+}
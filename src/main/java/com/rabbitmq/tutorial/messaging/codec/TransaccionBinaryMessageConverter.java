@@ -0,0 +1,40 @@
+package com.rabbitmq.tutorial.messaging.codec;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.AbstractMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import com.rabbitmq.tutorial.model.Transaccion;
+
+/**
+ * MessageConverter para Transaccion en el formato binario de
+ * TransaccionBinaryCodec. Se registra en RabbitConfig como delegado del
+ * content_type {@link TransaccionBinaryCodec#CONTENT_TYPE}, junto al
+ * convertidor Jackson que sigue atendiendo el JSON.
+ */
+public class TransaccionBinaryMessageConverter extends AbstractMessageConverter {
+
+    private final TransaccionBinaryCodec codec;
+
+    public TransaccionBinaryMessageConverter(TransaccionBinaryCodec codec) {
+        this.codec = codec;
+    }
+
+    @Override
+    protected Message createMessage(Object object, MessageProperties messageProperties) {
+        if (!(object instanceof Transaccion tx)) {
+            throw new MessageConversionException("Binary format only supports Transaccion, got "
+                    + object.getClass().getName());
+        }
+        byte[] body = codec.encode(tx);
+        messageProperties.setContentType(TransaccionBinaryCodec.CONTENT_TYPE);
+        messageProperties.setContentLength(body.length);
+        return new Message(body, messageProperties);
+    }
+
+    @Override
+    public Object fromMessage(Message message) {
+        return codec.decode(message.getBody());
+    }
+}
@@ -0,0 +1,70 @@
+package com.rabbitmq.tutorial.messaging.compression;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.core.Ordered;
+
+/**
+ * MessagePostProcessor que comprime con deflate los cuerpos a partir de un
+ * tamaño mínimo (perfil "compression").
+ *
+ * Los mensajes pequeños se envían tal cual: por debajo de unos cientos de
+ * bytes la cabecera zlib y la CPU no compensan. Al comprimir se antepone
+ * "deflate" al content_encoding con el separador ':' de Spring AMQP (p. ej.
+ * "deflate:UTF-8"), de modo que DecompressingPostProcessor, o el
+ * DelegatingDecompressingPostProcessor estándar, restauran el cuerpo y la
+ * codificación original.
+ */
+public class CompressingPostProcessor implements MessagePostProcessor, Ordered {
+
+    /** Valor de content_encoding de los cuerpos comprimidos */
+    public static final String ENCODING = "deflate";
+
+    /** Separador entre la compresión y la codificación original */
+    public static final String DELIMITER = ":";
+
+    private final DeflateCompressor compressor;
+
+    private final int threshold;
+
+    /**
+     * @param threshold tamaño mínimo (bytes) del cuerpo para comprimirlo
+     * @param level     nivel de compresión de Deflater (1 rápido .. 9 máximo)
+     */
+    public CompressingPostProcessor(int threshold, int level) {
+        this.compressor = new DeflateCompressor(level);
+        this.threshold = threshold;
+    }
+
+    @Override
+    public Message postProcessMessage(Message message) {
+        byte[] body = message.getBody();
+        MessageProperties properties = message.getMessageProperties();
+        if (body.length < threshold || isCompressed(properties.getContentEncoding())) {
+            return message;
+        }
+        byte[] compressed = compressor.compress(body);
+        if (compressed.length >= body.length) {
+            return message;
+        }
+        String encoding = properties.getContentEncoding();
+        properties.setContentEncoding(encoding == null ? ENCODING : ENCODING + DELIMITER + encoding);
+        properties.setContentLength(compressed.length);
+        return new Message(compressed, properties);
+    }
+
+    /**
+     * Se ejecuta el último, después de cualquier otro post-procesador que
+     * modifique el cuerpo.
+     */
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE;
+    }
+
+    private static boolean isCompressed(String encoding) {
+        return encoding != null && (encoding.equals(ENCODING) || encoding.startsWith(ENCODING + DELIMITER)
+                || encoding.startsWith("gzip") || encoding.startsWith("zip"));
+    }
+}
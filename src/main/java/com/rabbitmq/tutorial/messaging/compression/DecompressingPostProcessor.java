@@ -0,0 +1,83 @@
+package com.rabbitmq.tutorial.messaging.compression;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.postprocessor.DelegatingDecompressingPostProcessor;
+import org.springframework.core.Ordered;
+
+/**
+ * Descompresor deflate con Inflater reutilizado por hilo, para los
+ * contenedores de listeners.
+ *
+ * Se registra dentro de un DelegatingDecompressingPostProcessor (ver
+ * {@link #delegating()}), que elige el descompresor por el content_encoding:
+ * "deflate" usa esta clase y "gzip"/"zip" los de Spring AMQP, de modo que se
+ * aceptan mensajes de cualquier productor. Los mensajes sin compresión pasan
+ * sin cambios. Tras descomprimir se restaura la codificación original
+ * (lo que sigue al separador ':') antes de que el Receiver despache.
+ *
+ * El cuerpo descomprimido se limita a maxInflatedSize bytes: uno mayor se
+ * rechaza con MessageConversionException (no se reencola) en lugar de hacer
+ * crecer el buffer hasta agotar la memoria.
+ */
+public class DecompressingPostProcessor implements MessagePostProcessor, Ordered {
+
+    /** Tamaño máximo por defecto del cuerpo descomprimido: 16 MiB */
+    public static final int DEFAULT_MAX_INFLATED_SIZE = 16 * 1024 * 1024;
+
+    private final int maxInflatedSize;
+
+    public DecompressingPostProcessor() {
+        this(DEFAULT_MAX_INFLATED_SIZE);
+    }
+
+    /**
+     * @param maxInflatedSize tamaño máximo (bytes) del cuerpo descomprimido
+     */
+    public DecompressingPostProcessor(int maxInflatedSize) {
+        if (maxInflatedSize <= 0 || maxInflatedSize == Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("maxInflatedSize must be between 1 and " + (Integer.MAX_VALUE - 1));
+        }
+        this.maxInflatedSize = maxInflatedSize;
+    }
+
+    @Override
+    public Message postProcessMessage(Message message) {
+        MessageProperties properties = message.getMessageProperties();
+        byte[] body = DeflateCompressor.decompress(message.getBody(), maxInflatedSize);
+        String encoding = properties.getContentEncoding();
+        int delimiter = encoding != null ? encoding.indexOf(CompressingPostProcessor.DELIMITER) : -1;
+        properties.setContentEncoding(delimiter < 0 ? null : encoding.substring(delimiter + 1));
+        properties.setContentLength(body.length);
+        return new Message(body, properties);
+    }
+
+    /**
+     * Se ejecuta antes que cualquier otro post-procesador de recepción.
+     */
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    /**
+     * @return DelegatingDecompressingPostProcessor con este descompresor
+     *         para "deflate" (con el tamaño máximo por defecto) y los de
+     *         Spring AMQP para "gzip" y "zip"
+     */
+    public static DelegatingDecompressingPostProcessor delegating() {
+        return delegating(DEFAULT_MAX_INFLATED_SIZE);
+    }
+
+    /**
+     * @param maxInflatedSize tamaño máximo (bytes) del cuerpo deflate descomprimido
+     * @return DelegatingDecompressingPostProcessor con este descompresor
+     *         para "deflate" y los de Spring AMQP para "gzip" y "zip"
+     */
+    public static DelegatingDecompressingPostProcessor delegating(int maxInflatedSize) {
+        DelegatingDecompressingPostProcessor delegating = new DelegatingDecompressingPostProcessor();
+        delegating.addDecompressor(CompressingPostProcessor.ENCODING, new DecompressingPostProcessor(maxInflatedSize));
+        return delegating;
+    }
+}
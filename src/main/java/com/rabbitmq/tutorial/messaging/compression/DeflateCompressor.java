@@ -0,0 +1,145 @@
+package com.rabbitmq.tutorial.messaging.compression;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import com.rabbitmq.tutorial.messaging.concurrent.ReusablePool;
+
+/**
+ * Compresión deflate (formato zlib, el mismo que DeflaterPostProcessor e
+ * InflaterPostProcessor de Spring AMQP) con Deflater, Inflater y buffers
+ * reutilizados por hilo.
+ *
+ * Crear un Deflater reserva memoria nativa y cerrarlo la libera; hacerlo por
+ * mensaje convierte la compresión en un foco de asignaciones. Aquí cada hilo
+ * de plataforma conserva los suyos, los hilos virtuales los toman de una
+ * reserva compartida (ReusablePool), y solo se llama a reset() entre
+ * mensajes. El único objeto nuevo por mensaje es el byte[] de tamaño exacto
+ * del resultado.
+ */
+final class DeflateCompressor {
+
+    /** Deflater/Inflater que se guardan para los hilos virtuales */
+    private static final int POOLED = 64;
+
+    /** Buffer máximo que se conserva entre mensajes; uno mayor se descarta tras usarlo */
+    private static final int RETAINED_BUFFER = 1 << 20;
+
+    private static final ReusablePool<Inflating> inflaters =
+            new ReusablePool<>(Inflating::new, POOLED, state -> state.inflater.end());
+
+    private final ReusablePool<Deflating> deflaters;
+
+    /**
+     * @param level nivel de compresión de Deflater (1 rápido .. 9 máximo)
+     */
+    DeflateCompressor(int level) {
+        this.deflaters = new ReusablePool<>(() -> new Deflating(level), POOLED, state -> state.deflater.end());
+    }
+
+    byte[] compress(byte[] input) {
+        Deflating state = deflaters.acquire();
+        try {
+            return compress(input, state);
+        }
+        finally {
+            deflaters.release(state);
+        }
+    }
+
+    private static byte[] compress(byte[] input, Deflating state) {
+        Deflater deflater = state.deflater;
+        deflater.reset();
+        deflater.setInput(input);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == state.buffer.length) {
+                state.buffer = Arrays.copyOf(state.buffer, state.buffer.length << 1);
+            }
+            length += deflater.deflate(state.buffer, length, state.buffer.length - length);
+        }
+        return Arrays.copyOf(state.buffer, length);
+    }
+
+    /**
+     * @param input   cuerpo comprimido
+     * @param maxSize tamaño máximo (bytes) del cuerpo descomprimido
+     * @throws AmqpRejectAndDontRequeueException si el cuerpo no es deflate
+     *         válido; reentregarlo no lo arreglaría
+     * @throws MessageConversionException si el cuerpo descomprimido supera
+     *         maxSize (p. ej. una bomba de descompresión)
+     */
+    static byte[] decompress(byte[] input, int maxSize) {
+        Inflating state = inflaters.acquire();
+        try {
+            return decompress(input, maxSize, state);
+        }
+        finally {
+            if (state.buffer.length > RETAINED_BUFFER) {
+                state.buffer = new byte[Inflating.INITIAL_BUFFER];
+            }
+            inflaters.release(state);
+        }
+    }
+
+    private static byte[] decompress(byte[] input, int maxSize, Inflating state) {
+        Inflater inflater = state.inflater;
+        inflater.reset();
+        inflater.setInput(input);
+        // Un byte más que el máximo: si se llega a escribir, el cuerpo es demasiado grande
+        int limit = maxSize + 1;
+        int length = 0;
+        try {
+            while (!inflater.finished()) {
+                if (length >= limit) {
+                    throw tooLarge(maxSize);
+                }
+                if (length == state.buffer.length) {
+                    state.buffer = Arrays.copyOf(state.buffer, (int) Math.min(state.buffer.length * 2L, limit));
+                }
+                int n = inflater.inflate(state.buffer, length, Math.min(state.buffer.length, limit) - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new AmqpRejectAndDontRequeueException("Truncated deflate payload");
+                }
+                length += n;
+            }
+        }
+        catch (DataFormatException e) {
+            throw new AmqpRejectAndDontRequeueException("Invalid deflate payload", e);
+        }
+        if (length > maxSize) {
+            throw tooLarge(maxSize);
+        }
+        return Arrays.copyOf(state.buffer, length);
+    }
+
+    private static MessageConversionException tooLarge(int maxSize) {
+        return new MessageConversionException("Inflated deflate payload exceeds " + maxSize + " bytes");
+    }
+
+    private static final class Deflating {
+
+        private final Deflater deflater;
+
+        private byte[] buffer = new byte[1024];
+
+        private Deflating(int level) {
+            this.deflater = new Deflater(level);
+        }
+    }
+
+    private static final class Inflating {
+
+        private static final int INITIAL_BUFFER = 4096;
+
+        private final Inflater inflater = new Inflater();
+
+        private byte[] buffer = new byte[INITIAL_BUFFER];
+    }
+}
@@ -0,0 +1,119 @@
+package com.rabbitmq.tutorial.messaging.concurrent;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Ejecutor con un número máximo de tareas en vuelo.
+ *
+ * Pensado para hilos virtuales: crear hilos es barato, pero sin límite un
+ * productor podría lanzar tantas publicaciones simultáneas como quisiera y
+ * saturar el broker. {@link #execute(Runnable)} bloquea al llamante hasta
+ * que haya un permiso libre, de modo que la presión vuelve al productor.
+ *
+ * Cada tarea en un hilo virtual es un hilo nuevo: lo que los codecs y el
+ * compresor reutilizan entre mensajes no puede vivir en un ThreadLocal, y
+ * por eso lo toman de un ReusablePool.
+ */
+public class BoundedExecutor implements DisposableBean {
+
+    private final ExecutorService delegate;
+
+    private final Semaphore permits;
+
+    private final int maxInFlight;
+
+    /**
+     * @param delegate    ejecutor real (p. ej. un hilo virtual por tarea)
+     * @param maxInFlight número máximo de tareas ejecutándose a la vez
+     */
+    public BoundedExecutor(ExecutorService delegate, int maxInFlight) {
+        this.delegate = delegate;
+        this.maxInFlight = maxInFlight;
+        this.permits = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * @param maxInFlight número máximo de tareas ejecutándose a la vez
+     * @return ejecutor que lanza cada tarea en un hilo virtual nuevo
+     */
+    public static BoundedExecutor virtualThreads(int maxInFlight) {
+        return new BoundedExecutor(Executors.newVirtualThreadPerTaskExecutor(), maxInFlight);
+    }
+
+    /**
+     * Alternativa con un número fijo de hilos de plataforma, uno por tarea en
+     * vuelo; sirve para comparar con {@link #virtualThreads(int)}.
+     *
+     * @param threads número de hilos, que es también el máximo de tareas en vuelo
+     * @return ejecutor sobre un pool fijo de hilos de plataforma
+     */
+    public static BoundedExecutor platformThreads(int threads) {
+        return new BoundedExecutor(
+                Executors.newFixedThreadPool(threads, Thread.ofPlatform().name("publish-", 0).daemon().factory()),
+                threads);
+    }
+
+    /**
+     * Ejecuta la tarea en cuanto haya un permiso libre.
+     *
+     * @param task tarea a ejecutar
+     * @throws RejectedExecutionException si se interrumpe la espera o el
+     *         ejecutor está cerrado
+     */
+    public void execute(Runnable task) {
+        try {
+            permits.acquire();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted waiting for a free slot", e);
+        }
+        try {
+            delegate.execute(() -> {
+                try {
+                    task.run();
+                }
+                finally {
+                    permits.release();
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Espera a que terminen todas las tareas en vuelo.
+     *
+     * @param timeout tiempo máximo de espera en ms
+     * @return true si no queda ninguna tarea en ejecución
+     * @throws InterruptedException si se interrumpe la espera
+     */
+    public boolean awaitIdle(long timeout) throws InterruptedException {
+        if (!permits.tryAcquire(maxInFlight, timeout, TimeUnit.MILLISECONDS)) {
+            return false;
+        }
+        permits.release(maxInFlight);
+        return true;
+    }
+
+    /**
+     * @return número de tareas ejecutándose en este momento
+     */
+    public int getInFlight() {
+        return maxInFlight - permits.availablePermits();
+    }
+
+    @Override
+    public void destroy() {
+        delegate.shutdown();
+    }
+}
@@ -0,0 +1,299 @@
+package com.rabbitmq.tutorial.messaging.concurrent;
+
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.context.SmartLifecycle;
+
+import com.rabbitmq.client.ShutdownSignalException;
+import com.rabbitmq.tutorial.messaging.log.MessageLog;
+import com.rabbitmq.tutorial.messaging.log.MessageLog.Event;
+import com.rabbitmq.tutorial.messaging.transport.MessageTransport;
+
+/**
+ * Motor de publicación en paralelo del perfil "parallel-sender".
+ *
+ * N hilos de envío, cada uno con su propia cola acotada de tareas y su propio
+ * canal: el hilo ejecuta sus tareas dentro de
+ * {@link MessageTransport#runPinned(Runnable)}, de modo que todas sus
+ * publicaciones salen por un canal reservado para él y no compiten por la
+ * caché de canales. Las tareas se reparten por turnos; si la cola del
+ * trabajador está llena, {@link #execute(Runnable)} bloquea al llamante para
+ * que la presión vuelva al productor.
+ *
+ * Una tarea que falla se cuenta como fallida y el trabajador sigue con la
+ * siguiente por el mismo canal. Solo si el fallo es del canal (conexión
+ * caída, canal cerrado por el broker) suelta el canal y vuelve a reservar
+ * otro tras retryInterval ms.
+ *
+ * Cada trabajador mide las tareas hechas y el tiempo que ha estado ocupado;
+ * {@link #summary()} da el ritmo total y el de cada trabajador, que es lo que
+ * hay que comparar al variar tutorial.sender.parallel.workers.
+ */
+public class ParallelSender implements SmartLifecycle {
+
+    private static final long POLL_INTERVAL = 100;
+
+    private final MessageTransport transport;
+
+    private final MessageLog messageLog;
+
+    private final Worker[] workers;
+
+    private final long retryInterval;
+
+    private final long stopTimeout;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final LongAdder failures = new LongAdder();
+
+    private final CountDownLatch finished;
+
+    private volatile boolean running;
+
+    /** Inicio de la primera tarea (0 hasta que empieza alguna) */
+    private final AtomicLong firstTask = new AtomicLong();
+
+    /** Fin de la última tarea: el mayor de todos los trabajadores */
+    private final LongAccumulator lastTask = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param transport     transporte con el que publican las tareas
+     * @param messageLog    log de eventos de mensajes
+     * @param workers       número de hilos de envío (uno por canal)
+     * @param queueCapacity tareas pendientes que admite cada trabajador
+     * @param retryInterval espera (ms) antes de volver a reservar un canal tras un fallo
+     * @param stopTimeout   espera máxima (ms) de {@link #stop()} a que se vacíen las colas
+     */
+    public ParallelSender(MessageTransport transport, MessageLog messageLog, int workers, int queueCapacity,
+            long retryInterval, long stopTimeout) {
+        this.transport = transport;
+        this.messageLog = messageLog;
+        this.workers = new Worker[Math.max(1, workers)];
+        for (int i = 0; i < this.workers.length; i++) {
+            this.workers[i] = new Worker(queueCapacity);
+        }
+        this.retryInterval = retryInterval;
+        this.stopTimeout = stopTimeout;
+        this.finished = new CountDownLatch(this.workers.length);
+    }
+
+    /**
+     * Encola la tarea en el siguiente trabajador, esperando si su cola está
+     * llena.
+     *
+     * @param task tarea que publica con el MessageTransport
+     * @throws RejectedExecutionException si el motor está parado o se
+     *         interrumpe la espera
+     */
+    public void execute(Runnable task) {
+        if (!running) {
+            throw new RejectedExecutionException("Parallel sender is not running");
+        }
+        Worker worker = workers[Math.floorMod(next.getAndIncrement(), workers.length)];
+        try {
+            worker.tasks.put(task);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted waiting for a free slot", e);
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        for (int i = 0; i < workers.length; i++) {
+            Worker worker = workers[i];
+            Thread.ofPlatform().name("parallel-sender-" + i).daemon().start(() -> work(worker));
+        }
+    }
+
+    /**
+     * Deja de aceptar tareas y espera, como mucho stopTimeout ms, a que los
+     * trabajadores vacíen sus colas.
+     */
+    @Override
+    public void stop() {
+        stop(stopTimeout);
+    }
+
+    /**
+     * Deja de aceptar tareas y espera a que los trabajadores vacíen sus
+     * colas. Si vence el plazo siguen publicando lo que les quede en segundo
+     * plano; {@link #getQueued()} dice cuánto es.
+     *
+     * @param timeoutMillis espera máxima (ms)
+     * @return true si se vaciaron todas las colas dentro del plazo
+     */
+    public boolean stop(long timeoutMillis) {
+        running = false;
+        try {
+            return finished.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int getWorkers() {
+        return workers.length;
+    }
+
+    public long getCompleted() {
+        long completed = 0;
+        for (Worker worker : workers) {
+            completed += worker.completed.sum();
+        }
+        return completed;
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * @return tareas esperando en las colas de los trabajadores
+     */
+    public int getQueued() {
+        int queued = 0;
+        for (Worker worker : workers) {
+            queued += worker.tasks.size();
+        }
+        return queued;
+    }
+
+    /**
+     * Resumen del motor: ritmo total entre la primera y la última tarea y,
+     * por trabajador, tareas hechas y ritmo sobre su tiempo ocupado.
+     *
+     * @return texto del resumen, una línea por concepto
+     */
+    public String summary() {
+        long completed = getCompleted();
+        double seconds = Math.max(1e-9, (lastTask.get() - firstTask.get()) / 1e9);
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, " [parallel] %d workers: %d tasks in %.2f s (%.1f tasks/s), %d failed%n",
+                workers.length, completed, seconds, completed == 0 ? 0.0 : completed / seconds, failures.sum()));
+        for (int i = 0; i < workers.length; i++) {
+            long done = workers[i].completed.sum();
+            double busy = workers[i].busyNanos.sum() / 1e9;
+            out.append(String.format(Locale.ROOT, " [parallel] worker %d: %d tasks, busy %.2f s (%.1f tasks/s)%n", i,
+                    done, busy, busy > 0 ? done / busy : 0.0));
+        }
+        return out.toString();
+    }
+
+    private void work(Worker worker) {
+        try {
+            while (running || !worker.tasks.isEmpty()) {
+                try {
+                    transport.runPinned(() -> drain(worker));
+                }
+                catch (RuntimeException e) {
+                    failures.increment();
+                    if (messageLog.sample(Event.FAILED)) {
+                        messageLog.warn(" [!] Parallel sender channel failed, pinning another in {} ms: {}",
+                                retryInterval, e.toString());
+                    }
+                    if (!pause()) {
+                        return;
+                    }
+                }
+            }
+        }
+        finally {
+            finished.countDown();
+        }
+    }
+
+    private void drain(Worker worker) {
+        while (running || !worker.tasks.isEmpty()) {
+            Runnable task;
+            try {
+                task = worker.tasks.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (task == null) {
+                continue;
+            }
+            long start = System.nanoTime();
+            firstTask.compareAndSet(0, start);
+            try {
+                task.run();
+                worker.completed.increment();
+            }
+            catch (RuntimeException e) {
+                if (isChannelFailure(e)) {
+                    throw e;
+                }
+                failures.increment();
+                if (messageLog.sample(Event.FAILED)) {
+                    messageLog.warn(" [!] Parallel sender task failed: {}", e.toString());
+                }
+            }
+            finally {
+                long end = System.nanoTime();
+                worker.busyNanos.add(end - start);
+                lastTask.accumulate(end);
+            }
+        }
+    }
+
+    /**
+     * Fallo del canal o de la conexión, tras el que hay que reservar otro
+     * canal. Un cuerpo que no se puede convertir también es una AmqpException,
+     * pero el canal sigue sirviendo.
+     */
+    static boolean isChannelFailure(RuntimeException e) {
+        return e instanceof AmqpException && !(e instanceof MessageConversionException)
+                || e instanceof ShutdownSignalException;
+    }
+
+    private boolean pause() {
+        try {
+            Thread.sleep(retryInterval);
+            return true;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Cola de tareas y contadores de un trabajador.
+     */
+    private static final class Worker {
+
+        private final BlockingQueue<Runnable> tasks;
+
+        private final LongAdder completed = new LongAdder();
+
+        private final LongAdder busyNanos = new LongAdder();
+
+        private Worker(int capacity) {
+            this.tasks = new ArrayBlockingQueue<>(capacity);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.rabbitmq.tutorial.messaging.concurrent;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Objetos reutilizables (buffers, Deflater...) que no se pueden compartir
+ * entre hilos a la vez.
+ *
+ * En hilos de plataforma cada hilo tiene el suyo en un ThreadLocal, como
+ * hasta ahora. Los hilos virtuales, en cambio, se crean uno por tarea: un
+ * ThreadLocal nacería y moriría con cada mensaje. Para ellos hay una reserva
+ * compartida y acotada: {@link #acquire()} toma un objeto libre (o crea uno
+ * si no queda ninguno) y {@link #release(Object)} lo devuelve; si la reserva
+ * está llena el objeto se descarta (y se cierra, si se indicó cómo). Así el
+ * número de objetos vivos queda acotado por los envíos en vuelo y no por los
+ * mensajes enviados.
+ *
+ * Cada {@link #acquire()} debe ir seguido de un {@link #release(Object)} en
+ * el mismo hilo, normalmente en un finally.
+ *
+ * @param <T> tipo del objeto reutilizable
+ */
+public final class ReusablePool<T> {
+
+    private final Supplier<T> factory;
+
+    private final ThreadLocal<T> perThread;
+
+    private final ArrayBlockingQueue<T> shared;
+
+    private final Consumer<? super T> discard;
+
+    /**
+     * @param factory  crea un objeto nuevo
+     * @param capacity objetos que guarda la reserva de los hilos virtuales
+     */
+    public ReusablePool(Supplier<T> factory, int capacity) {
+        this(factory, capacity, value -> { });
+    }
+
+    /**
+     * @param factory  crea un objeto nuevo
+     * @param capacity objetos que guarda la reserva de los hilos virtuales
+     * @param discard  libera un objeto que no cabe en la reserva (p. ej.
+     *                 Deflater::end, para no esperar al GC)
+     */
+    public ReusablePool(Supplier<T> factory, int capacity, Consumer<? super T> discard) {
+        this.factory = factory;
+        this.perThread = ThreadLocal.withInitial(factory);
+        this.shared = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.discard = discard;
+    }
+
+    /**
+     * @return objeto para uso exclusivo del hilo actual hasta {@link #release(Object)}
+     */
+    public T acquire() {
+        if (!Thread.currentThread().isVirtual()) {
+            return perThread.get();
+        }
+        T value = shared.poll();
+        return value != null ? value : factory.get();
+    }
+
+    /**
+     * @param value objeto obtenido con {@link #acquire()} en este mismo hilo
+     */
+    public void release(T value) {
+        if (Thread.currentThread().isVirtual() && !shared.offer(value)) {
+            discard.accept(value);
+        }
+    }
+
+    /**
+     * @return objetos libres en la reserva de los hilos virtuales
+     */
+    public int getIdle() {
+        return shared.size();
+    }
+}
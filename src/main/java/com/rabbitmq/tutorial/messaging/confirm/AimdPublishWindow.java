@@ -0,0 +1,375 @@
+package com.rabbitmq.tutorial.messaging.confirm;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionBlockedEvent;
+import org.springframework.amqp.rabbit.connection.ConnectionListener;
+import org.springframework.amqp.rabbit.connection.ConnectionUnblockedEvent;
+import org.springframework.context.event.EventListener;
+
+import com.rabbitmq.client.ShutdownSignalException;
+
+import com.rabbitmq.tutorial.messaging.log.MessageLog;
+
+/**
+ * Ventana adaptativa AIMD (aumento aditivo, reducción multiplicativa) para
+ * el ConfirmingPublisher (perfil "flow-control").
+ *
+ * - Aumento: cada confirmación con un RTT por debajo de targetRtt suma
+ *   1/limit a la ventana (una unidad por ventana confirmada), solo si la
+ *   ventana ha llegado a llenarse desde que estuvo vacía; un productor que
+ *   no la aprovecha no la hace crecer.
+ * - Reducción: una confirmación más lenta que targetRtt o un nack
+ *   multiplican la ventana por backoff, como mucho una vez por RTT
+ *   suavizado, para no hundirla con una racha de confirmaciones lentas.
+ * - connection.blocked: el broker ha activado una alarma (memoria o disco);
+ *   se reduce la ventana y los envíos esperan en {@link #acquire(long)}
+ *   hasta connection.unblocked, en lugar de seguir llenando el socket. El
+ *   tiempo bloqueado no cuenta para el timeout de acquire: la espera la
+ *   impone el broker, no la ventana, y fallar los envíos no la acortaría.
+ *   Si la conexión se cierra o se crea una nueva mientras tanto, el
+ *   connection.unblocked no llegará nunca; por eso la ventana escucha
+ *   también la factoría de conexiones (ConnectionListener) y deja pasar a
+ *   los envíos, que fallarán o irán ya por la conexión nueva.
+ *
+ * El tamaño se mantiene entre minLimit y maxLimit. Así los productores
+ * frenan de forma gradual al subir la latencia de confirmación, antes de
+ * que salten las alarmas del broker.
+ */
+public class AimdPublishWindow implements PublishWindow, ConnectionListener {
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition changed = lock.newCondition();
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final long targetRtt;
+
+    private final double backoff;
+
+    private final LongSupplier nanoClock;
+
+    private final MessageLog messageLog;
+
+    private double limit;
+
+    private int inFlight;
+
+    private boolean blocked;
+
+    private boolean saturated;
+
+    private long smoothedRtt;
+
+    private long lastDecrease;
+
+    private long decreases;
+
+    private long blockedCount;
+
+    /**
+     * @param initialLimit tamaño inicial de la ventana
+     * @param minLimit     tamaño mínimo
+     * @param maxLimit     tamaño máximo
+     * @param targetRtt    RTT de confirmación (ms) por encima del cual se reduce
+     * @param backoff      factor de reducción (entre 0 y 1)
+     * @param messageLog   log donde se avisa del bloqueo y desbloqueo de la conexión
+     */
+    public AimdPublishWindow(int initialLimit, int minLimit, int maxLimit, long targetRtt, double backoff,
+            MessageLog messageLog) {
+        this(initialLimit, minLimit, maxLimit, targetRtt, backoff, messageLog, System::nanoTime);
+    }
+
+    AimdPublishWindow(int initialLimit, int minLimit, int maxLimit, long targetRtt, double backoff,
+            MessageLog messageLog, LongSupplier nanoClock) {
+        if (minLimit < 1 || maxLimit < minLimit || backoff <= 0 || backoff >= 1) {
+            throw new IllegalArgumentException("Invalid AIMD window: min=" + minLimit + " max=" + maxLimit
+                    + " backoff=" + backoff);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.targetRtt = TimeUnit.MILLISECONDS.toNanos(targetRtt);
+        this.backoff = backoff;
+        this.messageLog = messageLog;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Ocupa un hueco de la ventana. Mientras la conexión está bloqueada se
+     * espera sin consumir el timeout.
+     *
+     * @param timeout espera máxima en ms por un hueco, sin contar el tiempo
+     *                que la conexión esté bloqueada
+     * @return true si se obtuvo el hueco antes del timeout
+     * @throws InterruptedException si se interrumpe la espera
+     */
+    @Override
+    public boolean acquire(long timeout) throws InterruptedException {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeout);
+        lock.lock();
+        try {
+            while (blocked || inFlight >= (int) limit) {
+                if (blocked) {
+                    changed.await();
+                    continue;
+                }
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = changed.awaitNanos(remaining);
+            }
+            inFlight++;
+            if (inFlight >= (int) limit) {
+                saturated = true;
+            }
+            return true;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void acked(long rttNanos) {
+        lock.lock();
+        try {
+            inFlight--;
+            smoothedRtt = smoothedRtt == 0 ? rttNanos : smoothedRtt + (rttNanos - smoothedRtt) / 8;
+            if (rttNanos > targetRtt) {
+                decrease();
+            }
+            else if (saturated) {
+                limit = Math.min(maxLimit, limit + 1.0 / (int) limit);
+            }
+            if (inFlight == 0) {
+                saturated = false;
+            }
+            changed.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void nacked() {
+        lock.lock();
+        try {
+            decrease();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void failed() {
+        lock.lock();
+        try {
+            inFlight--;
+            if (inFlight == 0) {
+                saturated = false;
+            }
+            changed.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean awaitEmpty(long timeout) throws InterruptedException {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeout);
+        lock.lock();
+        try {
+            while (inFlight > 0) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = changed.awaitNanos(remaining);
+            }
+            return true;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * El broker ha bloqueado la conexión (alarma de memoria o disco).
+     *
+     * @param event evento publicado por la factoría de conexiones
+     */
+    @EventListener
+    public void onBlocked(ConnectionBlockedEvent event) {
+        blocked(event.getReason());
+    }
+
+    /**
+     * @param event evento publicado por la factoría de conexiones
+     */
+    @EventListener
+    public void onUnblocked(ConnectionUnblockedEvent event) {
+        unblocked();
+    }
+
+    /**
+     * Una conexión nueva no hereda el bloqueo de la anterior.
+     *
+     * @param connection conexión creada por la factoría
+     */
+    @Override
+    public void onCreate(Connection connection) {
+        released("created");
+    }
+
+    /**
+     * @param connection conexión cerrada por la factoría
+     */
+    @Override
+    public void onClose(Connection connection) {
+        released("closed");
+    }
+
+    /**
+     * @param signal motivo del cierre de la conexión por el broker o la red
+     */
+    @Override
+    public void onShutDown(ShutdownSignalException signal) {
+        released("shut down");
+    }
+
+    void blocked(String reason) {
+        boolean changedState = false;
+        lock.lock();
+        try {
+            if (!blocked) {
+                blocked = true;
+                blockedCount++;
+                limit = Math.max(minLimit, limit * backoff);
+                changedState = true;
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+        if (changedState) {
+            messageLog.warn(" [!] Connection blocked by broker: {}", reason);
+        }
+    }
+
+    void unblocked() {
+        if (clearBlocked()) {
+            messageLog.info(" [x] Connection unblocked");
+        }
+    }
+
+    void released(String state) {
+        if (clearBlocked()) {
+            messageLog.warn(" [!] Connection {} while blocked, releasing senders", state);
+        }
+    }
+
+    private boolean clearBlocked() {
+        lock.lock();
+        try {
+            if (!blocked) {
+                return false;
+            }
+            blocked = false;
+            changed.signalAll();
+            return true;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isBlocked() {
+        lock.lock();
+        try {
+            return blocked;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return RTT de confirmación suavizado (media exponencial, 1/8) en ns
+     */
+    public long getSmoothedRtt() {
+        lock.lock();
+        try {
+            return smoothedRtt;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return veces que se ha reducido la ventana por RTT alto o nack
+     */
+    public long getDecreases() {
+        lock.lock();
+        try {
+            return decreases;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return veces que el broker ha bloqueado la conexión
+     */
+    public long getBlockedCount() {
+        lock.lock();
+        try {
+            return blockedCount;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private void decrease() {
+        long now = nanoClock.getAsLong();
+        if (decreases > 0 && now - lastDecrease < smoothedRtt) {
+            return;
+        }
+        lastDecrease = now;
+        limit = Math.max(minLimit, limit * backoff);
+        decreases++;
+    }
+}
@@ -0,0 +1,258 @@
+package com.rabbitmq.tutorial.messaging.confirm;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.ReturnedMessage;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+/**
+ * Publicador con confirmaciones asíncronas (publisher confirms) y ventana
+ * acotada de mensajes en vuelo.
+ *
+ * Cada envío devuelve un CompletableFuture que se completa cuando el broker
+ * confirma (ack) el mensaje, de modo que el llamante puede encadenar miles de
+ * publicaciones sin esperar una a una y aun así saber qué se ha persistido.
+ *
+ * Funcionamiento:
+ * - Los envíos pendientes se guardan en un ConcurrentHashMap indexado por el
+ *   id de correlación; las confirmaciones llegan por el futuro de
+ *   CorrelationData en el hilo de la conexión, sin bloqueos.
+ * - Una {@link PublishWindow} limita el número de mensajes sin confirmar:
+ *   de tamaño fijo por defecto, o adaptativa según el RTT de confirmación y
+ *   los bloqueos del broker ({@link AimdPublishWindow}, perfil
+ *   "flow-control"). Si la ventana está llena, el envío espera como máximo
+ *   windowTimeout ms y, si no hay hueco, el futuro falla con
+ *   PublishFailedException. Con la ventana adaptativa, el tiempo que el
+ *   broker mantiene bloqueada la conexión no cuenta para ese límite.
+ * - Un nack se reintenta (reenviando el mismo Message ya serializado) hasta
+ *   maxRetries veces; los reintentos se lanzan en retryExecutor para no
+ *   publicar desde el hilo de la conexión.
+ * - Un mensaje devuelto (return por no ser enrutable) no se reintenta: se
+ *   informa completando el futuro con PublishFailedException.
+ *
+ * Requiere que la factoría de conexiones tenga publisher-confirm-type
+ * "correlated" y publisher-returns activado (ver perfil "confirms" en
+ * application.yml), y un RabbitTemplate propio con mandatory activado para
+ * que el broker devuelva los mensajes no enrutables. El template no debe ser
+ * un BatchingRabbitTemplate, que confirma lotes completos y no mensajes
+ * individuales.
+ */
+public class ConfirmingPublisher {
+
+    private final RabbitTemplate template;
+
+    private final Executor retryExecutor;
+
+    private final PublishWindow window;
+
+    private final long windowTimeout;
+
+    private final int maxRetries;
+
+    private final ConcurrentHashMap<String, PendingPublish> pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final LongAdder acked = new LongAdder();
+
+    private final LongAdder nacked = new LongAdder();
+
+    private final LongAdder returned = new LongAdder();
+
+    private final LongAdder retried = new LongAdder();
+
+    /**
+     * @param template      RabbitTemplate propio, con mandatory y confirmaciones correlacionadas
+     * @param retryExecutor ejecutor para reenviar mensajes tras un nack
+     * @param maxInFlight   número máximo de mensajes sin confirmar
+     * @param windowTimeout tiempo máximo (ms) de espera por hueco en la ventana
+     * @param maxRetries    reintentos por mensaje tras un nack
+     */
+    public ConfirmingPublisher(RabbitTemplate template, Executor retryExecutor, int maxInFlight,
+            long windowTimeout, int maxRetries) {
+        this(template, retryExecutor, new FixedPublishWindow(maxInFlight), windowTimeout, maxRetries);
+    }
+
+    /**
+     * @param template      RabbitTemplate propio, con mandatory y confirmaciones correlacionadas
+     * @param retryExecutor ejecutor para reenviar mensajes tras un nack
+     * @param window        ventana de mensajes sin confirmar
+     * @param windowTimeout tiempo máximo (ms) de espera por hueco en la ventana
+     * @param maxRetries    reintentos por mensaje tras un nack
+     */
+    public ConfirmingPublisher(RabbitTemplate template, Executor retryExecutor, PublishWindow window,
+            long windowTimeout, int maxRetries) {
+        this.template = template;
+        this.retryExecutor = retryExecutor;
+        this.window = window;
+        this.windowTimeout = windowTimeout;
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * Publica un objeto en el exchange por defecto usando el routing key indicado.
+     *
+     * @param routingKey routing key (nombre de la cola con el exchange por defecto)
+     * @param payload    objeto a convertir con el MessageConverter del template
+     * @return futuro que se completa cuando el broker confirma el mensaje
+     */
+    public CompletableFuture<Void> send(String routingKey, Object payload) {
+        return send("", routingKey, payload);
+    }
+
+    /**
+     * Publica un objeto. El payload se convierte una sola vez; los reintentos
+     * reenvían el mismo Message.
+     *
+     * @param exchange   exchange de destino
+     * @param routingKey routing key
+     * @param payload    objeto a convertir con el MessageConverter del template
+     * @return futuro que se completa cuando el broker confirma el mensaje
+     */
+    public CompletableFuture<Void> send(String exchange, String routingKey, Object payload) {
+        Message message = template.getMessageConverter().toMessage(payload, new MessageProperties());
+        return send(exchange, routingKey, message);
+    }
+
+    /**
+     * Publica un Message ya construido.
+     *
+     * @param exchange   exchange de destino
+     * @param routingKey routing key
+     * @param message    mensaje a publicar
+     * @return futuro que se completa cuando el broker confirma el mensaje
+     */
+    public CompletableFuture<Void> send(String exchange, String routingKey, Message message) {
+        PendingPublish publish = new PendingPublish(exchange, routingKey, message);
+        try {
+            if (!window.acquire(windowTimeout)) {
+                publish.future.completeExceptionally(new PublishFailedException(
+                        "Publish window full (" + window.getLimit() + " unconfirmed messages)"));
+                return publish.future;
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            publish.future.completeExceptionally(new PublishFailedException("Interrupted waiting for publish window", e));
+            return publish.future;
+        }
+        publish(publish);
+        return publish.future;
+    }
+
+    /**
+     * Espera a que se confirmen todos los mensajes en vuelo.
+     *
+     * @param timeout tiempo máximo de espera en ms
+     * @return true si no quedan mensajes sin confirmar
+     * @throws InterruptedException si se interrumpe la espera
+     */
+    public boolean awaitConfirms(long timeout) throws InterruptedException {
+        return window.awaitEmpty(timeout);
+    }
+
+    /**
+     * @return número de mensajes publicados pendientes de confirmación
+     */
+    public int getInFlight() {
+        return pending.size();
+    }
+
+    public long getAcked() {
+        return acked.sum();
+    }
+
+    public long getNacked() {
+        return nacked.sum();
+    }
+
+    public long getReturned() {
+        return returned.sum();
+    }
+
+    public long getRetried() {
+        return retried.sum();
+    }
+
+    private void publish(PendingPublish publish) {
+        CorrelationData correlation = new CorrelationData(Long.toString(sequence.incrementAndGet()));
+        publish.sentAt = System.nanoTime();
+        pending.put(correlation.getId(), publish);
+        correlation.getFuture().whenComplete((confirm, ex) -> onConfirm(correlation, confirm, ex));
+        try {
+            template.send(publish.exchange, publish.routingKey, publish.message, correlation);
+        }
+        catch (AmqpException e) {
+            if (pending.remove(correlation.getId()) != null) {
+                fail(publish, new PublishFailedException("Publish failed", e));
+            }
+        }
+    }
+
+    private void onConfirm(CorrelationData correlation, CorrelationData.Confirm confirm, Throwable ex) {
+        PendingPublish publish = pending.remove(correlation.getId());
+        if (publish == null) {
+            return;
+        }
+        ReturnedMessage returnedMessage = correlation.getReturned();
+        if (ex == null && confirm.isAck() && returnedMessage == null) {
+            acked.increment();
+            window.acked(System.nanoTime() - publish.sentAt);
+            publish.future.complete(null);
+            return;
+        }
+        if (returnedMessage != null) {
+            returned.increment();
+            fail(publish, new PublishFailedException("Message returned: " + returnedMessage.getReplyText(),
+                    returnedMessage));
+            return;
+        }
+        nacked.increment();
+        if (publish.attempts++ < maxRetries) {
+            retried.increment();
+            window.nacked();
+            retryExecutor.execute(() -> publish(publish));
+            return;
+        }
+        String reason = ex != null ? ex.getMessage() : confirm.getReason();
+        fail(publish, new PublishFailedException("Message nacked after " + publish.attempts + " attempts: " + reason, ex));
+    }
+
+    private void fail(PendingPublish publish, PublishFailedException e) {
+        window.failed();
+        publish.future.completeExceptionally(e);
+    }
+
+    /**
+     * Envío pendiente de confirmación. Conserva el Message serializado para
+     * poder reenviarlo sin volver a convertir el payload.
+     */
+    private static final class PendingPublish {
+
+        private final String exchange;
+
+        private final String routingKey;
+
+        private final Message message;
+
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private int attempts;
+
+        private long sentAt;
+
+        private PendingPublish(String exchange, String routingKey, Message message) {
+            this.exchange = exchange;
+            this.routingKey = routingKey;
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.rabbitmq.tutorial.messaging.confirm;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ventana de tamaño fijo sobre un Semaphore (comportamiento por defecto del
+ * ConfirmingPublisher).
+ */
+final class FixedPublishWindow implements PublishWindow {
+
+    private final Semaphore permits;
+
+    private final int limit;
+
+    FixedPublishWindow(int limit) {
+        this.limit = limit;
+        this.permits = new Semaphore(limit);
+    }
+
+    @Override
+    public boolean acquire(long timeout) throws InterruptedException {
+        return permits.tryAcquire(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void acked(long rttNanos) {
+        permits.release();
+    }
+
+    @Override
+    public void nacked() {
+    }
+
+    @Override
+    public void failed() {
+        permits.release();
+    }
+
+    @Override
+    public boolean awaitEmpty(long timeout) throws InterruptedException {
+        if (!permits.tryAcquire(limit, timeout, TimeUnit.MILLISECONDS)) {
+            return false;
+        }
+        permits.release(limit);
+        return true;
+    }
+
+    @Override
+    public int getLimit() {
+        return limit;
+    }
+}
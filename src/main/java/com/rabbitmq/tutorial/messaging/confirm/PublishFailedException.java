@@ -0,0 +1,41 @@
+package com.rabbitmq.tutorial.messaging.confirm;
+
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.ReturnedMessage;
+
+/**
+ * Excepción con la que se completa el futuro de un envío que el broker no ha
+ * confirmado: nack tras agotar los reintentos, mensaje devuelto por no ser
+ * enrutable (mandatory) o ventana de mensajes en vuelo llena.
+ */
+public class PublishFailedException extends AmqpException {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Mensaje devuelto por el broker, o null si el fallo no fue un return */
+    private final transient ReturnedMessage returned;
+
+    public PublishFailedException(String message) {
+        this(message, null, null);
+    }
+
+    public PublishFailedException(String message, Throwable cause) {
+        this(message, null, cause);
+    }
+
+    public PublishFailedException(String message, ReturnedMessage returned) {
+        this(message, returned, null);
+    }
+
+    private PublishFailedException(String message, ReturnedMessage returned, Throwable cause) {
+        super(message, cause);
+        this.returned = returned;
+    }
+
+    /**
+     * @return el mensaje devuelto por el broker, o null si el fallo no fue un return
+     */
+    public ReturnedMessage getReturned() {
+        return returned;
+    }
+}
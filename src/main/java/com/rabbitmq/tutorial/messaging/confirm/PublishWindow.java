@@ -0,0 +1,52 @@
+package com.rabbitmq.tutorial.messaging.confirm;
+
+/**
+ * Ventana de mensajes publicados sin confirmar del {@link ConfirmingPublisher}.
+ *
+ * Cada envío ocupa un hueco con {@link #acquire(long)} y lo libera al
+ * confirmarse ({@link #acked(long)}) o al fallar definitivamente
+ * ({@link #failed()}). Un nack que se va a reintentar conserva el hueco y se
+ * notifica con {@link #nacked()}.
+ */
+public interface PublishWindow {
+
+    /**
+     * Ocupa un hueco de la ventana.
+     *
+     * @param timeout espera máxima en ms
+     * @return true si se obtuvo el hueco antes del timeout
+     * @throws InterruptedException si se interrumpe la espera
+     */
+    boolean acquire(long timeout) throws InterruptedException;
+
+    /**
+     * Libera el hueco de un mensaje confirmado.
+     *
+     * @param rttNanos tiempo desde la publicación hasta la confirmación
+     */
+    void acked(long rttNanos);
+
+    /**
+     * El broker rechazó un mensaje que se va a reintentar (el hueco se conserva).
+     */
+    void nacked();
+
+    /**
+     * Libera el hueco de un mensaje que no se confirmará.
+     */
+    void failed();
+
+    /**
+     * Espera a que no quede ningún mensaje en vuelo.
+     *
+     * @param timeout espera máxima en ms
+     * @return true si la ventana quedó vacía
+     * @throws InterruptedException si se interrumpe la espera
+     */
+    boolean awaitEmpty(long timeout) throws InterruptedException;
+
+    /**
+     * @return tamaño actual de la ventana
+     */
+    int getLimit();
+}
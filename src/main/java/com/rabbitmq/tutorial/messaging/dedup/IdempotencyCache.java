@@ -0,0 +1,379 @@
+package com.rabbitmq.tutorial.messaging.dedup;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Conjunto acotado y concurrente de claves de idempotencia ya procesadas.
+ *
+ * Sirve para descartar en O(1) las reentregas (requeue o caída del
+ * consumidor) sin consultar una base de datos. Características:
+ * - Acotado: como máximo maxEntries claves; al llenarse se expulsa la más
+ *   antigua.
+ * - TTL: una clave deja de considerarse vista pasados ttlMillis.
+ * - Concurrente: las claves se reparten por su huella entre segmentos
+ *   independientes, cada uno con su propio cerrojo.
+ * - Poca asignación de memoria: cada segmento es una tabla de direccionamiento
+ *   abierto sobre long[] más un anillo FIFO de inserción; no se crean nodos
+ *   ni objetos por clave.
+ * - Huellas: por defecto solo se guarda una huella de 64 bits de cada clave
+ *   (memoria fija por entrada; probabilidad de colisión ~n²/2^65). Con
+ *   exactKeys=true se guardan también las claves para compararlas.
+ *
+ * Como todas las claves tienen el mismo TTL, el orden de inserción coincide
+ * con el de caducidad y basta con purgar la cabeza del anillo.
+ */
+public class IdempotencyCache {
+
+    private final Segment[] segments;
+
+    private final int segmentMask;
+
+    private final long ttlMillis;
+
+    private final LongSupplier clock;
+
+    private final ConcurrentHashMap<String, Boolean> inProgress = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxEntries número máximo de claves recordadas
+     * @param ttlMillis  tiempo (ms) durante el que una clave se considera vista
+     * @param exactKeys  true para guardar las claves además de su huella
+     */
+    public IdempotencyCache(int maxEntries, long ttlMillis, boolean exactKeys) {
+        this(maxEntries, ttlMillis, exactKeys, 16, System::currentTimeMillis);
+    }
+
+    /**
+     * @param maxEntries número máximo de claves recordadas
+     * @param ttlMillis  tiempo (ms) durante el que una clave se considera vista
+     * @param exactKeys  true para guardar las claves además de su huella
+     * @param segments   número de segmentos (se redondea a potencia de dos)
+     * @param clock      reloj en milisegundos
+     */
+    public IdempotencyCache(int maxEntries, long ttlMillis, boolean exactKeys, int segments, LongSupplier clock) {
+        int count = segments <= 1 ? 1 : Integer.highestOneBit(segments - 1) << 1;
+        count = Math.min(count, Math.max(1, Integer.highestOneBit(maxEntries)));
+        this.segments = new Segment[count];
+        this.segmentMask = count - 1;
+        int perSegment = Math.max(1, (maxEntries + count - 1) / count);
+        for (int i = 0; i < count; i++) {
+            this.segments[i] = new Segment(perSegment, exactKeys);
+        }
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Registra la clave si no se había visto.
+     *
+     * @param key clave de idempotencia
+     * @return true si es la primera vez (se debe procesar); false si es duplicada
+     */
+    public boolean markSeen(String key) {
+        long fingerprint = fingerprint(key);
+        boolean added = segmentFor(fingerprint).add(fingerprint, key, clock.getAsLong(), ttlMillis, evictions);
+        (added ? misses : hits).increment();
+        return added;
+    }
+
+    /**
+     * Olvida una clave, p. ej. cuando su procesamiento ha fallado y el mensaje
+     * se va a reentregar.
+     *
+     * @param key clave de idempotencia
+     */
+    public void forget(String key) {
+        long fingerprint = fingerprint(key);
+        segmentFor(fingerprint).remove(fingerprint, key);
+    }
+
+    /**
+     * Envuelve un manejador para que solo procese cada clave una vez. Si el
+     * manejador lanza una excepción la clave se olvida, de modo que la
+     * reentrega sí se procese. Los payloads sin clave pasan siempre.
+     *
+     * Mientras una clave se está procesando, un duplicado que llegue por otro
+     * consumidor no se descarta: falla con IllegalStateException para que el
+     * contenedor lo devuelva a la cola (o lo reintente con el perfil "retry").
+     * Si el primero falla, el duplicado será el que la aplique; si termina
+     * bien, el duplicado se descartará al volver.
+     *
+     * @param keyExtractor función que obtiene la clave del payload
+     * @param handler      manejador real
+     * @param <T>          tipo del payload
+     * @return manejador con deduplicación
+     */
+    public <T> Consumer<T> guard(Function<? super T, String> keyExtractor, Consumer<? super T> handler) {
+        return payload -> {
+            String key = keyExtractor.apply(payload);
+            if (key == null) {
+                handler.accept(payload);
+                return;
+            }
+            if (inProgress.putIfAbsent(key, Boolean.TRUE) != null) {
+                throw new IllegalStateException("Key " + key + " is being processed by another consumer");
+            }
+            try {
+                if (!markSeen(key)) {
+                    return;
+                }
+                try {
+                    handler.accept(payload);
+                }
+                catch (RuntimeException e) {
+                    forget(key);
+                    throw e;
+                }
+            }
+            finally {
+                inProgress.remove(key);
+            }
+        };
+    }
+
+    /**
+     * @return número de claves duplicadas detectadas
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return número de claves nuevas registradas
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return número de claves expulsadas por tamaño
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return número de claves recordadas actualmente
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private Segment segmentFor(long fingerprint) {
+        return segments[(int) (fingerprint >>> 40) & segmentMask];
+    }
+
+    /**
+     * Huella de 64 bits: FNV-1a sobre los chars seguido del mezclado final de
+     * MurmurHash3. Nunca devuelve 0, que marca las celdas vacías.
+     */
+    static long fingerprint(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+
+    /**
+     * Segmento: tabla hash con sondeo lineal (borrado por desplazamiento hacia
+     * atrás, sin lápidas) y anillo FIFO con huella y caducidad de cada clave.
+     * Cada celda de la tabla guarda la posición de su entrada en el anillo
+     * para que una entrada olvidada no borre otra posterior con la misma clave.
+     *
+     * Olvidar una clave deja su entrada del anillo huérfana (huella 0) salvo
+     * que sea la cola, que simplemente se retira. Las huérfanas no cuentan
+     * como claves recordadas y, si el anillo se llena, se compacta antes de
+     * expulsar una clave viva.
+     */
+    private static final class Segment {
+
+        private final long[] table;
+
+        private final String[] tableKeys;
+
+        private final int[] tableRingIndex;
+
+        private final int tableMask;
+
+        private final long[] ringFingerprints;
+
+        private final long[] ringExpiry;
+
+        private final String[] ringKeys;
+
+        private int head;
+
+        private int size;
+
+        private int orphans;
+
+        private Segment(int capacity, boolean exactKeys) {
+            int tableSize = Integer.highestOneBit(Math.max(2, capacity * 2 - 1)) << 1;
+            this.table = new long[tableSize];
+            this.tableKeys = exactKeys ? new String[tableSize] : null;
+            this.tableRingIndex = new int[tableSize];
+            this.tableMask = tableSize - 1;
+            this.ringFingerprints = new long[capacity];
+            this.ringExpiry = new long[capacity];
+            this.ringKeys = exactKeys ? new String[capacity] : null;
+        }
+
+        private synchronized boolean add(long fingerprint, String key, long now, long ttl, LongAdder evictions) {
+            while (size > 0 && ringExpiry[head] <= now) {
+                removeHead();
+            }
+            if (find(fingerprint, key) >= 0) {
+                return false;
+            }
+            if (size == ringFingerprints.length && orphans > 0) {
+                compact();
+            }
+            if (size == ringFingerprints.length) {
+                removeHead();
+                evictions.increment();
+            }
+            int slot = (int) fingerprint & tableMask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & tableMask;
+            }
+            int tail = (head + size) % ringFingerprints.length;
+            table[slot] = fingerprint;
+            tableRingIndex[slot] = tail;
+            if (tableKeys != null) {
+                tableKeys[slot] = key;
+            }
+            ringFingerprints[tail] = fingerprint;
+            ringExpiry[tail] = now + ttl;
+            if (ringKeys != null) {
+                ringKeys[tail] = key;
+            }
+            size++;
+            return true;
+        }
+
+        private synchronized void remove(long fingerprint, String key) {
+            int slot = find(fingerprint, key);
+            if (slot < 0) {
+                return;
+            }
+            int index = tableRingIndex[slot];
+            deleteSlot(slot);
+            ringFingerprints[index] = 0;
+            if (ringKeys != null) {
+                ringKeys[index] = null;
+            }
+            orphans++;
+            // Se retiran las huérfanas de la cola: el caso habitual es olvidar
+            // la última clave registrada, que no deja hueco en el anillo
+            while (size > 0 && ringFingerprints[(head + size - 1) % ringFingerprints.length] == 0) {
+                size--;
+                orphans--;
+            }
+        }
+
+        private synchronized int size() {
+            return size - orphans;
+        }
+
+        private void removeHead() {
+            if (ringFingerprints[head] == 0) {
+                orphans--;
+            }
+            else {
+                int slot = find(ringFingerprints[head], ringKeys != null ? ringKeys[head] : null);
+                if (slot >= 0 && tableRingIndex[slot] == head) {
+                    deleteSlot(slot);
+                }
+            }
+            if (ringKeys != null) {
+                ringKeys[head] = null;
+            }
+            head = (head + 1) % ringFingerprints.length;
+            size--;
+        }
+
+        /**
+         * Junta las entradas vivas del anillo desde la cabeza, en el mismo
+         * orden, y actualiza la posición que guarda su celda de la tabla.
+         */
+        private void compact() {
+            int capacity = ringFingerprints.length;
+            int live = 0;
+            for (int i = 0; i < size; i++) {
+                int from = (head + i) % capacity;
+                if (ringFingerprints[from] == 0) {
+                    continue;
+                }
+                int to = (head + live) % capacity;
+                if (from != to) {
+                    int slot = find(ringFingerprints[from], ringKeys != null ? ringKeys[from] : null);
+                    tableRingIndex[slot] = to;
+                    ringFingerprints[to] = ringFingerprints[from];
+                    ringExpiry[to] = ringExpiry[from];
+                    ringFingerprints[from] = 0;
+                    if (ringKeys != null) {
+                        ringKeys[to] = ringKeys[from];
+                        ringKeys[from] = null;
+                    }
+                }
+                live++;
+            }
+            size = live;
+            orphans = 0;
+        }
+
+        private int find(long fingerprint, String key) {
+            int slot = (int) fingerprint & tableMask;
+            while (table[slot] != 0) {
+                if (table[slot] == fingerprint && (tableKeys == null || tableKeys[slot].equals(key))) {
+                    return slot;
+                }
+                slot = (slot + 1) & tableMask;
+            }
+            return -1;
+        }
+
+        private void deleteSlot(int slot) {
+            int hole = slot;
+            int next = (hole + 1) & tableMask;
+            while (table[next] != 0) {
+                int ideal = (int) table[next] & tableMask;
+                // Se mueve la entrada si su posición ideal no está entre el hueco y ella
+                if (((next - ideal) & tableMask) >= ((next - hole) & tableMask)) {
+                    table[hole] = table[next];
+                    tableRingIndex[hole] = tableRingIndex[next];
+                    if (tableKeys != null) {
+                        tableKeys[hole] = tableKeys[next];
+                    }
+                    hole = next;
+                }
+                next = (next + 1) & tableMask;
+            }
+            table[hole] = 0;
+            if (tableKeys != null) {
+                tableKeys[hole] = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,414 @@
+package com.rabbitmq.tutorial.messaging.dispatch;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.AbstractJavaTypeMapper;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.rabbitmq.tutorial.messaging.codec.JsonArrayReader;
+import com.rabbitmq.tutorial.messaging.codec.JsonCodec;
+
+/**
+ * Capa de despacho por tipo para los mensajes recibidos.
+ *
+ * Decide el tipo de destino antes de decodificar nada, en este orden:
+ * 0. content_type con un convertidor propio registrado (p. ej. el formato
+ *    binario de Transaccion).
+ * 1. Cabecera __TypeId__ (la que pone Jackson2JsonMessageConverter) si ese
+ *    tipo está registrado.
+ * 2. content_type text/* : se entrega como texto.
+ * 3. Inspección del primer byte no blanco del cuerpo: '{' se parsea con el
+ *    tipo JSON por defecto, '"' es un String JSON y cualquier otra cosa es
+ *    texto plano.
+ *
+ * El parseo se hace directamente desde el byte[] del mensaje con el
+ * ObjectReader precalculado por tipo del JsonCodec compartido, sin construir
+ * un String intermedio.
+ * Solo el caso de inspección '{' puede fallar de forma "esperada" (se cuenta
+ * como fallback y se trata como texto); el texto plano nunca paga un intento
+ * de parseo.
+ *
+ * Los arrays JSON de un tipo (cabecera __TypeId__ con el nombre de la clase
+ * array, p. ej. "[Lcom.rabbitmq.tutorial.model.Transaccion;", que es lo que
+ * pone Jackson2JsonMessageConverter para un Transaccion[]) no se
+ * materializan: si se registraron con
+ * {@link #registerArray(Class, Supplier, Consumer, Consumer)} se recorren en
+ * streaming con un {@link JsonArrayReader} y cada elemento llega al manejador
+ * en cuanto se decodifica.
+ *
+ * El registro es extensible: la configuración declara los tipos conocidos
+ * con {@link #registerType(Class)} y cada receptor asocia su manejador con
+ * {@link #register(Class, Consumer)}; cualquier otro componente puede añadir
+ * tipos nuevos de la misma forma.
+ */
+public class MessageDispatcher {
+
+    /** Cabecera con el nombre de clase que añade el convertidor Jackson */
+    public static final String TYPE_ID_HEADER = AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME;
+
+    private static final String STRING_TYPE_ID = String.class.getName();
+
+    private final JsonCodec codec;
+
+    private final ObjectReader stringReader;
+
+    private final Map<String, Route<?>> routes = new ConcurrentHashMap<>();
+
+    private final Map<String, ArrayRoute<?>> arrayRoutes = new ConcurrentHashMap<>();
+
+    private final Map<String, MessageConverter> contentTypes = new ConcurrentHashMap<>();
+
+    private volatile Consumer<String> textHandler = text -> { };
+
+    private volatile Route<?> defaultJsonRoute;
+
+    private final LongAdder fallbacks = new LongAdder();
+
+    private final LongAdder conversionFailures = new LongAdder();
+
+    public MessageDispatcher(JsonCodec codec) {
+        this.codec = codec;
+        this.stringReader = codec.reader(String.class);
+    }
+
+    /**
+     * Registra un tipo sin manejador, solo para poder decodificarlo con
+     * {@link #decode(Message)}. Si ya estaba registrado no se modifica.
+     *
+     * @param type clase del payload
+     * @return este dispatcher, para encadenar registros
+     */
+    public MessageDispatcher registerType(Class<?> type) {
+        routes.putIfAbsent(type.getName(), new Route<>(type.getName(), codec.reader(type), null));
+        return this;
+    }
+
+    /**
+     * Registra un manejador para un tipo. El tipo se reconoce por la cabecera
+     * __TypeId__ con el nombre completo de la clase.
+     *
+     * @param type    clase del payload
+     * @param handler manejador que recibe el objeto deserializado
+     * @param <T>     tipo del payload
+     * @return este dispatcher, para encadenar registros
+     */
+    public <T> MessageDispatcher register(Class<T> type, Consumer<? super T> handler) {
+        Route<T> route = new Route<>(type.getName(), codec.reader(type), handler);
+        routes.put(type.getName(), route);
+        if (defaultJsonRoute != null && defaultJsonRoute.type.equals(type.getName())) {
+            defaultJsonRoute = route;
+        }
+        return this;
+    }
+
+    /**
+     * Registra un manejador para los arrays JSON de un tipo. El array se
+     * reconoce por la cabecera __TypeId__ con el nombre de la clase array y
+     * sus elementos se entregan uno a uno, decodificados sobre un mismo
+     * objeto reutilizado: el manejador no debe guardar la referencia.
+     *
+     * @param type    clase de los elementos
+     * @param factory crea el objeto que se reutiliza en cada array
+     * @param reset   deja el objeto sin valores antes de cada elemento
+     * @param handler manejador que recibe cada elemento
+     * @param <T>     tipo de los elementos
+     * @return este dispatcher, para encadenar registros
+     */
+    public <T> MessageDispatcher registerArray(Class<T> type, Supplier<? extends T> factory,
+            Consumer<? super T> reset, Consumer<? super T> handler) {
+        arrayRoutes.put(type.arrayType().getName(),
+                new ArrayRoute<>(new JsonArrayReader<T>(codec.reader(type), factory, reset), handler));
+        return this;
+    }
+
+    /**
+     * Registra un convertidor para un content_type concreto. Los mensajes con
+     * ese content_type se decodifican con él antes de mirar __TypeId__; el
+     * tipo del objeto resultante debe estar registrado para poder despacharlo.
+     *
+     * @param contentType content_type (sin parámetros)
+     * @param converter   convertidor que decodifica el cuerpo
+     * @return este dispatcher, para encadenar registros
+     */
+    public MessageDispatcher registerContentType(String contentType, MessageConverter converter) {
+        contentTypes.put(contentType, converter);
+        return this;
+    }
+
+    /**
+     * Registra el manejador de mensajes de texto.
+     *
+     * @param handler manejador que recibe el texto decodificado
+     * @return este dispatcher, para encadenar registros
+     */
+    public MessageDispatcher registerText(Consumer<String> handler) {
+        this.textHandler = handler;
+        return this;
+    }
+
+    /**
+     * Tipo con el que se parsean los objetos JSON que llegan sin cabecera
+     * __TypeId__ (productores antiguos). Debe estar registrado previamente.
+     *
+     * @param type clase registrada con {@link #register(Class, Consumer)}
+     * @return este dispatcher, para encadenar registros
+     */
+    public MessageDispatcher setDefaultJsonType(Class<?> type) {
+        Route<?> route = routes.get(type.getName());
+        if (route == null) {
+            throw new IllegalArgumentException("Type not registered: " + type.getName());
+        }
+        this.defaultJsonRoute = route;
+        return this;
+    }
+
+    /**
+     * Decodifica el mensaje y lo entrega a su manejador. Un array registrado
+     * entrega cada elemento por separado; si un elemento no se puede
+     * decodificar, los anteriores ya se han procesado.
+     *
+     * @param message mensaje recibido
+     * @throws MessageConversionException si el cuerpo no corresponde al tipo
+     *         declarado en la cabecera __TypeId__ (un JSON null tampoco)
+     * @throws AmqpRejectAndDontRequeueException si el tipo no está registrado
+     *         o no tiene manejador
+     */
+    public void dispatch(Message message) {
+        if (dispatchArray(message)) {
+            return;
+        }
+        Object payload = decode(message);
+        if (payload instanceof String text) {
+            textHandler.accept(text);
+            return;
+        }
+        Route<?> route = routes.get(payload.getClass().getName());
+        if (route == null) {
+            // Un conversor por content type puede devolver un tipo sin registrar
+            throw new AmqpRejectAndDontRequeueException("No route registered for " + payload.getClass().getName());
+        }
+        if (route.handler == null) {
+            throw new AmqpRejectAndDontRequeueException("No handler registered for " + route.type);
+        }
+        route.accept(payload);
+    }
+
+    /**
+     * Entrega los elementos del mensaje a su manejador si es un array
+     * registrado con {@link #registerArray(Class, Supplier, Consumer, Consumer)}.
+     * Quien decodifica con {@link #decode(Message)} debe pasar antes por aquí:
+     * decode no conoce los arrays y devolvería el cuerpo como texto.
+     *
+     * @param message mensaje recibido
+     * @return true si era un array registrado y ya se ha despachado
+     * @throws MessageConversionException si un elemento no corresponde al tipo;
+     *         los anteriores ya se han procesado
+     */
+    public boolean dispatchArray(Message message) {
+        if (arrayRoutes.isEmpty()) {
+            return false;
+        }
+        Object typeId = message.getMessageProperties().getHeaders().get(TYPE_ID_HEADER);
+        ArrayRoute<?> arrayRoute = typeId != null ? arrayRoutes.get(typeId.toString()) : null;
+        if (arrayRoute == null) {
+            return false;
+        }
+        try {
+            arrayRoute.read(message.getBody());
+        }
+        catch (MessageConversionException e) {
+            conversionFailures.increment();
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * Decodifica el mensaje al tipo que le corresponde sin invocar manejadores.
+     * Los mensajes que no son de ningún tipo registrado se devuelven como String.
+     *
+     * @param message mensaje recibido
+     * @return objeto del tipo registrado o String con el texto, nunca null
+     * @throws MessageConversionException si el cuerpo no corresponde al tipo
+     *         declarado en la cabecera __TypeId__ (un JSON null tampoco)
+     */
+    public Object decode(Message message) {
+        try {
+            return decodeBody(message);
+        }
+        catch (MessageConversionException e) {
+            conversionFailures.increment();
+            throw e;
+        }
+    }
+
+    private Object decodeBody(Message message) {
+        byte[] body = message.getBody();
+        MessageProperties properties = message.getMessageProperties();
+
+        String contentType = properties.getContentType();
+        if (contentType != null && !contentTypes.isEmpty()) {
+            MessageConverter converter = contentTypes.get(baseType(contentType));
+            if (converter != null) {
+                Object value = converter.fromMessage(message);
+                if (value == null) {
+                    throw new MessageConversionException("Converter for " + contentType + " returned null");
+                }
+                return value;
+            }
+        }
+
+        Object typeId = properties.getHeaders().get(TYPE_ID_HEADER);
+        if (typeId != null) {
+            String name = typeId.toString();
+            Route<?> route = routes.get(name);
+            if (route != null) {
+                return read(route.reader, body, name);
+            }
+            if (STRING_TYPE_ID.equals(name)) {
+                return read(stringReader, body, name);
+            }
+        }
+
+        if (contentType != null && contentType.startsWith("text/")) {
+            return new String(body, charset(properties));
+        }
+
+        int first = firstNonWhitespace(body);
+        if (first < 0) {
+            return "";
+        }
+        if (body[first] == '{' && defaultJsonRoute != null) {
+            try {
+                return defaultJsonRoute.reader.readValue(body);
+            }
+            catch (IOException e) {
+                fallbacks.increment();
+            }
+        }
+        else if (body[first] == '"') {
+            try {
+                return stringReader.readValue(body);
+            }
+            catch (IOException e) {
+                fallbacks.increment();
+            }
+        }
+        return new String(body, charset(properties)).trim();
+    }
+
+    /**
+     * @return número de mensajes que parecían JSON pero no se pudieron
+     *         parsear y se trataron como texto
+     */
+    public long getFallbacks() {
+        return fallbacks.sum();
+    }
+
+    /**
+     * @return número de mensajes rechazados porque su cuerpo no se pudo
+     *         convertir al tipo declarado
+     */
+    public long getConversionFailures() {
+        return conversionFailures.sum();
+    }
+
+    private static Object read(ObjectReader reader, byte[] body, String typeId) {
+        Object value;
+        try {
+            value = reader.readValue(body);
+        }
+        catch (IOException e) {
+            throw new MessageConversionException("Body does not match declared type " + typeId, e);
+        }
+        // Un cuerpo JSON null no es un valor del tipo declarado
+        if (value == null) {
+            throw new MessageConversionException("Body is JSON null for declared type " + typeId);
+        }
+        return value;
+    }
+
+    private static String baseType(String contentType) {
+        int semicolon = contentType.indexOf(';');
+        return semicolon < 0 ? contentType : contentType.substring(0, semicolon).trim();
+    }
+
+    private static int firstNonWhitespace(byte[] body) {
+        for (int i = 0; i < body.length; i++) {
+            byte b = body[i];
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Charset charset(MessageProperties properties) {
+        String encoding = properties.getContentEncoding();
+        if (encoding == null) {
+            return StandardCharsets.UTF_8;
+        }
+        try {
+            return Charset.forName(encoding);
+        }
+        catch (IllegalArgumentException e) {
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+    /**
+     * Entrada del registro: lector Jackson precalculado y manejador del tipo
+     * (null si el tipo solo se registró para decodificar).
+     */
+    private static final class Route<T> {
+
+        private final String type;
+
+        private final ObjectReader reader;
+
+        private final Consumer<? super T> handler;
+
+        private Route(String type, ObjectReader reader, Consumer<? super T> handler) {
+            this.type = type;
+            this.reader = reader;
+            this.handler = handler;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void accept(Object payload) {
+            handler.accept((T) payload);
+        }
+    }
+
+    /**
+     * Entrada del registro de arrays: lector en streaming y manejador de los
+     * elementos.
+     */
+    private static final class ArrayRoute<T> {
+
+        private final JsonArrayReader<T> reader;
+
+        private final Consumer<? super T> handler;
+
+        private ArrayRoute(JsonArrayReader<T> reader, Consumer<? super T> handler) {
+            this.reader = reader;
+            this.handler = handler;
+        }
+
+        private int read(byte[] body) {
+            return reader.read(body, handler);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.rabbitmq.tutorial.messaging.lane;
+
+/**
+ * Carril de un tipo de payload: cola propia y presupuesto de consumo
+ * (consumidores y prefetch) independiente del resto de carriles.
+ */
+public final class Lane {
+
+    /** Prefijo del nombre de las colas de carril */
+    public static final String QUEUE_PREFIX = "hello.";
+
+    private final String name;
+
+    private final String typeId;
+
+    private final int concurrency;
+
+    private final int maxConcurrency;
+
+    private final int prefetch;
+
+    /**
+     * @param name           nombre del carril (sufijo de la cola)
+     * @param type           clase del payload que va por este carril
+     * @param concurrency    consumidores iniciales
+     * @param maxConcurrency consumidores máximos
+     * @param prefetch       mensajes sin ack por consumidor
+     */
+    public Lane(String name, Class<?> type, int concurrency, int maxConcurrency, int prefetch) {
+        this.name = name;
+        this.typeId = type.getName();
+        this.concurrency = Math.max(1, concurrency);
+        this.maxConcurrency = Math.max(this.concurrency, maxConcurrency);
+        this.prefetch = prefetch;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return valor de la cabecera __TypeId__ de los mensajes de este carril
+     */
+    public String getTypeId() {
+        return typeId;
+    }
+
+    /**
+     * @return nombre de la cola del carril ("hello." + nombre)
+     */
+    public String getQueue() {
+        return QUEUE_PREFIX + name;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public int getPrefetch() {
+        return prefetch;
+    }
+
+    @Override
+    public String toString() {
+        return getQueue() + " (" + concurrency + "-" + maxConcurrency + " consumers, prefetch " + prefetch + ")";
+    }
+}
@@ -0,0 +1,80 @@
+package com.rabbitmq.tutorial.messaging.lane;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.context.SmartLifecycle;
+
+/**
+ * Un contenedor de listeners por carril.
+ *
+ * Cada contenedor parte de los ajustes de la fábrica común (convertidor,
+ * descompresión, advice de reintento, hilos virtuales...) y les aplica el
+ * número de consumidores y el prefetch de su carril. Así una ráfaga de
+ * mensajes lentos en un carril solo ocupa los consumidores y el prefetch de
+ * ese carril, y los demás siguen entregando sin esperar detrás de ella.
+ *
+ * Con la fábrica en modo lote del perfil "batch-consumer" el listener es un
+ * BatchMessageListener y cada carril entrega lotes; el contenedor nunca usa
+ * un prefetch menor que el tamaño de lote. Con el perfil "retry" los
+ * contenedores heredan el recoverer de la fábrica, en lotes o no, que
+ * también atiende las colas de los carriles.
+ */
+public class LaneConsumers implements SmartLifecycle {
+
+    private final LaneRouter router;
+
+    private final SimpleRabbitListenerContainerFactory containerFactory;
+
+    private final MessageListener listener;
+
+    private final List<SimpleMessageListenerContainer> containers = new ArrayList<>();
+
+    private volatile boolean running;
+
+    /**
+     * @param router           carriles configurados
+     * @param containerFactory fábrica de la que se copian los ajustes de los contenedores
+     * @param listener         manejador de los mensajes (o lotes) de todos los carriles
+     */
+    public LaneConsumers(LaneRouter router, SimpleRabbitListenerContainerFactory containerFactory,
+            MessageListener listener) {
+        this.router = router;
+        this.containerFactory = containerFactory;
+        this.listener = listener;
+    }
+
+    @Override
+    public void start() {
+        for (Lane lane : router.getLanes()) {
+            SimpleMessageListenerContainer container = containerFactory.createListenerContainer();
+            container.setQueueNames(lane.getQueue());
+            container.setConcurrentConsumers(lane.getConcurrency());
+            container.setMaxConcurrentConsumers(lane.getMaxConcurrency());
+            container.setPrefetchCount(lane.getPrefetch());
+            container.setMessageListener(listener);
+            container.afterPropertiesSet();
+            container.start();
+            containers.add(container);
+        }
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        for (SimpleMessageListenerContainer container : containers) {
+            container.stop();
+            container.destroy();
+        }
+        containers.clear();
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
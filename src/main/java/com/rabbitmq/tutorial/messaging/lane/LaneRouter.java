@@ -0,0 +1,61 @@
+package com.rabbitmq.tutorial.messaging.lane;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.amqp.core.Message;
+
+import com.rabbitmq.tutorial.messaging.codec.JsonCodec;
+
+/**
+ * Reparto de los mensajes entre carriles según su tipo de payload.
+ *
+ * El Sender ya ha serializado el mensaje, así que el tipo se lee de la
+ * cabecera __TypeId__ que pone el JsonCodec, sin mirar el cuerpo. Un
+ * mensaje de un tipo sin carril va a la cola por defecto ("hello"), igual
+ * que sin el perfil "lanes".
+ *
+ * El mapa de tipos se construye una vez y no cambia, así que se consulta
+ * sin sincronización desde cualquier hilo que publique.
+ */
+public class LaneRouter {
+
+    private final List<Lane> lanes;
+
+    private final Map<String, String> queuesByType = new HashMap<>();
+
+    private final String defaultQueue;
+
+    /**
+     * @param lanes        carriles configurados
+     * @param defaultQueue cola de los mensajes sin carril
+     */
+    public LaneRouter(List<Lane> lanes, String defaultQueue) {
+        this.lanes = List.copyOf(lanes);
+        this.defaultQueue = defaultQueue;
+        for (Lane lane : this.lanes) {
+            if (queuesByType.putIfAbsent(lane.getTypeId(), lane.getQueue()) != null) {
+                throw new IllegalArgumentException("More than one lane for " + lane.getTypeId());
+            }
+        }
+    }
+
+    /**
+     * @param message mensaje serializado con el JsonCodec
+     * @return cola del carril de su tipo, o la cola por defecto
+     */
+    public String queueFor(Message message) {
+        Object typeId = message.getMessageProperties().getHeaders().get(JsonCodec.TYPE_ID_HEADER);
+        String queue = typeId != null ? queuesByType.get(typeId.toString()) : null;
+        return queue != null ? queue : defaultQueue;
+    }
+
+    public List<Lane> getLanes() {
+        return lanes;
+    }
+
+    public String getDefaultQueue() {
+        return defaultQueue;
+    }
+}
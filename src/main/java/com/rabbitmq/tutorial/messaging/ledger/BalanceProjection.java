@@ -0,0 +1,188 @@
+package com.rabbitmq.tutorial.messaging.ledger;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.rabbitmq.tutorial.model.Transaccion;
+
+/**
+ * Proyección en memoria de los saldos por cuenta a partir del flujo de
+ * Transaccion.
+ *
+ * Cada transacción resta su cantidad a id_cuenta_emisor, la suma a
+ * id_cuenta_receptor y cuenta una más para su estado_id. Se actualiza de
+ * forma incremental en el consumidor, después de la deduplicación por
+ * clave_indempotencia.
+ *
+ * Importes: los saldos se guardan como long en unidades menores (céntimos
+ * con scale=100), de modo que las sumas son exactas. La cantidad llega como
+ * BigDecimal, tal cual venía en el JSON (o en el formato binario), y se
+ * convierte una vez con {@link #toMinorUnits(BigDecimal)} sin pasar por
+ * float ni double, así que es exacta para cualquier importe que quepa en un
+ * long de unidades menores.
+ *
+ * Concurrencia: las cuentas se reparten entre franjas, cada una con su
+ * propio cerrojo y su {@link IntLongHashMap}; consumidores concurrentes solo
+ * compiten si tocan cuentas de la misma franja. Débito y crédito se aplican
+ * por separado, así que un lector puede ver uno sin el otro durante un
+ * instante (la suma global es consistente en reposo). Las consultas de
+ * saldo son O(1).
+ */
+public class BalanceProjection {
+
+    private final Stripe[] stripes;
+
+    private final int stripeMask;
+
+    private final BigDecimal scale;
+
+    private final Map<String, LongAdder> estados = new ConcurrentHashMap<>();
+
+    private final LongAdder applied = new LongAdder();
+
+    /**
+     * @param stripes          número de franjas (se redondea a potencia de dos)
+     * @param expectedAccounts número de cuentas esperado, para dimensionar las tablas
+     * @param scale            unidades menores por unidad (100 = céntimos)
+     */
+    public BalanceProjection(int stripes, int expectedAccounts, int scale) {
+        int count = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.stripes = new Stripe[count];
+        this.stripeMask = count - 1;
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new Stripe(Math.max(16, expectedAccounts / count));
+        }
+        this.scale = BigDecimal.valueOf(scale);
+    }
+
+    /**
+     * Aplica una transacción a la proyección.
+     *
+     * @param tx transacción ya deduplicada
+     */
+    public void apply(Transaccion tx) {
+        if (tx.getCantidad() != null) {
+            long amount = toMinorUnits(tx.getCantidad());
+            if (tx.getId_cuenta_emisor() != null) {
+                stripeFor(tx.getId_cuenta_emisor()).add(tx.getId_cuenta_emisor(), -amount);
+            }
+            if (tx.getId_cuenta_receptor() != null) {
+                stripeFor(tx.getId_cuenta_receptor()).add(tx.getId_cuenta_receptor(), amount);
+            }
+        }
+        if (tx.getEstado_id() != null) {
+            LongAdder counter = estados.get(tx.getEstado_id());
+            if (counter == null) {
+                counter = estados.computeIfAbsent(tx.getEstado_id(), e -> new LongAdder());
+            }
+            counter.increment();
+        }
+        applied.increment();
+    }
+
+    /**
+     * @param account id de cuenta
+     * @return saldo en unidades menores (0 si la cuenta no tiene movimientos)
+     */
+    public long balance(int account) {
+        return stripeFor(account).get(account);
+    }
+
+    /**
+     * @param estado estado_id
+     * @return número de transacciones aplicadas con ese estado
+     */
+    public long count(String estado) {
+        LongAdder counter = estados.get(estado);
+        return counter != null ? counter.sum() : 0;
+    }
+
+    /**
+     * @return número de transacciones por estado_id, ordenado por estado
+     */
+    public Map<String, Long> countsByEstado() {
+        Map<String, Long> counts = new TreeMap<>();
+        estados.forEach((estado, counter) -> counts.put(estado, counter.sum()));
+        return counts;
+    }
+
+    /**
+     * @return número de cuentas con algún movimiento
+     */
+    public int accounts() {
+        int total = 0;
+        for (Stripe stripe : stripes) {
+            total += stripe.size();
+        }
+        return total;
+    }
+
+    /**
+     * @return suma de todos los saldos; 0 en reposo si todas las
+     *         transacciones tienen emisor y receptor
+     */
+    public long totalBalance() {
+        long total = 0;
+        for (Stripe stripe : stripes) {
+            total += stripe.sum();
+        }
+        return total;
+    }
+
+    /**
+     * @return número de transacciones aplicadas
+     */
+    public long getApplied() {
+        return applied.sum();
+    }
+
+    /**
+     * Convierte un importe a unidades menores redondeando al entero más
+     * cercano (las mitades, lejos de cero).
+     *
+     * @param amount importe en unidades
+     * @return importe en unidades menores
+     * @throws ArithmeticException si el importe no cabe en un long de
+     *         unidades menores
+     */
+    public long toMinorUnits(BigDecimal amount) {
+        return amount.multiply(scale).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    private Stripe stripeFor(int account) {
+        int h = account * 0x9E3779B9;
+        return stripes[(h >>> 16) & stripeMask];
+    }
+
+    /**
+     * Franja de cuentas con su cerrojo.
+     */
+    private static final class Stripe {
+
+        private final IntLongHashMap balances;
+
+        private Stripe(int expectedAccounts) {
+            this.balances = new IntLongHashMap(expectedAccounts);
+        }
+
+        private synchronized void add(int account, long delta) {
+            balances.addTo(account, delta);
+        }
+
+        private synchronized long get(int account) {
+            return balances.get(account);
+        }
+
+        private synchronized int size() {
+            return balances.size();
+        }
+
+        private synchronized long sum() {
+            return balances.sum();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.rabbitmq.tutorial.messaging.ledger;
+
+import java.util.Arrays;
+
+/**
+ * Mapa int → long sobre arrays primitivos con direccionamiento abierto y
+ * sondeo lineal. Sin objetos por entrada (ni Integer ni Long ni nodos): una
+ * cuenta ocupa 12 bytes de datos más el hueco de la tabla (carga máxima 0,5).
+ *
+ * Solo admite sumar a una clave y consultarla, que es lo que necesita la
+ * proyección de saldos; las claves no se borran. No es thread-safe: cada
+ * franja de {@link BalanceProjection} protege el suyo.
+ */
+final class IntLongHashMap {
+
+    /** Marca de celda vacía; la clave con este valor se guarda aparte */
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    private int[] keys;
+
+    private long[] values;
+
+    private int mask;
+
+    private int size;
+
+    private boolean hasEmptyKey;
+
+    private long emptyKeyValue;
+
+    IntLongHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Suma delta al valor de la clave (0 si no existía).
+     *
+     * @return el nuevo valor
+     */
+    long addTo(int key, long delta) {
+        if (key == EMPTY) {
+            if (!hasEmptyKey) {
+                hasEmptyKey = true;
+                size++;
+            }
+            emptyKeyValue += delta;
+            return emptyKeyValue;
+        }
+        int slot = slot(key);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                values[slot] += delta;
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = delta;
+        if (++size > (mask + 1) >> 1) {
+            rehash();
+        }
+        return delta;
+    }
+
+    /**
+     * @return el valor de la clave, o 0 si no existe
+     */
+    long get(int key) {
+        if (key == EMPTY) {
+            return hasEmptyKey ? emptyKeyValue : 0;
+        }
+        int slot = slot(key);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return suma de todos los valores
+     */
+    long sum() {
+        long total = hasEmptyKey ? emptyKeyValue : 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                total += values[i];
+            }
+        }
+        return total;
+    }
+
+    private int slot(int key) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        values = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    private void rehash() {
+        int[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(oldKeys.length << 1);
+        for (int i = 0; i < oldKeys.length; i++) {
+            int key = oldKeys[i];
+            if (key != EMPTY) {
+                int slot = slot(key);
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
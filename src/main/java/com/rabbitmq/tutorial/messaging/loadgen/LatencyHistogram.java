@@ -0,0 +1,136 @@
+package com.rabbitmq.tutorial.messaging.loadgen;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latencias con cubos log-lineales, al estilo de
+ * HdrHistogram: cada potencia de dos se divide en 2^(precisionBits-1) cubos
+ * iguales, así que el error relativo de cualquier valor es como mucho
+ * 1/2^(precisionBits-1) (0,4 % con 8 bits) en todo el rango de long, con
+ * memoria fija (~60 KB con 8 bits).
+ *
+ * Registrar es lock-free (un incremento en un AtomicLongArray) y se puede
+ * hacer desde varios hilos a la vez. Los percentiles devuelven el valor más
+ * alto del cubo, como HdrHistogram, sin superar el máximo registrado.
+ */
+public final class LatencyHistogram {
+
+    private final int subBuckets;
+
+    private final int precisionBits;
+
+    private final AtomicLongArray counts;
+
+    private final LongAdder total = new LongAdder();
+
+    private final LongAdder sum = new LongAdder();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param precisionBits bits de precisión por potencia de dos (entre 2 y 16)
+     */
+    public LatencyHistogram(int precisionBits) {
+        if (precisionBits < 2 || precisionBits > 16) {
+            throw new IllegalArgumentException("precisionBits must be between 2 and 16: " + precisionBits);
+        }
+        this.precisionBits = precisionBits;
+        this.subBuckets = 1 << precisionBits;
+        this.counts = new AtomicLongArray(index(Long.MAX_VALUE) + 1);
+    }
+
+    /**
+     * @param value valor a registrar (los negativos cuentan como 0)
+     */
+    public void record(long value) {
+        long v = Math.max(0, value);
+        counts.incrementAndGet(index(v));
+        total.increment();
+        sum.add(v);
+        long current = max.get();
+        while (v > current && !max.compareAndSet(current, v)) {
+            current = max.get();
+        }
+    }
+
+    public long getCount() {
+        return total.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long count = total.sum();
+        return count == 0 ? 0 : (double) sum.sum() / count;
+    }
+
+    /**
+     * @param percentile percentil entre 0 y 100
+     * @return valor por debajo del cual (o igual) queda ese porcentaje de
+     *         las muestras; 0 si no hay muestras
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = total.sum();
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestEquivalentValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Línea con número de muestras, media, percentiles y máximo en ms, para
+     * un histograma registrado en nanosegundos.
+     *
+     * @return texto del resumen
+     */
+    public String format() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "count=%d mean=%.3fms", getCount(), millis(getMean())));
+        for (double p : new double[] { 50, 90, 99, 99.9, 99.99 }) {
+            out.append(String.format(Locale.ROOT, " p%s=%.3fms", trim(p), millis(getValueAtPercentile(p))));
+        }
+        return out.append(String.format(Locale.ROOT, " max=%.3fms", millis(getMax()))).toString();
+    }
+
+    int index(long value) {
+        if (value < subBuckets) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (precisionBits - 1);
+        int half = subBuckets >> 1;
+        return subBuckets + (shift - 1) * half + (int) (value >>> shift) - half;
+    }
+
+    long highestEquivalentValue(int index) {
+        if (index < subBuckets) {
+            return index;
+        }
+        int half = subBuckets >> 1;
+        int shift = (index - subBuckets) / half + 1;
+        long mantissa = (index - subBuckets) % half + half;
+        long highest = ((mantissa + 1) << shift) - 1;
+        return highest < 0 ? Long.MAX_VALUE : highest;
+    }
+
+    private static double millis(double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static String trim(double percentile) {
+        return percentile == Math.rint(percentile) ? Long.toString((long) percentile) : Double.toString(percentile);
+    }
+}
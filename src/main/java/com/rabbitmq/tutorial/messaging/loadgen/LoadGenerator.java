@@ -0,0 +1,270 @@
+package com.rabbitmq.tutorial.messaging.loadgen;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.context.SmartLifecycle;
+
+import com.rabbitmq.tutorial.messaging.codec.JsonCodec;
+import com.rabbitmq.tutorial.messaging.confirm.ConfirmingPublisher;
+import com.rabbitmq.tutorial.messaging.loadgen.LoadMix.Kind;
+import com.rabbitmq.tutorial.messaging.metrics.MessagingMetrics;
+import com.rabbitmq.tutorial.messaging.transport.MessageTransport;
+
+/**
+ * Generador de carga del perfil "loadgen", que sustituye a la tarea
+ * periódica del Sender.
+ *
+ * Planificación en lazo abierto: el mensaje i tiene un instante previsto
+ * start + i / rate, fijado de antemano e independiente de lo que tarden los
+ * envíos anteriores. Si un envío se retrasa, los siguientes salen en cuanto
+ * pueden para recuperar el ritmo, pero su latencia se mide desde el instante
+ * previsto. Así un parón del broker cuenta para todos los mensajes que
+ * deberían haber salido durante él, en lugar de solo para el que se quedó
+ * bloqueado (corrección de la omisión coordinada, como wrk2).
+ *
+ * Se registran dos histogramas (ns):
+ * - response: desde el instante previsto hasta que termina el envío (o llega
+ *   la confirmación con el perfil "confirms"); es la latencia que ve un
+ *   cliente que produce a ritmo fijo;
+ * - service: desde que el envío empieza de verdad; la diferencia con
+ *   response es el retraso acumulado respecto al plan.
+ *
+ * La cabecera x-sent-at lleva también el instante previsto, de modo que el
+ * timer tutorial.end-to-end del receptor queda corregido de la misma forma.
+ *
+ * Con threads &gt; 1 los instantes previstos se reparten entre los hilos por
+ * turnos.
+ */
+public class LoadGenerator implements SmartLifecycle {
+
+    private final JsonCodec codec;
+
+    private final MessageTransport transport;
+
+    private final ConfirmingPublisher publisher;
+
+    private final MessagingMetrics metrics;
+
+    private final String queue;
+
+    private final LoadMix mix;
+
+    private final double rate;
+
+    private final int threads;
+
+    private final long duration;
+
+    private final LatencyHistogram response = new LatencyHistogram(8);
+
+    private final LatencyHistogram service = new LatencyHistogram(8);
+
+    private final Map<Kind, LongAdder> sentByKind = new EnumMap<>(Kind.class);
+
+    private final LongAdder errors = new LongAdder();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final CountDownLatch finished;
+
+    private volatile boolean running;
+
+    private long startNanos;
+
+    private long startMillis;
+
+    private volatile long endNanos;
+
+    /**
+     * @param codec     codec JSON compartido
+     * @param transport transporte con el que se publica si no hay publisher
+     * @param publisher publicador con confirmaciones, o null
+     * @param metrics   métricas de mensajería (tutorial.publish)
+     * @param queue     cola destino
+     * @param mix       tipos, tamaños y claves de los mensajes
+     * @param rate      mensajes por segundo objetivo
+     * @param threads   hilos que envían
+     * @param duration  duración (ms) de la carga; 0 hasta que se pare el contexto
+     */
+    public LoadGenerator(JsonCodec codec, MessageTransport transport, ConfirmingPublisher publisher,
+            MessagingMetrics metrics, String queue, LoadMix mix, double rate, int threads, long duration) {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("rate must be positive: " + rate);
+        }
+        this.codec = codec;
+        this.transport = transport;
+        this.publisher = publisher;
+        this.metrics = metrics;
+        this.queue = queue;
+        this.mix = mix;
+        this.rate = rate;
+        this.threads = Math.max(1, threads);
+        this.duration = duration;
+        this.finished = new CountDownLatch(this.threads);
+        for (Kind kind : Kind.values()) {
+            sentByKind.put(kind, new LongAdder());
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        startMillis = System.currentTimeMillis();
+        startNanos = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+            int worker = i;
+            Thread.ofPlatform().name("loadgen-" + i).daemon().start(() -> generate(worker));
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        try {
+            finished.await(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return duración (ms) configurada de la carga; 0 si no tiene fin
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * Espera a que termine la carga (solo si tiene duración).
+     *
+     * @throws InterruptedException si se interrumpe la espera
+     */
+    public void awaitCompletion() throws InterruptedException {
+        finished.await();
+    }
+
+    /**
+     * @return true si todos los hilos de carga han terminado
+     */
+    public boolean isFinished() {
+        return finished.getCount() == 0;
+    }
+
+    public LatencyHistogram getResponse() {
+        return response;
+    }
+
+    public LatencyHistogram getService() {
+        return service;
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    /**
+     * Resumen de la carga: ritmo objetivo y conseguido, mezcla enviada y
+     * percentiles de los dos histogramas. Con confirmaciones espera antes a
+     * las que sigan en vuelo (hasta 5 s).
+     *
+     * @return texto del resumen, una línea por concepto
+     */
+    public String summary() {
+        if (publisher != null) {
+            try {
+                publisher.awaitConfirms(5000);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        long end = endNanos != 0 ? endNanos : System.nanoTime();
+        double seconds = Math.max(1e-9, (end - startNanos) / 1e9);
+        long completed = response.getCount();
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT,
+                " [loadgen] target %.1f msg/s, sent %d in %.2f s: %d ok (%.1f msg/s), %d errors%n", rate,
+                sequence.get(), seconds, completed, completed / seconds, errors.sum()));
+        out.append(" [loadgen] mix:");
+        sentByKind.forEach((kind, count) -> out.append(' ').append(kind.name().toLowerCase(Locale.ROOT))
+                .append('=').append(count.sum()));
+        out.append(System.lineSeparator());
+        out.append(" [loadgen] response (from intended send): ").append(response.format())
+                .append(System.lineSeparator());
+        out.append(" [loadgen] service (from actual send):    ").append(service.format())
+                .append(System.lineSeparator());
+        return out.toString();
+    }
+
+    private void generate(int worker) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        double interval = 1e9 / rate;
+        long deadline = duration > 0 ? startNanos + TimeUnit.MILLISECONDS.toNanos(duration) : Long.MAX_VALUE;
+        try {
+            for (long i = worker; running; i += threads) {
+                long intended = startNanos + (long) (i * interval);
+                if (intended >= deadline) {
+                    break;
+                }
+                long wait;
+                while ((wait = intended - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                Kind kind = mix.nextKind(random);
+                Message message = mix.next(kind, sequence.incrementAndGet(), codec, random);
+                send(message, intended);
+                sentByKind.get(kind).increment();
+            }
+        }
+        finally {
+            endNanos = System.nanoTime();
+            finished.countDown();
+        }
+    }
+
+    private void send(Message message, long intended) {
+        metrics.stampSent(message, startMillis + TimeUnit.NANOSECONDS.toMillis(intended - startNanos));
+        metrics.recordPublish(queue);
+        long start = System.nanoTime();
+        if (publisher == null) {
+            try {
+                transport.send(queue, message);
+            }
+            catch (RuntimeException e) {
+                errors.increment();
+                return;
+            }
+            record(intended, start);
+            return;
+        }
+        publisher.send("", queue, message).whenComplete((ok, ex) -> {
+            if (ex == null) {
+                record(intended, start);
+            }
+            else {
+                errors.increment();
+            }
+        });
+    }
+
+    private void record(long intended, long start) {
+        long now = System.nanoTime();
+        response.record(now - intended);
+        service.record(now - start);
+    }
+}
@@ -0,0 +1,161 @@
+package com.rabbitmq.tutorial.messaging.loadgen;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.springframework.amqp.core.Message;
+
+import com.rabbitmq.tutorial.messaging.codec.JsonCodec;
+import com.rabbitmq.tutorial.messaging.codec.TransaccionBinaryCodec;
+import com.rabbitmq.tutorial.model.Transaccion;
+import com.rabbitmq.tutorial.model.Usuario;
+
+/**
+ * Mezcla de mensajes del generador de carga: qué tipo se envía, con qué
+ * tamaño y sobre qué claves.
+ *
+ * - Tipos: pesos de la forma "text:60,usuario:30,transaccion:10". El tipo
+ *   transaccion_binary envía la Transaccion con TransaccionBinaryCodec en
+ *   lugar de JSON, para comparar los dos formatos con la misma carga.
+ * - Tamaños: pesos de la forma "64:70,1024:25,16384:5" (bytes:peso). Fijan
+ *   la longitud del texto y del nombre del Usuario; las Transaccion tienen
+ *   tamaño fijo.
+ * - Claves: los id de Usuario y las cuentas de las Transaccion se eligen al
+ *   azar entre 1 y keys (la cardinalidad de claves).
+ *
+ * Los textos de cada tamaño se construyen una sola vez.
+ */
+public class LoadMix {
+
+    /**
+     * Tipos de mensaje que genera la carga.
+     */
+    public enum Kind {
+        TEXT, USUARIO, TRANSACCION, TRANSACCION_BINARY
+    }
+
+    private static final String TEXT = "Hello World! ";
+
+    private final TransaccionBinaryCodec binaryCodec = new TransaccionBinaryCodec();
+
+    private final Kind[] kinds;
+
+    private final int[] kindWeights;
+
+    private final String[] texts;
+
+    private final int[] sizeWeights;
+
+    private final int keys;
+
+    private LoadMix(Kind[] kinds, int[] kindWeights, String[] texts, int[] sizeWeights, int keys) {
+        this.kinds = kinds;
+        this.kindWeights = kindWeights;
+        this.texts = texts;
+        this.sizeWeights = sizeWeights;
+        this.keys = Math.max(2, keys);
+    }
+
+    /**
+     * @param mix   pesos por tipo, p. ej. "text:60,usuario:30,transaccion:10"
+     * @param sizes pesos por tamaño en bytes, p. ej. "64:70,1024:25"
+     * @param keys  número de claves distintas (id de Usuario y cuentas)
+     * @return mezcla configurada
+     * @throws IllegalArgumentException si alguna lista está mal formada
+     */
+    public static LoadMix parse(String mix, String sizes, int keys) {
+        List<String[]> kindEntries = entries(mix);
+        Kind[] kinds = new Kind[kindEntries.size()];
+        int[] kindWeights = new int[kindEntries.size()];
+        for (int i = 0; i < kinds.length; i++) {
+            kinds[i] = Kind.valueOf(kindEntries.get(i)[0].toUpperCase(Locale.ROOT));
+            kindWeights[i] = weight(kindEntries.get(i)[1], i > 0 ? kindWeights[i - 1] : 0);
+        }
+        List<String[]> sizeEntries = entries(sizes);
+        String[] texts = new String[sizeEntries.size()];
+        int[] sizeWeights = new int[sizeEntries.size()];
+        for (int i = 0; i < texts.length; i++) {
+            texts[i] = text(Integer.parseInt(sizeEntries.get(i)[0]));
+            sizeWeights[i] = weight(sizeEntries.get(i)[1], i > 0 ? sizeWeights[i - 1] : 0);
+        }
+        if (kindWeights[kinds.length - 1] == 0 || sizeWeights[texts.length - 1] == 0) {
+            throw new IllegalArgumentException("Weights must not all be zero: '" + mix + "', '" + sizes + "'");
+        }
+        return new LoadMix(kinds, kindWeights, texts, sizeWeights, keys);
+    }
+
+    /**
+     * @param random generador del hilo que envía
+     * @return tipo del siguiente mensaje según los pesos
+     */
+    public Kind nextKind(Random random) {
+        return kinds[pick(kindWeights, random)];
+    }
+
+    /**
+     * Crea y serializa un mensaje del tipo indicado.
+     *
+     * @param kind     tipo de mensaje
+     * @param sequence número de secuencia (id de Transaccion y clave de idempotencia)
+     * @param codec    codec JSON compartido
+     * @param random   generador del hilo que envía
+     * @return mensaje listo para publicar
+     */
+    public Message next(Kind kind, long sequence, JsonCodec codec, Random random) {
+        return switch (kind) {
+            case TEXT -> codec.toMessage(texts[pick(sizeWeights, random)]);
+            case USUARIO -> codec.toMessage(new Usuario(1 + random.nextInt(keys), texts[pick(sizeWeights, random)]));
+            case TRANSACCION -> codec.toMessage(transaccion(sequence, random));
+            case TRANSACCION_BINARY -> binaryCodec.toMessage(transaccion(sequence, random));
+        };
+    }
+
+    private Transaccion transaccion(long sequence, Random random) {
+        int emisor = 1 + random.nextInt(keys);
+        int receptor = 1 + (emisor + random.nextInt(keys - 1)) % keys;
+        LocalDateTime now = LocalDateTime.now();
+        return new Transaccion((int) sequence, "lg-" + sequence, null, emisor, receptor,
+                BigDecimal.valueOf(1 + random.nextInt(100_000), 2), now, now, "PENDIENTE");
+    }
+
+    private static int pick(int[] cumulative, Random random) {
+        int r = random.nextInt(cumulative[cumulative.length - 1]);
+        int i = 0;
+        while (r >= cumulative[i]) {
+            i++;
+        }
+        return i;
+    }
+
+    private static List<String[]> entries(String list) {
+        List<String[]> entries = new ArrayList<>();
+        for (String entry : list.split(",")) {
+            String[] parts = entry.trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected name:weight but got '" + entry + "' in '" + list + "'");
+            }
+            entries.add(new String[] { parts[0].trim(), parts[1].trim() });
+        }
+        return entries;
+    }
+
+    private static int weight(String value, int previous) {
+        int weight = Integer.parseInt(value);
+        if (weight < 0) {
+            throw new IllegalArgumentException("Negative weight: " + value);
+        }
+        return previous + weight;
+    }
+
+    private static String text(int size) {
+        StringBuilder text = new StringBuilder(size);
+        while (text.length() < size) {
+            text.append(TEXT, 0, Math.min(TEXT.length(), size - text.length()));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,163 @@
+package com.rabbitmq.tutorial.messaging.log;
+
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+
+/**
+ * Log de eventos de mensajes (envíos, recepciones, fallos) para el camino
+ * caliente.
+ *
+ * Sustituye a los System.out.println por mensaje:
+ * - Muestreo: de SENT y RECEIVED solo se emite 1 de cada sampleRate
+ *   eventos (elegido al azar, sin contención entre hilos).
+ * - Límite por tipo de evento: como mucho maxPerSecond eventos por segundo;
+ *   el resto se descarta y se cuenta en {@link #getSuppressed(Event)}.
+ * - Formato diferido: se usa la sintaxis {} de SLF4J y los cuerpos se pasan
+ *   con {@link #body(Message)}, de modo que el texto solo se construye si el
+ *   evento se llega a escribir.
+ * - Escritura asíncrona: el logger "tutorial.messages" va a un AsyncAppender
+ *   (logback-spring.xml) que nunca bloquea al hilo de mensajería.
+ *
+ * Uso:
+ * <pre>
+ * if (messageLog.sample(Event.RECEIVED)) {
+ *     messageLog.info("[x] Received JSON usuario: id={}", usuario.getId());
+ * }
+ * </pre>
+ */
+public class MessageLog {
+
+    /** Nombre del logger de eventos de mensajes */
+    public static final String LOGGER_NAME = "tutorial.messages";
+
+    /**
+     * Tipos de evento, cada uno con su propio límite por segundo.
+     */
+    public enum Event {
+        /** Mensaje publicado (muestreado) */
+        SENT,
+        /** Mensaje recibido (muestreado) */
+        RECEIVED,
+        /** Envío o procesamiento fallido (no se muestrea, solo se limita) */
+        FAILED
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(LOGGER_NAME);
+
+    private final int sampleRate;
+
+    private final int maxPerSecond;
+
+    private final Map<Event, Window> windows = new EnumMap<>(Event.class);
+
+    /**
+     * @param sampleRate   se emite 1 de cada sampleRate eventos SENT/RECEIVED (1 = todos)
+     * @param maxPerSecond máximo de eventos por segundo y tipo (0 = sin límite)
+     */
+    public MessageLog(int sampleRate, int maxPerSecond) {
+        this.sampleRate = Math.max(1, sampleRate);
+        this.maxPerSecond = maxPerSecond;
+        for (Event event : Event.values()) {
+            windows.put(event, new Window());
+        }
+    }
+
+    /**
+     * Decide si un evento se escribe. Consume una plaza del límite por
+     * segundo del tipo, así que tras un true se debe escribir el evento.
+     * FAILED se escribe con warn y los demás con info, así que se comprueba
+     * el nivel que corresponde al evento.
+     *
+     * @param event tipo de evento
+     * @return true si el evento pasa el nivel del logger, el muestreo y el límite
+     */
+    public boolean sample(Event event) {
+        if (event == Event.FAILED ? !log.isWarnEnabled() : !log.isInfoEnabled()) {
+            return false;
+        }
+        if (event != Event.FAILED && sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+            return false;
+        }
+        return maxPerSecond <= 0 || windows.get(event).tryAcquire(maxPerSecond);
+    }
+
+    public void info(String format, Object arg) {
+        log.info(format, arg);
+    }
+
+    public void info(String format, Object arg1, Object arg2) {
+        log.info(format, arg1, arg2);
+    }
+
+    public void info(String format, Object... args) {
+        log.info(format, args);
+    }
+
+    public void warn(String format, Object arg) {
+        log.warn(format, arg);
+    }
+
+    public void warn(String format, Object arg1, Object arg2) {
+        log.warn(format, arg1, arg2);
+    }
+
+    /**
+     * @param event tipo de evento
+     * @return eventos descartados por superar el límite por segundo
+     */
+    public long getSuppressed(Event event) {
+        return windows.get(event).suppressed.sum();
+    }
+
+    /**
+     * Argumento de log que muestra el cuerpo del mensaje como texto UTF-8. El
+     * String solo se crea si el evento se escribe.
+     *
+     * @param message mensaje cuyo cuerpo se mostrará
+     * @return objeto cuyo toString() decodifica el cuerpo
+     */
+    public static Object body(Message message) {
+        return new Object() {
+            @Override
+            public String toString() {
+                return new String(message.getBody(), StandardCharsets.UTF_8);
+            }
+        };
+    }
+
+    /**
+     * Ventana de un segundo del limitador de un tipo de evento. El cambio de
+     * ventana no es exacto bajo concurrencia, lo que basta para limitar el
+     * volumen de log.
+     */
+    private static final class Window {
+
+        private final AtomicLong second = new AtomicLong();
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        private final LongAdder suppressed = new LongAdder();
+
+        private boolean tryAcquire(int max) {
+            long now = System.currentTimeMillis() / 1000;
+            long current = second.get();
+            if (now != current && second.compareAndSet(current, now)) {
+                count.set(0);
+            }
+            if (count.incrementAndGet() <= max) {
+                return true;
+            }
+            suppressed.increment();
+            return false;
+        }
+    }
+}
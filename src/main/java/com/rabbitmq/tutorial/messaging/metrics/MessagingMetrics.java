@@ -0,0 +1,328 @@
+package com.rabbitmq.tutorial.messaging.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import com.rabbitmq.tutorial.messaging.confirm.AimdPublishWindow;
+import com.rabbitmq.tutorial.messaging.dispatch.MessageDispatcher;
+import com.rabbitmq.tutorial.messaging.retry.DelayedRetryRecoverer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Métricas de mensajería sobre Micrometer.
+ *
+ * Medidores registrados:
+ * <pre>
+ * tutorial.publish             contador por cola (tag queue)
+ * tutorial.publish.confirm     timer de la latencia de confirmación por cola
+ *                              (tags queue y result=ack|nack)
+ * tutorial.handler             timer por tipo de payload (tag type)
+ * tutorial.end-to-end          timer desde la cabecera x-sent-at hasta la recepción
+ * tutorial.end-to-end.queue    el mismo timer por cola de consumo (tag queue), para
+ *                              medir cada carril por separado
+ * tutorial.dispatch.fallbacks  JSON aparente tratado como texto
+ * tutorial.dispatch.conversion-failures  cuerpos que no encajan con su tipo
+ * tutorial.consumer.busy       tiempo total (s) de los consumidores manejando mensajes
+ * tutorial.consumer.active     consumidores manejando un mensaje ahora mismo
+ * tutorial.publish.window      tamaño actual de la ventana adaptativa (perfil "flow-control")
+ * tutorial.publish.in-flight   mensajes sin confirmar en la ventana adaptativa
+ * tutorial.publish.blocked     1 mientras el broker bloquea la conexión
+ * tutorial.publish.window.decreases  reducciones de la ventana por RTT alto o nack
+ * tutorial.redelivered         mensajes recibidos de nuevo (tag source=broker|retry)
+ * tutorial.retry               fallos enviados a una cola de espera (tags queue y tier)
+ * tutorial.retry.parked        mensajes aparcados en el parking lot (tag queue)
+ * </pre>
+ *
+ * Los medidores se resuelven al registrar la cola o el tipo; en el camino
+ * caliente solo hay búsquedas en mapas y llamadas a record/increment, sin
+ * crear objetos, para poder dejarlas activas a plena carga. La cabecera
+ * x-sent-at reutiliza el mismo Long mientras no cambie el milisegundo, así
+ * que a plena carga tampoco se crea uno por mensaje. Los timers
+ * publican percentiles calculados en el cliente (p50, p99).
+ */
+public class MessagingMetrics {
+
+    /** Cabecera con el instante de envío (ms epoch) que pone el Sender */
+    public static final String SENT_AT_HEADER = "x-sent-at";
+
+    private final MeterRegistry registry;
+
+    private final Map<String, Counter> publishes = new ConcurrentHashMap<>();
+
+    private final Map<String, Timer> confirmed = new ConcurrentHashMap<>();
+
+    private final Map<String, Timer> unconfirmed = new ConcurrentHashMap<>();
+
+    private final Map<String, Counter> retries = new ConcurrentHashMap<>();
+
+    private final Map<String, Counter> parked = new ConcurrentHashMap<>();
+
+    private final Map<String, Timer> endToEndByQueue = new ConcurrentHashMap<>();
+
+    private final Timer endToEnd;
+
+    private final Counter brokerRedeliveries;
+
+    private final Counter retryRedeliveries;
+
+    private final LongAdder received = new LongAdder();
+
+    private final LongAdder firstDeliveries = new LongAdder();
+
+    private final LongAdder busyNanos = new LongAdder();
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private volatile Long lastSentAt = 0L;
+
+    /**
+     * @param registry   registro donde se publican los medidores
+     * @param dispatcher dispatcher del que se exponen los contadores de parseo
+     */
+    public MessagingMetrics(MeterRegistry registry, MessageDispatcher dispatcher) {
+        this.registry = registry;
+        this.endToEnd = Timer.builder("tutorial.end-to-end")
+                .description("Latency from Sender timestamp to reception")
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+        this.brokerRedeliveries = Counter.builder("tutorial.redelivered").tag("source", "broker").register(registry);
+        this.retryRedeliveries = Counter.builder("tutorial.redelivered").tag("source", "retry").register(registry);
+        FunctionCounter.builder("tutorial.dispatch.fallbacks", dispatcher, MessageDispatcher::getFallbacks)
+                .register(registry);
+        FunctionCounter.builder("tutorial.dispatch.conversion-failures", dispatcher,
+                MessageDispatcher::getConversionFailures).register(registry);
+        FunctionCounter.builder("tutorial.consumer.busy", busyNanos, b -> b.sum() / 1e9)
+                .baseUnit("seconds")
+                .register(registry);
+        Gauge.builder("tutorial.consumer.active", active, AtomicInteger::get).register(registry);
+    }
+
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Registra los medidores de la ventana adaptativa de publicación.
+     *
+     * @param window ventana del ConfirmingPublisher
+     */
+    public void bindPublishWindow(AimdPublishWindow window) {
+        Gauge.builder("tutorial.publish.window", window, AimdPublishWindow::getLimit).register(registry);
+        Gauge.builder("tutorial.publish.in-flight", window, AimdPublishWindow::getInFlight).register(registry);
+        Gauge.builder("tutorial.publish.blocked", window, w -> w.isBlocked() ? 1 : 0).register(registry);
+        FunctionCounter.builder("tutorial.publish.window.decreases", window, AimdPublishWindow::getDecreases)
+                .register(registry);
+    }
+
+    /**
+     * Marca el mensaje con el instante de envío para medir la latencia de
+     * extremo a extremo.
+     *
+     * @param message mensaje a publicar
+     */
+    public void stampSent(Message message) {
+        stampSent(message, System.currentTimeMillis());
+    }
+
+    /**
+     * Marca el mensaje con un instante de envío dado, p. ej. el instante en
+     * que estaba previsto enviarlo según un plan de carga.
+     *
+     * @param message     mensaje a publicar
+     * @param epochMillis instante de envío (ms epoch)
+     */
+    public void stampSent(Message message, long epochMillis) {
+        Long sentAt = lastSentAt;
+        if (sentAt.longValue() != epochMillis) {
+            sentAt = Long.valueOf(epochMillis);
+            lastSentAt = sentAt;
+        }
+        message.getMessageProperties().setHeader(SENT_AT_HEADER, sentAt);
+    }
+
+    /**
+     * @param queue cola destino
+     */
+    public void recordPublish(String queue) {
+        Counter counter = publishes.get(queue);
+        if (counter == null) {
+            counter = publishes.computeIfAbsent(queue,
+                    q -> Counter.builder("tutorial.publish").tag("queue", q).register(registry));
+        }
+        counter.increment();
+    }
+
+    /**
+     * @param queue cola destino
+     * @param nanos tiempo desde la publicación hasta la confirmación
+     * @param ack   true si el broker confirmó el mensaje
+     */
+    public void recordConfirm(String queue, long nanos, boolean ack) {
+        Map<String, Timer> timers = ack ? confirmed : unconfirmed;
+        Timer timer = timers.get(queue);
+        if (timer == null) {
+            timer = timers.computeIfAbsent(queue, q -> Timer.builder("tutorial.publish.confirm")
+                    .tag("queue", q)
+                    .tag("result", ack ? "ack" : "nack")
+                    .publishPercentiles(0.5, 0.99)
+                    .register(registry));
+        }
+        timer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param queue cola cuyo mensaje ha fallado
+     * @param tier  nivel de reintento al que se envía
+     */
+    public void recordRetry(String queue, int tier) {
+        String key = queue + '.' + tier;
+        Counter counter = retries.get(key);
+        if (counter == null) {
+            counter = retries.computeIfAbsent(key, k -> Counter.builder("tutorial.retry")
+                    .tag("queue", queue)
+                    .tag("tier", Integer.toString(tier))
+                    .register(registry));
+        }
+        counter.increment();
+    }
+
+    /**
+     * @param queue cola cuyo mensaje se ha aparcado
+     */
+    public void recordParked(String queue) {
+        Counter counter = parked.get(queue);
+        if (counter == null) {
+            counter = parked.computeIfAbsent(queue,
+                    q -> Counter.builder("tutorial.retry.parked").tag("queue", q).register(registry));
+        }
+        counter.increment();
+    }
+
+    /**
+     * Envuelve un manejador para medir su latencia con un timer por tipo.
+     *
+     * @param type    clase del payload (tag type)
+     * @param handler manejador real
+     * @param <T>     tipo del payload
+     * @return manejador medido
+     */
+    public <T> Consumer<T> timed(Class<?> type, Consumer<? super T> handler) {
+        Timer timer = Timer.builder("tutorial.handler")
+                .tag("type", type.getSimpleName())
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+        return payload -> {
+            long start = System.nanoTime();
+            try {
+                handler.accept(payload);
+            }
+            finally {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        };
+    }
+
+    /**
+     * Registra la latencia de extremo a extremo de un mensaje recibido si
+     * trae la cabecera {@link #SENT_AT_HEADER}, y lo cuenta como reentrega
+     * si el broker lo marca como redelivered o vuelve de un reintento
+     * diferido.
+     *
+     * @param message mensaje recibido
+     */
+    public void recordReceived(Message message) {
+        received.increment();
+        MessageProperties properties = message.getMessageProperties();
+        boolean redelivered = Boolean.TRUE.equals(properties.getRedelivered());
+        boolean retried = properties.getHeaders().containsKey(DelayedRetryRecoverer.RETRY_COUNT_HEADER);
+        if (redelivered) {
+            brokerRedeliveries.increment();
+        }
+        if (retried) {
+            retryRedeliveries.increment();
+        }
+        if (!redelivered && !retried) {
+            firstDeliveries.increment();
+        }
+        Object sentAt = properties.getHeaders().get(SENT_AT_HEADER);
+        if (sentAt instanceof Number millis) {
+            long latency = Math.max(0, System.currentTimeMillis() - millis.longValue());
+            endToEnd.record(latency, TimeUnit.MILLISECONDS);
+            String queue = properties.getConsumerQueue();
+            if (queue != null) {
+                Timer timer = endToEndByQueue.get(queue);
+                if (timer == null) {
+                    timer = endToEndByQueue.computeIfAbsent(queue, q -> Timer.builder("tutorial.end-to-end.queue")
+                            .tag("queue", q)
+                            .publishPercentiles(0.5, 0.99)
+                            .register(registry));
+                }
+                timer.record(latency, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * @return mensajes publicados desde el arranque, sumando todas las colas
+     */
+    public long getPublished() {
+        long total = 0;
+        for (Counter counter : publishes.values()) {
+            total += (long) counter.count();
+        }
+        return total;
+    }
+
+    /**
+     * @return mensajes recibidos desde el arranque (incluidas las reentregas)
+     */
+    public long getReceived() {
+        return received.sum();
+    }
+
+    /**
+     * @return mensajes recibidos por primera vez: sin las reentregas del
+     *         broker ni las que vuelven de un reintento diferido, así que se
+     *         pueden comparar con {@link #getPublished()}
+     */
+    public long getFirstDeliveries() {
+        return firstDeliveries.sum();
+    }
+
+    /**
+     * @return consumidores manejando un mensaje ahora mismo
+     */
+    public int getActive() {
+        return active.get();
+    }
+
+    /**
+     * Marca el comienzo del tiempo ocupado de un consumidor.
+     *
+     * @return instante (nanoTime) que se pasa a {@link #consumerDone(long)}
+     */
+    public long consumerStarted() {
+        active.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * @param start valor devuelto por {@link #consumerStarted()}
+     */
+    public void consumerDone(long start) {
+        active.decrementAndGet();
+        busyNanos.add(System.nanoTime() - start);
+    }
+}
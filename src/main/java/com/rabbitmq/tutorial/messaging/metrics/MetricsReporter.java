@@ -0,0 +1,130 @@
+package com.rabbitmq.tutorial.messaging.metrics;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.scheduling.annotation.Scheduled;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+
+/**
+ * Informe periódico por consola de las métricas de {@link MessagingMetrics}
+ * (perfil "metrics"). Para los contadores muestra el total y la tasa desde
+ * el informe anterior; para los timers, número de muestras, media,
+ * percentiles y máximo en milisegundos. La ocupación de los consumidores es
+ * el número medio de consumidores manejando un mensaje en el intervalo.
+ */
+public class MetricsReporter {
+
+    private final MeterRegistry registry;
+
+    private final Map<String, Double> previous = new HashMap<>();
+
+    private long previousNanos = System.nanoTime();
+
+    public MetricsReporter(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Scheduled(fixedDelayString = "${tutorial.metrics.report-interval:10000}",
+            initialDelayString = "${tutorial.metrics.report-interval:10000}")
+    public void report() {
+        System.out.print(format());
+    }
+
+    /**
+     * @return informe con una línea por medidor
+     */
+    synchronized String format() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-9, (now - previousNanos) / 1e9);
+        previousNanos = now;
+        StringBuilder out = new StringBuilder();
+        for (Counter counter : registry.find("tutorial.publish").counters()) {
+            String queue = counter.getId().getTag("queue");
+            double rate = delta("publish." + queue, counter.count()) / seconds;
+            out.append(String.format(Locale.ROOT, " [m] publish %s: %.0f msgs (%.1f/s)%n", queue, counter.count(),
+                    rate));
+        }
+        for (Timer timer : registry.find("tutorial.publish.confirm").timers()) {
+            timerLine(out, "confirm " + timer.getId().getTag("queue") + " " + timer.getId().getTag("result"), timer);
+        }
+        for (Timer timer : registry.find("tutorial.handler").timers()) {
+            timerLine(out, "handler " + timer.getId().getTag("type"), timer);
+        }
+        Timer endToEnd = registry.find("tutorial.end-to-end").timer();
+        if (endToEnd != null && endToEnd.count() > 0) {
+            timerLine(out, "end-to-end", endToEnd);
+        }
+        Collection<Timer> byQueue = registry.find("tutorial.end-to-end.queue").timers();
+        if (byQueue.size() > 1) {
+            for (Timer timer : byQueue) {
+                timerLine(out, "end-to-end " + timer.getId().getTag("queue"), timer);
+            }
+        }
+        Gauge window = registry.find("tutorial.publish.window").gauge();
+        if (window != null) {
+            out.append(String.format(Locale.ROOT, " [m] publish window: limit=%.0f in-flight=%.0f blocked=%.0f"
+                    + " decreases=%.0f%n", window.value(), gaugeValue("tutorial.publish.in-flight"),
+                    gaugeValue("tutorial.publish.blocked"), functionCount("tutorial.publish.window.decreases")));
+        }
+        for (Counter counter : registry.find("tutorial.redelivered").counters()) {
+            String source = counter.getId().getTag("source");
+            double rate = delta("redelivered." + source, counter.count()) / seconds;
+            if (counter.count() > 0) {
+                out.append(String.format(Locale.ROOT, " [m] redelivered %s: %.0f msgs (%.1f/s)%n", source,
+                        counter.count(), rate));
+            }
+        }
+        for (Counter counter : registry.find("tutorial.retry").counters()) {
+            out.append(String.format(Locale.ROOT, " [m] retry %s tier %s: %.0f msgs%n",
+                    counter.getId().getTag("queue"), counter.getId().getTag("tier"), counter.count()));
+        }
+        for (Counter counter : registry.find("tutorial.retry.parked").counters()) {
+            out.append(String.format(Locale.ROOT, " [m] parked %s: %.0f msgs%n", counter.getId().getTag("queue"),
+                    counter.count()));
+        }
+        out.append(String.format(Locale.ROOT, " [m] dispatch: fallbacks=%.0f conversion-failures=%.0f%n",
+                functionCount("tutorial.dispatch.fallbacks"), functionCount("tutorial.dispatch.conversion-failures")));
+        double busy = delta("consumer.busy", functionCount("tutorial.consumer.busy")) / seconds;
+        Gauge active = registry.find("tutorial.consumer.active").gauge();
+        out.append(String.format(Locale.ROOT, " [m] consumers: busy=%.2f active=%.0f%n", busy,
+                active != null ? active.value() : 0));
+        return out.toString();
+    }
+
+    private double delta(String key, double value) {
+        Double last = previous.put(key, value);
+        return last != null ? value - last : value;
+    }
+
+    private double gaugeValue(String name) {
+        Gauge gauge = registry.find(name).gauge();
+        return gauge != null ? gauge.value() : 0;
+    }
+
+    private double functionCount(String name) {
+        FunctionCounter counter = registry.find(name).functionCounter();
+        return counter != null ? counter.count() : 0;
+    }
+
+    private static void timerLine(StringBuilder out, String name, Timer timer) {
+        HistogramSnapshot snapshot = timer.takeSnapshot();
+        out.append(String.format(Locale.ROOT, " [m] %s: count=%d mean=%.3fms", name, snapshot.count(),
+                snapshot.mean(TimeUnit.MILLISECONDS)));
+        for (ValueAtPercentile p : snapshot.percentileValues()) {
+            out.append(String.format(Locale.ROOT, " p%.0f=%.3fms", p.percentile() * 100,
+                    p.value(TimeUnit.MILLISECONDS)));
+        }
+        out.append(String.format(Locale.ROOT, " max=%.3fms%n", snapshot.max(TimeUnit.MILLISECONDS)));
+    }
+}
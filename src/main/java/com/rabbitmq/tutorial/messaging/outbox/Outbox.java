@@ -0,0 +1,224 @@
+package com.rabbitmq.tutorial.messaging.outbox;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.context.SmartLifecycle;
+
+import com.rabbitmq.tutorial.messaging.confirm.ConfirmingPublisher;
+import com.rabbitmq.tutorial.messaging.log.MessageLog;
+import com.rabbitmq.tutorial.messaging.transport.MessageTransport;
+
+/**
+ * Outbox local del Sender (perfil "outbox"): cada mensaje se escribe primero
+ * en un {@link OutboxLog} en disco y un hilo de fondo lo publica después.
+ *
+ * Así un envío cuesta lo que una escritura en un fichero proyectado en
+ * memoria, aunque el broker esté caído o bloqueado, y no se pierde: el hilo
+ * drenador reintenta cada retryInterval ms y, cuando el broker vuelve,
+ * publica la cola acumulada en lotes de batchSize mensajes.
+ *
+ * El checkpoint solo avanza cuando el lote entero se ha publicado: con
+ * ConfirmingPublisher (perfil "confirms"), cuando el broker ha confirmado
+ * todos sus mensajes; sin él, cuando el MessageTransport los ha aceptado.
+ * Si un lote falla se vuelve a publicar completo, así que la entrega es al
+ * menos una vez (las Transaccion repetidas las descarta el IdempotencyCache
+ * del receptor).
+ */
+public class Outbox implements SmartLifecycle {
+
+    private final OutboxLog log;
+
+    private final MessageTransport transport;
+
+    private final ConfirmingPublisher publisher;
+
+    private final MessageLog messageLog;
+
+    private final int batchSize;
+
+    private final long retryInterval;
+
+    private final long confirmTimeout;
+
+    private final LongAdder appended = new LongAdder();
+
+    private final LongAdder drained = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private volatile boolean running;
+
+    private Thread drainer;
+
+    /**
+     * @param directory      directorio de los segmentos del log
+     * @param segmentSize    tamaño en bytes de cada segmento
+     * @param maxSegments    segmentos que puede ocupar el log; con todos llenos append falla
+     * @param sync           true para forzar a disco cada mensaje
+     * @param transport      transporte con el que se publica si no hay publisher
+     * @param publisher      publicador con confirmaciones, o null
+     * @param messageLog     log donde el drenador avisa de fallos y recuperaciones
+     * @param batchSize      mensajes publicados por lote
+     * @param retryInterval  espera (ms) antes de reintentar un lote fallido
+     * @param confirmTimeout espera máxima (ms) por las confirmaciones de un lote
+     */
+    public Outbox(Path directory, int segmentSize, int maxSegments, boolean sync, MessageTransport transport,
+            ConfirmingPublisher publisher, MessageLog messageLog, int batchSize, long retryInterval,
+            long confirmTimeout) {
+        this.log = new OutboxLog(directory, segmentSize, maxSegments, sync);
+        this.transport = transport;
+        this.publisher = publisher;
+        this.messageLog = messageLog;
+        this.batchSize = batchSize;
+        this.retryInterval = retryInterval;
+        this.confirmTimeout = confirmTimeout;
+    }
+
+    /**
+     * Guarda un mensaje para publicarlo en la cola indicada.
+     *
+     * @param queue   cola destino
+     * @param message mensaje ya serializado
+     * @throws org.springframework.amqp.AmqpResourceNotAvailableException si
+     *         el outbox está lleno
+     */
+    public void append(String queue, Message message) {
+        log.append(OutboxRecords.encode(queue, message));
+        appended.increment();
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        drainer = Thread.ofPlatform().name("outbox-drainer").daemon().start(this::drain);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        try {
+            drainer.join(retryInterval + confirmTimeout);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Cierra los ficheros del log. Los mensajes no publicados se quedan en
+     * disco y se publican en el siguiente arranque.
+     */
+    public void close() {
+        log.close();
+    }
+
+    /**
+     * @return mensajes guardados desde el arranque
+     */
+    public long getAppended() {
+        return appended.sum();
+    }
+
+    /**
+     * @return mensajes publicados desde el arranque (incluidos los pendientes de
+     *         arranques anteriores)
+     */
+    public long getDrained() {
+        return drained.sum();
+    }
+
+    /**
+     * @return lotes que han fallado y se han reintentado
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * @return bytes pendientes de publicar (aproximado)
+     */
+    public long getBacklogBytes() {
+        return log.getBacklogBytes();
+    }
+
+    /**
+     * @return segmentos que ocupa el log en disco
+     */
+    public int getSegments() {
+        return log.getSegments();
+    }
+
+    /**
+     * Publica un lote desde el checkpoint y, si todo va bien, lo avanza.
+     *
+     * @return número de mensajes publicados (0 si no había nada pendiente)
+     * @throws Exception si la publicación o la confirmación fallan
+     */
+    int drainOnce() throws Exception {
+        OutboxLog.Batch batch = log.read(log.getCheckpoint(), batchSize);
+        List<byte[]> records = batch.payloads;
+        if (records.isEmpty()) {
+            return 0;
+        }
+        if (publisher == null) {
+            for (byte[] record : records) {
+                OutboxRecords.Entry entry = OutboxRecords.decode(record);
+                transport.send(entry.queue, entry.message);
+            }
+        }
+        else {
+            CompletableFuture<?>[] confirms = new CompletableFuture<?>[records.size()];
+            for (int i = 0; i < confirms.length; i++) {
+                OutboxRecords.Entry entry = OutboxRecords.decode(records.get(i));
+                confirms[i] = publisher.send("", entry.queue, entry.message);
+            }
+            CompletableFuture.allOf(confirms).get(confirmTimeout, TimeUnit.MILLISECONDS);
+        }
+        log.commit(batch.end);
+        drained.add(records.size());
+        return records.size();
+    }
+
+    private void drain() {
+        boolean failing = false;
+        while (running) {
+            try {
+                if (drainOnce() == 0) {
+                    log.awaitData(log.getCheckpoint(), 100);
+                }
+                else if (failing) {
+                    failing = false;
+                    messageLog.info(" [x] Outbox drain recovered");
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            catch (Exception e) {
+                failures.increment();
+                if (!failing) {
+                    failing = true;
+                    messageLog.warn(" [!] Outbox drain failed, retrying every {} ms: {}", retryInterval, e.toString());
+                }
+                try {
+                    Thread.sleep(retryInterval);
+                }
+                catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package com.rabbitmq.tutorial.messaging.outbox;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32C;
+
+import org.springframework.amqp.AmqpResourceNotAvailableException;
+
+/**
+ * Log de solo escritura al final (append-only) repartido en segmentos de
+ * tamaño fijo proyectados en memoria (MappedByteBuffer).
+ *
+ * Formato de un registro: longitud (int), CRC32C del contenido (int) y el
+ * contenido. Los segmentos nuevos están a cero, así que una longitud 0 marca
+ * el final de los datos; cuando un registro no cabe en lo que queda del
+ * segmento se pasa al siguiente (los ids de segmento son consecutivos).
+ *
+ * Una posición es un long con el id de segmento en los 32 bits altos y el
+ * desplazamiento en los bajos. El fichero "checkpoint" guarda la posición
+ * hasta la que todo está publicado; los segmentos anteriores se borran al
+ * avanzarlo. Al abrir el log se recorre el último segmento para encontrar el
+ * final de los datos; un registro a medio escribir (CRC incorrecto) se
+ * ignora y el siguiente se escribe encima.
+ *
+ * Escribir en la proyección deja el registro en la caché de páginas del
+ * sistema operativo, lo que sobrevive a la caída del proceso. Con sync=true
+ * además se fuerza a disco cada registro (sobrevive a la caída de la
+ * máquina, a costa de una escritura síncrona por registro).
+ *
+ * Thread-safe: escrituras, lecturas y checkpoint se serializan en el monitor
+ * del log.
+ */
+final class OutboxLog implements Closeable {
+
+    static final String SEGMENT_SUFFIX = ".seg";
+
+    static final String CHECKPOINT_FILE = "checkpoint";
+
+    /** Longitud más CRC */
+    private static final int RECORD_HEADER = 8;
+
+    private final Path directory;
+
+    private final int segmentSize;
+
+    private final int maxSegments;
+
+    private final boolean sync;
+
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+
+    private final FileChannel checkpointChannel;
+
+    private final MappedByteBuffer checkpointBuffer;
+
+    private Segment head;
+
+    private int writeOffset;
+
+    private long checkpoint;
+
+    /**
+     * Abre (o crea) el log del directorio y recupera su estado.
+     *
+     * @param directory   directorio de los segmentos y el checkpoint
+     * @param segmentSize tamaño en bytes de cada segmento
+     * @param maxSegments segmentos que puede ocupar el log como máximo
+     * @param sync        true para forzar a disco cada registro
+     */
+    OutboxLog(Path directory, int segmentSize, int maxSegments, boolean sync) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = Math.max(2, maxSegments);
+        this.sync = sync;
+        try {
+            Files.createDirectories(directory);
+            this.checkpointChannel = FileChannel.open(directory.resolve(CHECKPOINT_FILE), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+            this.checkpointBuffer = checkpointChannel.map(MapMode.READ_WRITE, 0, Long.BYTES);
+            recover();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Cannot open outbox in " + directory, e);
+        }
+    }
+
+    static long position(int segment, int offset) {
+        return ((long) segment << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    static int segmentOf(long position) {
+        return (int) (position >>> 32);
+    }
+
+    static int offsetOf(long position) {
+        return (int) position;
+    }
+
+    /**
+     * Añade un registro al final del log.
+     *
+     * @param payload contenido del registro
+     * @throws IllegalArgumentException si el registro no cabe en un segmento
+     * @throws AmqpResourceNotAvailableException si el log ya ocupa maxSegments
+     */
+    void append(byte[] payload) {
+        int size = RECORD_HEADER + payload.length;
+        if (size > segmentSize) {
+            throw new IllegalArgumentException(
+                    "Outbox record of " + payload.length + " bytes exceeds segment size " + segmentSize);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        synchronized (this) {
+            if (writeOffset + size > segmentSize) {
+                roll();
+            }
+            MappedByteBuffer buffer = head.buffer;
+            buffer.putInt(writeOffset + 4, (int) crc.getValue());
+            buffer.put(writeOffset + RECORD_HEADER, payload);
+            buffer.putInt(writeOffset, payload.length);
+            if (sync) {
+                buffer.force(writeOffset, size);
+            }
+            writeOffset += size;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Lee hasta max registros a partir de una posición.
+     *
+     * @param from posición de inicio (normalmente el checkpoint)
+     * @param max  número máximo de registros
+     * @return registros leídos y posición siguiente al último
+     */
+    synchronized Batch read(long from, int max) {
+        List<byte[]> payloads = new ArrayList<>(Math.min(max, 256));
+        long position = from;
+        long end = writePosition();
+        while (payloads.size() < max && position < end) {
+            int id = segmentOf(position);
+            int offset = offsetOf(position);
+            byte[] payload = id < head.id ? readRecord(segments.get(id), offset) : readRecord(head, offset);
+            if (payload == null) {
+                if (id == head.id) {
+                    break;
+                }
+                // Final de un segmento completo (o resto ilegible): seguir en el siguiente
+                position = position(id + 1, 0);
+                continue;
+            }
+            payloads.add(payload);
+            position = position(id, offset + RECORD_HEADER + payload.length);
+        }
+        return new Batch(payloads, position);
+    }
+
+    /**
+     * Espera hasta que haya datos después de una posición.
+     *
+     * @param position posición ya leída
+     * @param timeout  espera máxima en ms
+     * @return true si hay datos pendientes
+     * @throws InterruptedException si se interrumpe la espera
+     */
+    synchronized boolean awaitData(long position, long timeout) throws InterruptedException {
+        if (position >= writePosition()) {
+            wait(timeout);
+        }
+        return position < writePosition();
+    }
+
+    /**
+     * Avanza el checkpoint y borra los segmentos que quedan por detrás.
+     *
+     * @param position posición hasta la que todo está publicado
+     */
+    synchronized void commit(long position) {
+        checkpoint = position;
+        checkpointBuffer.putLong(0, position);
+        checkpointBuffer.force();
+        int first = segmentOf(position);
+        while (segments.firstKey() < first) {
+            Map.Entry<Integer, Segment> entry = segments.pollFirstEntry();
+            entry.getValue().delete();
+        }
+    }
+
+    synchronized long getCheckpoint() {
+        return checkpoint;
+    }
+
+    synchronized long writePosition() {
+        return position(head.id, writeOffset);
+    }
+
+    /**
+     * @return bytes escritos pendientes de publicar (aproximado: incluye el
+     *         hueco al final de los segmentos completos)
+     */
+    synchronized long getBacklogBytes() {
+        long segmentsBehind = head.id - segmentOf(checkpoint);
+        return segmentsBehind * segmentSize + writeOffset - offsetOf(checkpoint);
+    }
+
+    synchronized int getSegments() {
+        return segments.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Segment segment : segments.values()) {
+            segment.close();
+        }
+        segments.clear();
+        try {
+            checkpointBuffer.force();
+            checkpointChannel.close();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void recover() throws IOException {
+        checkpoint = checkpointBuffer.getLong(0);
+        int first = segmentOf(checkpoint);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                int id = Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                if (id < first) {
+                    Files.delete(file);
+                }
+                else {
+                    segments.put(id, Segment.open(file, id, segmentSize));
+                }
+            }
+        }
+        if (segments.isEmpty()) {
+            checkpoint = position(first, 0);
+            checkpointBuffer.putLong(0, checkpoint);
+            segments.put(first, Segment.open(segmentPath(first), first, segmentSize));
+        }
+        head = segments.lastEntry().getValue();
+        writeOffset = head.id == first ? offsetOf(checkpoint) : 0;
+        byte[] payload;
+        while ((payload = readRecord(head, writeOffset)) != null) {
+            writeOffset += RECORD_HEADER + payload.length;
+        }
+    }
+
+    private void roll() {
+        if (segments.size() >= maxSegments) {
+            throw new AmqpResourceNotAvailableException("Outbox is full (" + maxSegments + " segments)");
+        }
+        if (sync) {
+            head.buffer.force();
+        }
+        int id = head.id + 1;
+        try {
+            head = Segment.open(segmentPath(id), id, segmentSize);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Cannot create outbox segment " + id, e);
+        }
+        segments.put(id, head);
+        writeOffset = 0;
+    }
+
+    private Path segmentPath(int id) {
+        return directory.resolve(String.format("%010d%s", id, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * @return el contenido del registro, o null si no hay uno válido en esa posición
+     */
+    private byte[] readRecord(Segment segment, int offset) {
+        if (offset + RECORD_HEADER > segmentSize) {
+            return null;
+        }
+        MappedByteBuffer buffer = segment.buffer;
+        int length = buffer.getInt(offset);
+        if (length <= 0 || length > segmentSize - offset - RECORD_HEADER) {
+            return null;
+        }
+        byte[] payload = new byte[length];
+        buffer.get(offset + RECORD_HEADER, payload);
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        return (int) crc.getValue() == buffer.getInt(offset + 4) ? payload : null;
+    }
+
+    /**
+     * Registros leídos de una vez y la posición en la que termina la lectura.
+     */
+    static final class Batch {
+
+        final List<byte[]> payloads;
+
+        final long end;
+
+        Batch(List<byte[]> payloads, long end) {
+            this.payloads = payloads;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Fichero de un segmento y su proyección en memoria.
+     */
+    private static final class Segment {
+
+        private final int id;
+
+        private final Path path;
+
+        private final FileChannel channel;
+
+        private final MappedByteBuffer buffer;
+
+        private Segment(int id, Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        private static Segment open(Path path, int id, int size) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE);
+            return new Segment(id, path, channel, channel.map(MapMode.READ_WRITE, 0, size));
+        }
+
+        private void close() {
+            try {
+                buffer.force();
+                channel.close();
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void delete() {
+            try {
+                channel.close();
+                Files.deleteIfExists(path);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException("Cannot delete outbox segment " + path, e);
+            }
+        }
+    }
+}
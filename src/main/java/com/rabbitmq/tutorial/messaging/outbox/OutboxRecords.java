@@ -0,0 +1,304 @@
+package com.rabbitmq.tutorial.messaging.outbox;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+
+/**
+ * Formato de un mensaje dentro del outbox: cola destino, las propiedades
+ * básicas de AMQP (content_type, content_encoding, message_id,
+ * correlation_id, reply_to, expiration, priority, timestamp, type, app_id,
+ * user_id y delivery_mode), las cabeceras y el cuerpo.
+ *
+ * Las cabeceras conservan su tipo para todos los valores que admite una
+ * tabla AMQP: String, Long, Integer, Short, Byte, Boolean, Double, Float,
+ * BigDecimal, Date, byte[] y listas y mapas de estos. Cualquier otro valor
+ * (que el cliente de RabbitMQ tampoco sabría enviar) se guarda como texto.
+ *
+ * El primer byte es la versión del formato. Los registros de la versión
+ * anterior, sin versión, empiezan por el byte alto de la longitud del nombre
+ * de la cola, que siempre es 0 (un nombre de cola no pasa de 255 bytes); se
+ * siguen leyendo, con solo las propiedades que guardaban.
+ */
+final class OutboxRecords {
+
+    /** Versión del formato que se escribe */
+    static final byte VERSION = 2;
+
+    private OutboxRecords() {
+    }
+
+    /**
+     * Mensaje leído del outbox junto a su cola destino.
+     */
+    static final class Entry {
+
+        final String queue;
+
+        final Message message;
+
+        Entry(String queue, Message message) {
+            this.queue = queue;
+            this.message = message;
+        }
+    }
+
+    static byte[] encode(String queue, Message message) {
+        MessageProperties properties = message.getMessageProperties();
+        byte[] body = message.getBody();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length + 128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeUTF(queue);
+            writeNullable(out, properties.getContentType());
+            writeNullable(out, properties.getContentEncoding());
+            writeNullable(out, properties.getMessageId());
+            writeNullable(out, properties.getCorrelationId());
+            writeNullable(out, properties.getReplyTo());
+            writeNullable(out, properties.getExpiration());
+            writeNullable(out, properties.getType());
+            writeNullable(out, properties.getAppId());
+            writeNullable(out, properties.getUserId());
+            Integer priority = properties.getPriority();
+            out.writeBoolean(priority != null);
+            if (priority != null) {
+                out.writeInt(priority);
+            }
+            Date timestamp = properties.getTimestamp();
+            out.writeBoolean(timestamp != null);
+            if (timestamp != null) {
+                out.writeLong(timestamp.getTime());
+            }
+            MessageDeliveryMode deliveryMode = properties.getDeliveryMode();
+            out.writeByte(deliveryMode != null ? MessageDeliveryMode.toInt(deliveryMode) : 0);
+            writeTable(out, properties.getHeaders());
+            out.writeInt(body.length);
+            out.write(body);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static Entry decode(byte[] record) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+            if (record.length > 0 && record[0] == 0) {
+                return decodeVersion1(in);
+            }
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported outbox record version " + version);
+            }
+            String queue = in.readUTF();
+            MessageProperties properties = new MessageProperties();
+            properties.setContentType(readNullable(in));
+            properties.setContentEncoding(readNullable(in));
+            properties.setMessageId(readNullable(in));
+            properties.setCorrelationId(readNullable(in));
+            properties.setReplyTo(readNullable(in));
+            properties.setExpiration(readNullable(in));
+            properties.setType(readNullable(in));
+            properties.setAppId(readNullable(in));
+            properties.setUserId(readNullable(in));
+            if (in.readBoolean()) {
+                properties.setPriority(in.readInt());
+            }
+            if (in.readBoolean()) {
+                properties.setTimestamp(new Date(in.readLong()));
+            }
+            int deliveryMode = in.readByte();
+            // MessageProperties pone PERSISTENT por defecto; un 0 es que no venía
+            properties.setDeliveryMode(deliveryMode != 0 ? MessageDeliveryMode.fromInt(deliveryMode) : null);
+            properties.getHeaders().putAll(readTable(in));
+            byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+            return new Entry(queue, new Message(body, properties));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Malformed outbox record", e);
+        }
+    }
+
+    /**
+     * Registro sin versión: cola, cuatro propiedades y cabeceras String,
+     * Long, Integer o Boolean.
+     */
+    private static Entry decodeVersion1(DataInputStream in) throws IOException {
+        String queue = in.readUTF();
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(readNullable(in));
+        properties.setContentEncoding(readNullable(in));
+        properties.setMessageId(readNullable(in));
+        properties.setCorrelationId(readNullable(in));
+        int headers = in.readUnsignedShort();
+        for (int i = 0; i < headers; i++) {
+            String name = in.readUTF();
+            Object value = switch (in.readByte()) {
+                case 'J' -> in.readLong();
+                case 'I' -> in.readInt();
+                case 'Z' -> in.readBoolean();
+                default -> in.readUTF();
+            };
+            properties.setHeader(name, value);
+        }
+        byte[] body = new byte[in.readInt()];
+        in.readFully(body);
+        return new Entry(queue, new Message(body, properties));
+    }
+
+    private static void writeTable(DataOutputStream out, Map<?, ?> table) throws IOException {
+        out.writeInt(table.size());
+        for (Map.Entry<?, ?> entry : table.entrySet()) {
+            writeString(out, String.valueOf(entry.getKey()));
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    private static Map<String, Object> readTable(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        Map<String, Object> table = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            table.put(readString(in), readValue(in));
+        }
+        return table;
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte('V');
+        }
+        else if (value instanceof String s) {
+            out.writeByte('S');
+            writeString(out, s);
+        }
+        else if (value instanceof Long l) {
+            out.writeByte('J');
+            out.writeLong(l);
+        }
+        else if (value instanceof Integer i) {
+            out.writeByte('I');
+            out.writeInt(i);
+        }
+        else if (value instanceof Short s) {
+            out.writeByte('s');
+            out.writeShort(s);
+        }
+        else if (value instanceof Byte b) {
+            out.writeByte('b');
+            out.writeByte(b);
+        }
+        else if (value instanceof Boolean b) {
+            out.writeByte('Z');
+            out.writeBoolean(b);
+        }
+        else if (value instanceof Double d) {
+            out.writeByte('D');
+            out.writeDouble(d);
+        }
+        else if (value instanceof Float f) {
+            out.writeByte('F');
+            out.writeFloat(f);
+        }
+        else if (value instanceof BigDecimal d) {
+            out.writeByte('N');
+            writeString(out, d.toString());
+        }
+        else if (value instanceof Date d) {
+            out.writeByte('T');
+            out.writeLong(d.getTime());
+        }
+        else if (value instanceof byte[] b) {
+            out.writeByte('x');
+            out.writeInt(b.length);
+            out.write(b);
+        }
+        else if (value instanceof List<?> list) {
+            out.writeByte('A');
+            out.writeInt(list.size());
+            for (Object element : list) {
+                writeValue(out, element);
+            }
+        }
+        else if (value instanceof Map<?, ?> map) {
+            out.writeByte('M');
+            writeTable(out, map);
+        }
+        else {
+            out.writeByte('S');
+            writeString(out, value.toString());
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        return switch (type) {
+            case 'V' -> null;
+            case 'S' -> readString(in);
+            case 'J' -> in.readLong();
+            case 'I' -> in.readInt();
+            case 's' -> in.readShort();
+            case 'b' -> in.readByte();
+            case 'Z' -> in.readBoolean();
+            case 'D' -> in.readDouble();
+            case 'F' -> in.readFloat();
+            case 'N' -> new BigDecimal(readString(in));
+            case 'T' -> new Date(in.readLong());
+            case 'x' -> {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                yield bytes;
+            }
+            case 'A' -> {
+                int size = in.readInt();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in));
+                }
+                yield list;
+            }
+            case 'M' -> readTable(in);
+            default -> throw new IOException("Unknown header type '" + (char) type + "'");
+        };
+    }
+
+    /**
+     * Texto UTF-8 con longitud int: writeUTF no admite más de 64 KB.
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
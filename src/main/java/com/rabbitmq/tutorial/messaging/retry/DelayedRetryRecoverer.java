@@ -0,0 +1,240 @@
+package com.rabbitmq.tutorial.messaging.retry;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.retry.MessageBatchRecoverer;
+import org.springframework.amqp.rabbit.support.ListenerExecutionFailedException;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import com.rabbitmq.tutorial.messaging.log.MessageLog;
+import com.rabbitmq.tutorial.messaging.log.MessageLog.Event;
+import com.rabbitmq.tutorial.messaging.metrics.MessagingMetrics;
+
+/**
+ * Reintentos diferidos sin bloquear al consumidor (perfil "retry").
+ *
+ * Cuando el manejador de un mensaje de la cola falla, en lugar de
+ * devolverlo a la cabeza de la cola (lo que con un mensaje envenenado
+ * produce un bucle de reentregas que consume CPU y bloquea a los que vienen
+ * detrás), el mensaje se vuelve a publicar en una cola de espera y el
+ * original se confirma:
+ *
+ * <pre>
+ * queue --fallo n--&gt; queue.retry.&lt;tier&gt; --expiration, DLX--&gt; queue
+ *       --fallo maxAttempts o no convertible--&gt; queue.parking-lot
+ * </pre>
+ *
+ * - Las colas queue.retry.1..N no tienen consumidores; cada una tiene
+ *   x-message-ttl con la espera de su nivel y cada mensaje lleva además la
+ *   misma expiración según su intento: delays[0] tras el
+ *   primer fallo, delays[1] tras el segundo... y el último para el resto.
+ *   Al expirar, el broker lo devuelve a la cola original (dead-letter al
+ *   exchange por defecto con routing key queue). Como todos los mensajes de
+ *   una cola de espera tienen la misma expiración, caducan en orden.
+ * - La cabecera x-retry-count lleva los intentos fallidos y x-exception el
+ *   último error.
+ * - Tras maxAttempts intentos, o si el cuerpo no se puede convertir o el
+ *   manejador lanza AmqpRejectAndDontRequeueException, el mensaje se aparca
+ *   en queue.parking-lot para revisarlo a mano.
+ *
+ * Los hilos consumidores nunca esperan: la espera la hace el broker. Se
+ * instala como recoverer de un interceptor sin reintentos locales
+ * (maxAttempts 1) en la fábrica de contenedores, así que lo heredan todos
+ * los contenedores que salen de ella. Cada cola atendida necesita su propia
+ * topología (ver {@link #topology(String, long[])}); los mensajes de colas
+ * que no atiende siguen el tratamiento por defecto del contenedor.
+ *
+ * También atiende a los contenedores en modo lote (perfil "batch-consumer"),
+ * donde el interceptor le pasa el lote entero. Si la excepción identifica el
+ * mensaje que falló (una ListenerExecutionFailedException con un único
+ * mensaje del lote, como la que lanza BatchReceiver), solo ese cuenta el
+ * intento; los demás se devuelven sin cambios a su cola, porque el lote se
+ * confirma entero al volver del recoverer. Si no, todos los mensajes del lote
+ * se tratan como fallidos.
+ */
+public class DelayedRetryRecoverer implements MessageBatchRecoverer {
+
+    /** Cabecera con el número de intentos fallidos */
+    public static final String RETRY_COUNT_HEADER = "x-retry-count";
+
+    /** Cabecera con la clase y el mensaje del último error */
+    public static final String EXCEPTION_HEADER = "x-exception";
+
+    private static final int MAX_EXCEPTION_LENGTH = 512;
+
+    private final RabbitTemplate template;
+
+    private final Set<String> queues;
+
+    private final long[] delays;
+
+    private final int maxAttempts;
+
+    private final MessagingMetrics metrics;
+
+    private final MessageLog messageLog;
+
+    /**
+     * @param template    template con el que se republica
+     * @param queues      colas cuyos fallos se reintentan
+     * @param delays      espera (ms) de cada nivel de reintento
+     * @param maxAttempts intentos tras los que el mensaje se aparca
+     * @param metrics     métricas de mensajería
+     * @param messageLog  log de eventos de mensajes
+     */
+    public DelayedRetryRecoverer(RabbitTemplate template, Collection<String> queues, long[] delays, int maxAttempts,
+            MessagingMetrics metrics, MessageLog messageLog) {
+        if (delays.length == 0) {
+            throw new IllegalArgumentException("At least one retry delay is required");
+        }
+        this.template = template;
+        this.queues = Set.copyOf(queues);
+        this.delays = delays.clone();
+        this.maxAttempts = maxAttempts;
+        this.metrics = metrics;
+        this.messageLog = messageLog;
+    }
+
+    /**
+     * @param queue cola original
+     * @param tier  nivel de reintento (desde 1)
+     * @return nombre de la cola de espera del nivel
+     */
+    public static String delayQueue(String queue, int tier) {
+        return queue + ".retry." + tier;
+    }
+
+    /**
+     * @param queue cola original
+     * @return nombre de la cola donde se aparcan los mensajes envenenados
+     */
+    public static String parkingLot(String queue) {
+        return queue + ".parking-lot";
+    }
+
+    /**
+     * Colas de espera (con dead-letter de vuelta a la cola original) y
+     * parking lot de una cola. Cada cola de espera lleva además x-message-ttl
+     * con la espera de su nivel, así que un mensaje publicado en ella sin
+     * expiración (p. ej. a mano desde la consola) tampoco se queda allí.
+     *
+     * @param queue  cola original
+     * @param delays espera (ms) de cada nivel de reintento
+     * @return declaraciones para el RabbitAdmin
+     */
+    public static List<Declarable> topology(String queue, long[] delays) {
+        List<Declarable> declarables = new ArrayList<>(delays.length + 1);
+        for (int tier = 1; tier <= delays.length; tier++) {
+            Queue delay = QueueBuilder.durable(delayQueue(queue, tier))
+                    .ttl(Math.toIntExact(delays[tier - 1]))
+                    .deadLetterExchange("")
+                    .deadLetterRoutingKey(queue)
+                    .build();
+            declarables.add(delay);
+        }
+        declarables.add(QueueBuilder.durable(parkingLot(queue)).build());
+        return declarables;
+    }
+
+    @Override
+    public void recover(Message message, Throwable cause) {
+        MessageProperties properties = message.getMessageProperties();
+        String queue = servedQueue(message, cause);
+        int attempt = retryCount(properties) + 1;
+        properties.setHeader(RETRY_COUNT_HEADER, attempt);
+        properties.setHeader(EXCEPTION_HEADER, describe(cause));
+        properties.setDeliveryMode(properties.getReceivedDeliveryMode() != null
+                ? properties.getReceivedDeliveryMode() : MessageDeliveryMode.PERSISTENT);
+        if (attempt >= maxAttempts || isFatal(cause)) {
+            properties.setExpiration(null);
+            template.send("", parkingLot(queue), message);
+            metrics.recordParked(queue);
+            if (messageLog.sample(Event.FAILED)) {
+                messageLog.warn(" [!] Parked message after {} attempts", attempt);
+            }
+            return;
+        }
+        int tier = Math.min(attempt, delays.length);
+        properties.setExpiration(Long.toString(delays[tier - 1]));
+        template.send("", delayQueue(queue, tier), message);
+        metrics.recordRetry(queue, tier);
+    }
+
+    @Override
+    public void recover(List<Message> messages, Throwable cause) {
+        for (Message message : messages) {
+            servedQueue(message, cause);
+        }
+        Message failed = failedMessage(messages, cause);
+        for (Message message : messages) {
+            if (failed == null || message == failed) {
+                recover(message, cause);
+            }
+            else {
+                MessageProperties properties = message.getMessageProperties();
+                properties.setDeliveryMode(properties.getReceivedDeliveryMode() != null
+                        ? properties.getReceivedDeliveryMode() : MessageDeliveryMode.PERSISTENT);
+                template.send("", properties.getConsumerQueue(), message);
+            }
+        }
+    }
+
+    private String servedQueue(Message message, Throwable cause) {
+        String queue = message.getMessageProperties().getConsumerQueue();
+        if (queue == null || !queues.contains(queue)) {
+            throw cause instanceof RuntimeException e ? e : new IllegalStateException(cause);
+        }
+        return queue;
+    }
+
+    private static Message failedMessage(List<Message> messages, Throwable cause) {
+        if (messages.size() == 1) {
+            return messages.get(0);
+        }
+        for (Throwable t = cause; t != null; t = t.getCause()) {
+            if (t instanceof ListenerExecutionFailedException e && e.getFailedMessages().size() == 1) {
+                Message failed = e.getFailedMessage();
+                for (Message message : messages) {
+                    if (message == failed) {
+                        return failed;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static int retryCount(MessageProperties properties) {
+        Object count = properties.getHeaders().get(RETRY_COUNT_HEADER);
+        return count instanceof Number n ? n.intValue() : 0;
+    }
+
+    private static boolean isFatal(Throwable cause) {
+        for (Throwable t = cause; t != null; t = t.getCause()) {
+            if (t instanceof MessageConversionException || t instanceof AmqpRejectAndDontRequeueException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String describe(Throwable cause) {
+        Throwable root = cause;
+        while (root.getCause() != null && root.getCause() != root) {
+            root = root.getCause();
+        }
+        String text = root.getClass().getName() + ": " + root.getMessage();
+        return text.length() > MAX_EXCEPTION_LENGTH ? text.substring(0, MAX_EXCEPTION_LENGTH) : text;
+    }
+}
@@ -0,0 +1,207 @@
+package com.rabbitmq.tutorial.messaging.rpc;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.AmqpIOException;
+import org.springframework.amqp.core.Address;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.listener.DirectReplyToMessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.DirectReplyToMessageListenerContainer.ChannelHolder;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.context.SmartLifecycle;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.tutorial.messaging.codec.JsonCodec;
+import com.rabbitmq.tutorial.model.Transaccion;
+
+/**
+ * Cliente RPC asíncrono para Transaccion (perfil "rpc").
+ *
+ * Envía una Transaccion y devuelve un CompletableFuture que se completa con
+ * la Transaccion de respuesta (con su estado_id resultante), sin colas
+ * temporales ni un hilo bloqueado por llamada:
+ * - Las respuestas llegan por direct reply-to (amq.rabbitmq.reply-to): la
+ *   petición se publica por el canal de uno de los consumidores del
+ *   DirectReplyToMessageListenerContainer y el canal se libera nada más
+ *   publicar, así que unos pocos canales atienden miles de peticiones en
+ *   curso.
+ * - Las peticiones pendientes se guardan en un ConcurrentHashMap indexado
+ *   por id_correlacion (se genera uno si la Transaccion no lo trae); la
+ *   respuesta se empareja por el id_correlacion de su cuerpo.
+ * - Cada futuro caduca con orTimeout (un único hilo planificador compartido
+ *   por la JVM) y al completarse, por respuesta, fallo o caducidad, se
+ *   retira del mapa. Una respuesta que llega después, o que no corresponde a
+ *   ninguna petición pendiente, se descarta y se cuenta aparte.
+ *
+ * Los consumidores de direct reply-to sin uso se cancelan pasado
+ * idleEventInterval; se fija a un valor mayor que el timeout para que
+ * ninguna respuesta pendiente pierda su canal.
+ */
+public class TransaccionRpcClient implements SmartLifecycle {
+
+    private static final long MIN_IDLE = 60_000;
+
+    private final DirectReplyToMessageListenerContainer container;
+
+    private final JsonCodec codec;
+
+    private final String exchange;
+
+    private final String routingKey;
+
+    private final long timeout;
+
+    private final MessagePropertiesConverter propertiesConverter = new DefaultMessagePropertiesConverter();
+
+    private final ConcurrentHashMap<String, CompletableFuture<Transaccion>> pending = new ConcurrentHashMap<>();
+
+    private final LongAdder replies = new LongAdder();
+
+    private final LongAdder timeouts = new LongAdder();
+
+    private final LongAdder unmatchedReplies = new LongAdder();
+
+    /**
+     * @param connectionFactory factoría de conexiones del contenedor de respuestas
+     * @param codec             codec JSON compartido
+     * @param exchange          exchange de las peticiones
+     * @param routingKey        routing key de las peticiones (cola del servidor)
+     * @param timeout           tiempo máximo (ms) de espera de cada respuesta
+     */
+    public TransaccionRpcClient(ConnectionFactory connectionFactory, JsonCodec codec, String exchange,
+            String routingKey, long timeout) {
+        this(new DirectReplyToMessageListenerContainer(connectionFactory), codec, exchange, routingKey, timeout);
+        container.setIdleEventInterval(Math.max(MIN_IDLE, 2 * timeout));
+    }
+
+    TransaccionRpcClient(DirectReplyToMessageListenerContainer container, JsonCodec codec, String exchange,
+            String routingKey, long timeout) {
+        this.container = container;
+        this.codec = codec;
+        this.exchange = exchange;
+        this.routingKey = routingKey;
+        this.timeout = timeout;
+        container.setMessageListener(this::onReply);
+    }
+
+    /**
+     * Envía la Transaccion y devuelve la respuesta del servidor. Si no trae
+     * id_correlacion se le asigna uno nuevo.
+     *
+     * @param transaccion petición
+     * @return futuro con la Transaccion de respuesta; falla con
+     *         TimeoutException si no llega en el plazo, con
+     *         IllegalStateException si ya hay una petición en curso con el
+     *         mismo id_correlacion (o si el cliente está parado) o con
+     *         AmqpException si no se puede publicar
+     */
+    public CompletableFuture<Transaccion> call(Transaccion transaccion) {
+        if (transaccion.getId_correlacion() == null) {
+            transaccion.setId_correlacion(UUID.randomUUID().toString());
+        }
+        String id = transaccion.getId_correlacion();
+        CompletableFuture<Transaccion> future = new CompletableFuture<>();
+        if (pending.putIfAbsent(id, future) != null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Request already in flight: " + id));
+        }
+        future.orTimeout(timeout, TimeUnit.MILLISECONDS).whenComplete((reply, ex) -> {
+            pending.remove(id, future);
+            if (ex instanceof TimeoutException) {
+                timeouts.increment();
+            }
+        });
+        try {
+            publish(id, codec.toMessage(transaccion));
+        }
+        catch (AmqpException | IllegalStateException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * @return número de peticiones esperando respuesta
+     */
+    public int getPending() {
+        return pending.size();
+    }
+
+    public long getReplies() {
+        return replies.sum();
+    }
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    public long getUnmatchedReplies() {
+        return unmatchedReplies.sum();
+    }
+
+    @Override
+    public void start() {
+        container.start();
+    }
+
+    /**
+     * Para el contenedor de respuestas y hace fallar las peticiones que
+     * siguen pendientes: sus respuestas ya no pueden llegar.
+     */
+    @Override
+    public void stop() {
+        container.stop();
+        pending.forEach((id, future) -> future.completeExceptionally(
+                new AmqpException("RPC client stopped before reply to " + id)));
+    }
+
+    @Override
+    public boolean isRunning() {
+        return container.isRunning();
+    }
+
+    private void publish(String id, Message message) {
+        message.getMessageProperties().setReplyTo(Address.AMQ_RABBITMQ_REPLY_TO);
+        message.getMessageProperties().setCorrelationId(id);
+        AMQP.BasicProperties properties = propertiesConverter.fromMessageProperties(
+                message.getMessageProperties(), StandardCharsets.UTF_8.name());
+        ChannelHolder holder = container.getChannelHolder();
+        try {
+            holder.getChannel().basicPublish(exchange, routingKey, properties, message.getBody());
+        }
+        catch (IOException e) {
+            throw new AmqpIOException(e);
+        }
+        finally {
+            container.releaseConsumerFor(holder, false, null);
+        }
+    }
+
+    private void onReply(Message message) {
+        Transaccion reply;
+        try {
+            reply = codec.decode(message.getBody(), Transaccion.class);
+        }
+        catch (MessageConversionException e) {
+            unmatchedReplies.increment();
+            return;
+        }
+        String id = reply.getId_correlacion();
+        CompletableFuture<Transaccion> future = id != null ? pending.get(id) : null;
+        if (future == null || !future.complete(reply)) {
+            unmatchedReplies.increment();
+            return;
+        }
+        replies.increment();
+    }
+}
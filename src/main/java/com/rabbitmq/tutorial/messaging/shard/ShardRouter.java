@@ -0,0 +1,88 @@
+package com.rabbitmq.tutorial.messaging.shard;
+
+/**
+ * Reparto de cuentas entre colas shard mediante hash consistente.
+ *
+ * Todas las Transaccion de una misma id_cuenta_emisor van siempre al mismo
+ * shard, y cada shard tiene un único consumidor, así que el orden por cuenta
+ * se mantiene mientras el throughput escala con el número de shards.
+ *
+ * Se usa Jump Consistent Hash (Lamping y Veach): al pasar de N a M shards
+ * solo cambia de shard la fracción mínima de cuentas (|M-N|/max(M,N)), lo
+ * que reduce el trabajo de un rebalanceo. Ver ShardedConsumers para cómo se
+ * evita reordenar los mensajes en vuelo durante ese cambio.
+ */
+public class ShardRouter {
+
+    /** Exchange directo al que se publican las Transaccion por shard */
+    public static final String EXCHANGE = "transacciones";
+
+    /** Prefijo del nombre de las colas shard */
+    public static final String QUEUE_PREFIX = "transacciones.shard.";
+
+    /** Cabecera con el número de shards vigente cuando se publicó el mensaje */
+    public static final String SHARD_COUNT_HEADER = "x-shard-count";
+
+    private final int shardCount;
+
+    /**
+     * @param shardCount número de shards (colas) de la topología
+     */
+    public ShardRouter(int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be at least 1");
+        }
+        this.shardCount = shardCount;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * @param accountId id de la cuenta emisora
+     * @return shard de la cuenta, entre 0 y shardCount - 1
+     */
+    public int shardFor(int accountId) {
+        return jumpConsistentHash(accountId, shardCount);
+    }
+
+    /**
+     * @param accountId id de la cuenta emisora
+     * @return routing key del shard de la cuenta
+     */
+    public String routingKeyFor(int accountId) {
+        return routingKey(shardFor(accountId));
+    }
+
+    /**
+     * @param shard índice del shard
+     * @return routing key con la que la cola del shard se enlaza al exchange
+     */
+    public static String routingKey(int shard) {
+        return Integer.toString(shard);
+    }
+
+    /**
+     * @param shard índice del shard
+     * @return nombre de la cola del shard
+     */
+    public static String queueName(int shard) {
+        return QUEUE_PREFIX + shard;
+    }
+
+    /**
+     * Jump Consistent Hash: asigna la clave a un bucket en [0, buckets) en
+     * O(log buckets) sin memoria adicional.
+     */
+    static int jumpConsistentHash(long key, int buckets) {
+        long b = -1;
+        long j = 0;
+        while (j < buckets) {
+            b = j;
+            key = key * 2862933555777941757L + 1;
+            j = (long) ((b + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) b;
+    }
+}
@@ -0,0 +1,295 @@
+package com.rabbitmq.tutorial.messaging.shard;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+import org.springframework.context.SmartLifecycle;
+
+import com.rabbitmq.client.GetResponse;
+import com.rabbitmq.tutorial.messaging.compression.DecompressingPostProcessor;
+import com.rabbitmq.tutorial.messaging.dispatch.MessageDispatcher;
+import com.rabbitmq.tutorial.messaging.log.MessageLog;
+import com.rabbitmq.tutorial.messaging.log.MessageLog.Event;
+import com.rabbitmq.tutorial.messaging.metrics.MessagingMetrics;
+
+/**
+ * Un consumidor por cola shard, con drenado previo tras un rebalanceo.
+ *
+ * Cada shard tiene su propio contenedor con un único consumidor, así que los
+ * mensajes de una cuenta se procesan en el orden en que se publicaron. La
+ * cola se declara con x-single-active-consumer para que esto siga siendo
+ * cierto aunque haya varias instancias de la aplicación.
+ *
+ * Rebalanceo: si cambia el número de shards, una cuenta puede pasar de la
+ * cola r a la cola s. Para no procesar sus mensajes nuevos (en s) antes que
+ * los antiguos (en r), al arrancar y antes de iniciar los contenedores se
+ * drenan todas las colas shard existentes, incluidas las retiradas:
+ * - se leen con basic.get, en orden, los mensajes cuya cabecera
+ *   x-shard-count no coincide con la topología actual (publicados antes del
+ *   cambio) y se procesan;
+ * - al encontrar el primer mensaje de la topología nueva se devuelve a la
+ *   cola y se pasa a la siguiente; las colas retiradas se borran al vaciarse.
+ * Solo cuando no quedan mensajes antiguos se arrancan los consumidores, de
+ * modo que ningún mensaje nuevo adelanta a uno antiguo de la misma cuenta.
+ * Si el drenado no se puede hacer (p. ej. el broker no responde) los
+ * consumidores no se arrancan: se reintenta cada drainInterval ms hasta que
+ * sale bien.
+ *
+ * Ya en marcha, cada drainInterval ms se vuelven a drenar las colas
+ * retiradas (índice mayor o igual que el número de shards), que no tienen
+ * consumidor: otra instancia que aún use la topología anterior puede seguir
+ * publicando en ellas durante un despliegue.
+ *
+ * Si un handler falla durante el drenado el mensaje vuelve a la cola y se
+ * deja de drenar esa cola; el orden de esa cuenta solo queda garantizado
+ * dentro de su shard.
+ *
+ * Los mensajes se entregan al manejador de Transaccion registrado en el
+ * MessageDispatcher (Receiver o BatchReceiver), que los deduplica por
+ * clave_indempotencia: una reentrega tras un fallo, o un mensaje procesado
+ * en el drenado y entregado otra vez, no se aplica dos veces. Cada
+ * recepción, por consumidor o por drenado, se registra en MessagingMetrics
+ * como en el Receiver.
+ */
+public class ShardedConsumers implements SmartLifecycle {
+
+    private final ShardRouter router;
+
+    private final SimpleRabbitListenerContainerFactory containerFactory;
+
+    private final AmqpAdmin admin;
+
+    private final RabbitTemplate template;
+
+    private final MessageDispatcher dispatcher;
+
+    private final MessageLog messageLog;
+
+    private final MessagingMetrics metrics;
+
+    private final int maxShards;
+
+    private final int prefetch;
+
+    private final long drainInterval;
+
+    private final MessagePropertiesConverter propertiesConverter = new DefaultMessagePropertiesConverter();
+
+    private final MessagePostProcessor decompressor = DecompressingPostProcessor.delegating();
+
+    private final List<SimpleMessageListenerContainer> containers = new ArrayList<>();
+
+    private ScheduledExecutorService scheduler;
+
+    private volatile boolean running;
+
+    /**
+     * @param router           topología de shards vigente
+     * @param containerFactory fábrica de la que se copian los ajustes de los contenedores
+     * @param admin            AmqpAdmin para inspeccionar y borrar colas
+     * @param template         RabbitTemplate usado en el drenado
+     * @param dispatcher       dispatcher que entrega los mensajes a los handlers
+     * @param messageLog       log de eventos de mensajes
+     * @param metrics          métricas donde se cuentan las recepciones
+     * @param maxShards        índice máximo de cola shard que se busca al drenar
+     * @param prefetch         prefetch de cada consumidor de shard
+     * @param drainInterval    espera (ms) entre reintentos del drenado y entre
+     *                         drenados de las colas retiradas
+     */
+    public ShardedConsumers(ShardRouter router, SimpleRabbitListenerContainerFactory containerFactory,
+            AmqpAdmin admin, RabbitTemplate template, MessageDispatcher dispatcher, MessageLog messageLog,
+            MessagingMetrics metrics, int maxShards, int prefetch, long drainInterval) {
+        this.router = router;
+        this.containerFactory = containerFactory;
+        this.admin = admin;
+        this.template = template;
+        this.dispatcher = dispatcher;
+        this.messageLog = messageLog;
+        this.metrics = metrics;
+        this.maxShards = Math.max(maxShards, router.getShardCount());
+        this.prefetch = prefetch;
+        this.drainInterval = drainInterval;
+    }
+
+    /**
+     * Drena las colas shard y arranca los consumidores si el drenado sale
+     * bien; si no, lo reintenta en segundo plano.
+     */
+    @Override
+    public synchronized void start() {
+        running = true;
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("shard-drain").daemon().factory());
+        drainAndStart();
+        scheduler.scheduleWithFixedDelay(this::drainAndStart, drainInterval, drainInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        ScheduledExecutorService drainer;
+        synchronized (this) {
+            drainer = scheduler;
+            scheduler = null;
+            for (SimpleMessageListenerContainer container : containers) {
+                container.stop();
+                container.destroy();
+            }
+            containers.clear();
+        }
+        if (drainer != null) {
+            drainer.shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return true si los consumidores de los shards están arrancados
+     */
+    public synchronized boolean isConsuming() {
+        return !containers.isEmpty();
+    }
+
+    /**
+     * Antes de arrancar los consumidores drena todas las colas shard; después,
+     * solo las retiradas.
+     */
+    private synchronized void drainAndStart() {
+        if (!running) {
+            return;
+        }
+        boolean consuming = !containers.isEmpty();
+        try {
+            drainPreviousTopology(consuming ? router.getShardCount() : 0);
+        }
+        catch (RuntimeException e) {
+            if (messageLog.sample(Event.FAILED)) {
+                messageLog.warn("[!] Could not drain shard queues{}: {}",
+                        consuming ? "" : ", consumers not started", e.getMessage());
+            }
+            return;
+        }
+        if (!consuming) {
+            startContainers();
+        }
+    }
+
+    private void startContainers() {
+        for (int shard = 0; shard < router.getShardCount(); shard++) {
+            SimpleMessageListenerContainer container = containerFactory.createListenerContainer();
+            container.setQueueNames(ShardRouter.queueName(shard));
+            container.setConcurrentConsumers(1);
+            container.setMaxConcurrentConsumers(1);
+            container.setPrefetchCount(prefetch);
+            container.setMessageListener(this::handle);
+            container.afterPropertiesSet();
+            container.start();
+            containers.add(container);
+        }
+    }
+
+    private void handle(Message message) {
+        metrics.recordReceived(message);
+        long start = metrics.consumerStarted();
+        try {
+            dispatcher.dispatch(message);
+        }
+        finally {
+            metrics.consumerDone(start);
+        }
+    }
+
+    /**
+     * Procesa los mensajes publicados con otra topología que queden en las
+     * colas shard y borra las colas retiradas ya vacías.
+     *
+     * @param from primer índice de cola shard que se revisa
+     */
+    private void drainPreviousTopology(int from) {
+        for (int shard = from; shard < maxShards; shard++) {
+            String queue = ShardRouter.queueName(shard);
+            if (admin.getQueueProperties(queue) == null) {
+                continue;
+            }
+            int drained = drainOldMessages(queue);
+            if (drained > 0) {
+                messageLog.info("[x] Drained {} messages from previous topology in {}", drained, queue);
+            }
+            if (shard >= router.getShardCount()) {
+                admin.deleteQueue(queue, false, true);
+            }
+        }
+    }
+
+    private int drainOldMessages(String queue) {
+        Integer drained = template.execute(channel -> {
+            int count = 0;
+            while (true) {
+                GetResponse response = channel.basicGet(queue, false);
+                if (response == null) {
+                    return count;
+                }
+                long tag = response.getEnvelope().getDeliveryTag();
+                MessageProperties properties = propertiesConverter.toMessageProperties(response.getProps(),
+                        response.getEnvelope(), StandardCharsets.UTF_8.name());
+                properties.setConsumerQueue(queue);
+                if (shardCount(properties.getHeaders().get(ShardRouter.SHARD_COUNT_HEADER))
+                        == router.getShardCount()) {
+                    channel.basicNack(tag, false, true);
+                    return count;
+                }
+                try {
+                    handle(decompressor.postProcessMessage(new Message(response.getBody(), properties)));
+                }
+                catch (RuntimeException e) {
+                    channel.basicNack(tag, false, true);
+                    if (messageLog.sample(Event.FAILED)) {
+                        messageLog.warn("[!] Stopped draining {}: {}", queue, e.getMessage());
+                    }
+                    return count;
+                }
+                channel.basicAck(tag, false);
+                count++;
+            }
+        });
+        return drained != null ? drained : 0;
+    }
+
+    /**
+     * @param header valor de la cabecera x-shard-count
+     * @return número de shards con el que se publicó, o -1 si no consta (se
+     *         trata como de una topología anterior)
+     */
+    static int shardCount(Object header) {
+        if (header instanceof Number n) {
+            return n.intValue();
+        }
+        if (header != null) {
+            try {
+                return Integer.parseInt(header.toString().trim());
+            }
+            catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+}
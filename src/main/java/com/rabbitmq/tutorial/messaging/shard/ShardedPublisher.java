@@ -0,0 +1,62 @@
+package com.rabbitmq.tutorial.messaging.shard;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import com.rabbitmq.tutorial.messaging.codec.JsonCodec;
+import com.rabbitmq.tutorial.messaging.metrics.MessagingMetrics;
+import com.rabbitmq.tutorial.model.Transaccion;
+
+/**
+ * Publica Transaccion en el shard de su cuenta emisora.
+ *
+ * Cada mensaje lleva la cabecera {@link ShardRouter#SHARD_COUNT_HEADER} con el
+ * número de shards con el que se enrutó, para que los consumidores puedan
+ * distinguir los mensajes anteriores a un rebalanceo, y la cabecera
+ * x-sent-at para medir la latencia de extremo a extremo. Las publicaciones
+ * se cuentan en MessagingMetrics con la cola shard de destino.
+ */
+public class ShardedPublisher {
+
+    private final RabbitTemplate template;
+
+    private final JsonCodec codec;
+
+    private final ShardRouter router;
+
+    private final MessagingMetrics metrics;
+
+    private final String[] queueNames;
+
+    /**
+     * @param template RabbitTemplate con el que se publica
+     * @param codec    codec JSON de las Transaccion
+     * @param router   topología de shards vigente
+     * @param metrics  métricas donde se cuentan las publicaciones
+     */
+    public ShardedPublisher(RabbitTemplate template, JsonCodec codec, ShardRouter router, MessagingMetrics metrics) {
+        this.template = template;
+        this.codec = codec;
+        this.router = router;
+        this.metrics = metrics;
+        this.queueNames = new String[router.getShardCount()];
+        for (int shard = 0; shard < queueNames.length; shard++) {
+            queueNames[shard] = ShardRouter.queueName(shard);
+        }
+    }
+
+    /**
+     * @param tx transacción a publicar; id_cuenta_emisor es obligatorio
+     */
+    public void send(Transaccion tx) {
+        if (tx.getId_cuenta_emisor() == null) {
+            throw new IllegalArgumentException("Transaccion without id_cuenta_emisor cannot be sharded");
+        }
+        int shard = router.shardFor(tx.getId_cuenta_emisor());
+        Message message = codec.toMessage(tx);
+        message.getMessageProperties().setHeader(ShardRouter.SHARD_COUNT_HEADER, router.getShardCount());
+        metrics.stampSent(message);
+        template.send(ShardRouter.EXCHANGE, ShardRouter.routingKey(shard), message);
+        metrics.recordPublish(queueNames[shard]);
+    }
+}
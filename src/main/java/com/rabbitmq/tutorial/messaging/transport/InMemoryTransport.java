@@ -0,0 +1,245 @@
+package com.rabbitmq.tutorial.messaging.transport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.AmqpResourceNotAvailableException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.context.SmartLifecycle;
+
+/**
+ * Transporte en memoria que sustituye al broker en el perfil "in-memory".
+ *
+ * Cada cola es un {@link RingBufferQueue} acotado y cada suscripción arranca
+ * sus propios hilos consumidores. El camino completo (serializar, enviar,
+ * despachar y manejar) se ejecuta así en un solo proceso, sin RabbitMQ, y las
+ * medidas reflejan solo el coste de nuestro código.
+ *
+ * Semántica de entrega, equivalente a la de un contenedor de Spring AMQP con
+ * acknowledge AUTO:
+ * - si el manejador termina bien el mensaje se confirma (ack);
+ * - si lanza AmqpRejectAndDontRequeueException o el cuerpo no se puede
+ *   convertir (MessageConversionException) se descarta;
+ * - con cualquier otra excepción vuelve a la cabeza de la cola marcado como
+ *   redelivered.
+ *
+ * Las colas se crean al usarlas por primera vez. Un envío a una cola llena
+ * espera hasta offerTimeout ms y después falla.
+ */
+public class InMemoryTransport implements MessageTransport, SmartLifecycle {
+
+    private final Map<String, RingBufferQueue> queues = new ConcurrentHashMap<>();
+
+    private final List<Subscription> subscriptions = new ArrayList<>();
+
+    private final List<Thread> consumers = new ArrayList<>();
+
+    private final int capacity;
+
+    private final long offerTimeout;
+
+    private final ThreadFactory threadFactory;
+
+    private final LongAdder published = new LongAdder();
+
+    private final LongAdder acked = new LongAdder();
+
+    private final LongAdder requeued = new LongAdder();
+
+    private final LongAdder rejected = new LongAdder();
+
+    private volatile boolean running;
+
+    /**
+     * @param capacity      mensajes (listos más sin confirmar) que admite cada cola
+     * @param offerTimeout  espera máxima (ms) de un envío a una cola llena
+     * @param threadFactory fábrica de los hilos consumidores
+     */
+    public InMemoryTransport(int capacity, long offerTimeout, ThreadFactory threadFactory) {
+        this.capacity = capacity;
+        this.offerTimeout = offerTimeout;
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+     * Manejador de los mensajes de una suscripción.
+     */
+    @FunctionalInterface
+    public interface MessageHandler {
+
+        void onMessage(Message message) throws Exception;
+    }
+
+    /**
+     * Registra consumidores para una cola. Debe llamarse antes de
+     * {@link #start()}.
+     *
+     * @param queue     nombre de la cola
+     * @param consumers número de hilos consumidores
+     * @param handler   manejador de cada mensaje
+     */
+    public void subscribe(String queue, int consumers, MessageHandler handler) {
+        subscriptions.add(new Subscription(queueFor(queue), consumers, handler));
+    }
+
+    /**
+     * @throws AmqpResourceNotAvailableException si la cola sigue llena pasado
+     *         offerTimeout o se interrumpe la espera
+     */
+    @Override
+    public void send(String queue, Message message) {
+        message.getMessageProperties().setReceivedRoutingKey(queue);
+        message.getMessageProperties().setRedelivered(false);
+        try {
+            if (!queueFor(queue).offer(message, offerTimeout)) {
+                throw new AmqpResourceNotAvailableException("In-memory queue " + queue + " is full");
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmqpResourceNotAvailableException("Interrupted publishing to " + queue);
+        }
+        published.increment();
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        for (Subscription subscription : subscriptions) {
+            for (int i = 0; i < subscription.consumers; i++) {
+                Thread thread = threadFactory.newThread(() -> consume(subscription));
+                consumers.add(thread);
+                thread.start();
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        for (Thread thread : consumers) {
+            try {
+                thread.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        consumers.clear();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @param queue nombre de la cola
+     * @return mensajes listos para entregar en la cola (0 si no existe)
+     */
+    public int getReady(String queue) {
+        RingBufferQueue q = queues.get(queue);
+        return q != null ? q.getReady() : 0;
+    }
+
+    /**
+     * @return número de mensajes publicados
+     */
+    public long getPublished() {
+        return published.sum();
+    }
+
+    /**
+     * @return número de mensajes confirmados por los consumidores
+     */
+    public long getAcked() {
+        return acked.sum();
+    }
+
+    /**
+     * @return número de mensajes devueltos a la cola tras un error
+     */
+    public long getRequeued() {
+        return requeued.sum();
+    }
+
+    /**
+     * @return número de mensajes descartados sin reencolar
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    private RingBufferQueue queueFor(String name) {
+        return queues.computeIfAbsent(name, n -> new RingBufferQueue(n, capacity));
+    }
+
+    private void consume(Subscription subscription) {
+        RingBufferQueue queue = subscription.queue;
+        while (running) {
+            Message message;
+            try {
+                message = queue.poll(100);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (message == null) {
+                continue;
+            }
+            try {
+                subscription.handler.onMessage(message);
+                queue.ack();
+                acked.increment();
+            }
+            catch (Exception e) {
+                if (isFatal(e)) {
+                    queue.reject();
+                    rejected.increment();
+                }
+                else {
+                    queue.requeue(message);
+                    requeued.increment();
+                }
+            }
+        }
+    }
+
+    private static boolean isFatal(Throwable e) {
+        if (e instanceof AmqpRejectAndDontRequeueException) {
+            return true;
+        }
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof MessageConversionException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Cola, número de consumidores y manejador de una suscripción.
+     */
+    private static final class Subscription {
+
+        private final RingBufferQueue queue;
+
+        private final int consumers;
+
+        private final MessageHandler handler;
+
+        private Subscription(RingBufferQueue queue, int consumers, MessageHandler handler) {
+            this.queue = queue;
+            this.consumers = consumers;
+            this.handler = handler;
+        }
+    }
+}
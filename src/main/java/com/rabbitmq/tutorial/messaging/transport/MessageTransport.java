@@ -0,0 +1,39 @@
+package com.rabbitmq.tutorial.messaging.transport;
+
+import org.springframework.amqp.core.Message;
+
+/**
+ * Transporte por el que los productores publican mensajes ya serializados.
+ *
+ * Hay dos implementaciones: {@link RabbitTransport}, que publica en el broker
+ * con el RabbitTemplate, e {@link InMemoryTransport} (perfil "in-memory"),
+ * que entrega los mensajes dentro del propio proceso sin ningún broker.
+ *
+ * No todos los envíos pasan por aquí. Necesitan funciones del broker que el
+ * transporte en memoria no tiene y usan su propio RabbitTemplate:
+ * - el ConfirmingPublisher (perfil "confirms"): confirmaciones y returns;
+ * - el ShardedPublisher (perfil "sharded"): exchange directo con una cola
+ *   por shard;
+ * - el TransaccionRpcClient (perfil "rpc"): direct reply-to.
+ * Por eso esos perfiles no se pueden combinar con "in-memory".
+ */
+public interface MessageTransport {
+
+    /**
+     * Publica un mensaje en una cola (exchange por defecto).
+     *
+     * @param queue   nombre de la cola destino
+     * @param message mensaje a publicar
+     */
+    void send(String queue, Message message);
+
+    /**
+     * Ejecuta un bloque de trabajo en el que todos los envíos del hilo actual
+     * salen por el mismo canal. Por defecto no hay canales y solo lo ejecuta.
+     *
+     * @param work trabajo que publica con {@link #send(String, Message)}
+     */
+    default void runPinned(Runnable work) {
+        work.run();
+    }
+}
@@ -0,0 +1,34 @@
+package com.rabbitmq.tutorial.messaging.transport;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+/**
+ * Transporte sobre RabbitMQ: publica con el RabbitTemplate configurado (que
+ * con el perfil "batching" agrupa los mensajes en lotes).
+ *
+ * {@link #runPinned(Runnable)} usa RabbitTemplate.invoke: el template reserva
+ * un canal para el hilo durante todo el bloque, en lugar de tomarlo y
+ * devolverlo a la caché en cada envío.
+ */
+public class RabbitTransport implements MessageTransport {
+
+    private final RabbitTemplate template;
+
+    public RabbitTransport(RabbitTemplate template) {
+        this.template = template;
+    }
+
+    @Override
+    public void send(String queue, Message message) {
+        template.send(queue, message);
+    }
+
+    @Override
+    public void runPinned(Runnable work) {
+        template.invoke(operations -> {
+            work.run();
+            return null;
+        });
+    }
+}
@@ -0,0 +1,182 @@
+package com.rabbitmq.tutorial.messaging.transport;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.amqp.core.Message;
+
+/**
+ * Cola acotada sobre un buffer circular con semántica de ack/nack.
+ *
+ * La capacidad cuenta tanto los mensajes listos como los entregados y aún
+ * sin confirmar, igual que la memoria que ocupan en un broker. Por eso un
+ * nack con requeue siempre cabe: el mensaje vuelve a la cabeza de la cola,
+ * en la posición que tenía, y se marca como redelivered.
+ *
+ * Si la cola está llena el productor espera (backpressure) hasta el tiempo
+ * indicado.
+ */
+final class RingBufferQueue {
+
+    private final String name;
+
+    private final Message[] ring;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notEmpty = lock.newCondition();
+
+    private final Condition notFull = lock.newCondition();
+
+    private int head;
+
+    private int ready;
+
+    private int unacked;
+
+    private long nextDeliveryTag;
+
+    RingBufferQueue(String name, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be at least 1");
+        }
+        this.name = name;
+        this.ring = new Message[capacity];
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Añade un mensaje al final de la cola.
+     *
+     * @param message mensaje a encolar
+     * @param timeout espera máxima (ms) si la cola está llena
+     * @return false si no hubo hueco en ese tiempo
+     * @throws InterruptedException si se interrumpe la espera
+     */
+    boolean offer(Message message, long timeout) throws InterruptedException {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (ready + unacked == ring.length) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            ring[(head + ready) % ring.length] = message;
+            ready++;
+            notEmpty.signal();
+            return true;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Entrega el mensaje de la cabeza. Queda pendiente de {@link #ack()},
+     * {@link #requeue(Message)} o {@link #reject()}.
+     *
+     * @param timeout espera máxima (ms) si la cola está vacía
+     * @return el mensaje con su delivery tag, o null si no llegó ninguno
+     * @throws InterruptedException si se interrumpe la espera
+     */
+    Message poll(long timeout) throws InterruptedException {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (ready == 0) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            Message message = ring[head];
+            ring[head] = null;
+            head = (head + 1) % ring.length;
+            ready--;
+            unacked++;
+            message.getMessageProperties().setDeliveryTag(++nextDeliveryTag);
+            message.getMessageProperties().setConsumerQueue(name);
+            return message;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Confirma un mensaje entregado y libera su hueco.
+     */
+    void ack() {
+        release();
+    }
+
+    /**
+     * Descarta un mensaje entregado sin volver a encolarlo.
+     */
+    void reject() {
+        release();
+    }
+
+    /**
+     * Devuelve un mensaje entregado a la cabeza de la cola.
+     *
+     * @param message mensaje entregado previamente por {@link #poll(long)}
+     */
+    void requeue(Message message) {
+        message.getMessageProperties().setRedelivered(true);
+        lock.lock();
+        try {
+            head = (head - 1 + ring.length) % ring.length;
+            ring[head] = message;
+            ready++;
+            unacked--;
+            notEmpty.signal();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return número de mensajes listos para entregar
+     */
+    int getReady() {
+        lock.lock();
+        try {
+            return ready;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return número de mensajes entregados sin confirmar
+     */
+    int getUnacked() {
+        lock.lock();
+        try {
+            return unacked;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private void release() {
+        lock.lock();
+        try {
+            unacked--;
+            notFull.signal();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.rabbitmq.tutorial.model;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 public class Transaccion {
@@ -13,7 +14,7 @@ public class Transaccion {
 	
 	private Integer id_cuenta_receptor;
 	
-	private Float cantidad;
+	private BigDecimal cantidad;
 	
 	private LocalDateTime fecha_creacion;
 	
@@ -27,7 +28,7 @@ public class Transaccion {
 	}
 
 	public Transaccion(Integer id, String clave_indempotencia, String id_correlacion, Integer id_cuenta_emisor,
-			Integer id_cuenta_receptor, Float cantidad, LocalDateTime fecha_creacion, LocalDateTime fecha_actualizacion,
+			Integer id_cuenta_receptor, BigDecimal cantidad, LocalDateTime fecha_creacion, LocalDateTime fecha_actualizacion,
 			String estado_id) {
 		super();
 		this.id = id;
@@ -81,11 +82,11 @@ public class Transaccion {
 		this.id_cuenta_receptor = id_cuenta_receptor;
 	}
 
-	public Float getCantidad() {
+	public BigDecimal getCantidad() {
 		return cantidad;
 	}
 
-	public void setCantidad(Float cantidad) {
+	public void setCantidad(BigDecimal cantidad) {
 		this.cantidad = cantidad;
 	}
 
@@ -0,0 +1,65 @@
+package com.rabbitmq.tutorial.runner;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Espera a que se vacíe el trabajo en vuelo antes de cerrar el contexto.
+ *
+ * Cada fuente de trabajo pendiente (confirmaciones sin llegar, tareas de
+ * envío encoladas, handlers en curso, mensajes publicados aún sin recibir...)
+ * se registra con un nombre y una función que devuelve cuánto le queda.
+ * {@link #await(long)} sondea todas hasta que valen 0 o vence el plazo; lo
+ * que siga pendiente se puede mostrar con {@link #pending()} para saber qué
+ * no llegó a drenarse.
+ */
+public class DrainMonitor {
+
+    private static final long POLL_INTERVAL = 20;
+
+    private final Map<String, LongSupplier> sources = new LinkedHashMap<>();
+
+    /**
+     * @param name    nombre de la fuente en el informe
+     * @param pending trabajo pendiente de la fuente (0 si está vacía)
+     * @return este monitor, para encadenar llamadas
+     */
+    public DrainMonitor track(String name, LongSupplier pending) {
+        sources.put(name, pending);
+        return this;
+    }
+
+    /**
+     * @return fuentes con trabajo pendiente y cuánto les queda, en el orden en
+     *         que se registraron
+     */
+    public Map<String, Long> pending() {
+        Map<String, Long> pending = new LinkedHashMap<>();
+        for (Map.Entry<String, LongSupplier> source : sources.entrySet()) {
+            long remaining = source.getValue().getAsLong();
+            if (remaining > 0) {
+                pending.put(source.getKey(), remaining);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Espera a que todas las fuentes estén vacías.
+     *
+     * @param timeoutMillis espera máxima (ms)
+     * @return true si se vaciaron todas dentro del plazo
+     * @throws InterruptedException si se interrumpe la espera
+     */
+    public boolean await(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+        while (!pending().isEmpty()) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            Thread.sleep(POLL_INTERVAL);
+        }
+        return true;
+    }
+}
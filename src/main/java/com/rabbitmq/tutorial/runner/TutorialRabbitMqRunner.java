@@ -1,40 +1,302 @@
 package com.rabbitmq.tutorial.runner;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.context.ConfigurableApplicationContext;
 
+import com.rabbitmq.tutorial.messaging.BatchReceiver;
+import com.rabbitmq.tutorial.messaging.Receiver;
+import com.rabbitmq.tutorial.messaging.Sender;
+import com.rabbitmq.tutorial.messaging.concurrent.BoundedExecutor;
+import com.rabbitmq.tutorial.messaging.concurrent.ParallelSender;
+import com.rabbitmq.tutorial.messaging.confirm.ConfirmingPublisher;
+import com.rabbitmq.tutorial.messaging.loadgen.LoadGenerator;
+import com.rabbitmq.tutorial.messaging.metrics.MessagingMetrics;
+import com.rabbitmq.tutorial.messaging.metrics.MetricsReporter;
+import com.rabbitmq.tutorial.messaging.outbox.Outbox;
+import com.rabbitmq.tutorial.messaging.rpc.TransaccionRpcClient;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+
 /**
- * Runner del tutorial que mantiene la aplicación viva durante un tiempo
- * configurado y luego cierra el contexto. Se usa cuando no está activo el
- * perfil "usage_message" para ejecutar el ejemplo completo.
+ * Runner del tutorial que mantiene la aplicación viva hasta que se cumple
+ * una condición de parada y luego cierra el contexto sin perder mensajes.
+ * Se usa cuando no está activo el perfil "usage_message" para ejecutar el
+ * ejemplo completo.
+ *
+ * La ejecución termina con la primera de estas condiciones:
+ *  - se han contado tutorial.client.target-count mensajes (recibidos si en
+ *    este proceso hay un receptor; publicados si no),
+ *  - ese recuento no ha avanzado durante tutorial.client.idle-timeout ms,
+ *  - han pasado tutorial.client.duration ms (o, con el perfil "loadgen" y
+ *    una carga con duración, ha terminado la carga).
+ *
+ * Al cumplirse, primero se paran los productores (Sender, LoadGenerator y el
+ * ParallelSender, que vacía sus colas) y después se espera a que no quede
+ * trabajo en vuelo: tareas en las colas del ParallelSender, confirmaciones,
+ * envíos del BoundedExecutor, backlog del Outbox, llamadas RPC, handlers en
+ * curso y, si el receptor está en este proceso, mensajes publicados aún sin
+ * recibir por primera vez (las reentregas no cuentan). Parar el
+ * ParallelSender y drenar comparten el mismo plazo,
+ * tutorial.client.drain-timeout ms. Solo entonces se imprime el informe final
+ * (motivo de la parada, ritmo de publicación y recepción, latencia de
+ * extremo a extremo y lo que no llegara a drenarse) y se cierra el contexto.
+ *
+ * Con el perfil "loadgen" imprime además el resumen de ritmo y percentiles;
+ * con "parallel-sender", el ritmo total y por hilo de envío; con "metrics",
+ * un último informe de métricas.
  */
 public class TutorialRabbitMqRunner implements CommandLineRunner {
 
+    private static final long POLL_INTERVAL = 50;
+
     /**
-     * Duración en milisegundos que la aplicación permanecerá en ejecución
-     * antes de cerrarse automáticamente. Se configura desde application.yml
-     * (propiedad tutorial.client.duration).
+     * Duración máxima en milisegundos de la ejecución antes de parar y
+     * cerrar la aplicación. Se configura desde application.yml (propiedad
+     * tutorial.client.duration); 0 = sin plazo si hay otra condición de
+     * parada.
      */
     @Value("${tutorial.client.duration:0}")
-    private int duration;
+    private long duration;
+
+    /** Mensajes contados tras los que se para; 0 = sin objetivo */
+    @Value("${tutorial.client.target-count:0}")
+    private long targetCount;
+
+    /** Tiempo (ms) sin avanzar el recuento tras el que se para; 0 = sin límite */
+    @Value("${tutorial.client.idle-timeout:0}")
+    private long idleTimeout;
+
+    /** Espera máxima (ms) a que se drene el trabajo en vuelo tras parar */
+    @Value("${tutorial.client.drain-timeout:5000}")
+    private long drainTimeout;
 
     @Autowired
     private ConfigurableApplicationContext ctx;
 
+    @Autowired
+    private MessagingMetrics metrics;
+
+    // No existe con el perfil "loadgen"
+    @Autowired(required = false)
+    private Sender sender;
+
+    // Solo existe con el perfil "receiver"
+    @Autowired(required = false)
+    private Receiver receiver;
+
+    // Solo existe con el perfil "batch-consumer"
+    @Autowired(required = false)
+    private BatchReceiver batchReceiver;
+
+    // Solo existe con el perfil "loadgen"
+    @Autowired(required = false)
+    private LoadGenerator loadGenerator;
+
+    // Solo existe con el perfil "parallel-sender"
+    @Autowired(required = false)
+    private ParallelSender parallelSender;
+
+    // Solo existe con el perfil "virtual-threads"
+    @Autowired(required = false)
+    private BoundedExecutor publishExecutor;
+
+    // Solo existe con el perfil "confirms"
+    @Autowired(required = false)
+    private ConfirmingPublisher publisher;
+
+    // Solo existe con el perfil "outbox"
+    @Autowired(required = false)
+    private Outbox outbox;
+
+    // Solo existe con el perfil "rpc"
+    @Autowired(required = false)
+    private TransaccionRpcClient rpcClient;
+
+    // Solo existe con el perfil "metrics"
+    @Autowired(required = false)
+    private MetricsReporter metricsReporter;
+
     /**
-     * Método que se ejecuta al arrancar el contexto. Muestra un mensaje y
-     * duerme el hilo principal durante la duración indicada; a continuación
-     * cierra el contexto para terminar la aplicación.
+     * Método que se ejecuta al arrancar el contexto. Espera a la condición de
+     * parada, para los productores, drena el trabajo en vuelo, imprime el
+     * informe final y cierra el contexto para terminar la aplicación.
      *
      * @param arg0 argumentos de línea de comandos
-     * @throws Exception en caso de interrupciones durante el sleep
+     * @throws Exception en caso de interrupciones durante la espera
      */
     @Override
     public void run(String... arg0) throws Exception {
-        System.out.println("Ready ... running for " + duration + "ms");
-        Thread.sleep(duration);
+        long start = System.nanoTime();
+        String reason = awaitStopCondition();
+        long drainStart = System.nanoTime();
+        stopProducers();
+        DrainMonitor drain = drainMonitor();
+        long remaining = drainTimeout - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - drainStart);
+        boolean drained = drain.await(Math.max(0, remaining));
+        long end = System.nanoTime();
+        System.out.print(report(reason, end - start, end - drainStart, drained ? Map.of() : drain.pending()));
+        if (loadGenerator != null) {
+            System.out.print(loadGenerator.summary());
+        }
+        if (parallelSender != null) {
+            System.out.print(parallelSender.summary());
+        }
+        if (metricsReporter != null) {
+            metricsReporter.report();
+        }
         ctx.close();
     }
-}
\ No newline at end of file
+
+    /**
+     * Espera a la primera condición de parada que se cumpla. El plazo de
+     * inactividad cuenta desde el arranque: si no llega ningún mensaje en
+     * idle-timeout ms también se para.
+     *
+     * @return motivo de la parada, para el informe
+     * @throws InterruptedException si se interrumpe la espera
+     */
+    String awaitStopCondition() throws InterruptedException {
+        boolean loadDeadline = loadGenerator != null && loadGenerator.getDuration() > 0;
+        long runFor = loadDeadline ? loadGenerator.getDuration() : duration;
+        List<String> conditions = new ArrayList<>();
+        if (targetCount > 0) {
+            conditions.add(targetCount + (hasReceiver() ? " received" : " published"));
+        }
+        if (idleTimeout > 0) {
+            conditions.add("idle " + idleTimeout + "ms");
+        }
+        // Sin ninguna condición se mantiene el comportamiento original: se
+        // para al cumplirse duration, aunque sea 0
+        boolean timed = runFor > 0 || conditions.isEmpty();
+        if (timed) {
+            conditions.add((loadDeadline ? "load of " : "deadline ") + runFor + "ms");
+        }
+        System.out.println("Ready ... running until " + String.join(" or ", conditions));
+
+        long start = System.nanoTime();
+        long lastCount = counted();
+        long lastProgress = start;
+        while (true) {
+            long now = System.nanoTime();
+            long count = counted();
+            if (count != lastCount) {
+                lastCount = count;
+                lastProgress = now;
+            }
+            if (targetCount > 0 && count >= targetCount) {
+                return "target count";
+            }
+            if (idleTimeout > 0 && now - lastProgress >= TimeUnit.MILLISECONDS.toNanos(idleTimeout)) {
+                return "idle";
+            }
+            if (loadDeadline ? loadGenerator.isFinished()
+                    : timed && now - start >= TimeUnit.MILLISECONDS.toNanos(runFor)) {
+                return "deadline";
+            }
+            Thread.sleep(POLL_INTERVAL);
+        }
+    }
+
+    /**
+     * Para los productores antes de drenar: primero el Sender (que termina
+     * su ciclo en curso) y el LoadGenerator, y después el ParallelSender, que
+     * publica lo que le quede en las colas de sus hilos durante como mucho
+     * drain-timeout ms; lo que no llegue se sigue vigilando en el drenaje.
+     */
+    private void stopProducers() {
+        if (sender != null) {
+            sender.stop();
+        }
+        if (loadGenerator != null) {
+            loadGenerator.stop();
+        }
+        if (parallelSender != null) {
+            parallelSender.stop(drainTimeout);
+        }
+    }
+
+    /**
+     * @return monitor con el trabajo en vuelo de los beans activos
+     */
+    private DrainMonitor drainMonitor() {
+        DrainMonitor drain = new DrainMonitor();
+        if (parallelSender != null) {
+            drain.track("parallel queue", parallelSender::getQueued);
+        }
+        if (publishExecutor != null) {
+            drain.track("sends", publishExecutor::getInFlight);
+        }
+        if (publisher != null) {
+            drain.track("confirms", publisher::getInFlight);
+        }
+        if (outbox != null) {
+            drain.track("outbox bytes", outbox::getBacklogBytes);
+        }
+        if (rpcClient != null) {
+            drain.track("rpc calls", rpcClient::getPending);
+        }
+        drain.track("handlers", metrics::getActive);
+        if (hasReceiver() && (sender != null || loadGenerator != null)) {
+            drain.track("unreceived", () -> Math.max(0, metrics.getPublished() - metrics.getFirstDeliveries()));
+        }
+        return drain;
+    }
+
+    private boolean hasReceiver() {
+        return receiver != null || batchReceiver != null;
+    }
+
+    /**
+     * @return mensajes que cuentan para target-count e idle-timeout
+     */
+    private long counted() {
+        return hasReceiver() ? metrics.getReceived() : metrics.getPublished();
+    }
+
+    /**
+     * @param reason     motivo de la parada
+     * @param totalNanos duración total, drenaje incluido
+     * @param drainNanos duración del drenaje
+     * @param pending    trabajo que no se drenó a tiempo (vacío si se drenó todo)
+     * @return informe final, una línea por concepto
+     */
+    private String report(String reason, long totalNanos, long drainNanos, Map<String, Long> pending) {
+        double seconds = Math.max(1e-9, totalNanos / 1e9);
+        long published = metrics.getPublished();
+        long received = metrics.getReceived();
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, " [run] stopped by %s after %.2f s%n", reason, seconds));
+        out.append(String.format(Locale.ROOT, " [run] published %d msgs (%.1f/s), received %d msgs (%.1f/s)%n",
+                published, published / seconds, received, received / seconds));
+        Timer endToEnd = metrics.getRegistry().find("tutorial.end-to-end").timer();
+        if (endToEnd != null && endToEnd.count() > 0) {
+            HistogramSnapshot snapshot = endToEnd.takeSnapshot();
+            out.append(String.format(Locale.ROOT, " [run] end-to-end: count=%d mean=%.3fms", snapshot.count(),
+                    snapshot.mean(TimeUnit.MILLISECONDS)));
+            for (ValueAtPercentile p : snapshot.percentileValues()) {
+                out.append(String.format(Locale.ROOT, " p%.0f=%.3fms", p.percentile() * 100,
+                        p.value(TimeUnit.MILLISECONDS)));
+            }
+            out.append(String.format(Locale.ROOT, " max=%.3fms%n", snapshot.max(TimeUnit.MILLISECONDS)));
+        }
+        long drainMillis = TimeUnit.NANOSECONDS.toMillis(drainNanos);
+        if (pending.isEmpty()) {
+            out.append(String.format(Locale.ROOT, " [run] drained in %d ms%n", drainMillis));
+        }
+        else {
+            out.append(String.format(Locale.ROOT, " [run] drain timed out after %d ms, pending %s%n", drainMillis,
+                    pending));
+        }
+        return out.toString();
+    }
+}
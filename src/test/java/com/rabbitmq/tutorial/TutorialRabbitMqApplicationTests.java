@@ -2,8 +2,12 @@ package com.rabbitmq.tutorial;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
 
+// "in-memory": el contexto arranca sin broker (sin contenedores AMQP ni
+// conexiones); "usage_message" evita que el runner del tutorial se ejecute
 @SpringBootTest
+@ActiveProfiles({ "usage_message", "in-memory" })
 class TutorialRabbitMqApplicationTests {
 
 	@Test
@@ -0,0 +1,43 @@
+package com.rabbitmq.tutorial.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.aopalliance.aop.Advice;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.retry.MessageBatchRecoverer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.retry.interceptor.RetryOperationsInterceptor;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.rabbitmq.tutorial.messaging.retry.DelayedRetryRecoverer;
+
+/**
+ * Perfiles "batch-consumer" y "retry" juntos: la fábrica en modo lote lleva
+ * el mismo advice sin reintentos locales que la de mensajes sueltos, con el
+ * DelayedRetryRecoverer como recoverer de los lotes.
+ */
+@SpringBootTest
+@ActiveProfiles({ "usage_message", "in-memory", "batch-consumer", "retry" })
+class BatchConsumerRetryTests {
+
+	@Autowired
+	@Qualifier("batchListenerContainerFactory")
+	private SimpleRabbitListenerContainerFactory batchListenerContainerFactory;
+
+	@Autowired
+	private DelayedRetryRecoverer retryRecoverer;
+
+	@Test
+	void batchFactoryRecoversThroughTheDelayedRetryRecoverer() {
+		Advice[] adviceChain = batchListenerContainerFactory.getAdviceChain();
+
+		assertThat(adviceChain).singleElement().isInstanceOf(RetryOperationsInterceptor.class);
+		assertThat(ReflectionTestUtils.getField(adviceChain[0], "recoverer")).isNotNull();
+		// el interceptor solo pasa los lotes a un MessageBatchRecoverer; a otro le confirmaría el lote sin más
+		assertThat(retryRecoverer).isInstanceOf(MessageBatchRecoverer.class);
+	}
+}
@@ -0,0 +1,175 @@
+package com.rabbitmq.tutorial.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.BatchMessageListener;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.amqp.rabbit.support.ListenerExecutionFailedException;
+import org.springframework.amqp.support.converter.SimpleMessageConverter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.Consumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.tutorial.messaging.compression.DecompressingPostProcessor;
+import com.rabbitmq.tutorial.messaging.dispatch.MessageDispatcher;
+import com.rabbitmq.tutorial.messaging.log.MessageLog;
+import com.rabbitmq.tutorial.messaging.metrics.MessagingMetrics;
+import com.rabbitmq.tutorial.messaging.retry.DelayedRetryRecoverer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Entrega en lotes de la fábrica del perfil "batch-consumer" contra un canal
+ * AMQP simulado: el consumidor del contenedor recibe las entregas como si
+ * vinieran del broker y se comprueban los ack/nack que devuelve.
+ */
+class BatchListenerContainerFactoryTests {
+
+	private final Channel channel = mock(Channel.class);
+
+	private final AtomicReference<Consumer> consumer = new AtomicReference<>();
+
+	private final BlockingQueue<List<Message>> batches = new LinkedBlockingQueue<>();
+
+	private SimpleMessageListenerContainer container;
+
+	@AfterEach
+	void stop() {
+		if (container != null) {
+			container.stop();
+		}
+	}
+
+	@Test
+	void fullBatchIsDeliveredAndAckedWithOneMultipleAck() throws Exception {
+		start(3, 10_000, batches::add);
+
+		deliver(1, 2, 3);
+
+		List<Message> batch = batches.poll(5, TimeUnit.SECONDS);
+		assertThat(batch).extracting(m -> new String(m.getBody(), StandardCharsets.UTF_8))
+				.containsExactly("m1", "m2", "m3");
+		verify(channel, timeout(5000)).basicAck(3, true);
+		verify(channel, never()).basicAck(1, false);
+	}
+
+	@Test
+	void partialBatchIsReleasedAfterReceiveTimeout() throws Exception {
+		start(10, 100, batches::add);
+
+		deliver(1, 2);
+
+		assertThat(batches.poll(5, TimeUnit.SECONDS)).hasSize(2);
+		verify(channel, timeout(5000)).basicAck(2, true);
+	}
+
+	@Test
+	void failedBatchIsRejectedAsAWhole() throws Exception {
+		start(2, 10_000, messages -> {
+			throw new IllegalStateException("boom");
+		});
+
+		deliver(1, 2);
+
+		verify(channel, timeout(5000)).basicNack(2, true, true);
+		verify(channel, never()).basicAck(anyLong(), anyBoolean());
+	}
+
+	@Test
+	void withRetryOnlyTheFailedMessageIsRetriedAndTheBatchIsAcked() throws Exception {
+		RabbitTemplate template = mock(RabbitTemplate.class);
+		DelayedRetryRecoverer recoverer = new DelayedRetryRecoverer(template, List.of("hello"), new long[] { 1000 }, 3,
+				new MessagingMetrics(new SimpleMeterRegistry(), mock(MessageDispatcher.class)), new MessageLog(1, 0));
+		start(3, 10_000, messages -> {
+			throw new ListenerExecutionFailedException("Failed to handle message in batch",
+					new IllegalStateException("boom"), messages.get(1));
+		}, new StaticListableBeanFactory(Map.of("retryRecoverer", recoverer)).getBeanProvider(
+				DelayedRetryRecoverer.class));
+
+		deliver(1, 2, 3);
+
+		verify(channel, timeout(5000)).basicAck(3, true);
+		verify(channel, never()).basicNack(anyLong(), anyBoolean(), anyBoolean());
+		verify(template).send(eq(""), eq("hello.retry.1"), bodyIs("m2"));
+		verify(template).send(eq(""), eq("hello"), bodyIs("m1"));
+		verify(template).send(eq(""), eq("hello"), bodyIs("m3"));
+	}
+
+	private void start(int batchSize, long receiveTimeout, BatchMessageListener listener) throws Exception {
+		start(batchSize, receiveTimeout, listener,
+				new StaticListableBeanFactory().getBeanProvider(DelayedRetryRecoverer.class));
+	}
+
+	private void start(int batchSize, long receiveTimeout, BatchMessageListener listener,
+			ObjectProvider<DelayedRetryRecoverer> retryRecoverer) throws Exception {
+		ConnectionFactory rabbitConnectionFactory = mock(ConnectionFactory.class);
+		Connection connection = mock(Connection.class);
+		when(rabbitConnectionFactory.newConnection((ExecutorService) any(), anyString())).thenReturn(connection);
+		when(connection.isOpen()).thenReturn(true);
+		when(connection.createChannel()).thenReturn(channel);
+		when(channel.isOpen()).thenReturn(true);
+		doAnswer(invocation -> {
+			consumer.set(invocation.getArgument(6));
+			consumer.get().handleConsumeOk("tag");
+			return "tag";
+		}).when(channel).basicConsume(anyString(), anyBoolean(), anyString(), anyBoolean(), anyBoolean(), anyMap(),
+				any(Consumer.class));
+
+		container = new RabbitConfig()
+				.batchListenerContainerFactory(new CachingConnectionFactory(rabbitConnectionFactory),
+						new SimpleMessageConverter(), 250, 1, 1, batchSize, receiveTimeout, false,
+						DecompressingPostProcessor.DEFAULT_MAX_INFLATED_SIZE, retryRecoverer)
+				.createListenerContainer();
+		container.setQueueNames("hello");
+		container.setMessageListener(listener);
+		container.setShutdownTimeout(100);
+		container.afterPropertiesSet();
+		container.start();
+		verify(channel, timeout(5000)).basicConsume(anyString(), anyBoolean(), anyString(), anyBoolean(),
+				anyBoolean(), anyMap(), any(Consumer.class));
+	}
+
+	private static Message bodyIs(String body) {
+		return argThat(m -> new String(m.getBody(), StandardCharsets.UTF_8).equals(body));
+	}
+
+	private void deliver(long... tags) throws Exception {
+		for (long tag : tags) {
+			consumer.get().handleDelivery("tag", new Envelope(tag, false, "", "hello"),
+					new AMQP.BasicProperties.Builder().contentType("text/plain").build(),
+					("m" + tag).getBytes(StandardCharsets.UTF_8));
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package com.rabbitmq.tutorial.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.rabbit.core.BatchingRabbitTemplate;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.rabbitmq.tutorial.messaging.retry.DelayedRetryRecoverer;
+
+/**
+ * Perfiles "batching" y "retry" juntos: el template compartido agrupa los
+ * envíos, pero el recoverer republica cada reintento en el momento con su
+ * propio template.
+ */
+@SpringBootTest
+@ActiveProfiles({ "usage_message", "in-memory", "batching", "retry" })
+class BatchingRetryTests {
+
+	@Autowired
+	private RabbitTemplate rabbitTemplate;
+
+	@Autowired
+	private DelayedRetryRecoverer retryRecoverer;
+
+	@Test
+	void recovererDoesNotPublishThroughTheBatchingTemplate() {
+		Object template = ReflectionTestUtils.getField(retryRecoverer, "template");
+
+		assertThat(rabbitTemplate).isInstanceOf(BatchingRabbitTemplate.class);
+		assertThat(template).isInstanceOf(RabbitTemplate.class).isNotInstanceOf(BatchingRabbitTemplate.class)
+				.isNotSameAs(rabbitTemplate);
+	}
+}
@@ -0,0 +1,107 @@
+package com.rabbitmq.tutorial.messaging;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.support.ListenerExecutionFailedException;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.tutorial.messaging.codec.JsonCodec;
+import com.rabbitmq.tutorial.messaging.dedup.IdempotencyCache;
+import com.rabbitmq.tutorial.messaging.dispatch.MessageDispatcher;
+import com.rabbitmq.tutorial.messaging.ledger.BalanceProjection;
+import com.rabbitmq.tutorial.messaging.log.MessageLog;
+import com.rabbitmq.tutorial.messaging.metrics.MessagingMetrics;
+import com.rabbitmq.tutorial.model.Transaccion;
+import com.rabbitmq.tutorial.model.Usuario;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class BatchReceiverTests {
+
+	private final JsonCodec codec = new JsonCodec(new ObjectMapper().findAndRegisterModules(), Usuario.class,
+			Transaccion.class);
+
+	private final MessageDispatcher dispatcher = new MessageDispatcher(codec).registerType(Usuario.class)
+			.registerType(Transaccion.class).setDefaultJsonType(Usuario.class);
+
+	private final BalanceProjection balances = new BalanceProjection(4, 16, 100);
+
+	private final BatchReceiver receiver = new BatchReceiver(dispatcher, new IdempotencyCache(100, 60_000, false),
+			new MessagingMetrics(new SimpleMeterRegistry(), dispatcher), new MessageLog(1, 0), balances);
+
+	@Test
+	void transaccionesInABatchAreAppliedOnce() {
+		receiver.receiveBatch(List.of(codec.toMessage(transaccion("k-1")), codec.toMessage(new Usuario(1, "John")),
+				codec.toMessage(transaccion("k-1")), codec.toMessage(transaccion("k-2"))));
+
+		assertThat(balances.getApplied()).isEqualTo(2);
+		assertThat(balances.balance(1)).isEqualTo(-2000);
+		assertThat(balances.balance(2)).isEqualTo(2000);
+	}
+
+	@Test
+	void redeliveredBatchSkipsTransaccionesAlreadyApplied() {
+		List<Message> batch = List.of(codec.toMessage(transaccion("k-1")), malformedTransaccion());
+
+		assertThatExceptionOfType(ListenerExecutionFailedException.class).isThrownBy(() -> receiver.receiveBatch(batch))
+				.withCauseInstanceOf(MessageConversionException.class)
+				.satisfies(e -> assertThat(e.getFailedMessage()).isSameAs(batch.get(1)));
+		assertThat(balances.getApplied()).isEqualTo(1);
+
+		receiver.receiveBatch(List.of(codec.toMessage(transaccion("k-1")), codec.toMessage(transaccion("k-2"))));
+
+		assertThat(balances.getApplied()).isEqualTo(2);
+		assertThat(balances.balance(2)).isEqualTo(2000);
+	}
+
+	@Test
+	void transaccionesDispatchedOneByOneShareTheDeduplication() {
+		receiver.receiveBatch(List.of(codec.toMessage(transaccion("k-1"))));
+
+		dispatcher.dispatch(codec.toMessage(transaccion("k-1")));
+		dispatcher.dispatch(codec.toMessage(transaccion("k-2")));
+
+		assertThat(balances.getApplied()).isEqualTo(2);
+	}
+
+	@Test
+	void transaccionArrayInABatchIsAppliedThroughTheSameDeduplication() {
+		receiver.receiveBatch(List.of(codec.toMessage(transaccion("k-1")),
+				array("[{\"id\":1,\"clave_indempotencia\":\"k-1\",\"id_cuenta_emisor\":1,\"id_cuenta_receptor\":2,"
+						+ "\"cantidad\":10.00},{\"id\":2,\"clave_indempotencia\":\"k-2\",\"id_cuenta_emisor\":1,"
+						+ "\"id_cuenta_receptor\":3,\"cantidad\":5.00}]"),
+				codec.toMessage(new Usuario(1, "John"))));
+
+		assertThat(balances.getApplied()).isEqualTo(2);
+		assertThat(balances.balance(1)).isEqualTo(-1500);
+		assertThat(balances.balance(2)).isEqualTo(1000);
+		assertThat(balances.balance(3)).isEqualTo(500);
+	}
+
+	private static Transaccion transaccion(String key) {
+		return new Transaccion(1, key, null, 1, 2, new BigDecimal("10.0"), null, null, "COMPLETADA");
+	}
+
+	private static Message array(String body) {
+		MessageProperties properties = new MessageProperties();
+		properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+		properties.setHeader(MessageDispatcher.TYPE_ID_HEADER, Transaccion[].class.getName());
+		return new Message(body.getBytes(StandardCharsets.UTF_8), properties);
+	}
+
+	private static Message malformedTransaccion() {
+		MessageProperties properties = new MessageProperties();
+		properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+		properties.setHeader(MessageDispatcher.TYPE_ID_HEADER, Transaccion.class.getName());
+		return new Message("{\"id\":".getBytes(StandardCharsets.UTF_8), properties);
+	}
+}
@@ -0,0 +1,65 @@
+package com.rabbitmq.tutorial.messaging;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.tutorial.messaging.codec.JsonCodec;
+import com.rabbitmq.tutorial.messaging.dedup.IdempotencyCache;
+import com.rabbitmq.tutorial.messaging.dispatch.MessageDispatcher;
+import com.rabbitmq.tutorial.messaging.ledger.BalanceProjection;
+import com.rabbitmq.tutorial.messaging.log.MessageLog;
+import com.rabbitmq.tutorial.messaging.metrics.MessagingMetrics;
+import com.rabbitmq.tutorial.model.Transaccion;
+import com.rabbitmq.tutorial.model.Usuario;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ReceiverTests {
+
+	private final MessageDispatcher dispatcher = new MessageDispatcher(
+			new JsonCodec(new ObjectMapper().findAndRegisterModules())).registerType(Usuario.class)
+			.registerType(Transaccion.class).setDefaultJsonType(Usuario.class);
+
+	private final BalanceProjection balances = new BalanceProjection(4, 16, 100);
+
+	private final MessagingMetrics metrics = new MessagingMetrics(new SimpleMeterRegistry(), dispatcher);
+
+	private final Receiver receiver = new Receiver(dispatcher, new IdempotencyCache(100, 60_000, false), metrics,
+			new MessageLog(1, 0), balances);
+
+	@Test
+	void arrayElementsDoNotInheritFieldsFromThePreviousOne() {
+		receiver.receive(array("[{\"id\":1,\"clave_indempotencia\":\"k-1\",\"id_cuenta_emisor\":1,"
+				+ "\"id_cuenta_receptor\":2,\"cantidad\":10.00,\"estado_id\":\"OK\"},"
+				+ "{\"id\":2,\"clave_indempotencia\":\"k-2\",\"id_cuenta_receptor\":3,\"cantidad\":5.00}]"));
+
+		assertThat(balances.getApplied()).isEqualTo(2);
+		assertThat(balances.balance(1)).isEqualTo(-1000);
+		assertThat(balances.balance(2)).isEqualTo(1000);
+		assertThat(balances.balance(3)).isEqualTo(500);
+		assertThat(balances.count("OK")).isEqualTo(1);
+		assertThat(metrics.getReceived()).isEqualTo(1);
+	}
+
+	@Test
+	void arrayElementWithoutKeyIsNotTakenForTheDuplicateOfTheOneBefore() {
+		receiver.receive(array("[{\"id\":1,\"clave_indempotencia\":\"k-1\",\"id_cuenta_receptor\":2,"
+				+ "\"cantidad\":1.00},{\"id\":2,\"id_cuenta_receptor\":2,\"cantidad\":1.00}]"));
+
+		assertThat(balances.getApplied()).isEqualTo(2);
+		assertThat(balances.balance(2)).isEqualTo(200);
+	}
+
+	private static Message array(String body) {
+		MessageProperties properties = new MessageProperties();
+		properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+		properties.setHeader(MessageDispatcher.TYPE_ID_HEADER, Transaccion[].class.getName());
+		return new Message(body.getBytes(StandardCharsets.UTF_8), properties);
+	}
+}
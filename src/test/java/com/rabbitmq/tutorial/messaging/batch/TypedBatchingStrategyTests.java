@@ -0,0 +1,122 @@
+package com.rabbitmq.tutorial.messaging.batch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.batch.MessageBatch;
+
+import com.rabbitmq.tutorial.messaging.metrics.MessagingMetrics;
+
+class TypedBatchingStrategyTests {
+
+	@Test
+	void batchKeepsTypePerFragment() {
+		TypedBatchingStrategy strategy = new TypedBatchingStrategy(2, 1024, 0L);
+		assertThat(strategy.addToBatch("", "hello", message("\"Hello World!\"", "java.lang.String"))).isNull();
+		MessageBatch batch = strategy.addToBatch("", "hello",
+				message("{\"id\":1,\"nombre\":\"John\"}", "com.rabbitmq.tutorial.model.Usuario"));
+
+		assertThat(batch).isNotNull();
+		assertThat(strategy.canDebatch(batch.getMessage().getMessageProperties())).isTrue();
+
+		List<Message> fragments = new ArrayList<>();
+		strategy.deBatch(batch.getMessage(), fragments::add);
+		assertThat(fragments).hasSize(2);
+		assertThat(fragments.get(0).getMessageProperties().getHeaders().get("__TypeId__")).isEqualTo("java.lang.String");
+		assertThat(fragments.get(1).getMessageProperties().getHeaders().get("__TypeId__"))
+				.isEqualTo("com.rabbitmq.tutorial.model.Usuario");
+		assertThat(new String(fragments.get(1).getBody(), StandardCharsets.UTF_8))
+				.isEqualTo("{\"id\":1,\"nombre\":\"John\"}");
+	}
+
+	@Test
+	void batchKeepsSentAtAndIdsPerFragment() {
+		TypedBatchingStrategy strategy = new TypedBatchingStrategy(2, 1024, 0L);
+		Message first = message("\"a\"", "java.lang.String");
+		first.getMessageProperties().setHeader(MessagingMetrics.SENT_AT_HEADER, 1_000L);
+		first.getMessageProperties().setCorrelationId("c-1");
+		first.getMessageProperties().setMessageId("m-1");
+		Message second = message("\"b\"", "java.lang.String");
+		second.getMessageProperties().setHeader(MessagingMetrics.SENT_AT_HEADER, 2_000L);
+		assertThat(strategy.addToBatch("", "hello", first)).isNull();
+		MessageBatch batch = strategy.addToBatch("", "hello", second);
+
+		List<Message> fragments = new ArrayList<>();
+		strategy.deBatch(batch.getMessage(), fragments::add);
+
+		assertThat(fragments).extracting(m -> m.getMessageProperties().getHeaders().get(MessagingMetrics.SENT_AT_HEADER))
+				.containsExactly(1_000L, 2_000L);
+		assertThat(fragments).extracting(m -> m.getMessageProperties().getCorrelationId()).containsExactly("c-1", null);
+		assertThat(fragments).extracting(m -> m.getMessageProperties().getMessageId()).containsExactly("m-1", null);
+	}
+
+	@Test
+	void legacyBatchIsStillDebatched() {
+		ByteBuffer body = ByteBuffer.allocate(64);
+		for (String field : new String[] { "application/json", null, "java.lang.String" }) {
+			if (field == null) {
+				body.putShort((short) -1);
+			}
+			else {
+				body.putShort((short) field.length()).put(field.getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		body.putInt(3).put("\"a\"".getBytes(StandardCharsets.UTF_8));
+		MessageProperties properties = new MessageProperties();
+		properties.setHeader(MessageProperties.SPRING_BATCH_FORMAT, "tutorialTyped1");
+		Message batch = new Message(Arrays.copyOf(body.array(), body.position()), properties);
+		TypedBatchingStrategy strategy = new TypedBatchingStrategy(2, 1024, 0L);
+
+		List<Message> fragments = new ArrayList<>();
+		assertThat(strategy.canDebatch(properties)).isTrue();
+		strategy.deBatch(batch, fragments::add);
+
+		assertThat(fragments).singleElement().satisfies(m -> {
+			assertThat(m.getMessageProperties().getContentType()).isEqualTo("application/json");
+			assertThat(m.getMessageProperties().getHeaders().get("__TypeId__")).isEqualTo("java.lang.String");
+			assertThat(new String(m.getBody(), StandardCharsets.UTF_8)).isEqualTo("\"a\"");
+		});
+	}
+
+	@Test
+	void releasesWhenBufferLimitIsExceeded() {
+		TypedBatchingStrategy strategy = new TypedBatchingStrategy(100, 80, 0L);
+		assertThat(strategy.addToBatch("", "hello", message("\"0123456789\"", "java.lang.String"))).isNull();
+		MessageBatch batch = strategy.addToBatch("", "hello", message("\"0123456789\"", "java.lang.String"));
+
+		assertThat(batch).isNotNull();
+		assertThat(strategy.canDebatch(batch.getMessage().getMessageProperties())).isFalse();
+		assertThat(strategy.releaseBatches()).hasSize(1);
+	}
+
+	@Test
+	void messageFillingABatchAfterByteReleaseIsReleasedImmediately() {
+		TypedBatchingStrategy strategy = new TypedBatchingStrategy(100, 80, 0L);
+		assertThat(strategy.addToBatch("", "hello", message("\"0123456789\"", "java.lang.String"))).isNull();
+		assertThat(strategy.nextRelease()).isNull();
+		MessageBatch batch = strategy.addToBatch("", "hello",
+				message("\"0123456789012345678901234567890123456789\"", "java.lang.String"));
+
+		assertThat(batch).isNotNull();
+		assertThat(strategy.nextRelease()).isBeforeOrEqualTo(new Date());
+		assertThat(strategy.releaseBatches()).hasSize(1);
+		assertThat(strategy.nextRelease()).isNull();
+	}
+
+	private static Message message(String json, String typeId) {
+		MessageProperties properties = new MessageProperties();
+		properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+		properties.setContentEncoding("UTF-8");
+		properties.setHeader("__TypeId__", typeId);
+		return new Message(json.getBytes(StandardCharsets.UTF_8), properties);
+	}
+}
@@ -0,0 +1,60 @@
+package com.rabbitmq.tutorial.messaging.codec;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.tutorial.model.Transaccion;
+import com.rabbitmq.tutorial.model.Usuario;
+
+class JsonCodecTests {
+
+	private final JsonCodec codec = new JsonCodec(new ObjectMapper().findAndRegisterModules(), Usuario.class);
+
+	@Test
+	void readersAndWritersAreBuiltOncePerType() {
+		assertThat(codec.reader(Usuario.class)).isSameAs(codec.reader(Usuario.class));
+		assertThat(codec.writer(Usuario.class)).isSameAs(codec.writer(Usuario.class));
+		assertThat(codec.reader(Transaccion.class)).isSameAs(codec.reader(Transaccion.class))
+				.isNotSameAs(codec.reader(Usuario.class));
+	}
+
+	@Test
+	void reusedBufferDoesNotLeakIntoEarlierResults() {
+		byte[] large = codec.encode(new Usuario(1, "x".repeat(2048)));
+		byte[] small = codec.encode(new Usuario(2, "John"));
+
+		assertThat(new String(small, StandardCharsets.UTF_8)).isEqualTo("{\"id\":2,\"nombre\":\"John\"}");
+		assertThat(large).hasSizeGreaterThan(2048);
+		assertThat(codec.decode(large, Usuario.class).getNombre()).hasSize(2048);
+		assertThat(codec.decode(small, Usuario.class).getId()).isEqualTo(2);
+	}
+
+	@Test
+	void toMessageCarriesTypeAndLength() {
+		Message message = codec.toMessage(new Usuario(7, "Ana"));
+		MessageProperties properties = message.getMessageProperties();
+
+		assertThat(properties.getContentType()).isEqualTo(MessageProperties.CONTENT_TYPE_JSON);
+		assertThat(properties.getContentEncoding()).isEqualTo("UTF-8");
+		assertThat(properties.getContentLength()).isEqualTo(message.getBody().length);
+		assertThat(properties.<String>getHeader(JsonCodec.TYPE_ID_HEADER)).isEqualTo(Usuario.class.getName());
+		assertThat(codec.decode(message.getBody(), Usuario.class).getNombre()).isEqualTo("Ana");
+	}
+
+	@Test
+	void malformedInputIsAConversionFailure() {
+		assertThatExceptionOfType(MessageConversionException.class)
+				.isThrownBy(() -> codec.decode("{\"id\":".getBytes(StandardCharsets.UTF_8), Usuario.class))
+				.withMessageContaining(Usuario.class.getName());
+		assertThatExceptionOfType(MessageConversionException.class)
+				.isThrownBy(() -> codec.decode("{\"id\":\"x\"}".getBytes(StandardCharsets.UTF_8), Usuario.class));
+	}
+}
@@ -0,0 +1,84 @@
+package com.rabbitmq.tutorial.messaging.codec;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import com.rabbitmq.tutorial.model.Transaccion;
+
+class TransaccionBinaryCodecTests {
+
+	private final TransaccionBinaryCodec codec = new TransaccionBinaryCodec();
+
+	@Test
+	void roundTripKeepsAllFields() {
+		LocalDateTime creada = LocalDateTime.of(2024, 5, 17, 10, 30, 15, 123456789);
+		Transaccion tx = new Transaccion(-42, "clave-ñ-1", "corr-1", 1001, Integer.MIN_VALUE,
+				new BigDecimal("987654321.50"), creada, creada.plusSeconds(3), "PENDIENTE");
+
+		Transaccion decoded = codec.decode(codec.encode(tx));
+
+		assertThat(decoded).usingRecursiveComparison().isEqualTo(tx);
+	}
+
+	@Test
+	void nullFieldsTakeNoSpace() {
+		Transaccion tx = new Transaccion();
+		tx.setId(1);
+
+		byte[] body = codec.encode(tx);
+
+		assertThat(body).hasSize(4);
+		assertThat(codec.decode(body)).usingRecursiveComparison().isEqualTo(tx);
+	}
+
+	@Test
+	void unknownVersionAndTruncatedPayloadsAreRejected() {
+		byte[] body = codec.encode(new Transaccion(1, "k", "c", 2, 3, BigDecimal.ONE, null, null, "OK"));
+
+		assertThatExceptionOfType(MessageConversionException.class)
+				.isThrownBy(() -> codec.decode(Arrays.copyOf(body, body.length - 2)));
+		body[0] = 9;
+		assertThatExceptionOfType(MessageConversionException.class).isThrownBy(() -> codec.decode(body));
+	}
+
+	@Test
+	void corruptLengthsTimestampsAndAmountsAreRejected() {
+		// longitud de clave_indempotencia cercana a Integer.MAX_VALUE: pos + length desbordaría
+		byte[] hugeString = { 2, 0, 1 << 1, (byte) 0xFE, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 'x' };
+		// fecha_creacion con 2.000.000.000 nanos
+		byte[] badNanos = { 2, 0, 1 << 6, 0, (byte) 0x80, (byte) 0xA8, (byte) 0xD6, (byte) 0xB9, 0x07 };
+		int nan = Float.floatToIntBits(Float.NaN);
+		byte[] nanAmount = { 1, 0, 1 << 5, (byte) (nan >>> 24), (byte) (nan >>> 16), (byte) (nan >>> 8), (byte) nan };
+
+		assertThatExceptionOfType(MessageConversionException.class).isThrownBy(() -> codec.decode(hugeString))
+				.withMessageContaining("Invalid string length");
+		assertThatExceptionOfType(MessageConversionException.class).isThrownBy(() -> codec.decode(badNanos))
+				.withMessageContaining("Corrupt");
+		assertThatExceptionOfType(MessageConversionException.class).isThrownBy(() -> codec.decode(nanAmount))
+				.withMessageContaining("Corrupt");
+	}
+
+	@Test
+	void trailingBytesAreRejected() {
+		byte[] body = codec.encode(new Transaccion(1, "k", "c", 2, 3, BigDecimal.ONE, null, null, "OK"));
+
+		assertThatExceptionOfType(MessageConversionException.class)
+				.isThrownBy(() -> codec.decode(Arrays.copyOf(body, body.length + 1)))
+				.withMessageContaining("1 trailing bytes");
+	}
+
+	@Test
+	void version1PayloadsWithAFloatAmountAreStillRead() {
+		int bits = Float.floatToIntBits(1234.56f);
+		byte[] v1 = { 1, 0, 1 << 5, (byte) (bits >>> 24), (byte) (bits >>> 16), (byte) (bits >>> 8), (byte) bits };
+
+		assertThat(codec.decode(v1).getCantidad()).isEqualTo(new BigDecimal("1234.56"));
+	}
+}
@@ -0,0 +1,78 @@
+package com.rabbitmq.tutorial.messaging.compression;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.postprocessor.GZipPostProcessor;
+
+class CompressionPostProcessorTests {
+
+	private final CompressingPostProcessor compressor = new CompressingPostProcessor(64, 1);
+
+	private final MessagePostProcessor decompressor = DecompressingPostProcessor.delegating();
+
+	@Test
+	void largeBodyRoundTripsAndRestoresEncoding() {
+		String json = "{\"id\":1,\"nombre\":\"" + "John ".repeat(200) + "\"}";
+		Message compressed = compressor.postProcessMessage(message(json));
+
+		assertThat(compressed.getMessageProperties().getContentEncoding()).isEqualTo("deflate:UTF-8");
+		assertThat(compressed.getBody().length).isLessThan(json.length());
+
+		Message restored = decompressor.postProcessMessage(compressed);
+		assertThat(new String(restored.getBody(), StandardCharsets.UTF_8)).isEqualTo(json);
+		assertThat(restored.getMessageProperties().getContentEncoding()).isEqualTo("UTF-8");
+	}
+
+	@Test
+	void smallBodyIsLeftAlone() {
+		Message message = message("Hello World!");
+
+		assertThat(compressor.postProcessMessage(message)).isSameAs(message);
+		assertThat(decompressor.postProcessMessage(message).getBody()).isEqualTo(message.getBody());
+	}
+
+	@Test
+	void gzipFromOtherProducersIsAccepted() throws Exception {
+		String json = "x".repeat(500);
+		Message gzipped = new GZipPostProcessor().postProcessMessage(message(json));
+
+		Message restored = decompressor.postProcessMessage(gzipped);
+		assertThat(new String(restored.getBody(), StandardCharsets.UTF_8)).isEqualTo(json);
+	}
+
+	@Test
+	void inflatedSizeIsBounded() {
+		Message bomb = compressor.postProcessMessage(message("0".repeat(100_000)));
+		assertThat(bomb.getBody().length).isLessThan(1_000);
+
+		assertThatExceptionOfType(MessageConversionException.class)
+			.isThrownBy(() -> DecompressingPostProcessor.delegating(99_999).postProcessMessage(bomb))
+			.withMessageContaining("99999");
+	}
+
+	@Test
+	void bodyOfExactlyTheMaximumSizeIsAccepted() {
+		String json = "0".repeat(100_000);
+		Message compressed = compressor.postProcessMessage(message(json));
+
+		Message restored = DecompressingPostProcessor.delegating(100_000).postProcessMessage(compressed);
+		assertThat(restored.getBody()).hasSize(100_000);
+		assertThat(decompressor.postProcessMessage(compressor.postProcessMessage(message(json))).getBody())
+			.hasSize(100_000);
+	}
+
+	private static Message message(String body) {
+		MessageProperties properties = new MessageProperties();
+		properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+		properties.setContentEncoding("UTF-8");
+		return new Message(body.getBytes(StandardCharsets.UTF_8), properties);
+	}
+}
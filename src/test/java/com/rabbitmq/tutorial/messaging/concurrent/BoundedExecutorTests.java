@@ -0,0 +1,98 @@
+package com.rabbitmq.tutorial.messaging.concurrent;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+class BoundedExecutorTests {
+
+	@Test
+	void executeBlocksWhileAllSlotsAreBusy() throws Exception {
+		BoundedExecutor executor = BoundedExecutor.virtualThreads(2);
+		CountDownLatch release = new CountDownLatch(1);
+		executor.execute(() -> await(release));
+		executor.execute(() -> await(release));
+		assertThat(executor.getInFlight()).isEqualTo(2);
+
+		AtomicBoolean third = new AtomicBoolean();
+		Thread producer = Thread.ofPlatform().start(() -> executor.execute(() -> third.set(true)));
+		producer.join(200);
+		assertThat(producer.isAlive()).isTrue();
+
+		release.countDown();
+		producer.join(5000);
+		assertThat(executor.awaitIdle(5000)).isTrue();
+		assertThat(third).isTrue();
+		assertThat(executor.getInFlight()).isZero();
+		executor.destroy();
+	}
+
+	@Test
+	void failingTaskReleasesItsSlot() throws Exception {
+		BoundedExecutor executor = BoundedExecutor.platformThreads(1);
+		executor.execute(() -> {
+			throw new IllegalStateException("boom");
+		});
+		AtomicBoolean ran = new AtomicBoolean();
+		executor.execute(() -> ran.set(true));
+
+		assertThat(executor.awaitIdle(5000)).isTrue();
+		assertThat(ran).isTrue();
+		executor.destroy();
+	}
+
+	@Test
+	void rejectedTaskReleasesItsSlot() {
+		ExecutorService delegate = Executors.newSingleThreadExecutor();
+		delegate.shutdown();
+		BoundedExecutor executor = new BoundedExecutor(delegate, 1);
+
+		assertThatExceptionOfType(RejectedExecutionException.class).isThrownBy(() -> executor.execute(() -> { }));
+		assertThat(executor.getInFlight()).isZero();
+	}
+
+	@Test
+	void interruptedWaitIsRejected() throws Exception {
+		BoundedExecutor executor = BoundedExecutor.virtualThreads(1);
+		CountDownLatch release = new CountDownLatch(1);
+		executor.execute(() -> await(release));
+
+		Thread.currentThread().interrupt();
+		assertThatExceptionOfType(RejectedExecutionException.class).isThrownBy(() -> executor.execute(() -> { }));
+		assertThat(Thread.interrupted()).isTrue();
+
+		release.countDown();
+		assertThat(executor.awaitIdle(5000)).isTrue();
+		executor.destroy();
+	}
+
+	@Test
+	void awaitIdleTimesOutWithTasksInFlight() throws Exception {
+		BoundedExecutor executor = BoundedExecutor.virtualThreads(4);
+		CountDownLatch release = new CountDownLatch(1);
+		executor.execute(() -> await(release));
+
+		assertThat(executor.awaitIdle(50)).isFalse();
+		assertThat(executor.getInFlight()).isEqualTo(1);
+		release.countDown();
+		assertThat(executor.awaitIdle(5000)).isTrue();
+		executor.destroy();
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(10, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package com.rabbitmq.tutorial.messaging.concurrent;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import com.rabbitmq.tutorial.messaging.log.MessageLog;
+import com.rabbitmq.tutorial.messaging.transport.MessageTransport;
+
+class ParallelSenderTests {
+
+	private final PinningTransport transport = new PinningTransport();
+
+	private final MessageLog messageLog = new MessageLog(1, 0);
+
+	@Test
+	void tasksRunOnPinnedWorkerThreads() {
+		ParallelSender sender = new ParallelSender(transport, messageLog, 3, 16, 10, 5000);
+		Set<String> threads = ConcurrentHashMap.newKeySet();
+		sender.start();
+		for (int i = 0; i < 30; i++) {
+			sender.execute(() -> {
+				assertThat(transport.pinned.get()).isTrue();
+				threads.add(Thread.currentThread().getName());
+			});
+		}
+		sender.stop();
+
+		assertThat(sender.getCompleted()).isEqualTo(30);
+		assertThat(threads).hasSize(3);
+		assertThat(transport.pins).hasValue(3);
+		assertThatExceptionOfType(RejectedExecutionException.class).isThrownBy(() -> sender.execute(() -> { }));
+	}
+
+	@Test
+	void failedChannelIsPinnedAgain() {
+		ParallelSender sender = new ParallelSender(transport, messageLog, 1, 16, 10, 5000);
+		AtomicInteger runs = new AtomicInteger();
+		sender.start();
+		sender.execute(() -> {
+			if (runs.incrementAndGet() == 1) {
+				throw new AmqpConnectException(new IllegalStateException("channel closed"));
+			}
+		});
+		sender.execute(runs::incrementAndGet);
+		sender.stop();
+
+		assertThat(runs).hasValue(2);
+		assertThat(sender.getFailures()).isEqualTo(1);
+		assertThat(sender.getCompleted()).isEqualTo(1);
+		assertThat(transport.pins).hasValue(2);
+	}
+
+	@Test
+	void failedTaskKeepsTheChannel() {
+		ParallelSender sender = new ParallelSender(transport, messageLog, 1, 16, 10, 5000);
+		AtomicInteger runs = new AtomicInteger();
+		sender.start();
+		sender.execute(() -> {
+			runs.incrementAndGet();
+			throw new IllegalStateException("boom");
+		});
+		sender.execute(() -> {
+			runs.incrementAndGet();
+			throw new MessageConversionException("bad payload");
+		});
+		sender.execute(runs::incrementAndGet);
+		sender.stop();
+
+		assertThat(runs).hasValue(3);
+		assertThat(sender.getFailures()).isEqualTo(2);
+		assertThat(sender.getCompleted()).isEqualTo(1);
+		assertThat(transport.pins).hasValue(1);
+	}
+
+	@Test
+	void summaryMeasuresFromTheFirstTaskOfAnyWorker() throws Exception {
+		ParallelSender sender = new ParallelSender(transport, messageLog, 4, 16, 10, 5000);
+		sender.start();
+		Thread.sleep(50);
+		for (int i = 0; i < 8; i++) {
+			sender.execute(() -> { });
+		}
+		sender.stop();
+
+		assertThat(sender.summary()).startsWith(" [parallel] 4 workers: 8 tasks in 0.0");
+	}
+
+	@Test
+	void stopTimesOutWithTasksStillQueued() throws Exception {
+		ParallelSender sender = new ParallelSender(transport, messageLog, 1, 16, 10, 5000);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch running = new CountDownLatch(1);
+		sender.start();
+		sender.execute(() -> {
+			running.countDown();
+			try {
+				release.await(10, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+		sender.execute(() -> { });
+		sender.execute(() -> { });
+
+		assertThat(sender.stop(50)).isFalse();
+		assertThat(sender.getQueued()).isEqualTo(2);
+
+		release.countDown();
+		assertThat(sender.stop(5000)).isTrue();
+		assertThat(sender.getQueued()).isZero();
+		assertThat(sender.getCompleted()).isEqualTo(3);
+	}
+
+	private static final class PinningTransport implements MessageTransport {
+
+		private final ThreadLocal<Boolean> pinned = ThreadLocal.withInitial(() -> false);
+
+		private final AtomicInteger pins = new AtomicInteger();
+
+		@Override
+		public void send(String queue, Message message) {
+		}
+
+		@Override
+		public void runPinned(Runnable work) {
+			pins.incrementAndGet();
+			pinned.set(true);
+			try {
+				work.run();
+			}
+			finally {
+				pinned.set(false);
+			}
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package com.rabbitmq.tutorial.messaging.concurrent;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+class ReusablePoolTests {
+
+	private final AtomicInteger created = new AtomicInteger();
+
+	private final List<StringBuilder> discarded = new ArrayList<>();
+
+	private final ReusablePool<StringBuilder> pool = new ReusablePool<>(() -> {
+		created.incrementAndGet();
+		return new StringBuilder();
+	}, 1, discarded::add);
+
+	@Test
+	void platformThreadKeepsItsOwnObject() {
+		StringBuilder first = pool.acquire();
+		pool.release(first);
+
+		assertThat(pool.acquire()).isSameAs(first);
+		assertThat(pool.getIdle()).isZero();
+		assertThat(created).hasValue(1);
+	}
+
+	@Test
+	void virtualThreadsShareThePooledObjects() throws Exception {
+		AtomicReference<StringBuilder> first = new AtomicReference<>();
+		AtomicReference<StringBuilder> second = new AtomicReference<>();
+		Thread.ofVirtual().start(() -> {
+			first.set(pool.acquire());
+			pool.release(first.get());
+		}).join();
+		Thread.ofVirtual().start(() -> {
+			second.set(pool.acquire());
+			pool.release(second.get());
+		}).join();
+
+		assertThat(second.get()).isSameAs(first.get());
+		assertThat(created).hasValue(1);
+		assertThat(pool.getIdle()).isEqualTo(1);
+	}
+
+	@Test
+	void objectsBeyondCapacityAreDiscarded() throws Exception {
+		Thread.ofVirtual().start(() -> {
+			StringBuilder a = pool.acquire();
+			StringBuilder b = pool.acquire();
+			pool.release(a);
+			pool.release(b);
+		}).join();
+
+		assertThat(created).hasValue(2);
+		assertThat(pool.getIdle()).isEqualTo(1);
+		assertThat(discarded).hasSize(1);
+	}
+}
@@ -0,0 +1,121 @@
+package com.rabbitmq.tutorial.messaging.confirm;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.rabbit.connection.Connection;
+
+import com.rabbitmq.client.ShutdownSignalException;
+import com.rabbitmq.tutorial.messaging.log.MessageLog;
+
+class AimdPublishWindowTests {
+
+	private static final long FAST = TimeUnit.MILLISECONDS.toNanos(5);
+
+	private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(200);
+
+	private final AtomicLong now = new AtomicLong(1_000_000_000L);
+
+	private final MessageLog messageLog = new MessageLog(1, 0);
+
+	@Test
+	void windowGrowsByOnePerFullWindowOfFastConfirms() throws Exception {
+		AimdPublishWindow window = new AimdPublishWindow(4, 1, 100, 50, 0.5, messageLog, now::get);
+
+		fillAndAck(window, 4, FAST);
+
+		assertThat(window.getLimit()).isEqualTo(5);
+		assertThat(window.getInFlight()).isZero();
+	}
+
+	@Test
+	void slowConfirmsHalveTheWindowOncePerRtt() throws Exception {
+		AimdPublishWindow window = new AimdPublishWindow(16, 1, 100, 50, 0.5, messageLog, now::get);
+
+		fillAndAck(window, 16, SLOW);
+		assertThat(window.getLimit()).isEqualTo(8);
+		assertThat(window.getDecreases()).isEqualTo(1);
+
+		now.addAndGet(SLOW);
+		window.nacked();
+		assertThat(window.getLimit()).isEqualTo(4);
+		assertThat(window.acquire(0)).isTrue();
+		assertThat(window.getSmoothedRtt()).isEqualTo(SLOW);
+	}
+
+	@Test
+	void blockedConnectionHoldsSendersUntilUnblocked() throws Exception {
+		AimdPublishWindow window = new AimdPublishWindow(8, 2, 100, 50, 0.5, messageLog, now::get);
+		window.blocked("low on memory");
+
+		assertThat(window.getLimit()).isEqualTo(4);
+
+		// El timeout (10 ms) no corre mientras el broker bloquea la conexión
+		CompletableFuture<Boolean> waiting = CompletableFuture.supplyAsync(() -> {
+			try {
+				return window.acquire(10);
+			}
+			catch (InterruptedException e) {
+				return false;
+			}
+		});
+		Thread.sleep(100);
+		assertThat(waiting).isNotDone();
+
+		window.unblocked();
+		assertThat(waiting.get(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(window.getBlockedCount()).isEqualTo(1);
+	}
+
+	@Test
+	void closedConnectionReleasesBlockedSenders() throws Exception {
+		AimdPublishWindow window = new AimdPublishWindow(8, 2, 100, 50, 0.5, messageLog, now::get);
+		window.blocked("low on disk");
+
+		CompletableFuture<Boolean> waiting = CompletableFuture.supplyAsync(() -> {
+			try {
+				return window.acquire(10);
+			}
+			catch (InterruptedException e) {
+				return false;
+			}
+		});
+		Thread.sleep(100);
+		assertThat(waiting).isNotDone();
+
+		// El broker cierra la conexión sin llegar a enviar connection.unblocked
+		window.onShutDown(new ShutdownSignalException(true, false, null, null));
+		assertThat(waiting.get(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(window.isBlocked()).isFalse();
+
+		window.blocked("low on disk");
+		window.onCreate(mock(Connection.class));
+		assertThat(window.acquire(0)).isTrue();
+		assertThat(window.getBlockedCount()).isEqualTo(2);
+	}
+
+	@Test
+	void fullWindowStillTimesOutOnceUnblocked() throws Exception {
+		AimdPublishWindow window = new AimdPublishWindow(2, 2, 100, 50, 0.5, messageLog, now::get);
+		assertThat(window.acquire(0)).isTrue();
+		assertThat(window.acquire(0)).isTrue();
+
+		assertThat(window.acquire(10)).isFalse();
+		window.acked(FAST);
+		assertThat(window.acquire(10)).isTrue();
+	}
+
+	private static void fillAndAck(AimdPublishWindow window, int count, long rtt) throws InterruptedException {
+		for (int i = 0; i < count; i++) {
+			assertThat(window.acquire(0)).isTrue();
+		}
+		for (int i = 0; i < count; i++) {
+			window.acked(rtt);
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package com.rabbitmq.tutorial.messaging.confirm;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.SimpleMessageConverter;
+
+class ConfirmingPublisherTests {
+
+	private final RabbitTemplate template = mock(RabbitTemplate.class);
+
+	private final List<CorrelationData> sent = new ArrayList<>();
+
+	ConfirmingPublisherTests() {
+		when(template.getMessageConverter()).thenReturn(new SimpleMessageConverter());
+		doAnswer(invocation -> sent.add(invocation.getArgument(3))).when(template)
+				.send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+	}
+
+	@Test
+	void ackCompletesFutureAndFreesWindow() {
+		ConfirmingPublisher publisher = new ConfirmingPublisher(template, Runnable::run, 1, 0, 0);
+		CompletableFuture<Void> first = publisher.send("hello", "uno");
+		CompletableFuture<Void> second = publisher.send("hello", "dos");
+
+		assertThat(second).isCompletedExceptionally();
+		assertThat(publisher.getInFlight()).isEqualTo(1);
+
+		sent.get(0).getFuture().complete(new CorrelationData.Confirm(true, null));
+		assertThat(first).isCompleted().isNotCompletedExceptionally();
+		assertThat(publisher.send("hello", "tres")).isNotDone();
+	}
+
+	@Test
+	void templateIsNotReconfigured() {
+		new ConfirmingPublisher(template, Runnable::run, 1, 0, 0).send("hello", "uno");
+
+		verify(template, never()).setMandatory(anyBoolean());
+	}
+
+	@Test
+	void nackIsRetriedThenReported() {
+		ConfirmingPublisher publisher = new ConfirmingPublisher(template, Runnable::run, 10, 0, 1);
+		CompletableFuture<Void> future = publisher.send("hello", "uno");
+
+		sent.get(0).getFuture().complete(new CorrelationData.Confirm(false, "nack"));
+		assertThat(future).isNotDone();
+		sent.get(1).getFuture().complete(new CorrelationData.Confirm(false, "nack"));
+
+		assertThat(future).isCompletedExceptionally();
+		assertThat(publisher.getRetried()).isEqualTo(1);
+		assertThat(publisher.getInFlight()).isZero();
+		verify(template, times(2)).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+	}
+}
@@ -0,0 +1,142 @@
+package com.rabbitmq.tutorial.messaging.dedup;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+
+class IdempotencyCacheTests {
+
+	private final AtomicLong now = new AtomicLong();
+
+	@Test
+	void duplicatesAreDetectedUntilTtlExpires() {
+		IdempotencyCache cache = new IdempotencyCache(100, 1000, false, 4, now::get);
+
+		assertThat(cache.markSeen("a")).isTrue();
+		assertThat(cache.markSeen("a")).isFalse();
+		now.set(1000);
+		assertThat(cache.markSeen("a")).isTrue();
+		assertThat(cache.getHits()).isEqualTo(1);
+		assertThat(cache.getMisses()).isEqualTo(2);
+	}
+
+	@Test
+	void oldestKeysAreEvictedWhenFull() {
+		IdempotencyCache cache = new IdempotencyCache(64, 60_000, true, 1, now::get);
+		for (int i = 0; i < 100; i++) {
+			assertThat(cache.markSeen("k" + i)).isTrue();
+		}
+
+		assertThat(cache.size()).isEqualTo(64);
+		assertThat(cache.getEvictions()).isEqualTo(36);
+		assertThat(cache.markSeen("k99")).isFalse();
+		assertThat(cache.markSeen("k0")).isTrue();
+	}
+
+	@Test
+	void failedHandlingForgetsTheKey() {
+		IdempotencyCache cache = new IdempotencyCache(100, 60_000, false, 4, now::get);
+		AtomicInteger handled = new AtomicInteger();
+		Consumer<String> guarded = cache.guard(key -> key, key -> {
+			if (handled.incrementAndGet() == 1) {
+				throw new IllegalStateException("boom");
+			}
+		});
+
+		assertThatIllegalStateException().isThrownBy(() -> guarded.accept("tx-1"));
+		guarded.accept("tx-1");
+		guarded.accept("tx-1");
+
+		assertThat(handled).hasValue(2);
+	}
+
+	@Test
+	void concurrentDuplicateIsRejectedWhileTheFirstCopyIsProcessed() throws Exception {
+		IdempotencyCache cache = new IdempotencyCache(100, 60_000, false, 4, now::get);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger handled = new AtomicInteger();
+		Consumer<String> guarded = cache.guard(key -> key, key -> {
+			if (handled.incrementAndGet() == 1) {
+				started.countDown();
+				awaitQuietly(release);
+				throw new IllegalStateException("boom");
+			}
+		});
+		CompletableFuture<Void> first = CompletableFuture.runAsync(() -> guarded.accept("tx-1"));
+		assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+		// El duplicado no se confirma como ya aplicado: vuelve a la cola
+		assertThatIllegalStateException().isThrownBy(() -> guarded.accept("tx-1"))
+				.withMessageContaining("being processed");
+		release.countDown();
+		assertThat(first).failsWithin(5, TimeUnit.SECONDS);
+
+		// El primero falló, así que la reentrega del duplicado sí se aplica
+		guarded.accept("tx-1");
+		guarded.accept("tx-1");
+		assertThat(handled).hasValue(2);
+	}
+
+	@Test
+	void forgottenKeysDoNotEvictLiveKeysEarly() {
+		IdempotencyCache cache = new IdempotencyCache(8, 60_000, false, 1, now::get);
+		for (int i = 0; i < 8; i++) {
+			cache.markSeen("k" + i);
+		}
+		cache.forget("k2");
+		cache.forget("k5");
+		cache.forget("k7");
+
+		assertThat(cache.size()).isEqualTo(5);
+		assertThat(cache.markSeen("n0")).isTrue();
+		assertThat(cache.markSeen("n1")).isTrue();
+		assertThat(cache.markSeen("n2")).isTrue();
+
+		assertThat(cache.getEvictions()).isZero();
+		assertThat(cache.size()).isEqualTo(8);
+		for (String key : new String[] { "k0", "k1", "k3", "k4", "k6", "n0", "n1", "n2" }) {
+			assertThat(cache.markSeen(key)).as(key).isFalse();
+		}
+		assertThat(cache.markSeen("n3")).isTrue();
+		assertThat(cache.getEvictions()).isEqualTo(1);
+		assertThat(cache.markSeen("k0")).isTrue();
+	}
+
+	@Test
+	void compactedEntriesStillExpireInOrder() {
+		IdempotencyCache cache = new IdempotencyCache(4, 1000, true, 1, now::get);
+		cache.markSeen("a");
+		now.set(100);
+		cache.markSeen("b");
+		cache.markSeen("c");
+		cache.markSeen("d");
+		cache.forget("b");
+		now.set(200);
+		cache.markSeen("e");
+
+		now.set(1000);
+		assertThat(cache.markSeen("a")).isTrue();
+		assertThat(cache.markSeen("c")).isFalse();
+		now.set(1100);
+		assertThat(cache.markSeen("c")).isTrue();
+		assertThat(cache.markSeen("e")).isFalse();
+	}
+
+	private static void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
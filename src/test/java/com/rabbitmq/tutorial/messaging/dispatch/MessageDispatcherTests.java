@@ -0,0 +1,113 @@
+package com.rabbitmq.tutorial.messaging.dispatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.tutorial.messaging.codec.JsonCodec;
+import com.rabbitmq.tutorial.model.Transaccion;
+import com.rabbitmq.tutorial.model.Usuario;
+
+class MessageDispatcherTests {
+
+	private final MessageDispatcher dispatcher = new MessageDispatcher(
+			new JsonCodec(new ObjectMapper().findAndRegisterModules()))
+			.registerType(Usuario.class)
+			.registerType(Transaccion.class)
+			.setDefaultJsonType(Usuario.class);
+
+	@Test
+	void typeIdHeaderSelectsType() {
+		Object payload = dispatcher.decode(message("{\"id\":7,\"cantidad\":1.5}", Transaccion.class.getName()));
+
+		assertThat(payload).isInstanceOf(Transaccion.class);
+		assertThat(((Transaccion) payload).getId()).isEqualTo(7);
+	}
+
+	@Test
+	void jsonWithoutHeadersUsesDefaultType() {
+		Object payload = dispatcher.decode(message("  {\"id\":1,\"nombre\":\"John\"}", null));
+
+		assertThat(payload).isInstanceOf(Usuario.class);
+		assertThat(((Usuario) payload).getNombre()).isEqualTo("John");
+	}
+
+	@Test
+	void plainTextIsNotParsed() {
+		assertThat(dispatcher.decode(message("Hello World!", null))).isEqualTo("Hello World!");
+		assertThat(dispatcher.decode(message("\"Hello World!\"", String.class.getName()))).isEqualTo("Hello World!");
+		assertThat(dispatcher.getFallbacks()).isZero();
+	}
+
+	@Test
+	void malformedJsonFallsBackToText() {
+		assertThat(dispatcher.decode(message("{not json", null))).isEqualTo("{not json");
+		assertThat(dispatcher.getFallbacks()).isEqualTo(1);
+	}
+
+	@Test
+	void bodyNotMatchingDeclaredTypeIsRejected() {
+		assertThatExceptionOfType(MessageConversionException.class)
+				.isThrownBy(() -> dispatcher.decode(message("Hello", Usuario.class.getName())));
+	}
+
+	@Test
+	void jsonNullForDeclaredTypeIsAConversionFailure() {
+		List<Usuario> handled = new ArrayList<>();
+		dispatcher.register(Usuario.class, handled::add);
+
+		assertThatExceptionOfType(MessageConversionException.class)
+				.isThrownBy(() -> dispatcher.dispatch(message("null", Usuario.class.getName())));
+		assertThatExceptionOfType(MessageConversionException.class)
+				.isThrownBy(() -> dispatcher.decode(message(" null ", String.class.getName())));
+		assertThat(handled).isEmpty();
+		assertThat(dispatcher.getConversionFailures()).isEqualTo(2);
+	}
+
+	@Test
+	void transaccionArrayIsStreamedElementByElement() {
+		List<String> seen = new ArrayList<>();
+		List<Transaccion> records = new ArrayList<>();
+		dispatcher.registerArray(Transaccion.class, Transaccion::new, t -> t.setEstado_id(null), t -> {
+			seen.add(t.getId() + ":" + t.getEstado_id());
+			records.add(t);
+		});
+
+		dispatcher.dispatch(message("[{\"id\":1,\"estado_id\":\"OK\"},{\"id\":2},{\"id\":3,\"estado_id\":\"KO\"}]",
+				Transaccion[].class.getName()));
+
+		assertThat(seen).containsExactly("1:OK", "2:null", "3:KO");
+		assertThat(records).hasSize(3).allSatisfy(t -> assertThat(t).isSameAs(records.get(0)));
+	}
+
+	@Test
+	void malformedArrayElementFailsAfterEarlierElements() {
+		List<Integer> ids = new ArrayList<>();
+		dispatcher.registerArray(Transaccion.class, Transaccion::new, t -> { }, t -> ids.add(t.getId()));
+
+		assertThatExceptionOfType(MessageConversionException.class).isThrownBy(() -> dispatcher.dispatch(
+				message("[{\"id\":1},{\"id\":\"x\"},{\"id\":3}]", Transaccion[].class.getName())));
+		assertThatExceptionOfType(MessageConversionException.class).isThrownBy(() -> dispatcher.dispatch(
+				message("{\"id\":1}", Transaccion[].class.getName())));
+		assertThat(ids).containsExactly(1);
+		assertThat(dispatcher.getConversionFailures()).isEqualTo(2);
+	}
+
+	private static Message message(String body, String typeId) {
+		MessageProperties properties = new MessageProperties();
+		if (typeId != null) {
+			properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+			properties.setHeader(MessageDispatcher.TYPE_ID_HEADER, typeId);
+		}
+		return new Message(body.getBytes(StandardCharsets.UTF_8), properties);
+	}
+}
@@ -0,0 +1,197 @@
+package com.rabbitmq.tutorial.messaging.lane;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.BatchMessageListener;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.rabbit.config.RetryInterceptorBuilder;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.Consumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.tutorial.messaging.Receiver;
+import com.rabbitmq.tutorial.messaging.codec.JsonCodec;
+import com.rabbitmq.tutorial.messaging.dedup.IdempotencyCache;
+import com.rabbitmq.tutorial.messaging.dispatch.MessageDispatcher;
+import com.rabbitmq.tutorial.messaging.ledger.BalanceProjection;
+import com.rabbitmq.tutorial.messaging.log.MessageLog;
+import com.rabbitmq.tutorial.messaging.metrics.MessagingMetrics;
+import com.rabbitmq.tutorial.messaging.retry.DelayedRetryRecoverer;
+import com.rabbitmq.tutorial.model.Usuario;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Contenedores de los carriles contra un canal AMQP simulado: cada cola de
+ * carril tiene su propio consumidor y las entregas se hacen como si vinieran
+ * del broker.
+ */
+class LaneConsumersTests {
+
+	private final Channel channel = mock(Channel.class);
+
+	private final Map<String, Consumer> consumers = new ConcurrentHashMap<>();
+
+	private final LaneRouter router = new LaneRouter(
+			List.of(new Lane("text", String.class, 1, 1, 250), new Lane("usuario", Usuario.class, 1, 2, 10)),
+			"hello");
+
+	private final MessageDispatcher dispatcher = new MessageDispatcher(
+			new JsonCodec(new ObjectMapper().findAndRegisterModules())).registerType(Usuario.class);
+
+	private final MessagingMetrics metrics = new MessagingMetrics(new SimpleMeterRegistry(), dispatcher);
+
+	private LaneConsumers lanes;
+
+	@AfterEach
+	void stop() {
+		if (lanes != null) {
+			lanes.stop();
+		}
+	}
+
+	@Test
+	void eachLaneIsConsumedWithItsOwnPrefetchAndTimer() throws Exception {
+		Receiver receiver = new Receiver(dispatcher, new IdempotencyCache(100, 60_000, false), metrics,
+				new MessageLog(1, 0), new BalanceProjection(4, 16, 100));
+		SimpleRabbitListenerContainerFactory factory = factory();
+		start(factory, message -> receiver.receive(message), 2);
+
+		verify(channel).basicQos(250, false);
+		verify(channel).basicQos(10, false);
+		deliver("hello.text", 1, System.currentTimeMillis() - 50);
+		deliver("hello.usuario", 2, System.currentTimeMillis());
+		deliver("hello.usuario", 3, System.currentTimeMillis());
+
+		verify(channel, timeout(5000)).basicAck(1, true);
+		verify(channel, timeout(5000)).basicAck(3, true);
+		assertThat(metrics.getReceived()).isEqualTo(3);
+		assertThat(endToEnd("hello.text").count()).isEqualTo(1);
+		assertThat(endToEnd("hello.text").max(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(50);
+		assertThat(endToEnd("hello.usuario").count()).isEqualTo(2);
+		assertThat(lanes.isRunning()).isTrue();
+
+		lanes.stop();
+		assertThat(lanes.isRunning()).isFalse();
+	}
+
+	@Test
+	void failuresOnALaneAreRetriedThroughThatLane() throws Exception {
+		RabbitTemplate template = mock(RabbitTemplate.class);
+		DelayedRetryRecoverer recoverer = new DelayedRetryRecoverer(template,
+				List.of("hello", "hello.text", "hello.usuario"), new long[] { 1000 }, 3, metrics,
+				new MessageLog(1, 0));
+		SimpleRabbitListenerContainerFactory factory = factory();
+		factory.setAdviceChain(RetryInterceptorBuilder.stateless().maxAttempts(1).recoverer(recoverer).build());
+		start(factory, message -> {
+			throw new IllegalStateException("boom");
+		}, 2);
+
+		deliver("hello.text", 1, System.currentTimeMillis());
+
+		verify(template, timeout(5000)).send(eq(""), eq("hello.text.retry.1"), any(Message.class));
+		verify(channel, timeout(5000)).basicAck(1, true);
+	}
+
+	@Test
+	void batchFactoryDeliversEachLaneInBatches() throws Exception {
+		BlockingQueue<List<Message>> batches = new LinkedBlockingQueue<>();
+		SimpleRabbitListenerContainerFactory factory = factory();
+		factory.setAcknowledgeMode(AcknowledgeMode.AUTO);
+		factory.setBatchListener(true);
+		factory.setConsumerBatchEnabled(true);
+		factory.setBatchSize(20);
+		factory.setBatchReceiveTimeout(100L);
+		start(factory, (BatchMessageListener) batches::add, 2);
+
+		// el prefetch del carril "usuario" (10) no baja del tamaño de lote
+		verify(channel).basicQos(250, false);
+		verify(channel).basicQos(20, false);
+		deliver("hello.usuario", 1, System.currentTimeMillis());
+		deliver("hello.usuario", 2, System.currentTimeMillis());
+
+		assertThat(batches.poll(5, TimeUnit.SECONDS)).hasSize(2)
+				.allSatisfy(m -> assertThat(m.getMessageProperties().getConsumerQueue()).isEqualTo("hello.usuario"));
+		verify(channel, timeout(5000)).basicAck(2, true);
+	}
+
+	private SimpleRabbitListenerContainerFactory factory() throws Exception {
+		ConnectionFactory rabbitConnectionFactory = mock(ConnectionFactory.class);
+		Connection connection = mock(Connection.class);
+		when(rabbitConnectionFactory.newConnection((ExecutorService) any(), anyString())).thenReturn(connection);
+		when(connection.isOpen()).thenReturn(true);
+		when(connection.createChannel()).thenReturn(channel);
+		when(channel.isOpen()).thenReturn(true);
+		doAnswer(invocation -> {
+			String queue = invocation.getArgument(0);
+			Consumer consumer = invocation.getArgument(6);
+			consumers.put(queue, consumer);
+			consumer.handleConsumeOk(tag(queue));
+			return tag(queue);
+		}).when(channel).basicConsume(anyString(), anyBoolean(), anyString(), anyBoolean(), anyBoolean(), anyMap(),
+				any(Consumer.class));
+		doAnswer(invocation -> {
+			String tag = invocation.getArgument(0);
+			consumers.get(tag.substring("tag-".length())).handleCancelOk(tag);
+			return null;
+		}).when(channel).basicCancel(anyString());
+		SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+		factory.setConnectionFactory(new CachingConnectionFactory(rabbitConnectionFactory));
+		return factory;
+	}
+
+	private void start(SimpleRabbitListenerContainerFactory factory, MessageListener listener, int queues)
+			throws Exception {
+		lanes = new LaneConsumers(router, factory, listener);
+		lanes.start();
+		verify(channel, timeout(5000).times(queues)).basicConsume(anyString(), anyBoolean(), anyString(),
+				anyBoolean(), anyBoolean(), anyMap(), any(Consumer.class));
+		assertThat(consumers).containsOnlyKeys("hello.text", "hello.usuario");
+	}
+
+	private void deliver(String queue, long tag, long sentAt) throws Exception {
+		AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder().contentType("text/plain")
+				.headers(Map.of(MessagingMetrics.SENT_AT_HEADER, sentAt)).build();
+		consumers.get(queue).handleDelivery(tag(queue), new Envelope(tag, false, "", queue), properties,
+				("m" + tag).getBytes(StandardCharsets.UTF_8));
+	}
+
+	private Timer endToEnd(String queue) {
+		return metrics.getRegistry().find("tutorial.end-to-end.queue").tag("queue", queue).timer();
+	}
+
+	private static String tag(String queue) {
+		return "tag-" + queue;
+	}
+}
@@ -0,0 +1,41 @@
+package com.rabbitmq.tutorial.messaging.lane;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.tutorial.messaging.codec.JsonCodec;
+import com.rabbitmq.tutorial.model.Transaccion;
+import com.rabbitmq.tutorial.model.Usuario;
+
+class LaneRouterTests {
+
+	private final JsonCodec codec = new JsonCodec(new ObjectMapper().findAndRegisterModules());
+
+	private final LaneRouter router = new LaneRouter(List.of(new Lane("text", String.class, 1, 1, 250),
+			new Lane("transaccion", Transaccion.class, 2, 4, 50)), "hello");
+
+	@Test
+	void messagesGoToTheLaneOfTheirType() {
+		assertThat(router.queueFor(codec.toMessage("Hello World!"))).isEqualTo("hello.text");
+		assertThat(router.queueFor(codec.toMessage(new Transaccion()))).isEqualTo("hello.transaccion");
+	}
+
+	@Test
+	void typesWithoutLaneUseTheDefaultQueue() {
+		assertThat(router.queueFor(codec.toMessage(new Usuario(1, "John")))).isEqualTo("hello");
+		assertThat(router.queueFor(new Message(new byte[0], new MessageProperties()))).isEqualTo("hello");
+	}
+
+	@Test
+	void oneLanePerType() {
+		assertThatIllegalArgumentException().isThrownBy(() -> new LaneRouter(
+				List.of(new Lane("a", String.class, 1, 1, 1), new Lane("b", String.class, 1, 1, 1)), "hello"));
+	}
+}
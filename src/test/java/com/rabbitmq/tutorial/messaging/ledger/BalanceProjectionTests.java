@@ -0,0 +1,117 @@
+package com.rabbitmq.tutorial.messaging.ledger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.tutorial.messaging.codec.JsonCodec;
+import com.rabbitmq.tutorial.model.Transaccion;
+
+class BalanceProjectionTests {
+
+	@Test
+	void transferDebitsEmisorAndCreditsReceptorInMinorUnits() {
+		BalanceProjection projection = new BalanceProjection(4, 16, 100);
+
+		projection.apply(tx(1, 2, new BigDecimal("10.10"), "PENDIENTE"));
+		projection.apply(tx(1, 3, new BigDecimal("0.20"), "PENDIENTE"));
+		projection.apply(tx(2, 1, new BigDecimal("150.75"), "COMPLETADA"));
+
+		assertThat(projection.balance(1)).isEqualTo(14045);
+		assertThat(projection.balance(2)).isEqualTo(-14065);
+		assertThat(projection.balance(3)).isEqualTo(20);
+		assertThat(projection.balance(99)).isZero();
+		assertThat(projection.totalBalance()).isZero();
+		assertThat(projection.accounts()).isEqualTo(3);
+		assertThat(projection.countsByEstado()).containsEntry("PENDIENTE", 2L).containsEntry("COMPLETADA", 1L);
+		assertThat(projection.getApplied()).isEqualTo(3);
+	}
+
+	@Test
+	void missingFieldsOnlySkipTheirSide() {
+		BalanceProjection projection = new BalanceProjection(1, 16, 100);
+
+		projection.apply(tx(null, 5, new BigDecimal("1.5"), null));
+		projection.apply(tx(5, null, null, "PENDIENTE"));
+
+		assertThat(projection.balance(5)).isEqualTo(150);
+		assertThat(projection.count("PENDIENTE")).isEqualTo(1);
+		assertThat(projection.getApplied()).isEqualTo(2);
+	}
+
+	@Test
+	void largeAmountsFromJsonAreExact() {
+		BalanceProjection projection = new BalanceProjection(1, 16, 100);
+		JsonCodec codec = new JsonCodec(new ObjectMapper().findAndRegisterModules());
+		byte[] body = "{\"id_cuenta_emisor\":1,\"id_cuenta_receptor\":2,\"cantidad\":987654321.23}"
+			.getBytes(StandardCharsets.UTF_8);
+
+		projection.apply(codec.decode(body, Transaccion.class));
+
+		assertThat(projection.balance(2)).isEqualTo(98_765_432_123L);
+		assertThat(projection.balance(1)).isEqualTo(-98_765_432_123L);
+		assertThat(projection.toMinorUnits(new BigDecimal("0.005"))).isEqualTo(1);
+		assertThat(projection.toMinorUnits(new BigDecimal("-0.005"))).isEqualTo(-1);
+	}
+
+	@Test
+	void tablesGrowAndKeepEdgeKeys() {
+		IntLongHashMap map = new IntLongHashMap(2);
+		for (int i = -5000; i < 5000; i++) {
+			map.addTo(i, i);
+		}
+		map.addTo(Integer.MIN_VALUE, 7);
+		map.addTo(Integer.MIN_VALUE, 1);
+
+		assertThat(map.size()).isEqualTo(10001);
+		assertThat(map.get(-4999)).isEqualTo(-4999);
+		assertThat(map.get(4999)).isEqualTo(4999);
+		assertThat(map.get(Integer.MIN_VALUE)).isEqualTo(8);
+		assertThat(map.get(123456)).isZero();
+		assertThat(map.sum()).isEqualTo(-5000 + 8);
+	}
+
+	@Test
+	void concurrentTransfersKeepTheTotalBalanced() throws Exception {
+		BalanceProjection projection = new BalanceProjection(8, 16, 100);
+		int threads = 4;
+		int perThread = 20_000;
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> workers = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			int offset = t;
+			Thread worker = new Thread(() -> {
+				try {
+					start.await();
+				}
+				catch (InterruptedException e) {
+					return;
+				}
+				for (int i = 0; i < perThread; i++) {
+					projection.apply(tx(i % 1000, (i + offset + 1) % 1000, new BigDecimal("0.01"), "PENDIENTE"));
+				}
+			});
+			workers.add(worker);
+			worker.start();
+		}
+		start.countDown();
+		for (Thread worker : workers) {
+			worker.join();
+		}
+
+		assertThat(projection.totalBalance()).isZero();
+		assertThat(projection.count("PENDIENTE")).isEqualTo(threads * perThread);
+		assertThat(projection.accounts()).isEqualTo(1000);
+	}
+
+	private static Transaccion tx(Integer emisor, Integer receptor, BigDecimal cantidad, String estado) {
+		return new Transaccion(1, "k", null, emisor, receptor, cantidad, null, null, estado);
+	}
+}
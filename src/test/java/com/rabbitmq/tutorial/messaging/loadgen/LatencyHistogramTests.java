@@ -0,0 +1,43 @@
+package com.rabbitmq.tutorial.messaging.loadgen;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTests {
+
+	@Test
+	void bucketsKeepTheRelativeErrorBounded() {
+		LatencyHistogram histogram = new LatencyHistogram(8);
+		for (long value : new long[] { 0, 1, 255, 256, 1000, 123_456, 987_654_321, Long.MAX_VALUE / 3 }) {
+			long highest = histogram.highestEquivalentValue(histogram.index(value));
+			assertThat(highest).isGreaterThanOrEqualTo(value);
+			assertThat((double) (highest - value)).isLessThanOrEqualTo(value / 128.0);
+		}
+		assertThat(histogram.highestEquivalentValue(histogram.index(Long.MAX_VALUE))).isEqualTo(Long.MAX_VALUE);
+	}
+
+	@Test
+	void percentilesOfAUniformDistribution() {
+		LatencyHistogram histogram = new LatencyHistogram(8);
+		for (long i = 1; i <= 100_000; i++) {
+			histogram.record(i * 1000);
+		}
+
+		assertThat(histogram.getCount()).isEqualTo(100_000);
+		assertThat(histogram.getMax()).isEqualTo(100_000_000);
+		assertThat((double) histogram.getValueAtPercentile(50)).isCloseTo(50_000_000, within(50_000_000 / 128.0));
+		assertThat((double) histogram.getValueAtPercentile(99)).isCloseTo(99_000_000, within(99_000_000 / 128.0));
+		assertThat(histogram.getValueAtPercentile(100)).isEqualTo(100_000_000);
+		assertThat(histogram.getMean()).isCloseTo(50_000_500, within(1.0));
+	}
+
+	@Test
+	void emptyHistogramReportsZero() {
+		LatencyHistogram histogram = new LatencyHistogram(8);
+
+		assertThat(histogram.getValueAtPercentile(99)).isZero();
+		assertThat(histogram.format()).startsWith("count=0 mean=0.000ms p50=0.000ms");
+	}
+}
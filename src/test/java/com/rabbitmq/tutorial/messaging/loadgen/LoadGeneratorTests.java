@@ -0,0 +1,119 @@
+package com.rabbitmq.tutorial.messaging.loadgen;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.tutorial.messaging.codec.JsonCodec;
+import com.rabbitmq.tutorial.messaging.dispatch.MessageDispatcher;
+import com.rabbitmq.tutorial.messaging.metrics.MessagingMetrics;
+import com.rabbitmq.tutorial.messaging.transport.MessageTransport;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class LoadGeneratorTests {
+
+	private final JsonCodec codec = new JsonCodec(new ObjectMapper().findAndRegisterModules());
+
+	private final MessagingMetrics metrics = new MessagingMetrics(new SimpleMeterRegistry(),
+			new MessageDispatcher(codec));
+
+	private final LoadMix mix = LoadMix.parse("text:1", "64:1", 10);
+
+	private final List<Message> sent = Collections.synchronizedList(new ArrayList<>());
+
+	@Test
+	void sendsAtTheTargetRateForTheConfiguredDuration() throws Exception {
+		LoadGenerator generator = generator((queue, message) -> sent.add(message), 500, 400);
+
+		generator.start();
+		generator.awaitCompletion();
+
+		assertThat(generator.isFinished()).isTrue();
+		assertThat(sent).hasSize(200);
+		assertThat(metrics.getPublished()).isEqualTo(200);
+		assertThat(generator.getResponse().getCount()).isEqualTo(200);
+		assertThat(generator.getErrors()).isZero();
+		assertThat(generator.summary()).contains("sent 200").contains("mix: text=200");
+	}
+
+	@Test
+	void stallCountsForEveryMessageThatShouldHaveBeenSentDuringIt() throws Exception {
+		long stall = TimeUnit.MILLISECONDS.toNanos(200);
+		LoadGenerator generator = generator((queue, message) -> {
+			if (sent.isEmpty()) {
+				sleep(stall);
+			}
+			sent.add(message);
+		}, 1000, 400);
+
+		generator.start();
+		generator.awaitCompletion();
+
+		// Los ~200 mensajes previstos durante el parón salen de golpe después:
+		// su latencia se mide desde el instante previsto, no desde el envío.
+		LatencyHistogram response = generator.getResponse();
+		LatencyHistogram service = generator.getService();
+		assertThat(response.getMax()).isGreaterThanOrEqualTo(stall);
+		assertThat(response.getValueAtPercentile(25)).isGreaterThan(0);
+		assertThat(response.getValueAtPercentile(75)).isGreaterThan(TimeUnit.MILLISECONDS.toNanos(50));
+		assertThat(service.getValueAtPercentile(75)).isLessThan(TimeUnit.MILLISECONDS.toNanos(50));
+		assertThat(service.getMax()).isGreaterThanOrEqualTo(stall);
+
+		// x-sent-at lleva el instante previsto: un mensaje por milisegundo
+		long first = sentAt(sent.get(0));
+		for (int i = 1; i < 150; i++) {
+			assertThat(sentAt(sent.get(i)) - first).isEqualTo(i);
+		}
+	}
+
+	@Test
+	void failedSendsAreCountedAsErrors() throws Exception {
+		LoadGenerator generator = generator((queue, message) -> {
+			throw new IllegalStateException("broker down");
+		}, 500, 100);
+
+		generator.start();
+		generator.awaitCompletion();
+
+		assertThat(generator.getErrors()).isEqualTo(50);
+		assertThat(generator.getResponse().getCount()).isZero();
+	}
+
+	@Test
+	void stopEndsALoadWithoutDuration() {
+		LoadGenerator generator = generator((queue, message) -> sent.add(message), 1000, 0);
+
+		generator.start();
+		sleep(TimeUnit.MILLISECONDS.toNanos(50));
+		generator.stop();
+
+		assertThat(generator.isFinished()).isTrue();
+		assertThat(generator.isRunning()).isFalse();
+		assertThat(sent).isNotEmpty();
+	}
+
+	private LoadGenerator generator(MessageTransport transport, double rate, long duration) {
+		return new LoadGenerator(codec, transport, null, metrics, "hello", mix, rate, 1, duration);
+	}
+
+	private static long sentAt(Message message) {
+		return message.getMessageProperties().<Long>getHeader(MessagingMetrics.SENT_AT_HEADER);
+	}
+
+	private static void sleep(long nanos) {
+		try {
+			TimeUnit.NANOSECONDS.sleep(nanos);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package com.rabbitmq.tutorial.messaging.loadgen;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.tutorial.messaging.codec.JsonCodec;
+import com.rabbitmq.tutorial.messaging.codec.TransaccionBinaryCodec;
+import com.rabbitmq.tutorial.messaging.loadgen.LoadMix.Kind;
+import com.rabbitmq.tutorial.model.Transaccion;
+
+class LoadMixTests {
+
+	private final JsonCodec codec = new JsonCodec(new ObjectMapper().findAndRegisterModules());
+
+	@Test
+	void binaryTransaccionUsesTheBinaryContentType() {
+		LoadMix mix = LoadMix.parse("transaccion_binary:1", "64:1", 10);
+		Random random = new Random(1);
+
+		Kind kind = mix.nextKind(random);
+		Message message = mix.next(kind, 42, codec, random);
+
+		assertThat(kind).isEqualTo(Kind.TRANSACCION_BINARY);
+		assertThat(message.getMessageProperties().getContentType()).isEqualTo(TransaccionBinaryCodec.CONTENT_TYPE);
+		Transaccion tx = new TransaccionBinaryCodec().decode(message.getBody());
+		assertThat(tx.getId()).isEqualTo(42);
+		assertThat(tx.getClave_indempotencia()).isEqualTo("lg-42");
+		assertThat(tx.getId_cuenta_emisor()).isNotEqualTo(tx.getId_cuenta_receptor());
+	}
+
+	@Test
+	void kindsFollowTheirWeights() {
+		LoadMix mix = LoadMix.parse("text:60, usuario:30, transaccion:10, transaccion_binary:0", "64:1", 10);
+		Random random = new Random(7);
+		Map<Kind, Integer> counts = new EnumMap<>(Kind.class);
+		for (int i = 0; i < 10_000; i++) {
+			counts.merge(mix.nextKind(random), 1, Integer::sum);
+		}
+
+		assertThat(counts.get(Kind.TEXT)).isBetween(5_700, 6_300);
+		assertThat(counts.get(Kind.USUARIO)).isBetween(2_700, 3_300);
+		assertThat(counts.get(Kind.TRANSACCION)).isBetween(800, 1_200);
+		assertThat(counts).doesNotContainKey(Kind.TRANSACCION_BINARY);
+	}
+
+	@Test
+	void textBodiesHaveTheConfiguredSizes() {
+		LoadMix mix = LoadMix.parse("text:1", "64:1,1024:1", 10);
+		Random random = new Random(3);
+		Map<Integer, Integer> sizes = new TreeMap<>();
+		for (int i = 0; i < 100; i++) {
+			Message message = mix.next(Kind.TEXT, i, codec, random);
+			String text = codec.decode(message.getBody(), String.class);
+			sizes.merge(text.getBytes(StandardCharsets.UTF_8).length, 1, Integer::sum);
+		}
+
+		assertThat(sizes).containsOnlyKeys(64, 1024);
+	}
+
+	@Test
+	void malformedListsAreRejected() {
+		assertThatIllegalArgumentException().isThrownBy(() -> LoadMix.parse("text", "64:1", 10));
+		assertThatIllegalArgumentException().isThrownBy(() -> LoadMix.parse("text:-1", "64:1", 10));
+		assertThatIllegalArgumentException().isThrownBy(() -> LoadMix.parse("text:0", "64:1", 10));
+		assertThatIllegalArgumentException().isThrownBy(() -> LoadMix.parse("bogus:1", "64:1", 10));
+		assertThatIllegalArgumentException().isThrownBy(() -> LoadMix.parse("text:1", "big:1", 10));
+	}
+}
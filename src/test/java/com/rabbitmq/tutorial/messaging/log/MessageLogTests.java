@@ -0,0 +1,81 @@
+package com.rabbitmq.tutorial.messaging.log;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import com.rabbitmq.tutorial.messaging.log.MessageLog.Event;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+
+class MessageLogTests {
+
+	private final Logger logger = (Logger) LoggerFactory.getLogger(MessageLog.LOGGER_NAME);
+
+	private final Level level = logger.getLevel();
+
+	@AfterEach
+	void restoreLevel() {
+		logger.setLevel(level);
+	}
+
+	@Test
+	void failuresAreStillSampledWhenOnlyWarningsAreEnabled() {
+		logger.setLevel(Level.WARN);
+		MessageLog messageLog = new MessageLog(1, 0);
+
+		assertThat(messageLog.sample(Event.FAILED)).isTrue();
+		assertThat(messageLog.sample(Event.SENT)).isFalse();
+		assertThat(messageLog.sample(Event.RECEIVED)).isFalse();
+
+		logger.setLevel(Level.ERROR);
+		assertThat(messageLog.sample(Event.FAILED)).isFalse();
+	}
+
+	@Test
+	void eventsBeyondTheLimitPerSecondAreSuppressed() {
+		logger.setLevel(Level.INFO);
+		MessageLog messageLog = new MessageLog(1, 2);
+		int sampled = 0;
+		for (int i = 0; i < 5; i++) {
+			if (messageLog.sample(Event.RECEIVED)) {
+				sampled++;
+			}
+		}
+
+		assertThat(sampled).isBetween(2, 4);
+		assertThat(messageLog.getSuppressed(Event.RECEIVED)).isEqualTo(5 - sampled);
+		assertThat(messageLog.getSuppressed(Event.SENT)).isZero();
+	}
+
+	@Test
+	void sentAndReceivedAreSampledButFailuresAreNot() {
+		logger.setLevel(Level.INFO);
+		MessageLog messageLog = new MessageLog(10, 0);
+		int sent = 0;
+		int failed = 0;
+		for (int i = 0; i < 1000; i++) {
+			sent += messageLog.sample(Event.SENT) ? 1 : 0;
+			failed += messageLog.sample(Event.FAILED) ? 1 : 0;
+		}
+
+		assertThat(sent).isBetween(50, 200);
+		assertThat(failed).isEqualTo(1000);
+	}
+
+	@Test
+	void bodyIsDecodedOnlyWhenFormatted() {
+		Message message = new Message("hola".getBytes(StandardCharsets.UTF_8), new MessageProperties());
+		Object body = MessageLog.body(message);
+
+		message.getBody()[0] = 'H';
+		assertThat(body).hasToString("Hola");
+	}
+}
@@ -0,0 +1,97 @@
+package com.rabbitmq.tutorial.messaging.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.tutorial.messaging.codec.JsonCodec;
+import com.rabbitmq.tutorial.messaging.dispatch.MessageDispatcher;
+import com.rabbitmq.tutorial.messaging.retry.DelayedRetryRecoverer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class MessagingMetricsTests {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private final MessagingMetrics metrics = new MessagingMetrics(registry,
+			new MessageDispatcher(new JsonCodec(new ObjectMapper())));
+
+	@Test
+	void publishesAreCountedPerQueue() {
+		metrics.recordPublish("hello");
+		metrics.recordPublish("hello");
+		metrics.recordPublish("lane.text");
+
+		assertThat(registry.find("tutorial.publish").tag("queue", "hello").counter().count()).isEqualTo(2);
+		assertThat(metrics.getPublished()).isEqualTo(3);
+	}
+
+	@Test
+	void sentAtHeaderIsReusedWithinTheSameMillisecond() {
+		Message first = message(null);
+		Message second = message(null);
+		Message later = message(null);
+		metrics.stampSent(first, 1_000_000L);
+		metrics.stampSent(second, 1_000_000L);
+		metrics.stampSent(later, 1_000_001L);
+
+		Object sentAt = first.getMessageProperties().getHeader(MessagingMetrics.SENT_AT_HEADER);
+		assertThat(sentAt).isEqualTo(1_000_000L);
+		assertThat(second.getMessageProperties().<Object>getHeader(MessagingMetrics.SENT_AT_HEADER)).isSameAs(sentAt);
+		assertThat(later.getMessageProperties().<Object>getHeader(MessagingMetrics.SENT_AT_HEADER))
+			.isEqualTo(1_000_001L);
+	}
+
+	@Test
+	void receptionRecordsEndToEndLatencyPerQueue() {
+		Message message = message("lane.text");
+		metrics.stampSent(message, System.currentTimeMillis() - 50);
+		metrics.recordReceived(message);
+		metrics.recordReceived(message("hello"));
+
+		assertThat(metrics.getReceived()).isEqualTo(2);
+		assertThat(registry.find("tutorial.end-to-end").timer().count()).isEqualTo(1);
+		assertThat(registry.find("tutorial.end-to-end").timer().max(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(50);
+		assertThat(registry.find("tutorial.end-to-end.queue").tag("queue", "lane.text").timer().count()).isEqualTo(1);
+		assertThat(registry.find("tutorial.end-to-end.queue").tag("queue", "hello").timer()).isNull();
+	}
+
+	@Test
+	void redeliveriesAreCountedBySource() {
+		Message redelivered = message("hello");
+		redelivered.getMessageProperties().setRedelivered(true);
+		Message retried = message("hello");
+		retried.getMessageProperties().setHeader(DelayedRetryRecoverer.RETRY_COUNT_HEADER, 1);
+		metrics.recordReceived(redelivered);
+		metrics.recordReceived(retried);
+		metrics.recordReceived(message("hello"));
+
+		assertThat(registry.find("tutorial.redelivered").tag("source", "broker").counter().count()).isEqualTo(1);
+		assertThat(registry.find("tutorial.redelivered").tag("source", "retry").counter().count()).isEqualTo(1);
+		assertThat(metrics.getReceived()).isEqualTo(3);
+		assertThat(metrics.getFirstDeliveries()).isEqualTo(1);
+	}
+
+	@Test
+	void busyTimeCoversHandledMessages() throws Exception {
+		long start = metrics.consumerStarted();
+		assertThat(metrics.getActive()).isEqualTo(1);
+		Thread.sleep(20);
+		metrics.consumerDone(start);
+
+		assertThat(metrics.getActive()).isZero();
+		assertThat(registry.find("tutorial.consumer.busy").functionCounter().count()).isGreaterThanOrEqualTo(0.02);
+	}
+
+	private static Message message(String consumerQueue) {
+		MessageProperties properties = new MessageProperties();
+		properties.setConsumerQueue(consumerQueue);
+		return new Message(new byte[0], properties);
+	}
+}
@@ -0,0 +1,74 @@
+package com.rabbitmq.tutorial.messaging.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.tutorial.messaging.codec.JsonCodec;
+import com.rabbitmq.tutorial.messaging.dispatch.MessageDispatcher;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class MetricsReporterTests {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private final MessagingMetrics metrics = new MessagingMetrics(registry,
+			new MessageDispatcher(new JsonCodec(new ObjectMapper())));
+
+	private final MetricsReporter reporter = new MetricsReporter(registry);
+
+	@Test
+	void reportsPublishTotalsAndConsumers() {
+		metrics.recordPublish("hello");
+		metrics.recordPublish("hello");
+
+		String report = reporter.format();
+
+		assertThat(report).contains(" [m] publish hello: 2 msgs");
+		assertThat(report).contains(" [m] dispatch: fallbacks=0 conversion-failures=0");
+		assertThat(report).contains(" [m] consumers: busy=");
+		assertThat(report).doesNotContain("end-to-end");
+	}
+
+	@Test
+	void rateCountsOnlyTheMessagesSinceThePreviousReport() {
+		metrics.recordPublish("hello");
+		reporter.format();
+
+		assertThat(reporter.format()).contains(" [m] publish hello: 1 msgs (0.0/s)");
+	}
+
+	@Test
+	void endToEndIsBrokenDownOnlyWithSeveralQueues() {
+		received("hello");
+		assertThat(reporter.format()).contains(" [m] end-to-end: count=1").doesNotContain("end-to-end hello");
+
+		received("lane.text");
+		assertThat(reporter.format()).contains(" [m] end-to-end: count=2")
+			.contains(" [m] end-to-end hello: count=1")
+			.contains(" [m] end-to-end lane.text: count=1");
+	}
+
+	@Test
+	void redeliveriesAreReportedOnlyWhenThereAreAny() {
+		assertThat(reporter.format()).doesNotContain("redelivered");
+
+		Message message = new Message(new byte[0], new MessageProperties());
+		message.getMessageProperties().setRedelivered(true);
+		metrics.recordReceived(message);
+
+		assertThat(reporter.format()).contains(" [m] redelivered broker: 1 msgs");
+	}
+
+	private void received(String queue) {
+		MessageProperties properties = new MessageProperties();
+		properties.setConsumerQueue(queue);
+		Message message = new Message(new byte[0], properties);
+		metrics.stampSent(message);
+		metrics.recordReceived(message);
+	}
+}
@@ -0,0 +1,216 @@
+package com.rabbitmq.tutorial.messaging.outbox;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.math.BigDecimal;
+import java.net.ConnectException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.AmqpResourceNotAvailableException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+
+import com.rabbitmq.tutorial.messaging.log.MessageLog;
+import com.rabbitmq.tutorial.messaging.transport.MessageTransport;
+
+class OutboxTests {
+
+	@TempDir
+	Path directory;
+
+	private final List<Message> sent = new ArrayList<>();
+
+	private int failuresLeft;
+
+	private final MessageTransport transport = (queue, message) -> {
+		if (failuresLeft > 0) {
+			failuresLeft--;
+			throw new AmqpConnectException(new ConnectException("broker down"));
+		}
+		message.getMessageProperties().setReceivedRoutingKey(queue);
+		sent.add(message);
+	};
+
+	@Test
+	void messagesAreReplayedInOrderWithTheirProperties() throws Exception {
+		Outbox outbox = outbox(4096, 8);
+		MessageProperties properties = new MessageProperties();
+		properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+		properties.setHeader("__TypeId__", "usuario");
+		properties.setHeader("x-sent-at", 42L);
+		properties.setHeader("x-shard-count", 4);
+		outbox.append("hello", new Message("{\"id\":1}".getBytes(StandardCharsets.UTF_8), properties));
+		outbox.append("other", message("b"));
+
+		assertThat(outbox.drainOnce()).isEqualTo(2);
+		assertThat(outbox.drainOnce()).isZero();
+
+		Message first = sent.get(0);
+		assertThat(first.getMessageProperties().getReceivedRoutingKey()).isEqualTo("hello");
+		assertThat(first.getMessageProperties().getContentType()).isEqualTo(MessageProperties.CONTENT_TYPE_JSON);
+		assertThat(first.getMessageProperties().<Object>getHeader("__TypeId__")).isEqualTo("usuario");
+		assertThat(first.getMessageProperties().<Object>getHeader("x-sent-at")).isEqualTo(42L);
+		assertThat(first.getMessageProperties().<Object>getHeader("x-shard-count")).isEqualTo(4);
+		assertThat(new String(first.getBody(), StandardCharsets.UTF_8)).isEqualTo("{\"id\":1}");
+		assertThat(sent.get(1).getMessageProperties().getReceivedRoutingKey()).isEqualTo("other");
+		outbox.close();
+	}
+
+	@Test
+	void allBasicPropertiesAndTypedHeadersAreKept() {
+		MessageProperties properties = new MessageProperties();
+		properties.setReplyTo("amq.rabbitmq.reply-to");
+		properties.setExpiration("60000");
+		properties.setPriority(7);
+		properties.setTimestamp(new Date(1_700_000_000_000L));
+		properties.setType("transaccion");
+		properties.setAppId("tutorial");
+		properties.setDeliveryMode(MessageDeliveryMode.NON_PERSISTENT);
+		properties.setHeader("short", (short) 3);
+		properties.setHeader("double", 1.5);
+		properties.setHeader("decimal", new BigDecimal("987654321.23"));
+		properties.setHeader("date", new Date(42));
+		properties.setHeader("bytes", new byte[] { 1, 2 });
+		properties.setHeader("x-death", List.of(Map.of("count", 2L, "queue", "hello")));
+		properties.setHeader("nothing", null);
+		properties.setHeader("long-text", "x".repeat(70_000));
+
+		Message decoded = OutboxRecords.decode(OutboxRecords.encode("hello", new Message(new byte[0], properties)))
+			.message;
+
+		MessageProperties restored = decoded.getMessageProperties();
+		assertThat(restored.getReplyTo()).isEqualTo("amq.rabbitmq.reply-to");
+		assertThat(restored.getExpiration()).isEqualTo("60000");
+		assertThat(restored.getPriority()).isEqualTo(7);
+		assertThat(restored.getTimestamp()).isEqualTo(new Date(1_700_000_000_000L));
+		assertThat(restored.getType()).isEqualTo("transaccion");
+		assertThat(restored.getAppId()).isEqualTo("tutorial");
+		assertThat(restored.getDeliveryMode()).isEqualTo(MessageDeliveryMode.NON_PERSISTENT);
+		assertThat(restored.getHeaders()).containsEntry("short", (short) 3)
+			.containsEntry("double", 1.5)
+			.containsEntry("decimal", new BigDecimal("987654321.23"))
+			.containsEntry("date", new Date(42))
+			.containsEntry("x-death", List.of(Map.of("count", 2L, "queue", "hello")))
+			.containsEntry("nothing", null);
+		assertThat(restored.<byte[]>getHeader("bytes")).containsExactly(1, 2);
+		assertThat(restored.<String>getHeader("long-text")).hasSize(70_000);
+	}
+
+	@Test
+	void recordsWithoutVersionAreStillRead() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeUTF("hello");
+			out.writeBoolean(true);
+			out.writeUTF(MessageProperties.CONTENT_TYPE_JSON);
+			out.writeBoolean(false);
+			out.writeBoolean(true);
+			out.writeUTF("id-1");
+			out.writeBoolean(false);
+			out.writeShort(1);
+			out.writeUTF("x-sent-at");
+			out.writeByte('J');
+			out.writeLong(42L);
+			out.writeInt(2);
+			out.write(new byte[] { '{', '}' });
+		}
+
+		OutboxRecords.Entry entry = OutboxRecords.decode(bytes.toByteArray());
+
+		assertThat(entry.queue).isEqualTo("hello");
+		assertThat(entry.message.getMessageProperties().getContentType()).isEqualTo(MessageProperties.CONTENT_TYPE_JSON);
+		assertThat(entry.message.getMessageProperties().getMessageId()).isEqualTo("id-1");
+		assertThat(entry.message.getMessageProperties().<Object>getHeader("x-sent-at")).isEqualTo(42L);
+		assertThat(entry.message.getBody()).containsExactly('{', '}');
+	}
+
+	@Test
+	void failedBatchIsRetriedFromTheCheckpoint() throws Exception {
+		Outbox outbox = outbox(4096, 8);
+		for (int i = 0; i < 3; i++) {
+			outbox.append("hello", message("m" + i));
+		}
+		failuresLeft = 1;
+
+		assertThatExceptionOfType(AmqpConnectException.class).isThrownBy(outbox::drainOnce);
+		assertThat(outbox.drainOnce()).isEqualTo(3);
+
+		assertThat(bodies()).containsExactly("m0", "m1", "m2");
+		outbox.close();
+	}
+
+	@Test
+	void pendingMessagesSurviveARestart() throws Exception {
+		Outbox outbox = outbox(4096, 8);
+		outbox.append("hello", message("a"));
+		outbox.drainOnce();
+		outbox.append("hello", message("b"));
+		outbox.append("hello", message("c"));
+		outbox.close();
+		sent.clear();
+
+		Outbox reopened = outbox(4096, 8);
+		reopened.append("hello", message("d"));
+
+		assertThat(reopened.drainOnce()).isEqualTo(3);
+		assertThat(bodies()).containsExactly("b", "c", "d");
+		reopened.close();
+	}
+
+	@Test
+	void segmentsRollOverAndAreReclaimedAfterDraining() throws Exception {
+		Outbox outbox = outbox(256, 64);
+		for (int i = 0; i < 40; i++) {
+			outbox.append("hello", message("message-" + i));
+		}
+		assertThat(outbox.getSegments()).isGreaterThan(5);
+
+		int drained = 0;
+		for (int n = outbox.drainOnce(); n > 0; n = outbox.drainOnce()) {
+			drained += n;
+		}
+
+		assertThat(drained).isEqualTo(40);
+		assertThat(bodies()).hasSize(40).startsWith("message-0").endsWith("message-39");
+		assertThat(outbox.getSegments()).isEqualTo(1);
+		assertThat(outbox.getBacklogBytes()).isZero();
+		outbox.close();
+	}
+
+	@Test
+	void appendFailsWhenAllSegmentsAreFull() {
+		Outbox outbox = outbox(128, 2);
+
+		assertThatExceptionOfType(AmqpResourceNotAvailableException.class).isThrownBy(() -> {
+			for (int i = 0; i < 100; i++) {
+				outbox.append("hello", message("message-" + i));
+			}
+		});
+		outbox.close();
+	}
+
+	private Outbox outbox(int segmentSize, int maxSegments) {
+		return new Outbox(directory, segmentSize, maxSegments, false, transport, null, new MessageLog(1, 0), 16, 10,
+				1000);
+	}
+
+	private static Message message(String body) {
+		return new Message(body.getBytes(StandardCharsets.UTF_8), new MessageProperties());
+	}
+
+	private List<String> bodies() {
+		return sent.stream().map(m -> new String(m.getBody(), StandardCharsets.UTF_8)).toList();
+	}
+}
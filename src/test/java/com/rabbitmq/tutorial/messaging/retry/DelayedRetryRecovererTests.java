@@ -0,0 +1,156 @@
+package com.rabbitmq.tutorial.messaging.retry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.support.ListenerExecutionFailedException;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import com.rabbitmq.tutorial.messaging.dispatch.MessageDispatcher;
+import com.rabbitmq.tutorial.messaging.log.MessageLog;
+import com.rabbitmq.tutorial.messaging.metrics.MessagingMetrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class DelayedRetryRecovererTests {
+
+	private final RabbitTemplate template = mock(RabbitTemplate.class);
+
+	private final MeterRegistry registry = new SimpleMeterRegistry();
+
+	private final DelayedRetryRecoverer recoverer = new DelayedRetryRecoverer(template, List.of("hello", "hello.text"),
+			new long[] { 1000, 5000 }, 3, new MessagingMetrics(registry, mock(MessageDispatcher.class)),
+			new MessageLog(1, 0));
+
+	@Test
+	void failuresGoToDelayTiersWithIncreasingExpiration() {
+		Message message = message(0);
+
+		recoverer.recover(message, failure(new IllegalStateException("boom")));
+		assertThat(sentTo("hello.retry.1").getMessageProperties().getExpiration()).isEqualTo("1000");
+		assertThat(message.getMessageProperties().<Object>getHeader(DelayedRetryRecoverer.RETRY_COUNT_HEADER))
+				.isEqualTo(1);
+		assertThat(message.getMessageProperties().<String>getHeader(DelayedRetryRecoverer.EXCEPTION_HEADER))
+				.isEqualTo("java.lang.IllegalStateException: boom");
+
+		recoverer.recover(message, failure(new IllegalStateException("boom")));
+		assertThat(sentTo("hello.retry.2").getMessageProperties().getExpiration()).isEqualTo("5000");
+		assertThat(registry.get("tutorial.retry").tag("tier", "2").counter().count()).isEqualTo(1);
+	}
+
+	@Test
+	void messageIsParkedAfterMaxAttempts() {
+		Message message = message(2);
+
+		recoverer.recover(message, failure(new IllegalStateException("boom")));
+
+		Message parked = sentTo("hello.parking-lot");
+		assertThat(parked.getMessageProperties().<Object>getHeader(DelayedRetryRecoverer.RETRY_COUNT_HEADER))
+				.isEqualTo(3);
+		assertThat(parked.getMessageProperties().getExpiration()).isNull();
+		assertThat(registry.get("tutorial.retry.parked").counter().count()).isEqualTo(1);
+	}
+
+	@Test
+	void unconvertibleMessageIsParkedImmediately() {
+		recoverer.recover(message(0), failure(new MessageConversionException("bad json")));
+
+		sentTo("hello.parking-lot");
+	}
+
+	@Test
+	void otherQueuesKeepTheDefaultHandling() {
+		Message message = message(0);
+		message.getMessageProperties().setConsumerQueue("transacciones.shard.0");
+
+		assertThatIllegalStateException().isThrownBy(() -> recoverer.recover(message, new IllegalStateException()));
+		verify(template, never()).send(anyString(), anyString(), any(Message.class));
+	}
+
+	@Test
+	void eachQueueRetriesThroughItsOwnTiers() {
+		Message message = message(0);
+		message.getMessageProperties().setConsumerQueue("hello.text");
+
+		recoverer.recover(message, failure(new IllegalStateException("boom")));
+
+		sentTo("hello.text.retry.1");
+		assertThat(registry.get("tutorial.retry").tag("queue", "hello.text").tag("tier", "1").counter().count())
+				.isEqualTo(1);
+	}
+
+	@Test
+	void batchFailureWithoutAFailedMessageRetriesTheWholeBatch() {
+		List<Message> batch = List.of(message(0), message(0));
+
+		recoverer.recover(batch, new ListenerExecutionFailedException("Listener threw exception",
+				new IllegalStateException("boom"), batch.toArray(new Message[0])));
+
+		verify(template, times(2)).send(eq(""), eq("hello.retry.1"), any(Message.class));
+		assertThat(batch).allSatisfy(m -> assertThat(
+				m.getMessageProperties().<Object>getHeader(DelayedRetryRecoverer.RETRY_COUNT_HEADER)).isEqualTo(1));
+	}
+
+	@Test
+	void batchFromAQueueWithoutRetriesKeepsTheDefaultHandling() {
+		Message other = message(0);
+		other.getMessageProperties().setConsumerQueue("transacciones.shard.0");
+
+		assertThatIllegalStateException()
+				.isThrownBy(() -> recoverer.recover(List.of(message(0), other), new IllegalStateException()));
+		verify(template, never()).send(anyString(), anyString(), any(Message.class));
+	}
+
+	@Test
+	void delayQueuesCarryTheirTierTtl() {
+		List<Declarable> topology = DelayedRetryRecoverer.topology("hello", new long[] { 1000, 5000 });
+
+		assertThat(topology).hasSize(3);
+		Queue first = (Queue) topology.get(0);
+		assertThat(first.getName()).isEqualTo("hello.retry.1");
+		assertThat(first.getArguments()).containsEntry("x-message-ttl", 1000)
+				.containsEntry("x-dead-letter-exchange", "").containsEntry("x-dead-letter-routing-key", "hello");
+		assertThat(((Queue) topology.get(1)).getArguments()).containsEntry("x-message-ttl", 5000);
+		Queue parkingLot = (Queue) topology.get(2);
+		assertThat(parkingLot.getName()).isEqualTo("hello.parking-lot");
+		assertThat(parkingLot.getArguments()).doesNotContainKey("x-message-ttl");
+	}
+
+	private Message sentTo(String queue) {
+		ArgumentCaptor<Message> sent = ArgumentCaptor.forClass(Message.class);
+		verify(template, atLeastOnce()).send(eq(""), eq(queue), sent.capture());
+		return sent.getValue();
+	}
+
+	private static Message message(int retries) {
+		MessageProperties properties = new MessageProperties();
+		properties.setConsumerQueue("hello");
+		if (retries > 0) {
+			properties.setHeader(DelayedRetryRecoverer.RETRY_COUNT_HEADER, retries);
+		}
+		return new Message("payload".getBytes(StandardCharsets.UTF_8), properties);
+	}
+
+	private static Throwable failure(Throwable cause) {
+		return new ListenerExecutionFailedException("Listener threw exception", cause);
+	}
+}
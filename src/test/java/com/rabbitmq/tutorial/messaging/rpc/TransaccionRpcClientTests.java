@@ -0,0 +1,99 @@
+package com.rabbitmq.tutorial.messaging.rpc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.Address;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.rabbit.listener.DirectReplyToMessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.DirectReplyToMessageListenerContainer.ChannelHolder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.tutorial.messaging.codec.JsonCodec;
+import com.rabbitmq.tutorial.model.Transaccion;
+
+class TransaccionRpcClientTests {
+
+	private final JsonCodec codec = new JsonCodec(new ObjectMapper().findAndRegisterModules(), Transaccion.class);
+
+	private final DirectReplyToMessageListenerContainer container = mock(DirectReplyToMessageListenerContainer.class);
+
+	private final ChannelHolder holder = mock(ChannelHolder.class);
+
+	private final Channel channel = mock(Channel.class);
+
+	@Test
+	void replyCompletesRequestWithSameCorrelation() throws Exception {
+		TransaccionRpcClient client = client(5000);
+		Transaccion request = transaccion("c-1");
+
+		CompletableFuture<Transaccion> future = client.call(request);
+		ArgumentCaptor<AMQP.BasicProperties> properties = ArgumentCaptor.forClass(AMQP.BasicProperties.class);
+		verify(channel).basicPublish(eq(""), eq("rpc"), properties.capture(), any(byte[].class));
+		verify(container).releaseConsumerFor(holder, false, null);
+		assertThat(properties.getValue().getReplyTo()).isEqualTo(Address.AMQ_RABBITMQ_REPLY_TO);
+		assertThat(properties.getValue().getCorrelationId()).isEqualTo("c-1");
+		assertThat(client.getPending()).isEqualTo(1);
+
+		Transaccion reply = transaccion("c-1");
+		reply.setEstado_id("COMPLETADA");
+		listener().onMessage(codec.toMessage(reply));
+
+		assertThat(future.get(1, TimeUnit.SECONDS).getEstado_id()).isEqualTo("COMPLETADA");
+		assertThat(client.getPending()).isZero();
+		assertThat(client.getReplies()).isEqualTo(1);
+	}
+
+	@Test
+	void requestsTimeOutAndLateRepliesAreDiscarded() {
+		TransaccionRpcClient client = client(50);
+
+		CompletableFuture<Transaccion> future = client.call(transaccion("c-2"));
+
+		assertThat(future).failsWithin(1, TimeUnit.SECONDS).withThrowableThat().withCauseInstanceOf(TimeoutException.class);
+		assertThat(client.getPending()).isZero();
+		assertThat(client.getTimeouts()).isEqualTo(1);
+		listener().onMessage(codec.toMessage(transaccion("c-2")));
+		assertThat(client.getUnmatchedReplies()).isEqualTo(1);
+	}
+
+	@Test
+	void duplicateCorrelationInFlightIsRejected() {
+		TransaccionRpcClient client = client(5000);
+
+		client.call(transaccion("c-3"));
+
+		assertThat(client.call(transaccion("c-3"))).isCompletedExceptionally();
+		assertThat(client.getPending()).isEqualTo(1);
+	}
+
+	private TransaccionRpcClient client(long timeout) {
+		when(container.getChannelHolder()).thenReturn(holder);
+		when(holder.getChannel()).thenReturn(channel);
+		return new TransaccionRpcClient(container, codec, "", "rpc", timeout);
+	}
+
+	private MessageListener listener() {
+		ArgumentCaptor<MessageListener> listener = ArgumentCaptor.forClass(MessageListener.class);
+		verify(container).setMessageListener(listener.capture());
+		return listener.getValue();
+	}
+
+	private static Transaccion transaccion(String correlation) {
+		return new Transaccion(1, "k-" + correlation, correlation, 1, 2, new BigDecimal("10.0"), null, null,
+				"PENDIENTE");
+	}
+}
@@ -0,0 +1,35 @@
+package com.rabbitmq.tutorial.messaging.shard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class ShardRouterTests {
+
+	@Test
+	void accountsStayWithinRangeAndAreStable() {
+		ShardRouter router = new ShardRouter(8);
+		for (int account = 0; account < 10_000; account++) {
+			int shard = router.shardFor(account);
+			assertThat(shard).isBetween(0, 7);
+			assertThat(new ShardRouter(8).shardFor(account)).isEqualTo(shard);
+		}
+	}
+
+	@Test
+	void growingOnlyMovesAccountsToNewShards() {
+		ShardRouter before = new ShardRouter(4);
+		ShardRouter after = new ShardRouter(5);
+		int moved = 0;
+		for (int account = 0; account < 10_000; account++) {
+			int from = before.shardFor(account);
+			int to = after.shardFor(account);
+			if (from != to) {
+				assertThat(to).isEqualTo(4);
+				moved++;
+			}
+		}
+		// Se espera que cambie de shard ~1/5 de las cuentas
+		assertThat(moved).isBetween(1_700, 2_300);
+	}
+}
@@ -0,0 +1,194 @@
+package com.rabbitmq.tutorial.messaging.shard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.core.ChannelCallback;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+import com.rabbitmq.tutorial.messaging.codec.JsonCodec;
+import com.rabbitmq.tutorial.messaging.dispatch.MessageDispatcher;
+import com.rabbitmq.tutorial.messaging.log.MessageLog;
+import com.rabbitmq.tutorial.messaging.metrics.MessagingMetrics;
+import com.rabbitmq.tutorial.model.Transaccion;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ShardedConsumersTests {
+
+	private final JsonCodec codec = new JsonCodec(new ObjectMapper().findAndRegisterModules());
+
+	private final List<String> handled = Collections.synchronizedList(new ArrayList<>());
+
+	private final MessageDispatcher dispatcher = new MessageDispatcher(codec).register(Transaccion.class, tx -> {
+		if ("fail".equals(tx.getEstado_id())) {
+			throw new IllegalStateException("boom");
+		}
+		handled.add(tx.getClave_indempotencia());
+	});
+
+	private final AmqpAdmin admin = mock(AmqpAdmin.class);
+
+	private final RabbitTemplate template = mock(RabbitTemplate.class);
+
+	private final Channel channel = mock(Channel.class);
+
+	private final SimpleRabbitListenerContainerFactory factory = mock(SimpleRabbitListenerContainerFactory.class);
+
+	private final SimpleMessageListenerContainer container = mock(SimpleMessageListenerContainer.class);
+
+	private final Map<String, Deque<GetResponse>> queues = new ConcurrentHashMap<>();
+
+	private final AtomicInteger brokerFailures = new AtomicInteger();
+
+	private final MessagingMetrics metrics = new MessagingMetrics(new SimpleMeterRegistry(), dispatcher);
+
+	private long tags;
+
+	private ShardedConsumers consumers;
+
+	@AfterEach
+	void stop() {
+		if (consumers != null) {
+			consumers.stop();
+		}
+	}
+
+	@Test
+	void oldMessagesAreDrainedInOrderBeforeConsumersStart() throws Exception {
+		queue(0, message("old-1", 2), message("old-2", null), message("new-1", 4), message("new-2", 4));
+		queue(5, message("old-3", "2"));
+		consumers = start(4);
+
+		assertThat(handled).containsExactly("old-1", "old-2", "old-3");
+		verify(channel).basicNack(3, false, true);
+		verify(admin).deleteQueue(ShardRouter.queueName(5), false, true);
+		verify(admin, never()).deleteQueue(ShardRouter.queueName(0), false, true);
+		InOrder order = inOrder(channel, container);
+		order.verify(channel).basicNack(3, false, true);
+		order.verify(container).start();
+		assertThat(consumers.isConsuming()).isTrue();
+		assertThat(metrics.getReceived()).isEqualTo(3);
+		assertThat(metrics.getRegistry().find("tutorial.end-to-end.queue").tag("queue", ShardRouter.queueName(5))
+			.timer().count()).isEqualTo(1);
+	}
+
+	@Test
+	void failedHandlerStopsDrainingThatQueue() throws Exception {
+		queue(0, message("old-1", 2), message("fail", 2), message("old-3", 2));
+		consumers = start(4);
+
+		assertThat(handled).containsExactly("old-1");
+		verify(channel).basicAck(1, false);
+		verify(channel).basicNack(2, false, true);
+		verify(channel, never()).basicAck(3, false);
+	}
+
+	@Test
+	void consumersWaitUntilADrainSucceeds() throws Exception {
+		brokerFailures.set(1);
+		consumers = start(4);
+
+		assertThat(consumers.isRunning()).isTrue();
+		assertThat(consumers.isConsuming()).isFalse();
+		verify(container, timeout(5000).times(4)).start();
+		assertThat(consumers.isConsuming()).isTrue();
+	}
+
+	@Test
+	void retiredQueuesKeepBeingDrainedWhileRunning() throws Exception {
+		consumers = start(2);
+		verify(container, timeout(5000).times(2)).start();
+
+		queue(3, message("late-1", 4));
+
+		verify(admin, timeout(5000)).deleteQueue(ShardRouter.queueName(3), false, true);
+		assertThat(handled).containsExactly("late-1");
+	}
+
+	@Test
+	void shardCountHeaderAcceptsNumbersAndText() {
+		assertThat(ShardedConsumers.shardCount(4)).isEqualTo(4);
+		assertThat(ShardedConsumers.shardCount(4L)).isEqualTo(4);
+		assertThat(ShardedConsumers.shardCount(" 8 ")).isEqualTo(8);
+		assertThat(ShardedConsumers.shardCount("x")).isEqualTo(-1);
+		assertThat(ShardedConsumers.shardCount(null)).isEqualTo(-1);
+	}
+
+	private ShardedConsumers start(int shardCount) throws Exception {
+		when(factory.createListenerContainer()).thenReturn(container);
+		when(admin.getQueueProperties(anyString())).thenAnswer(invocation -> {
+			if (brokerFailures.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+				throw new AmqpConnectException(new IllegalStateException("broker down"));
+			}
+			Deque<GetResponse> queue = queues.get(invocation.<String>getArgument(0));
+			return queue != null ? new Properties() : null;
+		});
+		when(template.execute(any())).thenAnswer(
+				invocation -> invocation.<ChannelCallback<?>>getArgument(0).doInRabbit(channel));
+		when(channel.basicGet(anyString(), anyBoolean())).thenAnswer(invocation -> {
+			Deque<GetResponse> queue = queues.get(invocation.<String>getArgument(0));
+			return queue != null ? queue.poll() : null;
+		});
+		doAnswer(invocation -> queues.remove(invocation.<String>getArgument(0))).when(admin)
+				.deleteQueue(anyString(), anyBoolean(), anyBoolean());
+		ShardedConsumers sharded = new ShardedConsumers(new ShardRouter(shardCount), factory, admin, template,
+				dispatcher, new MessageLog(1, 0), metrics, 8, 1, 50);
+		sharded.start();
+		return sharded;
+	}
+
+	private void queue(int shard, GetResponse... responses) {
+		Deque<GetResponse> queue = new ConcurrentLinkedDeque<>(List.of(responses));
+		queues.put(ShardRouter.queueName(shard), queue);
+	}
+
+	private GetResponse message(String key, Object shardCount) {
+		Transaccion tx = new Transaccion(1, key, null, 1, 2, BigDecimal.ONE, null, null,
+				key.equals("fail") ? "fail" : "OK");
+		Map<String, Object> headers = new HashMap<>();
+		headers.put(JsonCodec.TYPE_ID_HEADER, Transaccion.class.getName());
+		headers.put(MessagingMetrics.SENT_AT_HEADER, System.currentTimeMillis());
+		if (shardCount != null) {
+			headers.put(ShardRouter.SHARD_COUNT_HEADER, shardCount);
+		}
+		AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder().contentType("application/json")
+				.contentEncoding(StandardCharsets.UTF_8.name()).headers(headers).build();
+		return new GetResponse(new Envelope(++tags, false, ShardRouter.EXCHANGE, "0"), properties,
+				codec.encode(tx), 0);
+	}
+}
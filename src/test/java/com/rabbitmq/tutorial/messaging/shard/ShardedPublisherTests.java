@@ -0,0 +1,45 @@
+package com.rabbitmq.tutorial.messaging.shard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.tutorial.messaging.codec.JsonCodec;
+import com.rabbitmq.tutorial.messaging.dispatch.MessageDispatcher;
+import com.rabbitmq.tutorial.messaging.metrics.MessagingMetrics;
+import com.rabbitmq.tutorial.model.Transaccion;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ShardedPublisherTests {
+
+	@Test
+	void publishIsStampedAndCountedOnItsShardQueue() {
+		JsonCodec codec = new JsonCodec(new ObjectMapper().findAndRegisterModules());
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		MessagingMetrics metrics = new MessagingMetrics(registry, new MessageDispatcher(codec));
+		RabbitTemplate template = mock(RabbitTemplate.class);
+		ShardRouter router = new ShardRouter(4);
+		ShardedPublisher publisher = new ShardedPublisher(template, codec, router, metrics);
+
+		publisher.send(new Transaccion(1, "k-1", null, 7, 2, BigDecimal.ONE, null, null, "OK"));
+
+		int shard = router.shardFor(7);
+		ArgumentCaptor<Message> sent = ArgumentCaptor.forClass(Message.class);
+		verify(template).send(eq(ShardRouter.EXCHANGE), eq(router.routingKeyFor(7)), sent.capture());
+		assertThat(sent.getValue().getMessageProperties().<Object>getHeader(MessagingMetrics.SENT_AT_HEADER))
+			.isInstanceOf(Long.class);
+		assertThat(registry.find("tutorial.publish").tag("queue", ShardRouter.queueName(shard)).counter().count())
+			.isEqualTo(1);
+		assertThat(metrics.getPublished()).isEqualTo(1);
+	}
+}
@@ -0,0 +1,78 @@
+package com.rabbitmq.tutorial.messaging.transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.AmqpResourceNotAvailableException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+class InMemoryTransportTests {
+
+	@Test
+	void failedMessageIsRedeliveredFirst() throws Exception {
+		InMemoryTransport transport = new InMemoryTransport(10, 0, Executors.defaultThreadFactory());
+		List<String> received = new ArrayList<>();
+		CountDownLatch done = new CountDownLatch(2);
+		transport.subscribe("q", 1, message -> {
+			String body = new String(message.getBody());
+			received.add(body + (message.getMessageProperties().isRedelivered() ? "*" : ""));
+			if (body.equals("a") && !message.getMessageProperties().isRedelivered()) {
+				throw new IllegalStateException("transient");
+			}
+			done.countDown();
+		});
+		transport.send("q", message("a"));
+		transport.send("q", message("b"));
+		transport.start();
+		try {
+			assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+		}
+		finally {
+			transport.stop();
+		}
+		assertThat(received).containsExactly("a", "a*", "b");
+		assertThat(transport.getRequeued()).isEqualTo(1);
+		assertThat(transport.getAcked()).isEqualTo(2);
+	}
+
+	@Test
+	void rejectedMessageIsDropped() throws Exception {
+		InMemoryTransport transport = new InMemoryTransport(10, 0, Executors.defaultThreadFactory());
+		CountDownLatch done = new CountDownLatch(1);
+		transport.subscribe("q", 1, message -> {
+			done.countDown();
+			throw new AmqpRejectAndDontRequeueException("fatal");
+		});
+		transport.send("q", message("a"));
+		transport.start();
+		done.await(5, TimeUnit.SECONDS);
+		transport.stop();
+
+		assertThat(transport.getRejected()).isEqualTo(1);
+		assertThat(transport.getReady("q")).isZero();
+	}
+
+	@Test
+	void fullQueueRejectsPublish() {
+		InMemoryTransport transport = new InMemoryTransport(2, 0, Executors.defaultThreadFactory());
+		transport.send("q", message("a"));
+		transport.send("q", message("b"));
+
+		assertThatThrownBy(() -> transport.send("q", message("c")))
+				.isInstanceOf(AmqpResourceNotAvailableException.class);
+		assertThat(transport.getPublished()).isEqualTo(2);
+	}
+
+	private static Message message(String body) {
+		return new Message(body.getBytes(), new MessageProperties());
+	}
+}
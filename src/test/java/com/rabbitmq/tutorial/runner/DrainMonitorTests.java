@@ -0,0 +1,34 @@
+package com.rabbitmq.tutorial.runner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class DrainMonitorTests {
+
+	@Test
+	void awaitReturnsOnceEverySourceIsEmpty() throws Exception {
+		AtomicLong confirms = new AtomicLong(3);
+		DrainMonitor drain = new DrainMonitor().track("confirms", confirms::get).track("handlers", () -> 0);
+		Thread.ofPlatform().start(() -> {
+			while (confirms.get() > 0) {
+				confirms.decrementAndGet();
+			}
+		});
+
+		assertThat(drain.await(1000)).isTrue();
+		assertThat(drain.pending()).isEmpty();
+	}
+
+	@Test
+	void timeoutReportsWhatIsStillPending() throws Exception {
+		DrainMonitor drain = new DrainMonitor().track("confirms", () -> 0).track("unreceived", () -> 2)
+				.track("handlers", () -> 1);
+
+		assertThat(drain.await(50)).isFalse();
+		assertThat(drain.pending()).containsExactly(Map.entry("unreceived", 2L), Map.entry("handlers", 1L));
+	}
+}
@@ -0,0 +1,104 @@
+package com.rabbitmq.tutorial.runner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.rabbitmq.tutorial.messaging.Receiver;
+import com.rabbitmq.tutorial.messaging.dispatch.MessageDispatcher;
+import com.rabbitmq.tutorial.messaging.metrics.MessagingMetrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class TutorialRabbitMqRunnerTests {
+
+	private final MessagingMetrics metrics = new MessagingMetrics(new SimpleMeterRegistry(),
+			mock(MessageDispatcher.class));
+
+	private final TutorialRabbitMqRunner runner = new TutorialRabbitMqRunner();
+
+	@Test
+	void stopsWhenTheReceivedTargetIsReached() throws Exception {
+		configure(0, 5, 0);
+		ReflectionTestUtils.setField(runner, "receiver", mock(Receiver.class));
+		Thread.ofPlatform().start(() -> {
+			for (int i = 0; i < 5; i++) {
+				metrics.recordPublish("hello");
+				metrics.recordReceived(new Message(new byte[0], new MessageProperties()));
+			}
+		});
+
+		assertThat(runner.awaitStopCondition()).isEqualTo("target count");
+		assertThat(metrics.getReceived()).isEqualTo(5);
+	}
+
+	@Test
+	void withoutReceiverTheTargetCountsPublishes() throws Exception {
+		configure(10_000, 3, 0);
+		for (int i = 0; i < 3; i++) {
+			metrics.recordPublish("hello");
+		}
+
+		assertThat(runner.awaitStopCondition()).isEqualTo("target count");
+	}
+
+	@Test
+	void idleTimeoutIsArmedBeforeTheFirstMessage() throws Exception {
+		configure(10_000, 100, 200);
+		long start = System.nanoTime();
+
+		assertThat(runner.awaitStopCondition()).isEqualTo("idle");
+		assertThat(elapsedMillis(start)).isBetween(200L, 5000L);
+	}
+
+	@Test
+	void progressPostponesTheIdleTimeout() throws Exception {
+		configure(10_000, 0, 300);
+		Thread producer = Thread.ofPlatform().start(() -> {
+			for (int i = 0; i < 10; i++) {
+				metrics.recordPublish("hello");
+				sleep(100);
+			}
+		});
+		long start = System.nanoTime();
+
+		assertThat(runner.awaitStopCondition()).isEqualTo("idle");
+		assertThat(elapsedMillis(start)).isGreaterThanOrEqualTo(1000L);
+		producer.join();
+	}
+
+	@Test
+	void stopsAtTheDeadline() throws Exception {
+		configure(150, 100, 0);
+		long start = System.nanoTime();
+
+		assertThat(runner.awaitStopCondition()).isEqualTo("deadline");
+		assertThat(elapsedMillis(start)).isBetween(150L, 5000L);
+	}
+
+	private void configure(long duration, long targetCount, long idleTimeout) {
+		ReflectionTestUtils.setField(runner, "metrics", metrics);
+		ReflectionTestUtils.setField(runner, "duration", duration);
+		ReflectionTestUtils.setField(runner, "targetCount", targetCount);
+		ReflectionTestUtils.setField(runner, "idleTimeout", idleTimeout);
+	}
+
+	private static long elapsedMillis(long start) {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}